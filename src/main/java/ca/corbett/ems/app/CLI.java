@@ -1,5 +1,6 @@
 package ca.corbett.ems.app;
 
+import ca.corbett.ems.app.client.PipelinedClient;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.DefaultParser;
@@ -15,21 +16,56 @@ import org.apache.commons.cli.ParseException;
  * <blockquote>
  *     <pre>
  *  usage: java -jar EMS.jar [options]
- * -C,--channel &lt;channel&gt;         Used with --startSubscriber, this is the channel to subscribe to.
+ * --aliasTtl &lt;seconds&gt;           Used with --startServer, releases channel ids handed out by ALIAS once they go unused this long (default 300).
+ * --batch                        Used with --startClient, runs the commands piped into it as a batch, like --script.
+ * --capture &lt;file&gt;               Used with --startServer, records everything received to this file, for --startReplay.
+ * -C,--channel &lt;channel&gt;         Used with --startSubscriber or --startPublisher: channel names and/or glob patterns, comma-separated.
+ * --clientBurst &lt;msgs&gt;           Used with --clientRate, how many messages a client can publish in a burst (default one second's worth).
+ * --clientRate &lt;msgs/s&gt;          Used with --startServer, the most messages per second each client can publish (default no limit).
+ * --config &lt;file&gt;                Used with --startServer, applies the settings in this properties file (see the CONFIG command).
+ * --count &lt;count&gt;               Used with --startPublisher, stops after this many messages.
+ * --drainTimeout &lt;seconds&gt;       Used with --startServer, how long to wait on shutdown for queued messages to be delivered (default 5).
+ * --generate &lt;template&gt;          Used with --startPublisher, generates messages ("{n}" is replaced with a sequence number).
+ * --globalByteRate &lt;bytes/s&gt;     Used with --startServer, the most bytes per second all clients together can publish.
+ * --globalRate &lt;msgs/s&gt;          Used with --startServer, the most messages per second all clients together can publish.
  * -H,--host &lt;host&gt;               Host to connect to (default localhost)
  * -h,--help                      Show usage information and exit.
+ * --input &lt;file&gt;                 Used with --startPublisher, reads messages from this file instead of stdin.
+ *                                Used with --startReplay, the capture file to replay.
+ * --jfr &lt;file&gt;                   Starts a Java Flight Recorder recording, written to the given file on exit.
+ * --maxChannels &lt;count&gt;          Used with --startServer, the most channels allowed (default no limit).
+ * --maxRetainedMB &lt;MB&gt;           Used with --startServer, the most message data queued for subscribers (default 64).
  * -N,--serverName &lt;serverName&gt;   Used with --startServer, provides an optional name for this server.
+ * --output &lt;format&gt;             Used with --startSubscriber: log (default), raw or jsonl.
  * -P,--port &lt;port&gt;               Port to use for connections (default 1975)
+ * --priority                     Used with --startPublisher, sends messages as high priority.
+ * --priorityChannels &lt;channels&gt;  Used with --startServer, comma-separated channels whose messages are always delivered first.
+ * --rate &lt;msgs/s&gt;                Used with --startPublisher, the target publish rate (default as fast as possible).
+ * --script &lt;file&gt;                Used with --startClient, runs the commands in this file and exits.
+ * --sharedMemory                 With --startServer, accepts shared memory connections from this machine; with --startSubscriber or --startGui, uses them.
+ * --sink &lt;file&gt;                  Used with --startSubscriber, appends messages to this file.
+ * --sinkRotateMB &lt;MB&gt;            Used with --sink, rotates the file at this size (default 64, 0 = never).
  * --startClient                  Starts an EMS client
  * --startGui                     Starts a graphical interface
+ * --startPublisher               Starts a publisher (requires --channel)
+ * --startReplay                  Replays a capture file into a server (requires --input)
  * --startServer                  Start an EMS server
+ * --speed &lt;factor&gt;               Used with --startReplay: 1 for the original timing (default), 2 for twice as fast, 0 for flat out.
  * --startSubscriber              Starts a subscriber (requires --channel)
+ * --stats &lt;seconds&gt;              Used with --startSubscriber, --startPublisher or --startReplay, logs the message rate this often.
+ * --throttle                     Used with --startServer, delays messages that are over a rate limit instead of rejecting them.
+ * --trace                        Used with --startSubscriber, traces sent messages for latency stats.
  * -v,--version                   Show version and exit.
+ * --window &lt;count&gt;              Used with --script, --batch, --startPublisher or --startReplay, how many commands to keep in flight (default 4096).
  * -y,--serverSpy                 Optional with --startServer, outputs more log info.
  *
  * Exactly one of the --start* options is required.
  *     </pre>
  * </blockquote>
+ * <p>
+ *     If --startClient is given a --script, or --batch (for commands piped into it), the
+ *     commands are run as a batch instead of interactively.
+ * </p>
  *
  * @author scorbo2
  * @since 2023-11-24
@@ -46,6 +82,11 @@ public final class CLI {
      */
     public static final int DEFAULT_LISTENING_PORT = 1975;
 
+    /**
+     * If --generate is given without --count, we publish this many messages.
+     */
+    public static final long DEFAULT_GENERATE_COUNT = 10000;
+
     /**
      * Private constructor to avoid instantiation. *
      */
@@ -99,6 +140,16 @@ public final class CLI {
                 .desc("Starts a subscriber (requires --channel)")
                 .build());
 
+        options.addOption(Option.builder()
+                .longOpt("startPublisher")
+                .desc("Starts a publisher (requires --channel)")
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt("startReplay")
+                .desc("Replays a capture file into a server (requires --input)")
+                .build());
+
         options.addOption(Option.builder()
                 .longOpt("startGui")
                 .desc("Starts a graphical interface")
@@ -108,7 +159,7 @@ public final class CLI {
                 .longOpt("channel")
                 .hasArg()
                 .argName("channel")
-                .desc("Used with --startSubscriber, this is the channel to subscribe to.")
+                .desc("Used with --startSubscriber or --startPublisher: channel names and/or glob patterns, comma-separated.")
                 .build());
 
         options.addOption(Option.builder("y")
@@ -116,6 +167,197 @@ public final class CLI {
                 .desc("Optional with --startServer, outputs more log info.")
                 .build());
 
+        options.addOption(Option.builder()
+                .longOpt("jfr")
+                .hasArg()
+                .argName("file")
+                .desc("Starts a Java Flight Recorder recording, written to the given file on exit.")
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt("output")
+                .hasArg()
+                .argName("format")
+                .desc("Used with --startSubscriber: log (default), raw or jsonl.")
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt("sink")
+                .hasArg()
+                .argName("file")
+                .desc("Used with --startSubscriber, appends messages to this file.")
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt("sinkRotateMB")
+                .hasArg()
+                .argName("MB")
+                .desc("Used with --sink, rotates the file at this size (default 64, 0 = never).")
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt("stats")
+                .hasArg()
+                .argName("seconds")
+                .desc("Used with --startSubscriber, --startPublisher or --startReplay, logs the message rate this often.")
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt("script")
+                .hasArg()
+                .argName("file")
+                .desc("Used with --startClient, runs the commands in this file and exits.")
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt("batch")
+                .desc("Used with --startClient, runs the commands piped into it as a batch, like --script.")
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt("window")
+                .hasArg()
+                .argName("count")
+                .desc("Used with --script, --batch, --startPublisher or --startReplay, how many commands to keep in flight (default "
+                              + PipelinedClient.DEFAULT_WINDOW + ").")
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt("input")
+                .hasArg()
+                .argName("file")
+                .desc("Used with --startPublisher, reads messages from this file instead of stdin. "
+                              + "Used with --startReplay, the capture file to replay.")
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt("generate")
+                .hasArg()
+                .argName("template")
+                .desc("Used with --startPublisher, generates messages (\"{n}\" is replaced with a sequence number).")
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt("count")
+                .hasArg()
+                .argName("count")
+                .desc("Used with --startPublisher, stops after this many messages.")
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt("rate")
+                .hasArg()
+                .argName("msgs/s")
+                .desc("Used with --startPublisher, the target publish rate (default as fast as possible).")
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt("capture")
+                .hasArg()
+                .argName("file")
+                .desc("Used with --startServer, records everything received to this file, for --startReplay.")
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt("speed")
+                .hasArg()
+                .argName("factor")
+                .desc("Used with --startReplay: 1 for the original timing (default), 2 for twice as fast, "
+                              + "0 for flat out.")
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt("trace")
+                .desc("Used with --startSubscriber, traces sent messages for latency stats.")
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt("priority")
+                .desc("Used with --startPublisher, sends messages as high priority.")
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt("priorityChannels")
+                .hasArg()
+                .argName("channels")
+                .desc("Used with --startServer, comma-separated channels whose messages are always delivered first.")
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt("aliasTtl")
+                .hasArg()
+                .argName("seconds")
+                .desc("Used with --startServer, releases channel ids handed out by ALIAS once they go unused "
+                              + "this long (default 300).")
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt("maxChannels")
+                .hasArg()
+                .argName("count")
+                .desc("Used with --startServer, the most channels allowed (default no limit).")
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt("maxRetainedMB")
+                .hasArg()
+                .argName("MB")
+                .desc("Used with --startServer, the most message data queued for subscribers (default 64).")
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt("clientRate")
+                .hasArg()
+                .argName("msgs/s")
+                .desc("Used with --startServer, the most messages per second each client can publish (default no limit).")
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt("clientBurst")
+                .hasArg()
+                .argName("msgs")
+                .desc("Used with --clientRate, how many messages a client can publish in a burst (default one second's worth).")
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt("globalRate")
+                .hasArg()
+                .argName("msgs/s")
+                .desc("Used with --startServer, the most messages per second all clients together can publish.")
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt("globalByteRate")
+                .hasArg()
+                .argName("bytes/s")
+                .desc("Used with --startServer, the most bytes per second all clients together can publish.")
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt("throttle")
+                .desc("Used with --startServer, delays messages that are over a rate limit instead of rejecting them.")
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt("config")
+                .hasArg()
+                .argName("file")
+                .desc("Used with --startServer, applies the settings in this properties file (see the CONFIG command).")
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt("sharedMemory")
+                .desc("With --startServer, accepts shared memory connections from this machine; "
+                              + "with --startSubscriber or --startGui, uses them.")
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt("drainTimeout")
+                .hasArg()
+                .argName("seconds")
+                .desc("Used with --startServer, how long to wait on shutdown for queued messages to be delivered (default 5).")
+                .build());
+
         options.addOption(Option.builder("N")
                 .longOpt("serverName")
                 .hasArg()
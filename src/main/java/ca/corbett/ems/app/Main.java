@@ -1,7 +1,43 @@
 package ca.corbett.ems.app;
 
+import ca.corbett.ems.app.admission.RateLimitedSendHandler;
+import ca.corbett.ems.app.admission.RateLimiter;
+import ca.corbett.ems.app.capture.CaptureReader;
+import ca.corbett.ems.app.capture.CaptureRecord;
+import ca.corbett.ems.app.capture.CaptureRecorder;
+import ca.corbett.ems.app.channels.ChannelIds;
+import ca.corbett.ems.app.channels.ChannelRegistry;
+import ca.corbett.ems.app.client.Backoff;
+import ca.corbett.ems.app.config.ServerConfig;
+import ca.corbett.ems.app.client.ChannelSelector;
+import ca.corbett.ems.app.client.LatencyHistogram;
+import ca.corbett.ems.app.client.MessageSink;
+import ca.corbett.ems.app.client.PipelinedClient;
+import ca.corbett.ems.app.client.PublishBuffer;
+import ca.corbett.ems.app.client.ReceiveStats;
+import ca.corbett.ems.app.delivery.ChannelIdSendHandler;
+import ca.corbett.ems.app.delivery.PriorityDispatcher;
+import ca.corbett.ems.app.delivery.PrioritySendHandler;
+import ca.corbett.ems.app.drain.DrainController;
+import ca.corbett.ems.app.drain.DrainGateHandler;
+import ca.corbett.ems.app.handlers.AliasHandler;
+import ca.corbett.ems.app.handlers.CappedSubscribeHandler;
+import ca.corbett.ems.app.handlers.ConfigHandler;
 import ca.corbett.ems.app.handlers.HaltHandler;
+import ca.corbett.ems.app.handlers.HealthHandler;
+import ca.corbett.ems.app.handlers.PagedListActiveHandler;
+import ca.corbett.ems.app.handlers.PingHandler;
+import ca.corbett.ems.app.handlers.PriorityHandler;
+import ca.corbett.ems.app.handlers.RateLimitHandler;
 import ca.corbett.ems.app.handlers.UptimeHandler;
+import ca.corbett.ems.app.jfr.JfrSupport;
+import ca.corbett.ems.app.local.LocalEMSServer;
+import ca.corbett.ems.app.local.LocalSubscriber;
+import ca.corbett.ems.app.local.SharedMemoryHandler;
+import ca.corbett.ems.app.trace.LatencyTracker;
+import ca.corbett.ems.app.trace.MessageEnvelope;
+import ca.corbett.ems.app.trace.TracingSendHandler;
+import ca.corbett.ems.app.ui.ConnectionManager;
 import ca.corbett.ems.app.ui.MainWindow;
 import ca.corbett.ems.client.EMSClient;
 import ca.corbett.ems.client.EMSServerResponse;
@@ -14,9 +50,29 @@ import ca.corbett.ems.server.EMSServerSpy;
 import org.apache.commons.cli.CommandLine;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Level;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
@@ -61,10 +117,13 @@ public class Main {
             return;
         }
 
-        // Otherwise, we need one of startServer, startClient, startSubscriber, or startGui:
+        // Otherwise, we need one of startServer, startClient, startSubscriber, startPublisher, startReplay,
+        // or startGui:
         boolean startServer = cmdLine.hasOption("startServer");
         boolean startClient = cmdLine.hasOption("startClient");
         boolean startSubscriber = cmdLine.hasOption("startSubscriber");
+        boolean startPublisher = cmdLine.hasOption("startPublisher");
+        boolean startReplay = cmdLine.hasOption("startReplay");
         boolean startGui = cmdLine.hasOption("startGui");
 
         // We can't do more than one of those, though:
@@ -72,14 +131,18 @@ public class Main {
         commandCount += startServer ? 1 : 0;
         commandCount += startClient ? 1 : 0;
         commandCount += startSubscriber ? 1 : 0;
+        commandCount += startPublisher ? 1 : 0;
+        commandCount += startReplay ? 1 : 0;
         commandCount += startGui ? 1 : 0;
         if (commandCount != 1) {
-            System.err.println("Error: Exactly one of startServer, startClient, startSubscriber, or startGui is required.");
+            System.err.println("Error: Exactly one of startServer, startClient, startSubscriber, startPublisher,"
+                                       + " startReplay, or startGui is required.");
             CLI.showUsageText(true);
         }
 
         // Start up the GUI if requested:
         if (startGui) {
+            ConnectionManager.getInstance().setSharedMemoryEnabled(cmdLine.hasOption("sharedMemory"));
             MainWindow.getInstance().setVisible(true);
             return;
         }
@@ -88,11 +151,85 @@ public class Main {
         String channel = cmdLine.getOptionValue("channel");
         boolean serverSpy = cmdLine.hasOption("serverSpy");
         if (startSubscriber) {
-            if (channel == null || channel.isBlank()) {
+            if (ChannelSelector.parse(channel).isEmpty()) {
                 System.err.println("Error: --startSubscriber requires --channel");
                 CLI.showUsageText(true);
             }
         }
+        if (startPublisher) {
+            if (ChannelSelector.parse(channel).isEmpty()) {
+                System.err.println("Error: --startPublisher requires --channel");
+                CLI.showUsageText(true);
+            }
+        }
+        if (startReplay && !cmdLine.hasOption("input")) {
+            System.err.println("Error: --startReplay requires --input");
+            CLI.showUsageText(true);
+        }
+
+        // Subscriber output options. Writing to a sink file implies raw output unless told otherwise:
+        String sinkFile = cmdLine.getOptionValue("sink");
+        MessageSink.Format outputFormat = sinkFile == null ? MessageSink.Format.LOG : MessageSink.Format.RAW;
+        if (cmdLine.hasOption("output")) {
+            outputFormat = MessageSink.Format.fromString(cmdLine.getOptionValue("output"));
+            if (outputFormat == null) {
+                System.err.println("Error: Invalid output format \"" + cmdLine.getOptionValue("output") + "\"");
+                return;
+            }
+            if (outputFormat == MessageSink.Format.LOG && sinkFile != null) {
+                System.err.println("Error: --sink requires --output raw or --output jsonl");
+                return;
+            }
+        }
+        long sinkRotateBytes = MessageSink.DEFAULT_ROTATE_BYTES;
+        int statsSeconds = 0;
+        int window = PipelinedClient.DEFAULT_WINDOW;
+        long count = 0;
+        double rate = 0;
+        double speed = 1;
+        long aliasTtlMillis = ChannelIds.DEFAULT_IDLE_TTL_MILLIS;
+        int maxChannels = 0;
+        long maxRetainedBytes = PriorityDispatcher.DEFAULT_MAX_RETAINED_BYTES;
+        RateLimiter rateLimiter;
+        long drainTimeoutMillis = DrainController.DEFAULT_FLUSH_TIMEOUT_MILLIS;
+        try {
+            if (cmdLine.hasOption("drainTimeout")) {
+                drainTimeoutMillis = Long.parseLong(cmdLine.getOptionValue("drainTimeout")) * 1000;
+            }
+            rateLimiter = new RateLimiter(parseRate(cmdLine, "clientRate"), parseRate(cmdLine, "clientBurst"),
+                                          parseRate(cmdLine, "globalRate"), parseRate(cmdLine, "globalByteRate"),
+                                          cmdLine.hasOption("throttle"));
+            if (cmdLine.hasOption("aliasTtl")) {
+                aliasTtlMillis = Long.parseLong(cmdLine.getOptionValue("aliasTtl")) * 1000;
+            }
+            if (cmdLine.hasOption("maxChannels")) {
+                maxChannels = Integer.parseInt(cmdLine.getOptionValue("maxChannels"));
+            }
+            if (cmdLine.hasOption("maxRetainedMB")) {
+                maxRetainedBytes = Long.parseLong(cmdLine.getOptionValue("maxRetainedMB")) * 1024 * 1024;
+            }
+            if (cmdLine.hasOption("speed")) {
+                speed = Double.parseDouble(cmdLine.getOptionValue("speed"));
+            }
+            if (cmdLine.hasOption("count")) {
+                count = Long.parseLong(cmdLine.getOptionValue("count"));
+            }
+            if (cmdLine.hasOption("rate")) {
+                rate = Double.parseDouble(cmdLine.getOptionValue("rate"));
+            }
+            if (cmdLine.hasOption("window")) {
+                window = Integer.parseInt(cmdLine.getOptionValue("window"));
+            }
+            if (cmdLine.hasOption("sinkRotateMB")) {
+                sinkRotateBytes = Long.parseLong(cmdLine.getOptionValue("sinkRotateMB")) * 1024 * 1024;
+            }
+            if (cmdLine.hasOption("stats")) {
+                statsSeconds = Integer.parseInt(cmdLine.getOptionValue("stats"));
+            }
+        } catch (NumberFormatException nfe) {
+            System.err.println("Error: Invalid number \"" + nfe.getMessage() + "\"");
+            return;
+        }
 
         // EMS servers can optionally be assigned a human-readable name:
         if (cmdLine.hasOption("serverName")) {
@@ -117,15 +254,51 @@ public class Main {
         logger = Logger.getLogger(Main.class.getName());
         logger.info(Version.FULL_NAME + " starting up...");
 
+        // Start a flight recording if requested:
+        if (cmdLine.hasOption("jfr")) {
+            JfrSupport.startRecording(Path.of(cmdLine.getOptionValue("jfr")));
+        }
+
         // Okay, do it:
         if (startServer) {
-            startServer(host, port, serverSpy);
+            startServer(host, port, serverSpy, cmdLine.getOptionValue("capture"),
+                        cmdLine.getOptionValue("priorityChannels"), aliasTtlMillis, maxChannels, maxRetainedBytes,
+                        rateLimiter, drainTimeoutMillis, cmdLine.getOptionValue("config"),
+                        cmdLine.hasOption("sharedMemory"));
         }
         else if (startClient) {
-            startClient(host, port);
+            String script = cmdLine.getOptionValue("script");
+            // We can't reliably tell whether stdin is a terminal, so piped input has to ask for batch mode:
+            if (script != null || cmdLine.hasOption("batch")) {
+                runScript(host, port, script, window);
+            }
+            else {
+                startClient(host, port);
+            }
         }
         else if (startSubscriber) {
-            startSubscriber(host, port, channel);
+            MessageSink sink;
+            try {
+                sink = sinkFile == null
+                        ? MessageSink.console(outputFormat)
+                        : MessageSink.file(outputFormat, Path.of(sinkFile), sinkRotateBytes);
+            } catch (IOException ioe) {
+                logger.severe("Error: unable to open " + sinkFile + ": " + ioe.getMessage());
+                return;
+            }
+            startSubscriber(host, port, channel, cmdLine.hasOption("trace"), sink, statsSeconds,
+                            cmdLine.hasOption("sharedMemory"));
+        }
+        else if (startPublisher) {
+            String template = cmdLine.getOptionValue("generate");
+            if (template != null && count <= 0) {
+                count = CLI.DEFAULT_GENERATE_COUNT;
+            }
+            startPublisher(host, port, channel, cmdLine.getOptionValue("input"), template, count, rate, window,
+                           cmdLine.hasOption("priority"), statsSeconds);
+        }
+        else if (startReplay) {
+            startReplay(host, port, cmdLine.getOptionValue("input"), speed, window, statsSeconds);
         }
     }
 
@@ -136,39 +309,128 @@ public class Main {
      * @param host      The hostname or IP to bind to (typically just "localhost").
      * @param port      The port to listen on (must be available).
      * @param serverSpy Whether to add a server spy for more log output (gets noisy).
+     * @param capture   If not null, everything the server receives is recorded to this file.
+     * @param priorityChannels If not null, comma-separated channels whose messages are always high priority.
+     * @param aliasTtlMillis   Channel ids handed out by ALIAS are released after going unused this long.
+     * @param maxChannels      The most channels allowed, or 0 for no limit.
+     * @param maxRetainedBytes The most message data that can be queued up for subscribers.
+     * @param rateLimiter      Decides which published messages the server accepts.
+     * @param drainTimeoutMillis On shutdown, the longest to wait for pending deliveries to go out.
+     * @param configFile       If not null, a properties file of settings to apply (see ServerConfig).
+     * @param sharedMemory     Whether to let clients on this machine connect through shared memory.
      */
-    private static void startServer(String host, int port, boolean serverSpy) {
+    private static void startServer(String host, int port, boolean serverSpy, String capture,
+                                    String priorityChannels, long aliasTtlMillis, int maxChannels,
+                                    long maxRetainedBytes, RateLimiter rateLimiter, long drainTimeoutMillis,
+                                    String configFile, boolean sharedMemory) {
         logger.info("Starting up an EMS server on " + host + ":" + port);
 
         // Register all our command handlers:
-        EMSServer server = new EMSServer(host, port);
-        server.registerCommandHandler(new HaltHandler());
+        LocalEMSServer server = new LocalEMSServer(host, port);
+        HaltHandler haltHandler = new HaltHandler();
+        server.registerCommandHandler(haltHandler);
         server.registerCommandHandler(new UptimeHandler());
+        server.registerCommandHandler(new PingHandler());
+        HealthHandler healthHandler = new HealthHandler(server);
+        server.registerCommandHandler(healthHandler);
 
-        // Add a logging server spy if requested.
-        // This just output log info every time the server sends or receives anything.
-        // This is handy for debugging but gets real noisy real quick on an actual server.
-        if (serverSpy) {
-            server.addServerSpy(new EMSServerSpy() {
-                @Override
-                public void messageReceived(EMSServer server, String clientId, String rawMessage) {
-                    logger.log(Level.INFO, "Spy: {0} sent \"{1}\"", new Object[]{clientId, rawMessage});
-                }
+        // Clean up after clients that go away, and cap the channel count:
+        ChannelRegistry channelRegistry = new ChannelRegistry(server, aliasTtlMillis, maxChannels);
+        server.addServerSpy(channelRegistry);
+        CappedSubscribeHandler.install(server, channelRegistry);
+        PagedListActiveHandler.install(server, channelRegistry);
+        healthHandler.setChannelRegistry(channelRegistry);
 
-                @Override
-                public void messageSent(EMSServer server, String clientId, String rawMessage) {
-                    logger.log(Level.INFO, "Spy: sending \"{0}\" to {1}", new Object[]{rawMessage, clientId});
-                }
+        // Add a logging server spy. This just logs info every time the server sends or receives
+        // anything, which is handy for debugging but gets real noisy real quick on an actual server,
+        // so it's off unless requested (and can be turned down to a sample with CONFIG).
+        LoggingSpy loggingSpy = new LoggingSpy(serverSpy ? 1 : 0);
+        server.addServerSpy(loggingSpy);
+
+        // Record everything we receive if requested, for replaying later with --startReplay:
+        CaptureRecorder recorder = null;
+        if (capture != null) {
+            try {
+                recorder = new CaptureRecorder(Path.of(capture), channelRegistry.getChannelIds());
+                server.addServerSpy(recorder);
+                logger.info("Recording everything received to " + capture);
+            } catch (IOException ioe) {
+                logger.severe("Error: unable to create capture file " + capture + ": " + ioe.getMessage());
+                return;
+            }
+        }
 
-                @Override
-                public void clientConnected(EMSServer server, String clientId) {
+        // Deliver messages through per-subscriber queues, so high priority ones can jump ahead:
+        PriorityDispatcher dispatcher = new PriorityDispatcher(server, PriorityDispatcher.DEFAULT_MAX_HIGH_BURST,
+                                                               PriorityDispatcher.DEFAULT_MAX_QUEUED,
+                                                               maxRetainedBytes);
+        if (priorityChannels != null) {
+            for (String priorityChannel : priorityChannels.split(",")) {
+                if (!priorityChannel.isBlank()) {
+                    dispatcher.setPriorityChannel(priorityChannel.trim(), true);
                 }
+            }
+        }
+        PrioritySendHandler.install(server, dispatcher);
+        server.registerCommandHandler(new PriorityHandler(dispatcher));
+
+        // Let publishers send by compact channel id instead of by name:
+        ChannelIdSendHandler.install(server, dispatcher, channelRegistry.getChannelIds());
+        server.registerCommandHandler(new AliasHandler(channelRegistry.getChannelIds()));
 
-                @Override
-                public void clientDisconnected(EMSServer server, String clientId) {
+        // Hold publishers to their rate limits (see the --clientRate option and friends):
+        RateLimitedSendHandler.install(server, rateLimiter);
+        server.registerCommandHandler(new RateLimitHandler(rateLimiter));
+        healthHandler.setRateLimiter(rateLimiter);
+
+        // Make the tunable settings adjustable at runtime, and apply the config file if given:
+        ServerConfig config = buildConfig(dispatcher, rateLimiter, loggingSpy);
+        Path configPath = configFile == null ? null : Path.of(configFile);
+        if (configPath != null) {
+            try {
+                List<String> problems = config.load(configPath);
+                if (!problems.isEmpty()) {
+                    logger.severe("Error: invalid settings in " + configFile + ": " + String.join("; ", problems));
+                    return;
                 }
+                logger.info("Loaded settings from " + configFile);
+            } catch (IOException ioe) {
+                logger.severe("Error: unable to read config file " + configFile + ": " + ioe.getMessage());
+                return;
+            }
+        }
+        server.registerCommandHandler(new ConfigHandler(config, configPath));
+
+        // On HALT or ctrl+c, flush pending deliveries before going down (see the --drainTimeout option):
+        DrainController drainController = new DrainController(server, dispatcher, drainTimeoutMillis,
+                                                              DrainController.DEFAULT_CLOSE_TIMEOUT_MILLIS);
+        if (recorder != null) {
+            CaptureRecorder captureRecorder = recorder;
+            drainController.addFinisher(() -> {
+                server.removeServerSpy(captureRecorder);
+                captureRecorder.close();
             });
         }
+        DrainGateHandler.install(server, drainController);
+        haltHandler.setDrainController(drainController);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (!drainController.isDraining()) { // otherwise HALT already did it
+                System.out.println(drainController.drain(null));
+            }
+        }, "ems-drain"));
+
+        // Fill in server timestamps on traced messages (see MessageEnvelope):
+        TracingSendHandler.install(server);
+
+        // Emit flight recorder events for everything the server does. These cost next to
+        // nothing unless a recording is running (see the --jfr option).
+        JfrSupport.instrument(server);
+
+        // Let clients on this machine skip TCP if they want to (see the --sharedMemory option):
+        if (sharedMemory) {
+            SharedMemoryHandler.install(server);
+            logger.info("Shared memory connections are enabled.");
+        }
 
         // Start the server:
         server.startServer();
@@ -236,23 +498,512 @@ public class Main {
     }
 
     /**
-     * Starts an EMS subscriber and subscribes to the given channel on the given host and port.
-     * Any message sent to that channel will be output to the console.
+     * Runs a script of client commands, one per line in the same format that you'd type into
+     * the interactive client, from the given file (or from stdin if script is null). Blank
+     * lines and lines starting with "#" are ignored, and a "quit" line ends the script.
+     * <p>
+     *     The whole script is read up front, and then the commands are pipelined over a
+     *     single connection, with up to "window" of them awaiting a response at any one time
+     *     (see PipelinedClient). This is far quicker than sending them one at a time, which
+     *     costs a full round trip for each command. Each response is written to stdout as it
+     *     arrives, with its command number, status and time taken, followed by a summary.
+     * </p>
+     *
+     * @param host   The host to connect to.
+     * @param port   The port to connect to.
+     * @param script The script file, or null to read from stdin.
+     * @param window The maximum number of commands to keep in flight.
+     */
+    public static void runScript(String host, int port, String script, int window) {
+        List<String> commands = new ArrayList<>();
+        try (BufferedReader reader = script == null
+                ? new BufferedReader(new InputStreamReader(System.in))
+                : Files.newBufferedReader(Path.of(script))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.equalsIgnoreCase("QUIT")) {
+                    break;
+                }
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    commands.add(line);
+                }
+            }
+        } catch (IOException ioe) {
+            logger.severe("Error: unable to read script: " + ioe.getMessage());
+            return;
+        }
+
+        logger.info("Running " + commands.size() + " command(s) against \"" + host + ":" + port
+                            + "\" with up to " + window + " in flight...");
+        PipelinedClient client = new PipelinedClient(window);
+        if (!client.connect(host, port)) {
+            logger.severe("Error: unable to connect.");
+            return;
+        }
+
+        final PrintWriter out = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 64 * 1024));
+        final LatencyHistogram responseTimes = new LatencyHistogram();
+        final int[] errors = new int[1];
+        long startTime = System.nanoTime();
+        int received = client.run(commands, (index, command, response, elapsedNanos) -> {
+            responseTimes.record(elapsedNanos);
+            if (response.isError()) {
+                errors[0]++;
+            }
+            out.println("#" + (index + 1) + " "
+                                + (response.isError() ? EMSServer.RESPONSE_ERR : EMSServer.RESPONSE_OK)
+                                + " " + LatencyHistogram.formatMillis(elapsedNanos) + " " + command);
+            String msg = response.getMessage();
+            if (msg != null && !msg.isBlank()) {
+                for (String line : msg.split("\n")) {
+                    out.println("    " + line);
+                }
+            }
+        });
+        long elapsedNanos = System.nanoTime() - startTime;
+        out.flush();
+        client.disconnect();
+
+        logger.info(String.format("Ran %d of %d command(s) in %s (%.0f commands/s): %d ok, %d failed, %d not sent.",
+                                  received, commands.size(), LatencyHistogram.formatMillis(elapsedNanos),
+                                  received / Math.max(1e-9, elapsedNanos / 1_000_000_000.0),
+                                  received - errors[0], errors[0], commands.size() - received));
+        logger.info("Response times: " + responseTimes);
+    }
+
+    /**
+     * Starts publishing messages as fast as we can (or at the given rate) to the channels
+     * selected by the given spec, which works the same way as for startSubscriber(): patterns
+     * are matched against the server's active channels when we start. Messages come from the
+     * given input file, or from stdin if that's null, one per line. Alternatively, if a template
+     * is given, we generate messages from it instead, replacing "{n}" with a sequence number.
+     * Each message is sent to every selected channel.
+     * <p>
+     *     Messages are pipelined over a single connection (see PipelinedClient), so we don't
+     *     wait for the server to acknowledge each one before sending the next. EMS doesn't
+     *     allow the ":" character in messages, so we remove it, as Subscriber.broadcast() does.
+     *     Blank lines are skipped. When we're done (or interrupted), we report how many messages
+     *     we published, how fast, how many the server rejected, and how long acknowledgements took.
+     * </p>
+     *
+     * @param host         The host to connect to.
+     * @param port         The port to connect to.
+     * @param channelSpec  The channels to publish to: names and/or patterns, comma-separated.
+     * @param inputFile    A file to read messages from, or null for stdin (ignored if template is given).
+     * @param template     A template for generated messages, or null to read them instead.
+     * @param count        Stop after this many messages (lines), or 0 for no limit.
+     * @param rate         The target publish rate in messages per second, or 0 for as fast as possible.
+     * @param window       The maximum number of messages awaiting acknowledgement.
+     * @param highPriority Whether to send messages as high priority (with SEND_PRIORITY instead of SEND).
+     * @param statsSeconds If positive, log our progress this often.
+     */
+    public static void startPublisher(String host, int port, String channelSpec, String inputFile, String template,
+                                      long count, double rate, int window, boolean highPriority,
+                                      int statsSeconds) {
+        logger.info("Starting up an EMS publisher connecting to \"" + host + ":" + port + "\"...");
+        final PipelinedClient client = new PipelinedClient(window);
+        if (!client.connect(host, port)) {
+            logger.severe("Error: unable to connect.");
+            return;
+        }
+        ChannelSelector selector = ChannelSelector.parse(channelSpec);
+        List<String> activeChannels = null;
+        if (selector.hasPatterns()) {
+            activeChannels = listActiveChannels(client);
+            if (activeChannels == null) {
+                client.disconnect();
+                return;
+            }
+        }
+        List<String> channels = selector.select(activeChannels);
+        if (channels.isEmpty()) {
+            logger.severe("Error: no active channels match \"" + selector + "\".");
+            client.disconnect();
+            return;
+        }
+        logger.info("Publishing to: " + String.join(", ", channels)
+                            + (rate > 0 ? String.format(" at %.0f msg/s", rate) : " as fast as possible")
+                            + (highPriority ? ", high priority" : ""));
+        List<String> sendPrefixes = sendPrefixes(client, channels, highPriority);
+
+        final LatencyHistogram ackTimes = new LatencyHistogram();
+        final AtomicLong acknowledged = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        final AtomicBoolean finished = new AtomicBoolean(false);
+        final long startTime = System.nanoTime();
+        client.start((index, command, response, elapsedNanos) -> {
+            ackTimes.record(elapsedNanos);
+            acknowledged.incrementAndGet();
+            if (response.isError() && failed.incrementAndGet() <= 10) {
+                logger.warning("Server rejected \"" + command + "\": " + response.getMessage());
+            }
+        });
+
+        ScheduledExecutorService statsReporter = startPublishReporter(acknowledged, failed, statsSeconds);
+
+        // Report what we managed even if we're interrupted. Logging may already be shut down
+        // by the time our hook runs, so this goes straight to stdout:
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (!finished.get()) {
+                System.out.println(publishSummary(client.getSubmittedCount(), acknowledged.get(), failed.get(),
+                                                  System.nanoTime() - startTime, ackTimes));
+            }
+        }, "ems-publish-report"));
+
+        BufferedReader reader = null;
+        try {
+            if (template == null) {
+                reader = inputFile == null
+                        ? new BufferedReader(new InputStreamReader(System.in))
+                        : Files.newBufferedReader(Path.of(inputFile));
+            }
+            long lines = 0;
+            long published = 0;
+            publishing:
+            while (count <= 0 || lines < count) {
+                String message;
+                if (template != null) {
+                    message = template.replace("{n}", Long.toString(lines));
+                }
+                else {
+                    if (!reader.ready()) {
+                        // Don't sit on what we've got while we wait for more:
+                        client.flush();
+                    }
+                    message = reader.readLine();
+                    if (message == null) {
+                        break;
+                    }
+                }
+                message = message.replace(EMSServer.DELIMITER, "");
+                if (message.isBlank()) {
+                    continue;
+                }
+                lines++;
+                for (String sendPrefix : sendPrefixes) {
+                    if (rate > 0) {
+                        long due = startTime + (long) (published * 1_000_000_000.0 / rate);
+                        long wait = due - System.nanoTime();
+                        if (wait > 0) {
+                            client.flush();
+                            LockSupport.parkNanos(wait);
+                        }
+                    }
+                    if (!client.submit(sendPrefix + message)) {
+                        logger.severe("Error: lost connection to the server.");
+                        break publishing;
+                    }
+                    published++;
+                }
+            }
+        } catch (IOException ioe) {
+            logger.severe("Error: unable to read input: " + ioe.getMessage());
+        } finally {
+            if (reader != null) {
+                closeQuietly(reader);
+            }
+        }
+
+        client.finish();
+        long elapsedNanos = System.nanoTime() - startTime;
+        client.disconnect();
+        finished.set(true);
+        if (statsReporter != null) {
+            statsReporter.shutdownNow();
+        }
+        logger.info(publishSummary(client.getSubmittedCount(), acknowledged.get(), failed.get(), elapsedNanos,
+                                   ackTimes));
+    }
+
+    /**
+     * Replays a capture file written by the server's --capture option into the server at the
+     * given host and port. Only the SEND and SEND_PRIORITY commands are replayed (the recorder
+     * writes sends by channel id as these, with the channel name filled in); everything
+     * else in the capture (subscriptions and so on) belonged to the clients that were connected
+     * at the time, and is skipped. All messages go over one pipelined connection (see PipelinedClient).
+     * <p>
+     *     At speed 1, messages are sent with the same spacing as when they were captured,
+     *     starting from the first message. At speed 2 they're sent twice as fast, and so on.
+     *     At speed 0 (or below), they're sent as fast as possible. If we can't keep up with the
+     *     captured timing, we send the late messages right away rather than skip them. When
+     *     we're done (or interrupted), we report the same statistics as startPublisher().
+     * </p>
+     *
+     * @param host         The host to connect to.
+     * @param port         The port to connect to.
+     * @param captureFile  The capture file to replay.
+     * @param speed        How many times faster than real time to replay, or 0 for as fast as possible.
+     * @param window       The maximum number of messages awaiting acknowledgement.
+     * @param statsSeconds If positive, log our progress this often.
+     */
+    public static void startReplay(String host, int port, String captureFile, double speed, int window,
+                                   int statsSeconds) {
+        logger.info("Starting up an EMS replay connecting to \"" + host + ":" + port + "\"...");
+        CaptureReader reader;
+        try {
+            reader = new CaptureReader(Path.of(captureFile));
+        } catch (IOException ioe) {
+            logger.severe("Error: unable to read " + captureFile + ": " + ioe.getMessage());
+            return;
+        }
+        final PipelinedClient client = new PipelinedClient(window);
+        if (!client.connect(host, port)) {
+            logger.severe("Error: unable to connect.");
+            closeQuietly(reader);
+            return;
+        }
+        logger.info("Replaying " + captureFile + " (captured " + new Date(reader.getStartMillis()) + ") "
+                            + (speed > 0 ? "at " + speed + "x speed" : "as fast as possible"));
+
+        final LatencyHistogram ackTimes = new LatencyHistogram();
+        final AtomicLong acknowledged = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        final AtomicBoolean finished = new AtomicBoolean(false);
+        final long startTime = System.nanoTime();
+        client.start((index, command, response, elapsedNanos) -> {
+            ackTimes.record(elapsedNanos);
+            acknowledged.incrementAndGet();
+            if (response.isError() && failed.incrementAndGet() <= 10) {
+                logger.warning("Server rejected \"" + command + "\": " + response.getMessage());
+            }
+        });
+        ScheduledExecutorService statsReporter = startPublishReporter(acknowledged, failed, statsSeconds);
+
+        // Logging may already be shut down by the time our hook runs, so this goes straight to stdout:
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (!finished.get()) {
+                System.out.println(publishSummary(client.getSubmittedCount(), acknowledged.get(), failed.get(),
+                                                  System.nanoTime() - startTime, ackTimes));
+            }
+        }, "ems-replay-report"));
+
+        String sendPrefix = "SEND" + EMSServer.DELIMITER;
+        String priorityPrefix = PrioritySendHandler.SEND_PRIORITY + EMSServer.DELIMITER;
+        long skipped = 0;
+        long firstOffset = -1;
+        try {
+            CaptureRecord record;
+            while ((record = reader.next()) != null) {
+                String message = record.getMessage();
+                if (!message.regionMatches(true, 0, sendPrefix, 0, sendPrefix.length())
+                        && !message.regionMatches(true, 0, priorityPrefix, 0, priorityPrefix.length())) {
+                    skipped++;
+                    continue;
+                }
+                if (speed > 0) {
+                    if (firstOffset < 0) {
+                        firstOffset = record.getOffsetNanos();
+                    }
+                    long due = startTime + (long) ((record.getOffsetNanos() - firstOffset) / speed);
+                    long wait = due - System.nanoTime();
+                    if (wait > 0) {
+                        client.flush();
+                        LockSupport.parkNanos(wait);
+                    }
+                }
+                if (!client.submit(message)) {
+                    logger.severe("Error: lost connection to the server.");
+                    break;
+                }
+            }
+        } catch (IOException ioe) {
+            logger.severe("Error: unable to read " + captureFile + ": " + ioe.getMessage());
+        } finally {
+            closeQuietly(reader);
+        }
+
+        client.finish();
+        long elapsedNanos = System.nanoTime() - startTime;
+        client.disconnect();
+        finished.set(true);
+        if (statsReporter != null) {
+            statsReporter.shutdownNow();
+        }
+        if (skipped > 0) {
+            logger.info("Skipped " + skipped + " captured command(s) other than SEND and SEND_PRIORITY.");
+        }
+        logger.info(publishSummary(client.getSubmittedCount(), acknowledged.get(), failed.get(), elapsedNanos,
+                                   ackTimes));
+    }
+
+    /**
+     * If statsSeconds is positive, starts logging the publish rate that often, for
+     * startPublisher() and startReplay().
+     *
+     * @return The reporter, which should be shut down when we're done, or null if there isn't one.
+     */
+    private static ScheduledExecutorService startPublishReporter(AtomicLong acknowledged, AtomicLong failed,
+                                                                 int statsSeconds) {
+        if (statsSeconds <= 0) {
+            return null;
+        }
+        ScheduledExecutorService statsReporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ems-stats");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final long[] last = {System.nanoTime(), 0};
+        statsReporter.scheduleAtFixedRate(() -> {
+            long now = System.nanoTime();
+            long acked = acknowledged.get();
+            logger.info(String.format("Published %d msg/s; %d messages in total, %d failed",
+                                      Math.round((acked - last[1]) / Math.max(1e-3, (now - last[0]) / 1e9)),
+                                      acked, failed.get()));
+            last[0] = now;
+            last[1] = acked;
+        }, statsSeconds, statsSeconds, TimeUnit.SECONDS);
+        return statsReporter;
+    }
+
+    /**
+     * Gathers up the server settings that can be changed while it's running, for the
+     * --config file and the CONFIG command.
+     */
+    private static ServerConfig buildConfig(PriorityDispatcher dispatcher, RateLimiter rateLimiter,
+                                            LoggingSpy loggingSpy) {
+        ServerConfig config = new ServerConfig();
+        config.addInt("delivery_threads", 1, dispatcher::getDeliveryThreads, dispatcher::setDeliveryThreads);
+        config.addInt("delivery_batch", 1, dispatcher::getDrainBatch, dispatcher::setDrainBatch);
+        config.addInt("max_queued", 1, dispatcher::getMaxQueued, dispatcher::setMaxQueued);
+        config.addInt("max_high_burst", 1, dispatcher::getMaxHighBurst, dispatcher::setMaxHighBurst);
+        config.addInt("max_retained_mb", 1, () -> (int) (dispatcher.getMaxRetainedBytes() / (1024 * 1024)),
+                      mb -> dispatcher.setMaxRetainedBytes(mb * 1024L * 1024));
+        config.addDouble("client_rate", 0, Double.MAX_VALUE, rateLimiter::getClientRate,
+                         rate -> rateLimiter.setClientRate(rate, rateLimiter.getClientBurst()));
+        config.addDouble("client_burst", 0, Double.MAX_VALUE, rateLimiter::getClientBurst,
+                         burst -> rateLimiter.setClientRate(rateLimiter.getClientRate(), burst));
+        config.addDouble("global_rate", 0, Double.MAX_VALUE, rateLimiter::getGlobalRate, rateLimiter::setGlobalRate);
+        config.addDouble("global_byte_rate", 0, Double.MAX_VALUE, rateLimiter::getGlobalByteRate,
+                         rateLimiter::setGlobalByteRate);
+        config.addBoolean("throttle", rateLimiter::isDelayMode, rateLimiter::setDelayMode);
+        config.addDouble("spy_sample_rate", 0, 1, loggingSpy::getSampleRate, loggingSpy::setSampleRate);
+        return config;
+    }
+
+    /**
+     * Returns the value of the given rate limiting option, or 0 (meaning no limit) if it wasn't given.
+     */
+    private static double parseRate(CommandLine cmdLine, String option) {
+        return cmdLine.hasOption(option) ? Double.parseDouble(cmdLine.getOptionValue(option)) : 0;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+            // Nothing more we can do about it.
+        }
+    }
+
+    /**
+     * Sums up a publishing run for startPublisher() and startReplay().
+     */
+    private static String publishSummary(long submitted, long acknowledged, long failed, long elapsedNanos,
+                                         LatencyHistogram ackTimes) {
+        return String.format("Published %d message(s) in %s (%.0f msg/s): %d ok, %d failed, %d unacknowledged."
+                                     + "%nAcknowledgement times: %s",
+                             acknowledged, LatencyHistogram.formatMillis(elapsedNanos),
+                             acknowledged / Math.max(1e-9, elapsedNanos / 1_000_000_000.0),
+                             acknowledged - failed, failed, submitted - acknowledged, ackTimes);
+    }
+
+    /**
+     * Works out how to start the command that publishes to each of the given channels. If the
+     * server hands out channel ids (see the ALIAS command), we publish by id, which saves the
+     * server some work for every message. Otherwise we publish by name as usual.
+     *
+     * @return One prefix per channel, such as "SENDID:3:" or "SEND:MYCHANNEL:".
+     */
+    private static List<String> sendPrefixes(EMSClient client, List<String> channels, boolean highPriority) {
+        List<String> prefixes = new ArrayList<>();
+        for (String channel : channels) {
+            EMSServerResponse response = client.sendCommand("ALIAS" + EMSServer.DELIMITER + channel);
+            String id = response == null || response.isError() ? "" : response.getMessage().trim();
+            if (!id.isEmpty() && id.chars().allMatch(Character::isDigit)) {
+                prefixes.add((highPriority ? ChannelIdSendHandler.SENDID_PRIORITY : ChannelIdSendHandler.SENDID)
+                                     + EMSServer.DELIMITER + id + EMSServer.DELIMITER);
+            }
+            else {
+                prefixes.add((highPriority ? PrioritySendHandler.SEND_PRIORITY : "SEND")
+                                     + EMSServer.DELIMITER + channel + EMSServer.DELIMITER);
+            }
+        }
+        return prefixes;
+    }
+
+    /**
+     * Asks the server for its list of active channels.
+     *
+     * @return The channel names (possibly empty), or null if the server wouldn't tell us.
+     */
+    private static List<String> listActiveChannels(EMSClient client) {
+        EMSServerResponse response = client.sendCommand("LIST_ACTIVE");
+        if (response == null || response.isError()) {
+            logger.severe("Error: unable to list active channels.");
+            return null;
+        }
+        List<String> channels = new ArrayList<>();
+        String responseMsg = response.getMessage().trim();
+        if (!responseMsg.isBlank()) {
+            Collections.addAll(channels, responseMsg.split("\n"));
+        }
+        return channels;
+    }
+
+    /**
+     * Starts an EMS subscriber on the given host and port, and subscribes to the channels
+     * selected by the given spec: a comma-separated list of channel names and/or glob patterns
+     * (see ChannelSelector). Everything is done over a single connection. Any message sent to
+     * those channels is written to the given sink, which may be the console or a file
+     * (see MessageSink). If more than one channel could be selected, each line is prefixed
+     * with its channel, and a count of messages per channel is shown on request ("/stats")
+     * and at exit. If statsSeconds is positive, the receive rate is logged that often.
+     * <p>
+     *     Patterns can only match channels that already exist, so they're matched against the
+     *     server's active channels when we start, when we reconnect, and whenever the user types
+     *     "/rescan". We don't rescan on a timer because EMS subscribers can miss messages that
+     *     arrive while they're busy sending a command.
+     * </p>
+     * <p>
+     *     If the connection is lost, we keep trying to reconnect (with jittered exponential
+     *     backoff) and resubscribe until the user types "quit". Anything typed while we are
+     *     disconnected is held in a bounded buffer and sent once we're back.
+     * </p>
+     * <p>
+     *     If trace is set, the messages we send are wrapped in a MessageEnvelope. Latencies
+     *     for any traced messages we receive are shown on request ("/latency") and at exit.
+     * </p>
+     * <p>
+     *     If sharedMemory is set and the server is on this machine, we ask it for a shared
+     *     memory connection (see LocalSubscriber), and fall back to TCP if it says no.
+     * </p>
      */
-    public static void startSubscriber(String host, int port, String channel) {
+    public static void startSubscriber(String host, int port, String channelSpec, boolean trace,
+                                       MessageSink sink, int statsSeconds, boolean sharedMemory) {
         logger.info("Starting up an EMS subscriber connecting to \"" + host + ":" + port + "\"...");
 
-        Subscriber subscriber = new Subscriber();
+        final LocalSubscriber subscriber = new LocalSubscriber();
+        subscriber.setSharedMemoryEnabled(sharedMemory);
+        final ChannelSelector selector = ChannelSelector.parse(channelSpec);
+        final Set<String> channels = new ConcurrentSkipListSet<>(String.CASE_INSENSITIVE_ORDER);
+        final PublishBuffer publishBuffer = new PublishBuffer();
+        final AtomicBoolean quitting = new AtomicBoolean(false);
+        final AtomicBoolean reconnecting = new AtomicBoolean(false);
+        final LatencyTracker latency = new LatencyTracker();
+        final ReceiveStats stats = new ReceiveStats();
         if (!subscriber.connect(host, port)) {
             logger.severe("Error: unable to connect.");
+            sink.close();
             return;
         }
-        logger.info("Subscribing to channel \"" + channel + "\"... ");
-        if (!subscriber.subscribe(channel)) {
-            logger.severe("Error: unable to subscribe.");
+        if (!subscribeSelected(subscriber, selector, channels)) {
+            subscriber.disconnect();
+            sink.close();
             return;
         }
-        logger.info("You are now subscribed to channel: " + channel);
+        sink.setChannelPrefix(selector.isMultiChannel());
         subscriber.addSubscriberEventListener(new SubscriberListener() {
             @Override
             public void connected(SubscriberEvent event) {
@@ -260,18 +1011,68 @@ public class Main {
 
             @Override
             public void disconnected(SubscriberEvent event) {
-                logger.info("Disconnected - terminating.");
-                System.exit(0);
+                if (quitting.get() || !reconnecting.compareAndSet(false, true)) {
+                    return;
+                }
+                logger.warning("Connection lost - will try to reconnect. Type \"quit\" to give up.");
+                Thread thread = new Thread(() -> {
+                    do {
+                        try {
+                            reconnectSubscriber(subscriber, host, port, selector, channels, publishBuffer, quitting);
+                        } finally {
+                            reconnecting.set(false);
+                        }
+                        // If we lost the connection again just before clearing the flag, that event was ignored:
+                    } while (!quitting.get() && !subscriber.isConnected() && reconnecting.compareAndSet(false, true));
+                }, "ems-reconnect");
+                thread.start();
             }
 
             @Override
             public void channelMessageReceived(SubscriberEvent event, String message) {
-                logger.info(message);
+                MessageEnvelope envelope = MessageEnvelope.parse(message);
+                if (envelope != null) {
+                    latency.record(event.getChannel(), envelope, MessageEnvelope.nowMicros());
+                    message = envelope.getPayload();
+                }
+                stats.record(event.getChannel(), message);
+                sink.write(event.getChannel(), message);
             }
 
         });
         logger.info("Listening for messages. Type \"quit\" to stop listening.");
-        logger.info("Anything else typed here will be broadcast to that channel.");
+        logger.info(selector.isMultiChannel()
+                            ? "Anything else typed here will be broadcast to all of those channels."
+                            : "Anything else typed here will be broadcast to that channel.");
+        logger.info("Type \"/latency\" to show latency stats for traced messages"
+                            + (trace ? " (the messages you send are traced)." : "."));
+        if (selector.isMultiChannel()) {
+            logger.info("Type \"/stats\" to show message counts per channel.");
+        }
+        if (selector.hasPatterns()) {
+            logger.info("Type \"/rescan\" to subscribe to any new channels that match.");
+        }
+
+        if (statsSeconds > 0) {
+            ScheduledExecutorService statsReporter = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "ems-stats");
+                thread.setDaemon(true);
+                return thread;
+            });
+            statsReporter.scheduleAtFixedRate(() -> logger.info(stats.report()),
+                                              statsSeconds, statsSeconds, TimeUnit.SECONDS);
+        }
+
+        // Logging may already be shut down by the time our hook runs, so this goes straight to stdout:
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            sink.close();
+            if (selector.isMultiChannel()) {
+                System.out.println("Messages received per channel:\n" + stats.channelSummary());
+            }
+            if (!latency.isEmpty()) {
+                System.out.println("Message latency:\n" + latency.report());
+            }
+        }, "ems-latency-report"));
         try {
             // Extremely basic command line parser follows!
             BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
@@ -281,22 +1082,135 @@ public class Main {
                 if (command != null && !command.trim().isEmpty()) {
                     command = command.trim();
                     if (command.equalsIgnoreCase("QUIT")) {
-                        subscriber.disconnect();
+                        quitting.set(true);
+                        synchronized (subscriber) {
+                            if (subscriber.isConnected()) {
+                                subscriber.disconnect();
+                            }
+                        }
+                        if (publishBuffer.size() > 0) {
+                            logger.warning("Discarding " + publishBuffer.size() + " message(s) that were never sent.");
+                        }
+                        sink.close();
                         return;
                     }
-                    if (!subscriber.broadcast(channel, command)) {
-                        logger.severe("Error: unable to send. Disconnecting.");
-                        subscriber.disconnect();
-                        return;
+                    if (command.equalsIgnoreCase("/latency")) {
+                        logger.info("Message latency:\n" + latency.report());
+                        continue;
+                    }
+                    if (command.equalsIgnoreCase("/stats")) {
+                        logger.info(stats.report() + "\n" + stats.channelSummary());
+                        continue;
+                    }
+                    if (command.equalsIgnoreCase("/rescan")) {
+                        synchronized (subscriber) {
+                            if (subscriber.isConnected()) {
+                                subscribeSelected(subscriber, selector, channels);
+                            }
+                        }
+                        continue;
+                    }
+                    String outgoing = trace ? MessageEnvelope.wrap(command) : command;
+                    synchronized (subscriber) {
+                        for (String channel : channels) {
+                            if (!subscriber.isConnected() || !subscriber.broadcast(channel, outgoing)) {
+                                if (!publishBuffer.offer(channel, outgoing)) {
+                                    logger.warning("Too many unsent messages; discarded the oldest one.");
+                                }
+                                logger.warning("Not connected - message will be sent when we reconnect.");
+                            }
+                        }
                     }
                 }
-            } while (command != null && !command.equalsIgnoreCase("QUIT") && subscriber.isConnected());
+            } while (command != null && !command.equalsIgnoreCase("QUIT"));
         } catch (IOException ioe) {
             logger.severe("Error: caught exception: " + ioe.getMessage());
+            quitting.set(true);
             subscriber.disconnect();
         }
     }
 
+    /**
+     * Subscribes to every channel picked out by the given selector that we aren't already
+     * subscribed to, adding each one to the given set as it succeeds. If the selector has
+     * any patterns, we ask the server for its list of active channels to match them against.
+     *
+     * @return false if something went wrong.
+     */
+    private static boolean subscribeSelected(Subscriber subscriber, ChannelSelector selector, Set<String> channels) {
+        List<String> activeChannels = null;
+        if (selector.hasPatterns()) {
+            activeChannels = listActiveChannels(subscriber);
+            if (activeChannels == null) {
+                return false;
+            }
+        }
+        for (String channel : selector.select(activeChannels)) {
+            if (channels.contains(channel)) {
+                continue;
+            }
+            logger.info("Subscribing to channel \"" + channel + "\"... ");
+            if (!subscriber.subscribe(channel)) {
+                logger.severe("Error: unable to subscribe.");
+                return false;
+            }
+            channels.add(channel);
+            logger.info("You are now subscribed to channel: " + channel);
+        }
+        if (channels.isEmpty()) {
+            logger.warning("No active channels match \"" + selector + "\" yet.");
+        }
+        return true;
+    }
+
+    /**
+     * Invoked on a separate thread when a subscriber loses its connection. Keeps trying
+     * to reconnect and resubscribe to the given channels until it works or until the
+     * user quits, and then sends anything that was buffered in the meantime. If the
+     * selector has patterns, we also look for any new channels that match. If we lose
+     * the connection again while doing all that, we go back to trying to reconnect.
+     */
+    private static void reconnectSubscriber(Subscriber subscriber, String host, int port, ChannelSelector selector,
+                                            Set<String> channels, PublishBuffer publishBuffer,
+                                            AtomicBoolean quitting) {
+        Backoff backoff = new Backoff();
+        for (int attempt = 0; !quitting.get(); attempt++) {
+            long delay = backoff.delayMillis(attempt);
+            logger.info(String.format("Reconnecting in %.1fs (attempt %d)...", delay / 1000.0, attempt + 1));
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            synchronized (subscriber) {
+                if (quitting.get()) {
+                    return;
+                }
+                if (subscriber.isConnected() || subscriber.connect(host, port, channels.toArray(new String[0]))) {
+                    logger.info("Reconnected. You are subscribed to: " + String.join(", ", channels));
+                    if (selector.hasPatterns()) {
+                        subscribeSelected(subscriber, selector, channels);
+                    }
+                    List<PublishBuffer.Entry> entries = publishBuffer.drain();
+                    for (int i = 0; i < entries.size(); i++) {
+                        if (!subscriber.broadcast(entries.get(i).getChannel(), entries.get(i).getMessage())) {
+                            for (int j = i; j < entries.size(); j++) {
+                                publishBuffer.offer(entries.get(j).getChannel(), entries.get(j).getMessage());
+                            }
+                            break;
+                        }
+                    }
+                    if (subscriber.isConnected()) {
+                        return;
+                    }
+                    // Our disconnected listener ignores this, because we're still reconnecting:
+                    logger.warning("Lost the connection again while catching up; will keep trying.");
+                }
+            }
+        }
+    }
+
     /**
      * Logging can use the EMS built-in configuration, or you can supply your own logging properties file.
      * <ol>
@@ -329,4 +1243,52 @@ public class Main {
             System.out.println("WARN: Unable to load log configuration: " + ioe.getMessage());
         }
     }
+
+    /**
+     * Logs what the server sends and receives. To keep the noise (and the cost) down on a
+     * busy server, it can log just a random sample: a sample rate of 0.01 logs about one
+     * message in a hundred, 1 logs everything, and 0 logs nothing.
+     */
+    private static final class LoggingSpy implements EMSServerSpy {
+        private volatile double sampleRate;
+
+        private LoggingSpy(double sampleRate) {
+            this.sampleRate = sampleRate;
+        }
+
+        double getSampleRate() {
+            return sampleRate;
+        }
+
+        void setSampleRate(double sampleRate) {
+            this.sampleRate = Math.max(0, Math.min(1, sampleRate));
+        }
+
+        private boolean sampled() {
+            double rate = sampleRate;
+            return rate >= 1 || (rate > 0 && ThreadLocalRandom.current().nextDouble() < rate);
+        }
+
+        @Override
+        public void messageReceived(EMSServer server, String clientId, String rawMessage) {
+            if (sampled()) {
+                logger.log(Level.INFO, "Spy: {0} sent \"{1}\"", new Object[]{clientId, rawMessage});
+            }
+        }
+
+        @Override
+        public void messageSent(EMSServer server, String clientId, String rawMessage) {
+            if (sampled()) {
+                logger.log(Level.INFO, "Spy: sending \"{0}\" to {1}", new Object[]{rawMessage, clientId});
+            }
+        }
+
+        @Override
+        public void clientConnected(EMSServer server, String clientId) {
+        }
+
+        @Override
+        public void clientDisconnected(EMSServer server, String clientId) {
+        }
+    }
 }
@@ -0,0 +1,49 @@
+package ca.corbett.ems.app.admission;
+
+import ca.corbett.ems.app.delivery.PrioritySendHandler;
+import ca.corbett.ems.app.handlers.DelegatingCommandHandler;
+import ca.corbett.ems.handlers.AbstractCommandHandler;
+import ca.corbett.ems.server.EMSServer;
+
+/**
+ * Wraps one of the server's publishing handlers (SEND and friends), and checks every message
+ * with a RateLimiter before passing it along. A message that's over a limit gets an error
+ * response and goes nowhere - unless the limiter is in delay mode (--throttle), in which case
+ * this handler holds it up, on the publisher's own thread, until it fits, and then delivers it
+ * as usual. Even in delay mode, a message that would have to wait longer than the limiter's
+ * maximum delay is rejected.
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public class RateLimitedSendHandler extends DelegatingCommandHandler {
+
+    private final RateLimiter limiter;
+
+    public RateLimitedSendHandler(AbstractCommandHandler delegate, RateLimiter limiter) {
+        super(delegate);
+        this.limiter = limiter;
+    }
+
+    /**
+     * Wraps all of the publishing handlers on the given server (whichever it has) with
+     * RateLimitedSendHandlers, and adds the limiter as a server spy. Do this before
+     * TracingSendHandler.install(), so traced messages are stamped as received before
+     * they're held up.
+     *
+     * @param server  The server to install on.
+     * @param limiter Decides which messages get through.
+     */
+    public static void install(EMSServer server, RateLimiter limiter) {
+        wrap(server, PrioritySendHandler.PUBLISH_COMMANDS, send -> new RateLimitedSendHandler(send, limiter));
+        server.addServerSpy(limiter);
+    }
+
+    @Override
+    public String handle(EMSServer server, String clientId, String commandLine) {
+        if (!limiter.admit(clientId, commandLine == null ? 0 : commandLine.length())) {
+            return createErrorResponse("Rate limit exceeded");
+        }
+        return delegate.handle(server, clientId, commandLine);
+    }
+}
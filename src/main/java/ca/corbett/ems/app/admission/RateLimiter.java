@@ -0,0 +1,256 @@
+package ca.corbett.ems.app.admission;
+
+import ca.corbett.ems.server.EMSServer;
+import ca.corbett.ems.server.EMSServerSpy;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Decides whether the server should accept each message that a client publishes. There are
+ * three limits, any of which can be turned off by setting it to 0: a token bucket per client,
+ * limiting how many messages per second each client can publish (with some allowance for
+ * bursts), and two global buckets limiting how many messages and how many bytes per second
+ * all clients together can publish.
+ * <p>
+ *     A message that's over a limit is either rejected straight away, or (if delay mode is on)
+ *     held up until it fits, which slows the publisher down without losing anything. Each
+ *     client's commands are handled on that client's own thread, so holding one client up
+ *     doesn't affect anybody else. Even in delay mode, a message that would have to wait
+ *     longer than the maximum delay is rejected.
+ * </p>
+ * <p>
+ *     Every setting can be changed while the server is running (see RateLimitHandler).
+ *     Add the limiter to the server with RateLimitedSendHandler.install(), which also
+ *     registers it as a server spy so that it forgets about clients when they disconnect.
+ * </p>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public class RateLimiter implements EMSServerSpy {
+
+    /**
+     * If not specified, a message is held up for at most this long in delay mode.
+     */
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 1000;
+
+    private final Map<String, TokenBucket> clientBuckets = new ConcurrentHashMap<>();
+    private final TokenBucket globalMessages;
+    private final TokenBucket globalBytes;
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder delayed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private volatile double clientRate;
+    private volatile double clientBurst;
+    private volatile double globalRate;
+    private volatile double globalByteRate;
+    private volatile boolean delayMode;
+    private volatile long maxDelayMillis = DEFAULT_MAX_DELAY_MILLIS;
+
+    /**
+     * Creates a RateLimiter.
+     *
+     * @param clientRate     Messages per second per client, or 0 for no limit.
+     * @param clientBurst    How many messages a client can send in a burst, or 0 for one second's worth.
+     * @param globalRate     Messages per second across all clients, or 0 for no limit.
+     * @param globalByteRate Bytes per second across all clients, or 0 for no limit.
+     * @param delayMode      Whether to hold up messages that are over a limit, rather than reject them.
+     */
+    public RateLimiter(double clientRate, double clientBurst, double globalRate, double globalByteRate,
+                       boolean delayMode) {
+        this.clientRate = Math.max(0, clientRate);
+        this.clientBurst = Math.max(0, clientBurst);
+        this.globalRate = Math.max(0, globalRate);
+        this.globalByteRate = Math.max(0, globalByteRate);
+        this.delayMode = delayMode;
+        globalMessages = new TokenBucket(this.globalRate, this.globalRate);
+        globalBytes = new TokenBucket(this.globalByteRate, this.globalByteRate);
+    }
+
+    /**
+     * Checks the given message against every limit, and waits first if it's over a limit
+     * and we're in delay mode.
+     *
+     * @param clientId The client that's publishing.
+     * @param bytes    The size of the message.
+     * @return true to go ahead, or false if the message should be rejected.
+     */
+    public boolean admit(String clientId, int bytes) {
+        if (clientRate <= 0 && globalRate <= 0 && globalByteRate <= 0) {
+            admitted.increment();
+            return true;
+        }
+        long maxWait = delayMode ? TimeUnit.MILLISECONDS.toNanos(maxDelayMillis) : 0;
+        TokenBucket client = clientRate > 0 ? clientBuckets.computeIfAbsent(clientId, id -> newClientBucket()) : null;
+
+        long clientWait = client == null ? 0 : client.reserve(1, maxWait);
+        if (clientWait < 0) {
+            rejected.increment();
+            return false;
+        }
+        long messageWait = globalMessages.reserve(1, maxWait);
+        if (messageWait < 0) {
+            refund(client, null);
+            rejected.increment();
+            return false;
+        }
+        long byteWait = globalBytes.reserve(bytes, maxWait);
+        if (byteWait < 0) {
+            refund(client, globalMessages);
+            rejected.increment();
+            return false;
+        }
+
+        long wait = Math.max(clientWait, Math.max(messageWait, byteWait));
+        if (wait > 0) {
+            delayed.increment();
+            LockSupport.parkNanos(wait);
+        }
+        admitted.increment();
+        return true;
+    }
+
+    /**
+     * Changes the per-client limit. This applies to existing clients straight away.
+     *
+     * @param rate  Messages per second per client, or 0 for no limit.
+     * @param burst How many messages a client can send in a burst, or 0 for one second's worth.
+     */
+    public void setClientRate(double rate, double burst) {
+        clientRate = Math.max(0, rate);
+        clientBurst = Math.max(0, burst);
+        for (TokenBucket bucket : clientBuckets.values()) {
+            bucket.setRate(clientRate, effectiveClientBurst());
+        }
+    }
+
+    /**
+     * Changes the global message limit.
+     *
+     * @param rate Messages per second across all clients, or 0 for no limit.
+     */
+    public void setGlobalRate(double rate) {
+        globalRate = Math.max(0, rate);
+        globalMessages.setRate(globalRate, globalRate);
+    }
+
+    /**
+     * Changes the global byte limit.
+     *
+     * @param rate Bytes per second across all clients, or 0 for no limit.
+     */
+    public void setGlobalByteRate(double rate) {
+        globalByteRate = Math.max(0, rate);
+        globalBytes.setRate(globalByteRate, globalByteRate);
+    }
+
+    /**
+     * Chooses between holding up messages that are over a limit and rejecting them.
+     *
+     * @param delayMode true to hold them up, false to reject them.
+     */
+    public void setDelayMode(boolean delayMode) {
+        this.delayMode = delayMode;
+    }
+
+    /**
+     * Changes the longest a message can be held up in delay mode.
+     *
+     * @param maxDelayMillis The maximum delay, in milliseconds.
+     */
+    public void setMaxDelayMillis(long maxDelayMillis) {
+        this.maxDelayMillis = Math.max(0, maxDelayMillis);
+    }
+
+    public double getClientRate() {
+        return clientRate;
+    }
+
+    public double getClientBurst() {
+        return clientBurst;
+    }
+
+    public double getGlobalRate() {
+        return globalRate;
+    }
+
+    public double getGlobalByteRate() {
+        return globalByteRate;
+    }
+
+    public boolean isDelayMode() {
+        return delayMode;
+    }
+
+    public long getMaxDelayMillis() {
+        return maxDelayMillis;
+    }
+
+    /**
+     * Returns how many messages have been rejected for being over a limit.
+     *
+     * @return The rejection count.
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * Returns how many messages were held up to keep them under the limits.
+     *
+     * @return The delay count.
+     */
+    public long getDelayedCount() {
+        return delayed.sum();
+    }
+
+    /**
+     * Returns how many messages have been let through (including delayed ones).
+     *
+     * @return The admission count.
+     */
+    public long getAdmittedCount() {
+        return admitted.sum();
+    }
+
+    @Override
+    public void messageReceived(EMSServer server, String clientId, String rawMessage) {
+        //ignored
+    }
+
+    @Override
+    public void messageSent(EMSServer server, String clientId, String rawMessage) {
+        //ignored
+    }
+
+    @Override
+    public void clientConnected(EMSServer server, String clientId) {
+        //ignored
+    }
+
+    @Override
+    public void clientDisconnected(EMSServer server, String clientId) {
+        clientBuckets.remove(clientId);
+    }
+
+    private TokenBucket newClientBucket() {
+        return new TokenBucket(clientRate, effectiveClientBurst());
+    }
+
+    private double effectiveClientBurst() {
+        return clientBurst > 0 ? clientBurst : clientRate;
+    }
+
+    private void refund(TokenBucket client, TokenBucket messages) {
+        if (client != null) {
+            client.refund(1);
+        }
+        if (messages != null) {
+            messages.refund(1);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package ca.corbett.ems.app.admission;
+
+/**
+ * A classic token bucket: tokens trickle in at a fixed rate, up to a maximum (the burst),
+ * and each thing we admit takes some out. A rate of 0 means no limit.
+ * <p>
+ *     Callers can either insist on tokens being available right now, or reserve them ahead
+ *     of time and wait: reserve() lets the bucket go into debt by up to maxWaitNanos worth
+ *     of tokens, and says how long the caller should wait before going ahead.
+ * </p>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public final class TokenBucket {
+
+    private double ratePerSecond;
+    private double burst;
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * Creates a full bucket.
+     *
+     * @param ratePerSecond How many tokens are added per second, or 0 for no limit.
+     * @param burst         The most tokens the bucket can hold (at least 1).
+     */
+    public TokenBucket(double ratePerSecond, double burst) {
+        this.lastRefill = System.nanoTime();
+        setRate(ratePerSecond, burst);
+        this.tokens = this.burst;
+    }
+
+    /**
+     * Changes the rate and burst. Tokens already in the bucket are kept, up to the new burst.
+     *
+     * @param ratePerSecond How many tokens are added per second, or 0 for no limit.
+     * @param burst         The most tokens the bucket can hold (at least 1).
+     */
+    public synchronized void setRate(double ratePerSecond, double burst) {
+        refill();
+        this.ratePerSecond = Math.max(0, ratePerSecond);
+        this.burst = Math.max(1, burst);
+        tokens = Math.min(tokens, this.burst);
+    }
+
+    /**
+     * Takes the given number of tokens, waiting for them if necessary (but not too long).
+     *
+     * @param count        How many tokens to take.
+     * @param maxWaitNanos The longest the caller is willing to wait, or 0 to not wait at all.
+     * @return 0 to go ahead right away, a positive number of nanoseconds to wait before
+     * going ahead, or -1 if it would take too long (in which case nothing was taken).
+     */
+    public synchronized long reserve(double count, long maxWaitNanos) {
+        if (ratePerSecond <= 0) {
+            return 0;
+        }
+        refill();
+        count = Math.min(count, burst); // otherwise anything bigger than the burst could never get in
+        if (tokens >= count) {
+            tokens -= count;
+            return 0;
+        }
+        long wait = (long) Math.ceil((count - tokens) / ratePerSecond * 1_000_000_000.0);
+        if (wait > maxWaitNanos) {
+            return -1;
+        }
+        tokens -= count;
+        return wait;
+    }
+
+    /**
+     * Puts back tokens that were taken but not used (for example, because some other
+     * limit turned the request down).
+     *
+     * @param count How many tokens to put back.
+     */
+    public synchronized void refund(double count) {
+        if (ratePerSecond > 0) {
+            tokens = Math.min(burst, tokens + Math.min(count, burst));
+        }
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        if (ratePerSecond > 0) {
+            tokens = Math.min(burst, tokens + (now - lastRefill) / 1_000_000_000.0 * ratePerSecond);
+        }
+        lastRefill = now;
+    }
+}
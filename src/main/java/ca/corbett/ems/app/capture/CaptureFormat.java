@@ -0,0 +1,88 @@
+package ca.corbett.ems.app.capture;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Describes the layout of our capture files, which are written by CaptureRecorder and read
+ * by CaptureReader. All numbers are big-endian, and all strings are UTF-8.
+ * <ul>
+ *     <li><b>Header</b>: the magic bytes "EMSCAP", a two-byte format version (currently 1),
+ *     and the wall-clock time the capture started, as an eight-byte count of milliseconds
+ *     since the epoch.</li>
+ *     <li><b>Records</b>, one after another until the end of the file: the time the message
+ *     arrived, as an eight-byte count of nanoseconds since the capture started; a two-byte
+ *     length followed by the client id; and a four-byte length followed by the raw message.</li>
+ * </ul>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public final class CaptureFormat {
+
+    /**
+     * Every capture file starts with these bytes.
+     */
+    static final byte[] MAGIC = "EMSCAP".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * The version of the format that we read and write.
+     */
+    static final short VERSION = 1;
+
+    /**
+     * The size of the header, in bytes.
+     */
+    static final int HEADER_LENGTH = MAGIC.length + 2 + 8;
+
+    /**
+     * The size of a record, not counting its client id and message.
+     */
+    static final int RECORD_OVERHEAD = 8 + 2 + 4;
+
+    /**
+     * The longest message that a record can hold. Nothing that long would ever be sent
+     * to an EMS server, so a record that claims to be longer means the file is damaged.
+     */
+    static final int MAX_MESSAGE_LENGTH = 64 * 1024 * 1024;
+
+    private CaptureFormat() {
+    }
+
+    static void writeHeader(ByteBuffer buffer, long startMillis) {
+        buffer.put(MAGIC);
+        buffer.putShort(VERSION);
+        buffer.putLong(startMillis);
+    }
+
+    /**
+     * Reads and checks the header, and returns the capture start time.
+     */
+    static long readHeader(ByteBuffer buffer) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        buffer.get(magic);
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (magic[i] != MAGIC[i]) {
+                throw new IOException("Not an EMS capture file.");
+            }
+        }
+        short version = buffer.getShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported capture file version " + version + ".");
+        }
+        return buffer.getLong();
+    }
+
+    static int recordLength(byte[] clientId, byte[] message) {
+        return RECORD_OVERHEAD + clientId.length + message.length;
+    }
+
+    static void writeRecord(ByteBuffer buffer, long offsetNanos, byte[] clientId, byte[] message) {
+        buffer.putLong(offsetNanos);
+        buffer.putShort((short) clientId.length);
+        buffer.put(clientId);
+        buffer.putInt(message.length);
+        buffer.put(message);
+    }
+}
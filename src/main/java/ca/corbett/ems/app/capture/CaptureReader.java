@@ -0,0 +1,145 @@
+package ca.corbett.ems.app.capture;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Logger;
+
+/**
+ * Reads back the records in a capture file written by CaptureRecorder, in the order they
+ * were recorded. See CaptureFormat for the layout of the file. If the capture was cut off
+ * part way through a record (for example, because the server was killed), the partial
+ * record is ignored. A record whose message length is impossible means the file is
+ * damaged, and is reported with an IOException.
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public final class CaptureReader implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(CaptureReader.class.getName());
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private final Path file;
+    private final FileChannel in;
+    private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final long startMillis;
+    private boolean endOfFile;
+
+    /**
+     * Opens the given capture file and reads its header.
+     *
+     * @param file The capture file.
+     * @throws IOException If the file can't be read, or isn't a capture file.
+     */
+    public CaptureReader(Path file) throws IOException {
+        this.file = file;
+        this.in = FileChannel.open(file, StandardOpenOption.READ);
+        buffer.flip();
+        try {
+            if (!fill(CaptureFormat.HEADER_LENGTH)) {
+                throw new IOException("Not an EMS capture file.");
+            }
+            startMillis = CaptureFormat.readHeader(buffer);
+        } catch (IOException ioe) {
+            in.close();
+            throw ioe;
+        }
+    }
+
+    /**
+     * Returns the wall-clock time at which the capture was started.
+     *
+     * @return Milliseconds since the epoch.
+     */
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    /**
+     * Returns the next record in the file.
+     *
+     * @return The next record, or null if there are no more.
+     * @throws IOException If the file can't be read.
+     */
+    public CaptureRecord next() throws IOException {
+        // Peek at the client id length first, so we can make sure we have everything up to the message:
+        if (!fill(CaptureFormat.RECORD_OVERHEAD - 4)) {
+            return null;
+        }
+        int clientIdLength = buffer.getShort(buffer.position() + 8) & 0xffff;
+        if (!fill(CaptureFormat.RECORD_OVERHEAD + clientIdLength)) {
+            return null;
+        }
+        long offsetNanos = buffer.getLong();
+        buffer.getShort();
+        String clientId = readString(clientIdLength);
+        int messageLength = buffer.getInt();
+        if (messageLength < 0 || messageLength > CaptureFormat.MAX_MESSAGE_LENGTH) {
+            throw new IOException("Damaged capture file " + file + ": record claims a message of "
+                                          + messageLength + " bytes.");
+        }
+        if (messageLength > buffer.remaining() + in.size() - in.position()) {
+            // Don't make room for more than the file could possibly hold:
+            logger.warning("Ignoring incomplete record at the end of " + file);
+            buffer.position(buffer.limit());
+            endOfFile = true;
+            return null;
+        }
+        if (!fill(messageLength)) {
+            return null;
+        }
+        return new CaptureRecord(offsetNanos, clientId, readString(messageLength));
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private String readString(int length) {
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                                  StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    /**
+     * Makes sure that at least the given number of bytes are waiting in our buffer, reading
+     * more from the file (and growing the buffer) as needed.
+     *
+     * @return false if the file ends first.
+     */
+    private boolean fill(int needed) throws IOException {
+        if (buffer.remaining() >= needed) {
+            return true;
+        }
+        if (needed > buffer.capacity()) {
+            ByteBuffer bigger = ByteBuffer.allocate(needed);
+            bigger.put(buffer);
+            buffer = bigger;
+        }
+        else {
+            buffer.compact();
+        }
+        while (buffer.position() < needed && !endOfFile) {
+            if (in.read(buffer) < 0) {
+                endOfFile = true;
+            }
+        }
+        buffer.flip();
+        if (buffer.remaining() < needed) {
+            if (buffer.hasRemaining()) {
+                logger.warning("Ignoring incomplete record at the end of " + file);
+                buffer.position(buffer.limit());
+            }
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,48 @@
+package ca.corbett.ems.app.capture;
+
+/**
+ * One message from a capture file: what the server received, from which client,
+ * and when.
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public final class CaptureRecord {
+
+    private final long offsetNanos;
+    private final String clientId;
+    private final String message;
+
+    CaptureRecord(long offsetNanos, String clientId, String message) {
+        this.offsetNanos = offsetNanos;
+        this.clientId = clientId;
+        this.message = message;
+    }
+
+    /**
+     * Returns when the message arrived.
+     *
+     * @return Nanoseconds since the capture was started.
+     */
+    public long getOffsetNanos() {
+        return offsetNanos;
+    }
+
+    /**
+     * Returns the id of the client that sent the message.
+     *
+     * @return The client id.
+     */
+    public String getClientId() {
+        return clientId;
+    }
+
+    /**
+     * Returns the message exactly as the server received it, such as "SEND:channel:hello".
+     *
+     * @return The raw message.
+     */
+    public String getMessage() {
+        return message;
+    }
+}
@@ -0,0 +1,221 @@
+package ca.corbett.ems.app.capture;
+
+import ca.corbett.ems.app.channels.ChannelIds;
+import ca.corbett.ems.app.delivery.ChannelIdSendHandler;
+import ca.corbett.ems.server.EMSServer;
+import ca.corbett.ems.server.EMSServerSpy;
+
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An EMSServerSpy that records everything the server receives, from every client, to a
+ * capture file that can later be fed back into a server with CaptureReader (see the
+ * --startReplay option). Each record holds the time it arrived, in nanoseconds since the
+ * capture started, along with the client id and the raw message. See CaptureFormat for
+ * the layout of the file.
+ * <p>
+ *     Records are collected in a large buffer that is written out when it fills up, and
+ *     also every so often by a background thread, so recording adds very little to the
+ *     cost of handling each message. The buffer is written on whichever server thread
+ *     fills it, so we use a plain output stream: an interrupt on one of those threads
+ *     would close a FileChannel for good. Be sure to close() the recorder (after removing
+ *     it from the server) or the last of the records will be lost.
+ * </p>
+ * <p>
+ *     Channel ids (see the ALIAS command) only mean something to the server that handed them
+ *     out, so if the recorder is given the server's ChannelIds, SENDID and SENDID_PRIORITY
+ *     commands are recorded as the SEND and SEND_PRIORITY commands they amount to, with the
+ *     channel name filled in. That way they can be replayed into any server.
+ * </p>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public final class CaptureRecorder implements EMSServerSpy, Closeable {
+
+    private static final Logger logger = Logger.getLogger(CaptureRecorder.class.getName());
+
+    /**
+     * Records are collected in a buffer of this size before they're written out.
+     */
+    public static final int BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * Buffered records are written out at least this often.
+     */
+    public static final long FLUSH_INTERVAL_MILLIS = 500;
+
+    private final Path file;
+    private final OutputStream out;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final ChannelIds channelIds;
+    private final ScheduledExecutorService flusher;
+    private final long startNanos;
+    private long recordCount;
+    private boolean closed;
+
+    /**
+     * Creates a recorder that writes to the given file, replacing it if it already exists.
+     * Add it to a server with addServerSpy() to start recording.
+     *
+     * @param file Where to write the capture.
+     * @throws IOException If the file can't be created.
+     */
+    public CaptureRecorder(Path file) throws IOException {
+        this(file, null);
+    }
+
+    /**
+     * Creates a recorder that writes to the given file, replacing it if it already exists,
+     * and records sends by channel id as sends by channel name. Add it to a server with
+     * addServerSpy() to start recording.
+     *
+     * @param file       Where to write the capture.
+     * @param channelIds The server's channel ids, or null to record SENDID commands as they are.
+     * @throws IOException If the file can't be created.
+     */
+    public CaptureRecorder(Path file, ChannelIds channelIds) throws IOException {
+        this.file = file;
+        this.channelIds = channelIds;
+        this.out = new FileOutputStream(file.toFile());
+        this.startNanos = System.nanoTime();
+        CaptureFormat.writeHeader(buffer, System.currentTimeMillis());
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ems-capture-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS,
+                                       TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the number of records written so far.
+     *
+     * @return The record count.
+     */
+    public synchronized long getRecordCount() {
+        return recordCount;
+    }
+
+    @Override
+    public void messageReceived(EMSServer server, String clientId, String rawMessage) {
+        long offsetNanos = System.nanoTime() - startNanos;
+        if (channelIds != null) {
+            String byName = ChannelIdSendHandler.toSendByName(rawMessage, channelIds);
+            if (byName != null) {
+                rawMessage = byName;
+            }
+        }
+        byte[] client = (clientId == null ? "" : clientId).getBytes(StandardCharsets.UTF_8);
+        byte[] message = (rawMessage == null ? "" : rawMessage).getBytes(StandardCharsets.UTF_8);
+        int length = CaptureFormat.recordLength(client, message);
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            try {
+                if (length > buffer.remaining()) {
+                    drain();
+                }
+                if (length > buffer.capacity()) {
+                    ByteBuffer big = ByteBuffer.allocate(length);
+                    CaptureFormat.writeRecord(big, offsetNanos, client, message);
+                    big.flip();
+                    writeFully(big);
+                }
+                else {
+                    CaptureFormat.writeRecord(buffer, offsetNanos, client, message);
+                }
+                recordCount++;
+            } catch (IOException ioe) {
+                logger.log(Level.SEVERE, "Unable to write to capture file: " + ioe.getMessage(), ioe);
+            }
+        }
+    }
+
+    @Override
+    public void messageSent(EMSServer server, String clientId, String rawMessage) {
+        //ignored
+    }
+
+    @Override
+    public void clientConnected(EMSServer server, String clientId) {
+        //ignored
+    }
+
+    @Override
+    public void clientDisconnected(EMSServer server, String clientId) {
+        //ignored
+    }
+
+    /**
+     * Writes out any buffered records. This happens automatically every so often, so
+     * you normally don't need to invoke it yourself.
+     */
+    public synchronized void flush() {
+        if (closed) {
+            return;
+        }
+        try {
+            drain();
+        } catch (IOException ioe) {
+            logger.log(Level.SEVERE, "Unable to write to capture file: " + ioe.getMessage(), ioe);
+        }
+    }
+
+    /**
+     * Writes out any buffered records and closes the capture file. Anything received
+     * afterwards is not recorded.
+     */
+    @Override
+    public void close() {
+        flusher.shutdown();
+        try {
+            // Let a flush that's already under way finish, rather than interrupting it:
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            flush();
+            closed = true;
+            try {
+                out.close();
+            } catch (IOException ioe) {
+                logger.log(Level.WARNING, "Problem closing " + file + ": " + ioe.getMessage(), ioe);
+            }
+        }
+    }
+
+    private void drain() throws IOException {
+        if (buffer.position() == 0) {
+            return;
+        }
+        buffer.flip();
+        try {
+            writeFully(buffer);
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    private void writeFully(ByteBuffer bytes) throws IOException {
+        out.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+        bytes.position(bytes.limit());
+    }
+}
@@ -0,0 +1,244 @@
+package ca.corbett.ems.app.channels;
+
+import ca.corbett.ems.server.ChannelManager;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out compact integer ids for channels, so that publishers can send by id (see the
+ * ALIAS and SENDID commands) instead of by name. Sending by name means sanitizing the name
+ * and looking up its subscribers by string on every message - and the EMS ChannelManager
+ * sanitizes it again, with a regular expression, and copies the subscriber list each time.
+ * Sending by id is an array lookup: each id's slot holds the channel name and a cached copy
+ * of its subscriber list, which is only fetched again after somebody subscribes or
+ * unsubscribes somewhere (see membershipChanged()).
+ * <p>
+ *     Ids that haven't been used for the idle TTL are released, the next time a new id is
+ *     handed out (so the table only needs tidying when it's about to grow); sending to a
+ *     released id is an error, and the publisher should just ALIAS the channel again to get
+ *     a fresh id. Released slots are handed out again, oldest first, so the table stays as
+ *     big as the most ids that were ever in use at once, and never more than MAX_IDS.
+ * </p>
+ * <p>
+ *     So that a stale id can't reach whichever channel gets its slot next, the low bits of
+ *     an id are its slot and the high bits count how many times that slot has been reused.
+ *     The first ids handed out for each slot are just the slot numbers (1, 2, 3...); after
+ *     that they get bigger, but always fit in a positive int. The count wraps around after
+ *     2048 reuses of the same slot, which is the only way an old id could ever match again.
+ * </p>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public class ChannelIds {
+
+    /**
+     * If not specified, ids are released after going unused for this long.
+     */
+    public static final long DEFAULT_IDLE_TTL_MILLIS = 5 * 60 * 1000;
+
+    private static final int SLOT_BITS = 20;
+    private static final int SLOT_MASK = (1 << SLOT_BITS) - 1;
+    private static final int GENERATION_MASK = (1 << (31 - SLOT_BITS)) - 1;
+
+    /**
+     * The most ids that can be in use at once.
+     */
+    public static final int MAX_IDS = SLOT_MASK;
+
+    private final long idleTtlMillis;
+    private final Map<String, Route> byName = new ConcurrentHashMap<>();
+    private final AtomicLong membershipVersion = new AtomicLong();
+    private final ArrayDeque<Integer> freeIds = new ArrayDeque<>();
+    private volatile Route[] byId = new Route[64];
+    private int nextSlot = 1;
+    private long lastReleaseCheck = System.currentTimeMillis();
+
+    /**
+     * Creates an empty table with the default idle TTL.
+     */
+    public ChannelIds() {
+        this(DEFAULT_IDLE_TTL_MILLIS);
+    }
+
+    /**
+     * Creates an empty table.
+     *
+     * @param idleTtlMillis How long an id can go unused before it's released.
+     */
+    public ChannelIds(long idleTtlMillis) {
+        this.idleTtlMillis = Math.max(1000, idleTtlMillis);
+    }
+
+    /**
+     * Returns the id for the given channel, assigning a new one if it doesn't have one yet.
+     * The channel doesn't need to exist.
+     *
+     * @param channel The channel name.
+     * @return The channel id, or -1 if MAX_IDS ids are already in use.
+     */
+    public int assign(String channel) {
+        String name = ChannelManager.sanitizeChannelName(channel);
+        Route route = byName.get(name);
+        if (route != null) {
+            route.lastUsed = System.currentTimeMillis();
+            return route.id;
+        }
+        synchronized (this) {
+            route = byName.get(name);
+            if (route == null) {
+                releaseIdle();
+                int id;
+                if (!freeIds.isEmpty()) {
+                    id = freeIds.poll();
+                }
+                else if (nextSlot <= SLOT_MASK) {
+                    id = nextSlot++;
+                }
+                else {
+                    return -1;
+                }
+                route = new Route(id, name);
+                Route[] table = byId;
+                int slot = id & SLOT_MASK;
+                if (slot >= table.length) {
+                    table = Arrays.copyOf(table, Math.min(table.length * 2, SLOT_MASK + 1));
+                }
+                table[slot] = route;
+                byId = table;
+                byName.put(name, route);
+            }
+            return route.id;
+        }
+    }
+
+    /**
+     * Looks up a channel by id.
+     *
+     * @param id A channel id.
+     * @return The route for that channel, or null if there's no such id (or it was released).
+     */
+    public Route route(int id) {
+        Route[] table = byId;
+        int slot = id & SLOT_MASK;
+        if (id <= 0 || slot >= table.length) {
+            return null;
+        }
+        Route route = table[slot];
+        return route != null && route.id == id ? route : null;
+    }
+
+    /**
+     * Notes that somebody has subscribed or unsubscribed, so every cached subscriber list
+     * needs to be fetched again before it's next used. This must be invoked after the change
+     * has been made.
+     */
+    public void membershipChanged() {
+        membershipVersion.incrementAndGet();
+    }
+
+    /**
+     * Releases the given channel's id, if it has one. Its slot will be handed out again,
+     * under a different id.
+     *
+     * @param channel The (sanitized) channel name.
+     */
+    public synchronized void release(String channel) {
+        Route route = byName.remove(channel);
+        if (route != null) {
+            int slot = route.id & SLOT_MASK;
+            byId[slot] = null;
+            int generation = ((route.id >>> SLOT_BITS) + 1) & GENERATION_MASK;
+            freeIds.add((generation << SLOT_BITS) | slot);
+        }
+    }
+
+    /**
+     * Releases every id that hasn't been used for the idle TTL. To keep assign() cheap,
+     * this only looks through the table once a quarter of the TTL has gone by.
+     */
+    private synchronized void releaseIdle() {
+        long now = System.currentTimeMillis();
+        if (now - lastReleaseCheck < idleTtlMillis / 4) {
+            return;
+        }
+        lastReleaseCheck = now;
+        for (Route route : byName.values()) {
+            if (now - route.lastUsed >= idleTtlMillis) {
+                release(route.name);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of channels that have ids.
+     *
+     * @return The id count.
+     */
+    public int size() {
+        return byName.size();
+    }
+
+    /**
+     * One slot in our table: a channel, and its subscribers as of the last time we looked.
+     */
+    public final class Route {
+        private final int id;
+        private final String name;
+        private volatile Subscribers subscribers = new Subscribers(-1, List.of());
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        private Route(int id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * Returns the (sanitized) channel name.
+         *
+         * @return The channel name.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the channel's subscribers, fetching them from the ChannelManager only if
+         * the membership has changed since we last did. Also notes that the id is in use.
+         *
+         * @return The client ids subscribed to this channel. Don't modify this list.
+         */
+        public List<String> getSubscribers() {
+            lastUsed = System.currentTimeMillis();
+            Subscribers cached = subscribers;
+            long version = membershipVersion.get();
+            if (cached.version != version) {
+                cached = new Subscribers(version, List.copyOf(ChannelManager.getInstance().getSubscribers(name)));
+                subscribers = cached;
+            }
+            return cached.clientIds;
+        }
+    }
+
+    /**
+     * A subscriber list, and the membership version it was fetched at.
+     */
+    private static final class Subscribers {
+        private final long version;
+        private final List<String> clientIds;
+
+        private Subscribers(long version, List<String> clientIds) {
+            this.version = version;
+            this.clientIds = clientIds;
+        }
+    }
+}
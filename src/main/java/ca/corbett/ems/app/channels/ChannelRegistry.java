@@ -0,0 +1,247 @@
+package ca.corbett.ems.app.channels;
+
+import ca.corbett.ems.server.ChannelManager;
+import ca.corbett.ems.server.EMSServer;
+import ca.corbett.ems.server.EMSServerSpy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the server's channel list from growing without bound. The EMS ChannelManager creates
+ * a channel when somebody first subscribes to it, and only removes it once its last subscriber
+ * unsubscribes. But the EMS server never unsubscribes clients that disconnect, so every channel
+ * that a departed client was listening to stays around forever - which adds up quickly when
+ * clients make up channel names per session.
+ * <p>
+ *     This is an EMSServerSpy that fixes that: when a client disconnects, it is unsubscribed
+ *     from everything straight away, so a channel goes away as soon as its last subscriber
+ *     does. That happens on the thread that handles the disconnect, just as EMS handles
+ *     subscribes and unsubscribes on its client threads - the ChannelManager isn't thread-safe,
+ *     so we deliberately don't change it from any background thread of our own.
+ * </p>
+ * <p>
+ *     It also enforces an optional cap on the number of channels (see CappedSubscribeHandler),
+ *     and keeps a sorted snapshot of the channel list, refreshed at most once a second, so that
+ *     paging through it with LIST_ACTIVE (see PagedListActiveHandler) stays cheap. And it
+ *     owns the server's ChannelIds, letting them know whenever subscriptions change.
+ * </p>
+ * <p>
+ *     Finally, it keeps running totals of channels and subscriptions, so that monitors (see
+ *     HealthHandler) can read them from any thread without walking the ChannelManager. The
+ *     totals are updated on the client threads right after each change, one channel at a time.
+ * </p>
+ * <p>
+ *     Note that the EMS ChannelManager is a singleton, so if there's more than one server
+ *     in this JVM, they share one channel list (and one channel cap).
+ * </p>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public class ChannelRegistry implements EMSServerSpy {
+
+    /**
+     * The channel snapshot used for paging is refreshed at most this often.
+     */
+    private static final long SNAPSHOT_MAX_AGE_MILLIS = 1000;
+
+    private static final String[] MEMBERSHIP_COMMANDS = {
+            "SUB", "SUBSCRIBE", "UNSUB", "UNSUBSCRIBE"
+    };
+
+    /**
+     * How many subscribers each channel had when we last counted it. Like the ChannelManager
+     * that it mirrors, this is shared by every server in the JVM.
+     */
+    private static final Map<String, Integer> subscriberCounts = new ConcurrentHashMap<>();
+    private static final LongAdder channelCount = new LongAdder();
+    private static final LongAdder subscriptionCount = new LongAdder();
+
+    private final EMSServer server;
+    private final int maxChannels;
+    private final ChannelIds channelIds;
+    private final LongAdder rejected = new LongAdder();
+    private volatile List<String> snapshot = Collections.emptyList();
+    private volatile long snapshotTime;
+
+    /**
+     * Creates a ChannelRegistry for the given server. Add it to the server with addServerSpy().
+     *
+     * @param server      The server whose channels we look after.
+     * @param idTtlMillis How long a channel id can go unused before it's released (see ChannelIds).
+     * @param maxChannels The most channels we allow, or 0 for no limit.
+     */
+    public ChannelRegistry(EMSServer server, long idTtlMillis, int maxChannels) {
+        this.server = server;
+        this.maxChannels = Math.max(0, maxChannels);
+        this.channelIds = new ChannelIds(idTtlMillis);
+    }
+
+    /**
+     * Stops looking after the server's channels. Invoke this when the server is shut down.
+     */
+    public void stop() {
+        server.removeServerSpy(this);
+    }
+
+    /**
+     * Returns the table of channel ids that we look after.
+     *
+     * @return The server's channel ids.
+     */
+    public ChannelIds getChannelIds() {
+        return channelIds;
+    }
+
+    /**
+     * Returns the most channels we allow.
+     *
+     * @return The channel cap, or 0 if there's no limit.
+     */
+    public int getMaxChannels() {
+        return maxChannels;
+    }
+
+    /**
+     * Reports whether there's room for one more channel. Subscribing to a channel that
+     * already exists is always allowed.
+     *
+     * @param channel The (sanitized) name of a channel somebody wants to subscribe to.
+     * @return false if the channel doesn't exist yet and we're already at the channel cap.
+     */
+    public boolean admit(String channel) {
+        if (maxChannels == 0) {
+            return true;
+        }
+        ChannelManager channelManager = ChannelManager.getInstance();
+        if (!channelManager.getSubscribers(channel).isEmpty()) {
+            return true;
+        }
+        if (channelManager.getActiveChannels().size() < maxChannels) {
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    /**
+     * Returns a page of the active channels, in alphabetical order. The list comes from
+     * a snapshot that's at most a second old.
+     *
+     * @param after Return only channels that sort after this one, or null to start at the beginning.
+     * @param limit The most channels to return.
+     * @return The channels on this page (empty once you're past the end).
+     */
+    public List<String> getPage(String after, int limit) {
+        List<String> channels = getSnapshot();
+        int start = 0;
+        if (after != null) {
+            int index = Collections.binarySearch(channels, ChannelManager.sanitizeChannelName(after));
+            start = index >= 0 ? index + 1 : -(index + 1);
+        }
+        int end = (int) Math.min(channels.size(), (long) start + Math.max(0, limit));
+        return start >= end ? Collections.emptyList() : new ArrayList<>(channels.subList(start, end));
+    }
+
+    /**
+     * Returns how many subscribes have been refused because of the channel cap.
+     *
+     * @return The rejection count.
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * Returns how many channels currently have at least one subscriber. This is a running
+     * total, so it's cheap to call from any thread.
+     *
+     * @return The channel count.
+     */
+    public long getChannelCount() {
+        return channelCount.sum();
+    }
+
+    /**
+     * Returns how many subscriptions there are, across all channels. This is a running
+     * total, so it's cheap to call from any thread.
+     *
+     * @return The subscription count.
+     */
+    public long getSubscriptionCount() {
+        return subscriptionCount.sum();
+    }
+
+    @Override
+    public void messageReceived(EMSServer server, String clientId, String rawMessage) {
+        if (rawMessage == null) {
+            return;
+        }
+        int first = rawMessage.indexOf(EMSServer.DELIMITER);
+        if (first < 1) {
+            return;
+        }
+        // Spies hear about a command after it has been handled, so the change has already been made:
+        for (String command : MEMBERSHIP_COMMANDS) {
+            if (command.length() == first && rawMessage.regionMatches(true, 0, command, 0, first)) {
+                recount(ChannelManager.sanitizeChannelName(rawMessage.substring(first + 1)));
+                channelIds.membershipChanged();
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void messageSent(EMSServer server, String clientId, String rawMessage) {
+        //ignored
+    }
+
+    @Override
+    public void clientConnected(EMSServer server, String clientId) {
+        //ignored
+    }
+
+    @Override
+    public void clientDisconnected(EMSServer server, String clientId) {
+        ChannelManager channelManager = ChannelManager.getInstance();
+        List<String> channels = channelManager.getSubscribedChannels(clientId);
+        channelManager.unsubscribeFromAll(clientId);
+        for (String channel : channels) {
+            recount(channel);
+        }
+        channelIds.membershipChanged();
+    }
+
+    /**
+     * Counts the given channel's subscribers again, and adjusts our running totals by however
+     * much that count has changed since last time. Counting inside compute() means two client
+     * threads changing the same channel can't both apply the same difference.
+     */
+    private static void recount(String channel) {
+        subscriberCounts.compute(channel, (name, before) -> {
+            int was = before == null ? 0 : before;
+            int now = ChannelManager.getInstance().getSubscribers(name).size();
+            subscriptionCount.add(now - was);
+            if (was == 0 && now > 0) {
+                channelCount.increment();
+            }
+            else if (was > 0 && now == 0) {
+                channelCount.decrement();
+            }
+            return now == 0 ? null : now;
+        });
+    }
+
+    private List<String> getSnapshot() {
+        if (System.currentTimeMillis() - snapshotTime > SNAPSHOT_MAX_AGE_MILLIS) {
+            snapshot = Collections.unmodifiableList(ChannelManager.getInstance().getActiveChannels());
+            snapshotTime = System.currentTimeMillis();
+        }
+        return snapshot;
+    }
+}
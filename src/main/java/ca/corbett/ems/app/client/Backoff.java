@@ -0,0 +1,67 @@
+package ca.corbett.ems.app.client;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Works out how long to wait before each attempt to reconnect to a server, using
+ * exponential backoff with jitter. The delay ceiling doubles with each failed attempt
+ * (up to a maximum), and the actual delay is picked at random between half the ceiling
+ * and the full ceiling. The randomness matters when a server restarts: without it,
+ * every client that was connected to it would retry at exactly the same moments.
+ * <p>
+ *     With the defaults, the first retry happens after 0.25-0.5 seconds, and retries
+ *     settle at one every 15-30 seconds after a few minutes of failures.
+ * </p>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public final class Backoff {
+
+    /**
+     * If not specified, the delay ceiling for the first attempt.
+     */
+    public static final long DEFAULT_INITIAL_DELAY_MILLIS = 500;
+
+    /**
+     * If not specified, the delay ceiling never goes above this.
+     */
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 30_000;
+
+    private final long initialDelayMillis;
+    private final long maxDelayMillis;
+
+    /**
+     * Creates a Backoff with the default delays.
+     */
+    public Backoff() {
+        this(DEFAULT_INITIAL_DELAY_MILLIS, DEFAULT_MAX_DELAY_MILLIS);
+    }
+
+    /**
+     * Creates a Backoff with the given delays.
+     *
+     * @param initialDelayMillis The delay ceiling for the first attempt.
+     * @param maxDelayMillis     The largest delay ceiling for any attempt.
+     */
+    public Backoff(long initialDelayMillis, long maxDelayMillis) {
+        this.initialDelayMillis = Math.max(1, initialDelayMillis);
+        this.maxDelayMillis = Math.max(this.initialDelayMillis, maxDelayMillis);
+    }
+
+    /**
+     * Returns how long to wait before the given attempt.
+     *
+     * @param attempt The number of attempts that have already failed (0 for the first attempt).
+     * @return A delay in milliseconds.
+     */
+    public long delayMillis(int attempt) {
+        // Cap the exponent so that we can't overflow, no matter how long this goes on:
+        long ceiling = initialDelayMillis << Math.min(Math.max(attempt, 0), 30);
+        if (ceiling <= 0 || ceiling > maxDelayMillis) {
+            ceiling = maxDelayMillis;
+        }
+        long half = ceiling / 2;
+        return half + ThreadLocalRandom.current().nextLong(ceiling - half + 1);
+    }
+}
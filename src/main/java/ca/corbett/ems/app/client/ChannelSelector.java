@@ -0,0 +1,178 @@
+package ca.corbett.ems.app.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * Picks out a set of channels from a comma-separated list of channel names and glob
+ * patterns, such as "Orders,Trades,Prices.*". In a pattern, "*" matches any number of
+ * characters and "?" matches exactly one. Matching ignores case, as EMS
+ * upper-cases channel names.
+ * <p>
+ *     Plain names can be subscribed to right away (EMS creates channels on demand), but
+ *     patterns can only be matched against channels that already exist, so they have to
+ *     be resolved against the server's list of active channels with select().
+ * </p>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public final class ChannelSelector {
+
+    private final List<String> names = new ArrayList<>();
+    private final List<Pattern> patterns = new ArrayList<>();
+    private final String spec;
+
+    private ChannelSelector(String spec) {
+        this.spec = spec == null ? "" : spec.trim();
+    }
+
+    /**
+     * Parses the given comma-separated list of channel names and patterns. Blank entries are ignored.
+     *
+     * @param spec Something like "Orders,Trades,Prices.*".
+     * @return A ChannelSelector, which selects nothing if the spec is null or blank.
+     */
+    public static ChannelSelector parse(String spec) {
+        ChannelSelector selector = new ChannelSelector(spec);
+        if (spec == null) {
+            return selector;
+        }
+        for (String entry : spec.split(",")) {
+            entry = entry.trim();
+            if (entry.isEmpty()) {
+                continue;
+            }
+            if (entry.indexOf('*') >= 0 || entry.indexOf('?') >= 0) {
+                selector.patterns.add(toRegex(entry));
+            }
+            else if (!selector.containsName(entry)) {
+                selector.names.add(entry);
+            }
+        }
+        return selector;
+    }
+
+    /**
+     * Reports whether this selector selects nothing at all.
+     *
+     * @return true if there are no names and no patterns.
+     */
+    public boolean isEmpty() {
+        return names.isEmpty() && patterns.isEmpty();
+    }
+
+    /**
+     * Reports whether this selector has any glob patterns, which need the list of active
+     * channels to resolve.
+     *
+     * @return true if there is at least one pattern.
+     */
+    public boolean hasPatterns() {
+        return !patterns.isEmpty();
+    }
+
+    /**
+     * Reports whether this selector could select more than one channel.
+     *
+     * @return true if there is more than one name, or any pattern.
+     */
+    public boolean isMultiChannel() {
+        return names.size() > 1 || hasPatterns();
+    }
+
+    /**
+     * Returns the plain channel names, in the order given.
+     *
+     * @return A copy of the list of names (not patterns).
+     */
+    public List<String> getNames() {
+        return new ArrayList<>(names);
+    }
+
+    /**
+     * Reports whether the given channel is selected, either by name or by pattern.
+     *
+     * @param channel A channel name.
+     * @return true if it's selected.
+     */
+    public boolean matches(String channel) {
+        if (containsName(channel)) {
+            return true;
+        }
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(channel).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns all of our plain names, followed by any of the given active channels that
+     * match one of our patterns.
+     *
+     * @param activeChannels The channels that currently exist on the server (may be null).
+     * @return The selected channels, without duplicates (ignoring case).
+     */
+    public List<String> select(List<String> activeChannels) {
+        Set<String> selected = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        List<String> result = new ArrayList<>();
+        for (String name : names) {
+            if (selected.add(name)) {
+                result.add(name);
+            }
+        }
+        if (activeChannels != null) {
+            for (String channel : activeChannels) {
+                if (matches(channel) && selected.add(channel)) {
+                    result.add(channel);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the spec that this selector was parsed from.
+     *
+     * @return The comma-separated list of names and patterns.
+     */
+    @Override
+    public String toString() {
+        return spec;
+    }
+
+    private boolean containsName(String channel) {
+        for (String name : names) {
+            if (name.equalsIgnoreCase(channel)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Pattern toRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (char c : glob.toCharArray()) {
+            if (c == '*' || c == '?') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '*' ? ".*" : ".");
+            }
+            else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+    }
+}
@@ -0,0 +1,212 @@
+package ca.corbett.ems.app.client;
+
+import java.util.Arrays;
+
+/**
+ * A compact histogram of latency samples, in nanoseconds, that can answer percentile
+ * queries (median, p99 and so on) without keeping every sample around. Samples are
+ * counted in buckets whose width grows with their value: every power of two is split
+ * into eight buckets, so any value we report is within about 12% of the real one, and
+ * the whole range from one nanosecond up to several years fits in under 500 counters.
+ * <p>
+ *     A histogram can either be cumulative (it counts every sample it has ever been given,
+ *     until reset() is invoked), or rolling, in which case only the most recent samples
+ *     are counted - older ones drop out as new ones arrive.
+ * </p>
+ * <p>
+ *     All methods are thread-safe.
+ * </p>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_BUCKETS = SUB_BUCKETS * 2;
+    private static final int BUCKET_COUNT = LINEAR_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final long[] buckets = new long[BUCKET_COUNT];
+    private final long[] window;
+    private int windowNext;
+    private long count;
+    private long total;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    /**
+     * Creates a cumulative histogram.
+     */
+    public LatencyHistogram() {
+        this(0);
+    }
+
+    /**
+     * Creates a histogram that only counts the given number of most recent samples.
+     *
+     * @param windowSize How many samples to count, or 0 for a cumulative histogram.
+     */
+    public LatencyHistogram(int windowSize) {
+        window = windowSize > 0 ? new long[windowSize] : null;
+    }
+
+    /**
+     * Adds a sample to this histogram. Negative values (which can happen when comparing
+     * timestamps from two different machines) are counted as zero.
+     *
+     * @param nanos The latency, in nanoseconds.
+     */
+    public synchronized void record(long nanos) {
+        long value = Math.max(0, nanos);
+        boolean evictedExtreme = false;
+        if (window != null) {
+            int slot = windowNext;
+            if (count == window.length) {
+                // Evict the oldest sample to make room:
+                long evicted = window[slot];
+                buckets[bucketFor(evicted)]--;
+                total -= evicted;
+                count--;
+                evictedExtreme = evicted == min || evicted == max;
+            }
+            window[slot] = value;
+            windowNext = (slot + 1) % window.length;
+        }
+        buckets[bucketFor(value)]++;
+        total += value;
+        count++;
+        if (evictedExtreme) {
+            recomputeExtremes();
+        } else {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+    }
+
+    /**
+     * Discards all samples.
+     */
+    public synchronized void reset() {
+        Arrays.fill(buckets, 0);
+        windowNext = 0;
+        count = 0;
+        total = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    /**
+     * Returns the number of samples currently counted by this histogram.
+     *
+     * @return The sample count.
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the smallest sample currently counted, in nanoseconds (0 if there are none).
+     *
+     * @return The minimum latency.
+     */
+    public synchronized long getMin() {
+        return count == 0 ? 0 : min;
+    }
+
+    /**
+     * Returns the largest sample currently counted, in nanoseconds (0 if there are none).
+     *
+     * @return The maximum latency.
+     */
+    public synchronized long getMax() {
+        return max;
+    }
+
+    /**
+     * Returns the average of the samples currently counted, in nanoseconds (0 if there are none).
+     *
+     * @return The mean latency.
+     */
+    public synchronized long getMean() {
+        return count == 0 ? 0 : total / count;
+    }
+
+    /**
+     * Returns the latency below which the given percentage of samples fall.
+     *
+     * @param percentile A percentage from 0 to 100 (for example, 99 for the p99).
+     * @return The latency in nanoseconds, or 0 if there are no samples.
+     */
+    public synchronized long getPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100.0 * count);
+        rank = Math.max(1, rank);
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                return Math.max(min, Math.min(max, highestValueIn(i)));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Returns a one-line summary of this histogram, in milliseconds.
+     *
+     * @return Something like "count=120, min=0.210ms, mean=0.450ms, p50=0.400ms, p99=1.900ms, max=2.030ms".
+     */
+    @Override
+    public synchronized String toString() {
+        return "count=" + count
+                + ", min=" + formatMillis(getMin())
+                + ", mean=" + formatMillis(getMean())
+                + ", p50=" + formatMillis(getPercentile(50))
+                + ", p99=" + formatMillis(getPercentile(99))
+                + ", max=" + formatMillis(max);
+    }
+
+    /**
+     * Formats the given nanosecond value as milliseconds, for display.
+     *
+     * @param nanos A latency in nanoseconds.
+     * @return Something like "1.234ms".
+     */
+    public static String formatMillis(long nanos) {
+        return String.format("%.3fms", nanos / 1_000_000.0);
+    }
+
+    /**
+     * The sample we just evicted from the window was the min or the max, so we need
+     * to find the new one. This only happens for rolling histograms.
+     */
+    private void recomputeExtremes() {
+        min = Long.MAX_VALUE;
+        max = 0;
+        for (long sample : window) {
+            min = Math.min(min, sample);
+            max = Math.max(max, sample);
+        }
+    }
+
+    private static int bucketFor(long value) {
+        if (value < LINEAR_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int top = (int) (value >>> shift); // between SUB_BUCKETS and 2*SUB_BUCKETS-1
+        return LINEAR_BUCKETS + (shift - 1) * SUB_BUCKETS + (top - SUB_BUCKETS);
+    }
+
+    private static long highestValueIn(int bucket) {
+        if (bucket < LINEAR_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + 1;
+        long top = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((top + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,369 @@
+package ca.corbett.ems.app.client;
+
+import java.io.Closeable;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Somewhere to put the messages that a subscriber receives, in one of a few formats.
+ * The LOG format just hands each message to a Logger, the way the subscriber always has.
+ * That's friendly for people, but formatting and synchronizing every line limits us to a
+ * few thousand messages per second. The RAW (one message per line) and JSONL (one JSON
+ * object per line) formats instead collect lines in a large buffer that is written out
+ * to stdout or to a file when it fills up, and also every so often by a background
+ * thread so that a slow trickle of messages doesn't sit in the buffer for long.
+ * <p>
+ *     A subscriber that listens to several channels can ask for each LOG or RAW line to be
+ *     prefixed with the channel it came from: "[channel] message" for LOG, and the channel
+ *     followed by a tab for RAW. JSONL lines always include the channel.
+ * </p>
+ * <p>
+ *     When writing to a file, the file can be rotated once it reaches a given size: the
+ *     full file is renamed with the next free numeric suffix (messages.log.1, messages.log.2
+ *     and so on) and a new one is started. Rotated files are never deleted by us.
+ * </p>
+ * <p>
+ *     We write through plain output streams rather than FileChannels: messages are written
+ *     on whatever thread delivers them, and an interrupt on that thread would close a
+ *     FileChannel (and stdout along with it) for good.
+ * </p>
+ * <p>
+ *     All methods are thread-safe. Be sure to close() the sink when you're done with it,
+ *     or the last of the buffered messages will be lost.
+ * </p>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public final class MessageSink implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(MessageSink.class.getName());
+
+    /**
+     * The supported output formats.
+     */
+    public enum Format {
+        /**
+         * Each message is logged at INFO level. Not buffered, and the slowest option.
+         */
+        LOG,
+
+        /**
+         * Each message is written as-is on its own line.
+         */
+        RAW,
+
+        /**
+         * Each message is written on its own line as a JSON object with "time"
+         * (milliseconds since the epoch), "channel" and "message" fields.
+         */
+        JSONL;
+
+        /**
+         * Looks up a Format by name, ignoring case.
+         *
+         * @param name The name of the format, such as "raw".
+         * @return The Format, or null if there isn't one by that name.
+         */
+        public static Format fromString(String name) {
+            for (Format format : values()) {
+                if (format.name().equalsIgnoreCase(name)) {
+                    return format;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Lines are collected in a buffer of this size before they're written out.
+     */
+    public static final int BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * If not specified, buffered lines are written out at least this often.
+     */
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 500;
+
+    /**
+     * If not specified, files are rotated once they reach this size.
+     */
+    public static final long DEFAULT_ROTATE_BYTES = 64L * 1024 * 1024;
+
+    private final Format format;
+    private final Path file;
+    private final long rotateBytes;
+    private final ByteBuffer buffer;
+    private final ScheduledExecutorService flusher;
+    private final StringBuilder line = new StringBuilder(256);
+    private OutputStream out;
+    private long fileSize;
+    private boolean closed;
+    private volatile boolean channelPrefix;
+
+    private MessageSink(Format format, Path file, long rotateBytes, long flushIntervalMillis) throws IOException {
+        this.format = format;
+        this.file = file;
+        this.rotateBytes = rotateBytes;
+        if (format == Format.LOG) {
+            buffer = null;
+            flusher = null;
+            return;
+        }
+        buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        out = file == null ? new FileOutputStream(FileDescriptor.out) : openFile();
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ems-sink-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(10, flushIntervalMillis);
+        flusher.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a sink that writes to stdout in the given format.
+     *
+     * @param format The output format.
+     * @return A MessageSink.
+     */
+    public static MessageSink console(Format format) {
+        try {
+            return new MessageSink(format, null, 0, DEFAULT_FLUSH_INTERVAL_MILLIS);
+        } catch (IOException ioe) {
+            // We never open anything for the console, so this can't happen:
+            throw new IllegalStateException(ioe);
+        }
+    }
+
+    /**
+     * Creates a sink that appends to the given file in the given format, rotating it once it
+     * reaches the given size. The LOG format can't be written to a file this way; configure
+     * a FileHandler in your logging.properties instead.
+     *
+     * @param format      The output format (RAW or JSONL).
+     * @param file        The file to append to. It will be created if it doesn't exist.
+     * @param rotateBytes Rotate the file once it reaches this size, or 0 to never rotate.
+     * @return A MessageSink.
+     * @throws IOException If the file can't be opened.
+     */
+    public static MessageSink file(Format format, Path file, long rotateBytes) throws IOException {
+        if (format == Format.LOG) {
+            throw new IllegalArgumentException("The LOG format can't be written to a file.");
+        }
+        return new MessageSink(format, file, rotateBytes, DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Returns the format that this sink writes.
+     *
+     * @return The output format.
+     */
+    public Format getFormat() {
+        return format;
+    }
+
+    /**
+     * Reports whether LOG and RAW lines are prefixed with their channel.
+     *
+     * @return true if lines are prefixed.
+     */
+    public boolean isChannelPrefix() {
+        return channelPrefix;
+    }
+
+    /**
+     * Sets whether LOG and RAW lines should be prefixed with their channel. This is off by default.
+     *
+     * @param channelPrefix true to prefix lines with their channel.
+     */
+    public void setChannelPrefix(boolean channelPrefix) {
+        this.channelPrefix = channelPrefix;
+    }
+
+    /**
+     * Writes out the given message, which was received on the given channel. Buffered
+     * formats may not actually write anything until the buffer fills up or is flushed.
+     *
+     * @param channel The channel the message arrived on.
+     * @param message The message.
+     */
+    public void write(String channel, String message) {
+        if (format == Format.LOG) {
+            logger.info(channelPrefix ? "[" + channel + "] " + message : message);
+            return;
+        }
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            line.setLength(0);
+            if (format == Format.JSONL) {
+                line.append("{\"time\":").append(System.currentTimeMillis()).append(",\"channel\":");
+                appendJsonString(line, channel);
+                line.append(",\"message\":");
+                appendJsonString(line, message);
+                line.append('}');
+            }
+            else {
+                if (channelPrefix) {
+                    line.append(channel).append('\t');
+                }
+                line.append(message);
+            }
+            line.append('\n');
+            byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+            try {
+                if (file != null && rotateBytes > 0 && fileSize + buffer.position() > 0
+                        && fileSize + buffer.position() + bytes.length > rotateBytes) {
+                    drain();
+                    rotate();
+                }
+                if (bytes.length > buffer.remaining()) {
+                    drain();
+                }
+                if (bytes.length > buffer.capacity()) {
+                    writeFully(ByteBuffer.wrap(bytes));
+                }
+                else {
+                    buffer.put(bytes);
+                }
+            } catch (IOException ioe) {
+                logger.log(Level.SEVERE, "Unable to write message: " + ioe.getMessage(), ioe);
+            }
+        }
+    }
+
+    /**
+     * Writes out anything that's currently buffered. This happens automatically every so
+     * often, so you normally don't need to invoke it yourself.
+     */
+    public synchronized void flush() {
+        if (format == Format.LOG || closed) {
+            return;
+        }
+        try {
+            drain();
+        } catch (IOException ioe) {
+            logger.log(Level.SEVERE, "Unable to write messages: " + ioe.getMessage(), ioe);
+        }
+    }
+
+    /**
+     * Writes out anything that's still buffered and closes the output file, if there is one.
+     * Anything written to this sink afterwards is ignored.
+     */
+    @Override
+    public void close() {
+        if (format == Format.LOG) {
+            return;
+        }
+        flusher.shutdown();
+        try {
+            // Let a flush that's already under way finish, rather than interrupting it:
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            flush();
+            closed = true;
+            // We leave stdout open, as others are probably still using it.
+            if (file != null) {
+                try {
+                    out.close();
+                } catch (IOException ioe) {
+                    logger.log(Level.WARNING, "Problem closing " + file + ": " + ioe.getMessage(), ioe);
+                }
+            }
+        }
+    }
+
+    private void drain() throws IOException {
+        if (buffer.position() == 0) {
+            return;
+        }
+        buffer.flip();
+        try {
+            writeFully(buffer);
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    private void writeFully(ByteBuffer bytes) throws IOException {
+        int length = bytes.remaining();
+        out.write(bytes.array(), bytes.arrayOffset() + bytes.position(), length);
+        bytes.position(bytes.limit());
+        fileSize += length;
+    }
+
+    private OutputStream openFile() throws IOException {
+        FileOutputStream stream = new FileOutputStream(file.toFile(), true);
+        fileSize = Files.size(file);
+        return stream;
+    }
+
+    /**
+     * Renames our full file out of the way and starts a new one.
+     */
+    private void rotate() throws IOException {
+        out.close();
+        int suffix = 1;
+        Path rotated = file.resolveSibling(file.getFileName() + "." + suffix);
+        while (Files.exists(rotated)) {
+            suffix++;
+            rotated = file.resolveSibling(file.getFileName() + "." + suffix);
+        }
+        Files.move(file, rotated);
+        logger.info("Rotated " + file + " to " + rotated);
+        out = openFile();
+    }
+
+    private static void appendJsonString(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+                    }
+                    else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+}
@@ -0,0 +1,322 @@
+package ca.corbett.ems.app.client;
+
+import ca.corbett.ems.client.EMSClient;
+import ca.corbett.ems.client.EMSServerResponse;
+import ca.corbett.ems.server.EMSServer;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An EMSClient that can send commands without waiting for each response before sending
+ * the next one. sendCommand() pays a full round trip for every command, and that adds up
+ * quickly for bulk work like creating thousands of channels or publishing a stream of
+ * messages. Instead, we keep up to a fixed number of commands "in flight": submit() writes
+ * a command and returns straight away unless the window is full, and a background thread
+ * reads the responses and hands them to a ResponseListener. The EMS server handles each
+ * connection's commands in order, so responses come back in the order the commands were sent.
+ * <p>
+ *     Commands are buffered and written out in batches: whenever the window fills up, when
+ *     flush() or finish() is invoked, or when the caller is about to wait for more input.
+ *     For a fixed list of commands, run() does all of that for you.
+ * </p>
+ * <p>
+ *     Because responses are read on their own thread, the server can never get stuck writing
+ *     responses that nobody is reading, so a large window is safe. The window just bounds how
+ *     many commands we have to keep track of, and how many are unacknowledged (and so possibly
+ *     lost) if the connection drops.
+ * </p>
+ * <p>
+ *     Outside of start() and finish(), this is just an ordinary EMSClient, and sendCommand()
+ *     works as usual. Don't use sendCommand() in between. submit() and flush() should be
+ *     invoked from one thread at a time.
+ * </p>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public class PipelinedClient extends EMSClient {
+
+    private static final Logger logger = Logger.getLogger(PipelinedClient.class.getName());
+
+    /**
+     * If not specified, we keep at most this many commands in flight. The EMS server naps
+     * for half a second whenever it runs out of input from a client, which it does every
+     * time it catches up with us, so throughput is roughly the window size per half second.
+     */
+    public static final int DEFAULT_WINDOW = 4096;
+
+    /**
+     * Notified of each response as it arrives. This is invoked on our response thread,
+     * so implementations should be quick.
+     */
+    public interface ResponseListener {
+        /**
+         * Invoked for each command, in the order they were sent.
+         *
+         * @param index        The position of the command, counting from 0 at start().
+         * @param command      The command as it was sent.
+         * @param response     The response from the server.
+         * @param elapsedNanos How long it took from sending the command to receiving its response.
+         */
+        void responseReceived(int index, String command, EMSServerResponse response, long elapsedNanos);
+    }
+
+    private final int window;
+    private final Semaphore permits;
+    private final ConcurrentLinkedQueue<InFlight> inFlight = new ConcurrentLinkedQueue<>();
+    private PrintWriter writer;
+    private Thread responseThread;
+    private ResponseListener listener;
+    private volatile boolean failed;
+    private volatile int submitted; // only changed by the submitting thread, but read by others
+    private volatile int received;
+
+    /**
+     * Creates a PipelinedClient with the default window.
+     */
+    public PipelinedClient() {
+        this(DEFAULT_WINDOW);
+    }
+
+    /**
+     * Creates a PipelinedClient that keeps at most the given number of commands in flight.
+     *
+     * @param window The maximum number of commands awaiting a response (1 means no pipelining).
+     */
+    public PipelinedClient(int window) {
+        this.window = Math.max(1, window);
+        this.permits = new Semaphore(this.window);
+    }
+
+    /**
+     * Returns the maximum number of commands that we keep in flight.
+     *
+     * @return The window size.
+     */
+    public int getWindow() {
+        return window;
+    }
+
+    /**
+     * Sends all the given commands to the server, and reports each response to the given
+     * listener as it arrives. Commands are in the same format that you'd type in the
+     * interactive client, such as "SEND:channel:message" (see formatCommand()). This returns
+     * once every response is in, or once the connection is lost.
+     *
+     * @param commands The commands to send.
+     * @param listener Notified of each response.
+     * @return The number of responses received, which is less than the number of commands
+     * if we lost the connection part way through.
+     */
+    public int run(List<String> commands, ResponseListener listener) {
+        if (!start(listener)) {
+            return 0;
+        }
+        for (String command : commands) {
+            if (!submit(formatCommand(command))) {
+                break;
+            }
+        }
+        return finish();
+    }
+
+    /**
+     * Gets ready to submit() commands, and starts reading responses on a background thread.
+     *
+     * @param listener Notified of each response.
+     * @return false if we're not connected.
+     */
+    public boolean start(ResponseListener listener) {
+        if (!isConnected()) {
+            return false;
+        }
+        try {
+            writer = new PrintWriter(new OutputStreamWriter(
+                    new BufferedOutputStream(clientSocket.getOutputStream(), 64 * 1024), StandardCharsets.UTF_8));
+        } catch (IOException ioe) {
+            logger.log(Level.SEVERE, "Unable to write to server: " + ioe.getMessage(), ioe);
+            disconnect();
+            return false;
+        }
+        this.listener = listener;
+        failed = false;
+        submitted = 0;
+        received = 0;
+        responseThread = new Thread(this::readResponses, "ems-pipeline-responses");
+        responseThread.setDaemon(true);
+        responseThread.start();
+        return true;
+    }
+
+    /**
+     * Queues up the given command to be sent. It is sent exactly as given, so it should
+     * already be in the server's format (see formatCommand()). If the window is full, we
+     * flush what we have and wait for a response before accepting this one.
+     *
+     * @param command The command to send.
+     * @return false if the connection has been lost, in which case the command was not sent.
+     */
+    public boolean submit(String command) {
+        if (failed) {
+            return false;
+        }
+        if (!permits.tryAcquire()) {
+            flush();
+            permits.acquireUninterruptibly();
+            if (failed) {
+                return false;
+            }
+        }
+        inFlight.add(new InFlight(command, System.nanoTime()));
+        writer.println(command);
+        submitted++;
+        return true;
+    }
+
+    /**
+     * Writes out any commands that have been submitted but are still sitting in our buffer.
+     * Invoke this before waiting on anything (such as more input), so that those commands
+     * aren't held up in the meantime.
+     */
+    public void flush() {
+        if (writer == null) {
+            return;
+        }
+        writer.flush();
+        if (writer.checkError() && !failed) {
+            logger.severe("Lost connection while sending commands.");
+            fail();
+        }
+    }
+
+    /**
+     * Flushes anything still buffered, and waits until every submitted command has had
+     * a response (or until the connection is lost).
+     *
+     * @return The number of responses received since start().
+     */
+    public int finish() {
+        flush();
+        while (!failed && received < submitted) {
+            try {
+                responseThread.join(50);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        responseThread.interrupt();
+        return received;
+    }
+
+    /**
+     * Returns the number of commands submitted since start().
+     *
+     * @return The submitted count.
+     */
+    public int getSubmittedCount() {
+        return submitted;
+    }
+
+    /**
+     * Runs on our response thread, reading responses and passing them to our listener
+     * until the connection is lost or finish() is invoked.
+     */
+    private void readResponses() {
+        while (!failed && !Thread.currentThread().isInterrupted()) {
+            if (inFlight.isEmpty()) {
+                // Nothing to wait for yet; a brief nap is cheaper than coordinating with submit():
+                LockSupport.parkNanos(100_000);
+                continue;
+            }
+            String rawResponse = readResponse();
+            InFlight sent = inFlight.poll();
+            if (rawResponse == null || sent == null) {
+                if (!failed && !Thread.currentThread().isInterrupted()) {
+                    logger.severe("Lost connection while waiting for responses.");
+                    fail();
+                }
+                return;
+            }
+            long elapsed = System.nanoTime() - sent.sendTime;
+            listener.responseReceived(received, sent.command, new EMSServerResponse(sent.command, rawResponse),
+                                      elapsed);
+            received++;
+            permits.release();
+        }
+    }
+
+    /**
+     * Marks us as failed, wakes up anybody waiting in submit(), and disconnects.
+     */
+    private void fail() {
+        failed = true;
+        permits.release(window);
+        disconnect();
+    }
+
+    /**
+     * Converts a command from the format typed in the interactive client into the form
+     * that EMSClient.sendCommand() would send: the command name in upper case, with each
+     * parameter trimmed.
+     *
+     * @param line Something like "send:MyChannel:hello".
+     * @return Something like "SEND:MyChannel:hello".
+     */
+    public static String formatCommand(String line) {
+        String[] parts = line.trim().split(EMSServer.DELIMITER);
+        StringBuilder sb = new StringBuilder(parts[0].trim().toUpperCase());
+        for (int i = 1; i < parts.length; i++) {
+            sb.append(EMSServer.DELIMITER).append(parts[i].trim());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Reads lines until we get one that starts with OK or ERR, which is how the server ends
+     * every response. Returns null if the connection was lost.
+     */
+    private String readResponse() {
+        StringBuilder sb = new StringBuilder();
+        try {
+            String line;
+            do {
+                line = in.readLine();
+                if (line == null || line.equals(EMSServer.DISCONNECTED)) {
+                    return null;
+                }
+                if (sb.length() > 0) {
+                    sb.append("\n");
+                }
+                sb.append(line);
+            } while (!line.startsWith(EMSServer.RESPONSE_OK) && !line.startsWith(EMSServer.RESPONSE_ERR));
+        } catch (IOException ioe) {
+            logger.log(Level.SEVERE, "Error reading from server: " + ioe.getMessage(), ioe);
+            return null;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A command that we've sent, and when we sent it.
+     */
+    private static final class InFlight {
+        private final String command;
+        private final long sendTime;
+
+        private InFlight(String command, long sendTime) {
+            this.command = command;
+            this.sendTime = sendTime;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package ca.corbett.ems.app.client;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A bounded first-in, first-out buffer of messages waiting to be published, used to
+ * hold on to messages that are sent while we are disconnected from the server so that
+ * they can go out once we reconnect. If the buffer fills up, the oldest messages are
+ * discarded to make room, and counted.
+ * <p>
+ *     All methods are thread-safe.
+ * </p>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public final class PublishBuffer {
+
+    /**
+     * If not specified, we hold on to at most this many messages.
+     */
+    public static final int DEFAULT_CAPACITY = 1000;
+
+    private final ArrayDeque<Entry> entries;
+    private final int capacity;
+    private long dropped;
+
+    /**
+     * Creates a buffer with the default capacity.
+     */
+    public PublishBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a buffer that holds at most the given number of messages.
+     *
+     * @param capacity The maximum number of messages to hold.
+     */
+    public PublishBuffer(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.entries = new ArrayDeque<>();
+    }
+
+    /**
+     * Adds a message to the end of the buffer, discarding the oldest message if we are full.
+     *
+     * @param channel The channel the message is for.
+     * @param message The message.
+     * @return false if an older message had to be discarded to make room.
+     */
+    public synchronized boolean offer(String channel, String message) {
+        boolean discarded = false;
+        if (entries.size() >= capacity) {
+            entries.removeFirst();
+            dropped++;
+            discarded = true;
+        }
+        entries.addLast(new Entry(channel, message));
+        return !discarded;
+    }
+
+    /**
+     * Removes and returns everything in the buffer, oldest first.
+     *
+     * @return A list of buffered messages (might be empty).
+     */
+    public synchronized List<Entry> drain() {
+        List<Entry> drained = new ArrayList<>(entries);
+        entries.clear();
+        return drained;
+    }
+
+    /**
+     * Discards everything in the buffer. The discarded messages are not counted as dropped.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Returns the number of messages currently waiting in the buffer.
+     *
+     * @return The number of buffered messages.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the total number of messages that were discarded because the buffer was full.
+     *
+     * @return The number of dropped messages.
+     */
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * A message waiting to be published.
+     */
+    public static final class Entry {
+        private final String channel;
+        private final String message;
+
+        public Entry(String channel, String message) {
+            this.channel = channel;
+            this.message = message;
+        }
+
+        public String getChannel() {
+            return channel;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+}
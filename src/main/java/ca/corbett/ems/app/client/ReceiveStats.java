@@ -0,0 +1,101 @@
+package ca.corbett.ems.app.client;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the messages (and characters) that a subscriber receives, and reports how fast
+ * they're arriving. Each report gives the rate since the previous report, along with
+ * the running totals. Messages are also counted per channel, for subscribers that
+ * listen to more than one.
+ * <p>
+ *     Counting is cheap and thread-safe, so it's fine to invoke record() for every
+ *     message on the thread that receives it, while some other thread asks for reports.
+ * </p>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public final class ReceiveStats {
+
+    private final LongAdder messages = new LongAdder();
+    private final LongAdder chars = new LongAdder();
+    private final Map<String, LongAdder> channelCounts = new ConcurrentHashMap<>();
+    private long lastReportNanos = System.nanoTime();
+    private long lastMessages;
+    private long lastChars;
+
+    /**
+     * Counts one received message.
+     *
+     * @param channel The channel it arrived on.
+     * @param message The message.
+     */
+    public void record(String channel, String message) {
+        messages.increment();
+        chars.add(message.length());
+        channelCounts.computeIfAbsent(channel, c -> new LongAdder()).increment();
+    }
+
+    /**
+     * Returns the total number of messages received so far.
+     *
+     * @return The message count.
+     */
+    public long getMessageCount() {
+        return messages.sum();
+    }
+
+    /**
+     * Returns the number of messages received so far on the given channel.
+     *
+     * @param channel The channel name.
+     * @return The message count for that channel.
+     */
+    public long getMessageCount(String channel) {
+        LongAdder count = channelCounts.get(channel);
+        return count == null ? 0 : count.sum();
+    }
+
+    /**
+     * Returns the number of messages received so far on each channel, one channel per line,
+     * in order by channel name.
+     *
+     * @return Something like "Orders: 1200\nTrades: 45", or a note saying nothing was received.
+     */
+    public String channelSummary() {
+        if (channelCounts.isEmpty()) {
+            return "No messages received.";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, LongAdder> entry : new TreeMap<>(channelCounts).entrySet()) {
+            if (sb.length() > 0) {
+                sb.append('\n');
+            }
+            sb.append(entry.getKey()).append(": ").append(entry.getValue().sum());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns a one-line summary of the receive rate since the previous report, and the totals.
+     *
+     * @return Something like "Received 12000 msg/s (1.4 MB/s); 360000 messages in total".
+     */
+    public synchronized String report() {
+        long now = System.nanoTime();
+        double elapsedSeconds = Math.max(1e-3, (now - lastReportNanos) / 1_000_000_000.0);
+        long messagesNow = messages.sum();
+        long charsNow = chars.sum();
+        String report = String.format("Received %d msg/s (%.1f MB/s); %d messages in total",
+                                      Math.round((messagesNow - lastMessages) / elapsedSeconds),
+                                      (charsNow - lastChars) / elapsedSeconds / (1024 * 1024),
+                                      messagesNow);
+        lastReportNanos = now;
+        lastMessages = messagesNow;
+        lastChars = charsNow;
+        return report;
+    }
+}
@@ -0,0 +1,195 @@
+package ca.corbett.ems.app.config;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.DoubleSupplier;
+import java.util.function.IntConsumer;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/**
+ * The server's tunable settings, by name. Each setting reads and writes a live value
+ * somewhere in the server (such as the PriorityDispatcher's queue limit), so changing
+ * one here takes effect straight away, with no restart. Settings can be changed one at
+ * a time (see ConfigHandler) or loaded from a properties file, where each line is
+ * setting=value.
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public class ServerConfig {
+
+    private final Map<String, Setting> settings = new LinkedHashMap<>();
+
+    /**
+     * Adds a whole number setting.
+     *
+     * @param key    The setting name.
+     * @param min    The smallest allowed value.
+     * @param getter Reads the current value.
+     * @param setter Applies a new value.
+     */
+    public void addInt(String key, int min, IntSupplier getter, IntConsumer setter) {
+        add(key, () -> Integer.toString(getter.getAsInt()), value -> {
+            int number;
+            try {
+                number = Integer.parseInt(value);
+            } catch (NumberFormatException nfe) {
+                throw new IllegalArgumentException("Expected a whole number but got \"" + value + "\"");
+            }
+            if (number < min) {
+                throw new IllegalArgumentException("Expected a number that's " + min + " or more but got \""
+                                                           + value + "\"");
+            }
+            setter.accept(number);
+        });
+    }
+
+    /**
+     * Adds a number setting.
+     *
+     * @param key    The setting name.
+     * @param min    The smallest allowed value.
+     * @param max    The largest allowed value.
+     * @param getter Reads the current value.
+     * @param setter Applies a new value.
+     */
+    public void addDouble(String key, double min, double max, DoubleSupplier getter, DoubleConsumer setter) {
+        add(key, () -> format(getter.getAsDouble()), value -> {
+            double number;
+            try {
+                number = Double.parseDouble(value);
+            } catch (NumberFormatException nfe) {
+                throw new IllegalArgumentException("Expected a number but got \"" + value + "\"");
+            }
+            if (Double.isNaN(number) || number < min || number > max) {
+                throw new IllegalArgumentException("Expected a number from " + format(min) + " to " + format(max)
+                                                           + " but got \"" + value + "\"");
+            }
+            setter.accept(number);
+        });
+    }
+
+    /**
+     * Adds an on/off setting, which accepts true/false, on/off or yes/no.
+     *
+     * @param key    The setting name.
+     * @param getter Reads the current value.
+     * @param setter Applies a new value.
+     */
+    public void addBoolean(String key, BooleanSupplier getter, Consumer<Boolean> setter) {
+        add(key, () -> Boolean.toString(getter.getAsBoolean()), value -> {
+            switch (value.toLowerCase()) {
+                case "true":
+                case "on":
+                case "yes":
+                    setter.accept(true);
+                    break;
+                case "false":
+                case "off":
+                case "no":
+                    setter.accept(false);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Expected true or false but got \"" + value + "\"");
+            }
+        });
+    }
+
+    /**
+     * Adds a setting.
+     *
+     * @param key    The setting name.
+     * @param getter Reads the current value.
+     * @param setter Checks and applies a new value, throwing IllegalArgumentException if it's no good.
+     */
+    public void add(String key, Supplier<String> getter, Consumer<String> setter) {
+        settings.put(key.toLowerCase(), new Setting(getter, setter));
+    }
+
+    /**
+     * Returns the names of all settings, in the order they were added.
+     *
+     * @return The setting names.
+     */
+    public List<String> getKeys() {
+        return new ArrayList<>(settings.keySet());
+    }
+
+    /**
+     * Returns the current value of the given setting.
+     *
+     * @param key The setting name.
+     * @return Its value, or null if there's no such setting.
+     */
+    public String get(String key) {
+        Setting setting = settings.get(key.trim().toLowerCase());
+        return setting == null ? null : setting.getter.get();
+    }
+
+    /**
+     * Changes the given setting.
+     *
+     * @param key   The setting name.
+     * @param value The new value.
+     * @throws IllegalArgumentException If there's no such setting or the value is no good.
+     */
+    public void set(String key, String value) {
+        Setting setting = settings.get(key.trim().toLowerCase());
+        if (setting == null) {
+            throw new IllegalArgumentException("Unknown setting \"" + key.trim() + "\"");
+        }
+        setting.setter.accept(value.trim());
+    }
+
+    /**
+     * Applies every setting in the given properties file. Settings that aren't mentioned
+     * are left alone. A bad line doesn't stop the rest from being applied.
+     *
+     * @param file The file to read.
+     * @return A description of each line that couldn't be applied (empty if all went well).
+     * @throws IOException If the file can't be read.
+     */
+    public List<String> load(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        List<String> problems = new ArrayList<>();
+        for (String key : properties.stringPropertyNames()) {
+            try {
+                set(key, properties.getProperty(key));
+            } catch (IllegalArgumentException iae) {
+                problems.add(key + ": " + iae.getMessage());
+            }
+        }
+        return problems;
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) && !Double.isInfinite(value)
+                ? Long.toString((long) value)
+                : Double.toString(value);
+    }
+
+    private static final class Setting {
+        private final Supplier<String> getter;
+        private final Consumer<String> setter;
+
+        private Setting(Supplier<String> getter, Consumer<String> setter) {
+            this.getter = getter;
+            this.setter = setter;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package ca.corbett.ems.app.delivery;
+
+import ca.corbett.ems.app.channels.ChannelIds;
+import ca.corbett.ems.handlers.AbstractCommandHandler;
+import ca.corbett.ems.server.EMSServer;
+
+/**
+ * Sends a message to a channel given by its id (see ChannelIds and the ALIAS command)
+ * instead of its name: SENDID:id:message, or SENDID_PRIORITY:id:message for a high priority
+ * message. Otherwise this behaves just like SEND and SEND_PRIORITY. Since this is meant for
+ * busy publishers, it picks the command apart by hand rather than with getParts(), and
+ * gets the channel's subscribers from the id's cached list.
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public class ChannelIdSendHandler extends AbstractCommandHandler {
+
+    /**
+     * The name of the command for sending by channel id.
+     */
+    public static final String SENDID = "SENDID";
+
+    /**
+     * The name of the command for sending a high priority message by channel id.
+     */
+    public static final String SENDID_PRIORITY = "SENDID_PRIORITY";
+
+    private final PriorityDispatcher dispatcher;
+    private final ChannelIds channelIds;
+    private final boolean highPriority;
+
+    /**
+     * Creates a handler that sends messages through the given dispatcher.
+     *
+     * @param name         The command name (SENDID or SENDID_PRIORITY).
+     * @param dispatcher   Delivers the messages.
+     * @param channelIds   Maps ids to channels.
+     * @param highPriority Whether messages sent with this command are high priority.
+     */
+    public ChannelIdSendHandler(String name, PriorityDispatcher dispatcher, ChannelIds channelIds,
+                                boolean highPriority) {
+        super(name);
+        this.dispatcher = dispatcher;
+        this.channelIds = channelIds;
+        this.highPriority = highPriority;
+    }
+
+    /**
+     * Adds SENDID and SENDID_PRIORITY to the given server.
+     *
+     * @param server     The server to install on.
+     * @param dispatcher Delivers the messages (see PrioritySendHandler.install()).
+     * @param channelIds Maps ids to channels.
+     */
+    public static void install(EMSServer server, PriorityDispatcher dispatcher, ChannelIds channelIds) {
+        server.registerCommandHandler(new ChannelIdSendHandler(SENDID, dispatcher, channelIds, false));
+        server.registerCommandHandler(new ChannelIdSendHandler(SENDID_PRIORITY, dispatcher, channelIds, true));
+    }
+
+    @Override
+    public int getMinParameterCount() {
+        return 2;
+    }
+
+    @Override
+    public int getMaxParameterCount() {
+        return 2;
+    }
+
+    @Override
+    public String getUsageText() {
+        return name + ":channelId:message";
+    }
+
+    @Override
+    public String getHelpText() {
+        return highPriority
+                ? "Sends a message to the channel with the given id (see ALIAS), ahead of normal traffic."
+                : "Sends a message to the channel with the given id (see ALIAS).";
+    }
+
+    @Override
+    public String handle(EMSServer server, String clientId, String commandLine) {
+        int first = commandLine == null ? -1 : commandLine.indexOf(EMSServer.DELIMITER);
+        int second = first < 0 ? -1 : commandLine.indexOf(EMSServer.DELIMITER, first + 1);
+        if (second < 0 || commandLine.indexOf(EMSServer.DELIMITER, second + 1) >= 0) {
+            return createErrorResponse("Expected 2 parameters (channel id and message)");
+        }
+        int id = parseId(commandLine, first + 1, second);
+        ChannelIds.Route route = id < 0 ? null : channelIds.route(id);
+        if (route == null) {
+            return createErrorResponse("Unknown channel id \"" + commandLine.substring(first + 1, second).trim()
+                                               + "\"");
+        }
+        dispatcher.publish(clientId, route.getName(), commandLine.substring(second + 1), highPriority,
+                           route.getSubscribers());
+        return createOkResponse();
+    }
+
+    /**
+     * Turns a SENDID or SENDID_PRIORITY command into the SEND or SEND_PRIORITY command that
+     * does the same thing, by looking up the channel's name. Ids only mean something to the
+     * server that handed them out, so this is what lets a capture of a publisher that sends
+     * by id be replayed into a different server.
+     *
+     * @param commandLine A command, as received from a client.
+     * @param channelIds  Maps ids to channels.
+     * @return The same command sent by channel name, or null if it isn't a SENDID or
+     *         SENDID_PRIORITY command for a known channel id.
+     */
+    public static String toSendByName(String commandLine, ChannelIds channelIds) {
+        int first = commandLine == null ? -1 : commandLine.indexOf(EMSServer.DELIMITER);
+        if (first < 0) {
+            return null;
+        }
+        String sendCommand;
+        if (first == SENDID.length() && commandLine.regionMatches(true, 0, SENDID, 0, first)) {
+            sendCommand = "SEND";
+        }
+        else if (first == SENDID_PRIORITY.length() && commandLine.regionMatches(true, 0, SENDID_PRIORITY, 0, first)) {
+            sendCommand = PrioritySendHandler.SEND_PRIORITY;
+        }
+        else {
+            return null;
+        }
+        int second = commandLine.indexOf(EMSServer.DELIMITER, first + 1);
+        int id = second < 0 ? -1 : parseId(commandLine, first + 1, second);
+        ChannelIds.Route route = id < 0 ? null : channelIds.route(id);
+        if (route == null) {
+            return null;
+        }
+        return sendCommand + EMSServer.DELIMITER + route.getName() + commandLine.substring(second);
+    }
+
+    /**
+     * Parses the id between the given positions, ignoring surrounding spaces.
+     *
+     * @return The id, or -1 if it isn't a number.
+     */
+    private static int parseId(String s, int start, int end) {
+        while (start < end && s.charAt(start) == ' ') {
+            start++;
+        }
+        while (end > start && s.charAt(end - 1) == ' ') {
+            end--;
+        }
+        if (start == end || end - start > 10) {
+            return -1;
+        }
+        long id = 0;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            id = id * 10 + (c - '0');
+        }
+        return id > Integer.MAX_VALUE ? -1 : (int) id;
+    }
+}
@@ -0,0 +1,617 @@
+package ca.corbett.ems.app.delivery;
+
+import ca.corbett.ems.app.jfr.MessageFanoutEvent;
+import ca.corbett.ems.app.jfr.SlowConsumerDropEvent;
+import ca.corbett.ems.app.trace.MessageEnvelope;
+import ca.corbett.ems.server.ChannelManager;
+import ca.corbett.ems.server.EMSServer;
+import ca.corbett.ems.server.EMSServerSpy;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Delivers channel messages to subscribers through a small outbox per subscriber, with
+ * two lanes: high priority and normal. The stock EMS SEND handler writes to each subscriber
+ * inline, on the publisher's thread, so there is nothing to reorder. Here, SEND just drops
+ * the message into each subscriber's outbox and returns, and a pool of delivery threads
+ * drains the outboxes, one subscriber at a time per thread.
+ * <p>
+ *     When an outbox is drained, high priority messages go first. So that a steady stream
+ *     of them can't hold up normal traffic forever, at most maxHighBurst high priority
+ *     messages are delivered in a row while normal messages are waiting; after that, one
+ *     normal message goes out before the next high priority one. Messages in the same lane
+ *     are always delivered in the order they were sent.
+ * </p>
+ * <p>
+ *     A message is high priority if it was sent with SEND_PRIORITY, or if its channel has
+ *     been marked as a priority channel (see setPriorityChannel()). Each lane holds at most
+ *     maxQueued messages per subscriber; if a subscriber falls that far behind, the oldest
+ *     message in the lane is dropped to make room (and a SlowConsumerDropEvent is emitted).
+ *     On top of that, all the outboxes together hold at most maxRetainedBytes worth of
+ *     messages (counting one byte per character); once that's reached, new messages are
+ *     dropped until the backlog comes down.
+ * </p>
+ * <p>
+ *     If a flight recording is running, each published message emits a MessageFanoutEvent
+ *     that lasts from publish() until the message has been delivered to (or dropped for)
+ *     the last of its subscribers.
+ * </p>
+ * <p>
+ *     Add the dispatcher to the server with PrioritySendHandler.install(), which also
+ *     registers it as a server spy so that each client's outbox is created when it connects
+ *     and thrown away when it disconnects. Messages for a client that has no outbox are
+ *     simply dropped, so this has to happen before the server is started.
+ * </p>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public class PriorityDispatcher implements EMSServerSpy {
+
+    private static final Logger logger = Logger.getLogger(PriorityDispatcher.class.getName());
+
+    /**
+     * If not specified, at most this many high priority messages are delivered in a row
+     * to one subscriber while normal messages are waiting.
+     */
+    public static final int DEFAULT_MAX_HIGH_BURST = 16;
+
+    /**
+     * If not specified, each lane of each subscriber's outbox holds at most this many messages.
+     */
+    public static final int DEFAULT_MAX_QUEUED = 10_000;
+
+    /**
+     * If not specified, all the outboxes together hold at most this many bytes of messages.
+     */
+    public static final long DEFAULT_MAX_RETAINED_BYTES = 64L * 1024 * 1024;
+
+    /**
+     * If not specified, a delivery thread moves on to another subscriber after this many
+     * messages, so that one busy subscriber can't keep a thread to itself.
+     */
+    public static final int DEFAULT_DRAIN_BATCH = 256;
+
+    private final EMSServer server;
+    private volatile int maxHighBurst;
+    private volatile int maxQueued;
+    private volatile long maxRetainedBytes;
+    private volatile int drainBatch = DEFAULT_DRAIN_BATCH;
+    private final ThreadPoolExecutor pool;
+    private final Map<String, Outbox> outboxes = new ConcurrentHashMap<>();
+    private final Set<String> priorityChannels = ConcurrentHashMap.newKeySet();
+    private final LongAdder deliveredHigh = new LongAdder();
+    private final LongAdder deliveredNormal = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicLong retainedBytes = new AtomicLong();
+
+    /**
+     * Creates a PriorityDispatcher for the given server with default limits.
+     *
+     * @param server The server whose clients we deliver to.
+     */
+    public PriorityDispatcher(EMSServer server) {
+        this(server, DEFAULT_MAX_HIGH_BURST, DEFAULT_MAX_QUEUED, DEFAULT_MAX_RETAINED_BYTES);
+    }
+
+    /**
+     * Creates a PriorityDispatcher for the given server.
+     *
+     * @param server           The server whose clients we deliver to.
+     * @param maxHighBurst     How many high priority messages to deliver in a row while normal ones wait.
+     * @param maxQueued        How many messages each lane of each outbox can hold.
+     * @param maxRetainedBytes How many bytes of messages all the outboxes together can hold.
+     */
+    public PriorityDispatcher(EMSServer server, int maxHighBurst, int maxQueued, long maxRetainedBytes) {
+        this.server = server;
+        this.maxHighBurst = Math.max(1, maxHighBurst);
+        this.maxQueued = Math.max(1, maxQueued);
+        this.maxRetainedBytes = Math.max(1, maxRetainedBytes);
+        AtomicInteger threadCount = new AtomicInteger();
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        pool = (ThreadPoolExecutor) Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "ems-delivery-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queues up a message for every given subscriber except the sender. The line that goes
+     * out to subscribers is put together once and shared by all of them.
+     *
+     * @param senderId     The client that sent the message, which doesn't get a copy.
+     * @param channel      The (sanitized) channel the message was sent on.
+     * @param message      The message.
+     * @param highPriority Whether the sender asked for high priority. Messages on priority
+     *                     channels are high priority regardless.
+     * @param subscribers  The channel's subscribers.
+     */
+    public void publish(String senderId, String channel, String message, boolean highPriority,
+                        List<String> subscribers) {
+        Delivery delivery = null;
+        for (String subscriber : subscribers) {
+            if (subscriber.equals(senderId)) {
+                continue;
+            }
+            if (delivery == null) {
+                delivery = new Delivery(senderId, channel, message,
+                                        highPriority || priorityChannels.contains(channel));
+            }
+            delivery.addRecipient();
+            enqueue(subscriber, delivery);
+        }
+        if (delivery != null) {
+            // Let go of the hold that kept the fan-out from finishing while we were still queueing:
+            delivery.finished(true);
+        }
+    }
+
+    private void enqueue(String clientId, Delivery delivery) {
+        if (retainedBytes.get() + delivery.size > maxRetainedBytes) {
+            dropped.increment();
+            SlowConsumerDropEvent.emit(clientId, delivery.channel, 1, "retained bytes cap reached");
+            delivery.finished(false);
+            return;
+        }
+        Outbox outbox = outboxes.get(clientId);
+        if (outbox == null) {
+            // Outboxes only come and go with their clients; if it's not there, the client
+            // has just disconnected (or we've been shut down), and there's nobody to deliver to.
+            delivery.finished(false);
+            return;
+        }
+        if (outbox.offer(delivery)) {
+            try {
+                pool.execute(outbox);
+            } catch (RejectedExecutionException ree) {
+                // We've been shut down; nothing more will be delivered.
+                outbox.clear();
+            }
+        }
+    }
+
+    /**
+     * Marks or unmarks the given channel as a priority channel. Everything sent on a priority
+     * channel is delivered as high priority.
+     *
+     * @param channel  The channel name.
+     * @param priority Whether the channel should be a priority channel.
+     */
+    public void setPriorityChannel(String channel, boolean priority) {
+        String name = ChannelManager.sanitizeChannelName(channel);
+        if (priority) {
+            priorityChannels.add(name);
+        }
+        else {
+            priorityChannels.remove(name);
+        }
+    }
+
+    /**
+     * Reports whether the given channel is a priority channel.
+     *
+     * @param channel The channel name.
+     * @return true if everything sent on it is delivered as high priority.
+     */
+    public boolean isPriorityChannel(String channel) {
+        return priorityChannels.contains(ChannelManager.sanitizeChannelName(channel));
+    }
+
+    /**
+     * Returns the priority channels, in alphabetical order.
+     *
+     * @return The names of all priority channels.
+     */
+    public List<String> getPriorityChannels() {
+        List<String> list = new ArrayList<>(priorityChannels);
+        Collections.sort(list);
+        return list;
+    }
+
+    /**
+     * Changes how many delivery threads there are. This takes effect straight away; if there
+     * are fewer threads than before, the extra ones finish what they're doing first.
+     *
+     * @param threads The number of delivery threads (at least 1).
+     */
+    public void setDeliveryThreads(int threads) {
+        threads = Math.max(1, threads);
+        synchronized (pool) {
+            if (threads > pool.getMaximumPoolSize()) {
+                pool.setMaximumPoolSize(threads);
+                pool.setCorePoolSize(threads);
+            }
+            else {
+                pool.setCorePoolSize(threads);
+                pool.setMaximumPoolSize(threads);
+            }
+        }
+    }
+
+    public int getDeliveryThreads() {
+        return pool.getCorePoolSize();
+    }
+
+    /**
+     * Changes how many high priority messages are delivered in a row while normal ones wait.
+     *
+     * @param maxHighBurst The new limit (at least 1).
+     */
+    public void setMaxHighBurst(int maxHighBurst) {
+        this.maxHighBurst = Math.max(1, maxHighBurst);
+    }
+
+    public int getMaxHighBurst() {
+        return maxHighBurst;
+    }
+
+    /**
+     * Changes how many messages each lane of each outbox can hold. If this is lower than
+     * before, lanes that are already longer are trimmed as new messages arrive.
+     *
+     * @param maxQueued The new limit (at least 1).
+     */
+    public void setMaxQueued(int maxQueued) {
+        this.maxQueued = Math.max(1, maxQueued);
+    }
+
+    public int getMaxQueued() {
+        return maxQueued;
+    }
+
+    /**
+     * Changes how many bytes of messages all the outboxes together can hold.
+     *
+     * @param maxRetainedBytes The new limit (at least 1).
+     */
+    public void setMaxRetainedBytes(long maxRetainedBytes) {
+        this.maxRetainedBytes = Math.max(1, maxRetainedBytes);
+    }
+
+    public long getMaxRetainedBytes() {
+        return maxRetainedBytes;
+    }
+
+    /**
+     * Changes how many messages a delivery thread sends to one subscriber before giving
+     * the others a turn. Bigger batches are a little more efficient; smaller ones are fairer.
+     *
+     * @param drainBatch The new batch size (at least 1).
+     */
+    public void setDrainBatch(int drainBatch) {
+        this.drainBatch = Math.max(1, drainBatch);
+    }
+
+    public int getDrainBatch() {
+        return drainBatch;
+    }
+
+    /**
+     * Returns a one-line summary of what we've delivered and dropped so far, and how much
+     * is currently waiting.
+     *
+     * @return Something like "delivered_high=10 delivered_normal=500 dropped=0 queued=3 retained_bytes=120".
+     */
+    public String getStats() {
+        return "delivered_high=" + deliveredHigh.sum() + " delivered_normal=" + deliveredNormal.sum()
+                + " dropped=" + dropped.sum() + " queued=" + getQueuedCount()
+                + " retained_bytes=" + retainedBytes.get();
+    }
+
+    /**
+     * Returns how many messages have been delivered so far, in both lanes.
+     *
+     * @return The delivery count.
+     */
+    public long getDeliveredCount() {
+        return deliveredHigh.sum() + deliveredNormal.sum();
+    }
+
+    /**
+     * Returns how many messages have been dropped so far, because a subscriber fell too far
+     * behind or the retained bytes cap was reached.
+     *
+     * @return The drop count.
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Returns how many messages are currently waiting in all the outboxes together.
+     *
+     * @return The number of undelivered messages.
+     */
+    public long getQueuedCount() {
+        long queued = 0;
+        for (Outbox outbox : outboxes.values()) {
+            queued += outbox.size();
+        }
+        return queued;
+    }
+
+    /**
+     * Reports whether every outbox has been emptied, and the last message taken from each
+     * has been sent on.
+     *
+     * @return true if there's nothing left to deliver.
+     */
+    public boolean isIdle() {
+        for (Outbox outbox : outboxes.values()) {
+            if (!outbox.isIdle()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stops delivering. Anything still waiting in an outbox is discarded, and anything
+     * published after this is dropped.
+     *
+     * @return How many messages were discarded.
+     */
+    public long shutdown() {
+        pool.shutdownNow();
+        server.removeServerSpy(this);
+        long discarded = 0;
+        for (Outbox outbox : outboxes.values()) {
+            discarded += outbox.size();
+            outbox.clear();
+        }
+        outboxes.clear();
+        return discarded;
+    }
+
+    @Override
+    public void messageReceived(EMSServer server, String clientId, String rawMessage) {
+        //ignored
+    }
+
+    @Override
+    public void messageSent(EMSServer server, String clientId, String rawMessage) {
+        //ignored
+    }
+
+    @Override
+    public void clientConnected(EMSServer server, String clientId) {
+        outboxes.putIfAbsent(clientId, new Outbox(clientId));
+    }
+
+    @Override
+    public void clientDisconnected(EMSServer server, String clientId) {
+        Outbox outbox = outboxes.remove(clientId);
+        if (outbox != null) {
+            outbox.clear();
+        }
+    }
+
+    /**
+     * Sends one message on to its subscriber. If it's a traced message, this is the moment
+     * it's actually dispatched, so we update its dispatch timestamp.
+     */
+    private void deliver(String clientId, Delivery delivery) {
+        String line = delivery.line;
+        if (MessageEnvelope.isEnvelope(delivery.message)) {
+            MessageEnvelope envelope = MessageEnvelope.parse(delivery.message);
+            if (envelope != null && envelope.getServerReceiveMicros() > 0) {
+                line = delivery.channel + EMSServer.DELIMITER
+                        + MessageEnvelope.stampServer(delivery.message, envelope.getServerReceiveMicros(),
+                                                      MessageEnvelope.nowMicros());
+            }
+        }
+        server.sendToClient(clientId, line);
+        if (delivery.high) {
+            deliveredHigh.increment();
+        }
+        else {
+            deliveredNormal.increment();
+        }
+    }
+
+    /**
+     * One message waiting to be delivered, possibly to several subscribers. If a recording is
+     * running, it also carries the MessageFanoutEvent for the message, which is finished off
+     * by whichever thread deals with the last of its subscribers. The pending count starts at
+     * one, for publish() itself, so that can't happen before every subscriber has been queued.
+     */
+    private static final class Delivery {
+        private final String channel;
+        private final String message;
+        private final String line;
+        private final boolean high;
+        private final int size;
+        private final MessageFanoutEvent fanout;
+        private final AtomicInteger pending;
+        private final AtomicInteger droppedFor;
+
+        private Delivery(String senderId, String channel, String message, boolean high) {
+            this.channel = channel;
+            this.message = message;
+            this.line = channel + EMSServer.DELIMITER + message;
+            this.high = high;
+            this.size = line.length();
+            MessageFanoutEvent event = new MessageFanoutEvent();
+            if (event.isEnabled()) {
+                event.clientId = senderId;
+                event.channel = channel;
+                event.size = size;
+                event.begin();
+                fanout = event;
+                pending = new AtomicInteger(1);
+                droppedFor = new AtomicInteger();
+            }
+            else {
+                fanout = null;
+                pending = null;
+                droppedFor = null;
+            }
+        }
+
+        private void addRecipient() {
+            if (fanout != null) {
+                fanout.subscriberCount++;
+                pending.incrementAndGet();
+            }
+        }
+
+        /**
+         * Notes that one subscriber has been dealt with, and if it was the last, ends and
+         * commits the fan-out event.
+         *
+         * @param delivered false if the message was dropped instead of delivered.
+         */
+        private void finished(boolean delivered) {
+            if (fanout == null) {
+                return;
+            }
+            if (!delivered) {
+                droppedFor.incrementAndGet();
+            }
+            if (pending.decrementAndGet() == 0) {
+                fanout.end();
+                if (fanout.shouldCommit()) {
+                    fanout.droppedCount = droppedFor.get();
+                    fanout.commit();
+                }
+            }
+        }
+    }
+
+    /**
+     * The messages waiting for one subscriber. Whenever there's something in it, exactly one
+     * drain task for it is either running or waiting to run in our pool, which keeps deliveries
+     * to each subscriber in order without giving every subscriber its own thread.
+     */
+    private final class Outbox implements Runnable {
+        private final String clientId;
+        private final ArrayDeque<Delivery> high = new ArrayDeque<>();
+        private final ArrayDeque<Delivery> normal = new ArrayDeque<>();
+        private int highStreak;
+        private boolean scheduled;
+
+        private Outbox(String clientId) {
+            this.clientId = clientId;
+        }
+
+        /**
+         * Adds a message to the right lane.
+         *
+         * @return true if the caller needs to schedule a drain task.
+         */
+        private synchronized boolean offer(Delivery delivery) {
+            ArrayDeque<Delivery> lane = delivery.high ? high : normal;
+            while (lane.size() >= maxQueued) {
+                Delivery oldest = lane.poll();
+                retainedBytes.addAndGet(-oldest.size);
+                dropped.increment();
+                SlowConsumerDropEvent.emit(clientId, oldest.channel, 1,
+                                           (delivery.high ? "high" : "normal") + " priority queue full");
+                oldest.finished(false);
+            }
+            lane.add(delivery);
+            retainedBytes.addAndGet(delivery.size);
+            if (scheduled) {
+                return false;
+            }
+            scheduled = true;
+            return true;
+        }
+
+        /**
+         * Picks the next message to deliver: high priority first, unless normal messages
+         * have already waited through maxHighBurst of them.
+         */
+        private synchronized Delivery poll() {
+            Delivery next;
+            if (!high.isEmpty() && (normal.isEmpty() || highStreak < maxHighBurst)) {
+                highStreak++;
+                next = high.poll();
+            }
+            else {
+                highStreak = 0;
+                next = normal.poll();
+            }
+            if (next == null) {
+                scheduled = false;
+            }
+            else {
+                retainedBytes.addAndGet(-next.size);
+            }
+            return next;
+        }
+
+        private synchronized int size() {
+            return high.size() + normal.size();
+        }
+
+        /**
+         * Reports whether this outbox has no drain task running or waiting to run,
+         * which means everything put into it has been sent on.
+         */
+        private synchronized boolean isIdle() {
+            return !scheduled;
+        }
+
+        /**
+         * Throws away everything waiting. This is only done once the outbox has been taken
+         * out of the map, so it's also marked as not scheduled: any drain task still in the
+         * pool will find it empty, and nothing will ever schedule it again.
+         */
+        private synchronized void clear() {
+            for (Delivery delivery : high) {
+                retainedBytes.addAndGet(-delivery.size);
+                delivery.finished(false);
+            }
+            for (Delivery delivery : normal) {
+                retainedBytes.addAndGet(-delivery.size);
+                delivery.finished(false);
+            }
+            high.clear();
+            normal.clear();
+            highStreak = 0;
+            scheduled = false;
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0, batch = drainBatch; i < batch; i++) {
+                Delivery next = poll();
+                if (next == null) {
+                    return;
+                }
+                boolean delivered = false;
+                try {
+                    deliver(clientId, next);
+                    delivered = true;
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "Unable to deliver to " + clientId + ": " + e.getMessage(), e);
+                }
+                next.finished(delivered);
+            }
+
+            // Give other subscribers a turn, and come back to this one later:
+            try {
+                pool.execute(this);
+            } catch (RejectedExecutionException ree) {
+                // We've been shut down.
+                clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package ca.corbett.ems.app.delivery;
+
+import ca.corbett.ems.handlers.AbstractCommandHandler;
+import ca.corbett.ems.server.ChannelManager;
+import ca.corbett.ems.server.EMSServer;
+
+import java.util.List;
+
+/**
+ * Replaces the stock SEND handler with one that hands each message to a PriorityDispatcher
+ * instead of writing it to every subscriber inline. The same class also provides
+ * SEND_PRIORITY, which takes exactly the same parameters but marks the message as high
+ * priority. Either way, the sender gets its OK as soon as the message is queued, and
+ * (as with the stock handler) doesn't get a copy of its own message.
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public class PrioritySendHandler extends AbstractCommandHandler {
+
+    /**
+     * The name of the command for sending a high priority message.
+     */
+    public static final String SEND_PRIORITY = "SEND_PRIORITY";
+
+    /**
+     * Every command that publishes a message to a channel, for anything that needs to wrap
+     * them all (see DelegatingCommandHandler.wrap()).
+     */
+    public static final List<String> PUBLISH_COMMANDS = List.of(
+            "SEND",
+            SEND_PRIORITY,
+            ChannelIdSendHandler.SENDID,
+            ChannelIdSendHandler.SENDID_PRIORITY
+    );
+
+    private final PriorityDispatcher dispatcher;
+    private final boolean highPriority;
+
+    /**
+     * Creates a handler that sends messages through the given dispatcher.
+     *
+     * @param name         The command name (SEND or SEND_PRIORITY).
+     * @param dispatcher   Delivers the messages.
+     * @param highPriority Whether messages sent with this command are high priority.
+     */
+    public PrioritySendHandler(String name, PriorityDispatcher dispatcher, boolean highPriority) {
+        super(name);
+        this.dispatcher = dispatcher;
+        this.highPriority = highPriority;
+    }
+
+    /**
+     * Replaces the SEND handler on the given server, and adds SEND_PRIORITY, both backed
+     * by the given dispatcher. The dispatcher is also added as a server spy. Do this before
+     * anything else that wraps SEND, such as TracingSendHandler.install().
+     *
+     * @param server     The server to install on.
+     * @param dispatcher Delivers the messages.
+     */
+    public static void install(EMSServer server, PriorityDispatcher dispatcher) {
+        server.removeCommandHandler("SEND");
+        server.registerCommandHandler(new PrioritySendHandler("SEND", dispatcher, false));
+        server.registerCommandHandler(new PrioritySendHandler(SEND_PRIORITY, dispatcher, true));
+        server.addServerSpy(dispatcher);
+    }
+
+    @Override
+    public int getMinParameterCount() {
+        return 2;
+    }
+
+    @Override
+    public int getMaxParameterCount() {
+        return 2;
+    }
+
+    @Override
+    public String getUsageText() {
+        return name + ":channel:message";
+    }
+
+    @Override
+    public String getHelpText() {
+        return highPriority
+                ? "Sends a message to the specified channel, ahead of normal traffic."
+                : "Sends a message to the specified channel.";
+    }
+
+    @Override
+    public String handle(EMSServer server, String clientId, String commandLine) {
+        String[] parts = getParts(commandLine);
+        if (parts == null || parts.length != 3) {
+            return createErrorResponse("Expected 2 parameters (channel name and message)");
+        }
+        String channel = ChannelManager.sanitizeChannelName(parts[1]);
+        dispatcher.publish(clientId, channel, parts[2], highPriority,
+                           ChannelManager.getInstance().getSubscribers(channel));
+        return createOkResponse();
+    }
+}
@@ -0,0 +1,273 @@
+package ca.corbett.ems.app.drain;
+
+import ca.corbett.ems.app.delivery.PriorityDispatcher;
+import ca.corbett.ems.server.EMSServer;
+import ca.corbett.ems.server.EMSServerSpy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Shuts a server down without losing the messages it has already accepted. Stopping
+ * the server outright (as the HALT command used to) throws away everything still waiting
+ * in the PriorityDispatcher's outboxes. Draining instead goes through these steps:
+ * <ol>
+ *     <li>Stop taking new work: publish commands are turned down (see DrainGateHandler),
+ *     and clients that connect from now on are told to disconnect straight away.</li>
+ *     <li>Wait, up to the flush timeout, for every subscriber's pending deliveries to go out.</li>
+ *     <li>Run any finishing steps that were added with addFinisher(), such as closing a
+ *     capture file.</li>
+ *     <li>Tell every client to disconnect, all at once, and wait up to the close timeout
+ *     for them to go. Then stop the server, which cuts off whoever is left.</li>
+ * </ol>
+ * <p>
+ *     EMS doesn't let us close the listening socket on its own, so new connections are
+ *     still accepted while draining; they just don't get to do anything. Draining happens
+ *     at most once: if it's asked for again (for example, by the shutdown hook after a
+ *     HALT), the second caller just waits for the first one to finish.
+ * </p>
+ * <p>
+ *     Add this to the server as a server spy before starting it, so it knows who's connected.
+ * </p>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public class DrainController implements EMSServerSpy {
+
+    private static final Logger logger = Logger.getLogger(DrainController.class.getName());
+
+    /**
+     * If not specified, we wait this long for pending deliveries to go out.
+     */
+    public static final long DEFAULT_FLUSH_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * If not specified, we wait this long for clients to disconnect once they've been asked to.
+     */
+    public static final long DEFAULT_CLOSE_TIMEOUT_MILLIS = 2000;
+
+    private static final int MAX_CLOSE_THREADS = 8;
+
+    private final EMSServer server;
+    private final PriorityDispatcher dispatcher;
+    private final long flushTimeoutMillis;
+    private final long closeTimeoutMillis;
+    private final Set<String> connected = ConcurrentHashMap.newKeySet();
+    private final Set<String> lateArrivals = ConcurrentHashMap.newKeySet();
+    private final List<Runnable> finishers = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private final LongAdder refusedPublishes = new LongAdder();
+    private volatile boolean draining;
+    private volatile String report;
+
+    /**
+     * Creates a DrainController with the default timeouts.
+     *
+     * @param server     The server to drain.
+     * @param dispatcher Delivers the server's messages.
+     */
+    public DrainController(EMSServer server, PriorityDispatcher dispatcher) {
+        this(server, dispatcher, DEFAULT_FLUSH_TIMEOUT_MILLIS, DEFAULT_CLOSE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Creates a DrainController.
+     *
+     * @param server             The server to drain.
+     * @param dispatcher         Delivers the server's messages.
+     * @param flushTimeoutMillis The longest to wait for pending deliveries to go out.
+     * @param closeTimeoutMillis The longest to wait for clients to disconnect.
+     */
+    public DrainController(EMSServer server, PriorityDispatcher dispatcher, long flushTimeoutMillis,
+                           long closeTimeoutMillis) {
+        this.server = server;
+        this.dispatcher = dispatcher;
+        this.flushTimeoutMillis = Math.max(0, flushTimeoutMillis);
+        this.closeTimeoutMillis = Math.max(0, closeTimeoutMillis);
+    }
+
+    /**
+     * Adds a step to run once pending deliveries have gone out, but before clients are
+     * disconnected. Use this to save anything that should survive a restart.
+     *
+     * @param finisher The step to run.
+     */
+    public void addFinisher(Runnable finisher) {
+        finishers.add(finisher);
+    }
+
+    /**
+     * Reports whether the server is draining (or has been drained), in which case it
+     * shouldn't take on any new work.
+     *
+     * @return true once drain() has been called.
+     */
+    public boolean isDraining() {
+        return draining;
+    }
+
+    /**
+     * Counts a publish command that was turned down because we're draining.
+     */
+    void publishRefused() {
+        refusedPublishes.increment();
+    }
+
+    /**
+     * Drains the server and then stops it. This blocks until it's done, which takes at most
+     * about the flush timeout plus the close timeout.
+     *
+     * @param requesterId The client that asked for this (it's waiting on us, so we don't wait
+     *                    for it to disconnect), or null if it wasn't a client.
+     * @return A one-line report of what happened to the pending messages and connections.
+     */
+    public String drain(String requesterId) {
+        if (!started.compareAndSet(false, true)) {
+            try {
+                finished.await(flushTimeoutMillis + closeTimeoutMillis + 1000, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            return report;
+        }
+
+        try {
+            long startTime = System.nanoTime();
+            draining = true;
+            long deliveredBefore = dispatcher.getDeliveredCount();
+            long droppedBefore = dispatcher.getDroppedCount();
+
+            // Let the pending deliveries go out:
+            boolean flushed = await(dispatcher::isIdle, flushTimeoutMillis);
+            long flushedCount = dispatcher.getDeliveredCount() - deliveredBefore;
+
+            for (Runnable finisher : finishers) {
+                try {
+                    finisher.run();
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "Drain finishing step failed: " + e.getMessage(), e);
+                }
+            }
+
+            // Ask everybody to leave at once, so one slow client can't hold up the rest:
+            List<String> clients = new ArrayList<>(connected);
+            clients.remove(requesterId);
+            int leftBefore = clients.size();
+            tellToLeave(clients);
+            await(() -> connectedExcept(requesterId) == 0, closeTimeoutMillis);
+            int forced = connectedExcept(requesterId);
+
+            if (server.isUp()) {
+                server.stopServer();
+            }
+            long dropped = dispatcher.getDroppedCount() - droppedBefore + dispatcher.shutdown();
+
+            report = String.format("Drained in %dms: %d message(s) flushed, %d dropped%s; %d publish(es) refused;"
+                                           + " %d connection(s) closed, %d cut off.",
+                                   TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime), flushedCount,
+                                   dropped, flushed ? "" : " (flush timed out)", refusedPublishes.sum(),
+                                   Math.max(0, leftBefore - forced), forced);
+            return report;
+        } finally {
+            finished.countDown();
+        }
+    }
+
+    @Override
+    public void messageReceived(EMSServer server, String clientId, String rawMessage) {
+        //ignored
+    }
+
+    @Override
+    public void messageSent(EMSServer server, String clientId, String rawMessage) {
+        //ignored
+    }
+
+    @Override
+    public void clientConnected(EMSServer server, String clientId) {
+        connected.add(clientId);
+        if (draining) {
+            lateArrivals.add(clientId);
+        }
+    }
+
+    @Override
+    public void clientDisconnected(EMSServer server, String clientId) {
+        connected.remove(clientId);
+        lateArrivals.remove(clientId);
+    }
+
+    /**
+     * Sends the disconnect notice to each of the given clients, in parallel. Each client
+     * disconnects itself when it gets it.
+     */
+    private void tellToLeave(List<String> clients) {
+        if (clients.isEmpty()) {
+            return;
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService closer = Executors.newFixedThreadPool(Math.min(MAX_CLOSE_THREADS, clients.size()), r -> {
+            Thread thread = new Thread(r, "ems-drain-close-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (String clientId : clients) {
+            closer.execute(() -> server.sendToClient(clientId, EMSServer.DISCONNECTED));
+        }
+        closer.shutdown();
+    }
+
+    /**
+     * Tells anybody who connected after we started draining to go away.
+     */
+    private void turnAwayLateArrivals() {
+        if (lateArrivals.isEmpty()) {
+            return;
+        }
+        List<String> late = new ArrayList<>(lateArrivals);
+        lateArrivals.removeAll(late);
+        tellToLeave(late);
+    }
+
+    private int connectedExcept(String clientId) {
+        return connected.size() - (clientId != null && connected.contains(clientId) ? 1 : 0);
+    }
+
+    /**
+     * Waits until the given condition is true or we run out of time, turning away
+     * newcomers in the meantime.
+     *
+     * @return true if the condition came true in time.
+     */
+    private boolean await(BooleanSupplier condition, long timeoutMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            turnAwayLateArrivals();
+        }
+        return true;
+    }
+}
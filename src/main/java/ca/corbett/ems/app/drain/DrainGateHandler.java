@@ -0,0 +1,45 @@
+package ca.corbett.ems.app.drain;
+
+import ca.corbett.ems.app.delivery.PrioritySendHandler;
+import ca.corbett.ems.app.handlers.DelegatingCommandHandler;
+import ca.corbett.ems.handlers.AbstractCommandHandler;
+import ca.corbett.ems.server.EMSServer;
+
+/**
+ * Wraps one of the server's publishing handlers (SEND and friends), and turns messages
+ * away with an error once the server has started draining (see DrainController), so that
+ * nothing new is accepted while pending deliveries are flushed.
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public class DrainGateHandler extends DelegatingCommandHandler {
+
+    private final DrainController drainController;
+
+    public DrainGateHandler(AbstractCommandHandler delegate, DrainController drainController) {
+        super(delegate);
+        this.drainController = drainController;
+    }
+
+    /**
+     * Wraps all of the publishing handlers on the given server (whichever it has) with
+     * DrainGateHandlers, and adds the controller as a server spy.
+     *
+     * @param server          The server to install on.
+     * @param drainController Says when we're draining.
+     */
+    public static void install(EMSServer server, DrainController drainController) {
+        wrap(server, PrioritySendHandler.PUBLISH_COMMANDS, send -> new DrainGateHandler(send, drainController));
+        server.addServerSpy(drainController);
+    }
+
+    @Override
+    public String handle(EMSServer server, String clientId, String commandLine) {
+        if (drainController.isDraining()) {
+            drainController.publishRefused();
+            return createErrorResponse("Server is shutting down");
+        }
+        return delegate.handle(server, clientId, commandLine);
+    }
+}
@@ -0,0 +1,56 @@
+package ca.corbett.ems.app.handlers;
+
+import ca.corbett.ems.app.channels.ChannelIds;
+import ca.corbett.ems.handlers.AbstractCommandHandler;
+import ca.corbett.ems.server.EMSServer;
+
+/**
+ * Returns the compact id for a channel (see ChannelIds), which can then be used with
+ * SENDID and SENDID_PRIORITY instead of the channel name. Asking again for the same
+ * channel returns the same id, for as long as the id is in use.
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public class AliasHandler extends AbstractCommandHandler {
+
+    private final ChannelIds channelIds;
+
+    public AliasHandler(ChannelIds channelIds) {
+        super("ALIAS");
+        this.channelIds = channelIds;
+    }
+
+    @Override
+    public int getMinParameterCount() {
+        return 1;
+    }
+
+    @Override
+    public int getMaxParameterCount() {
+        return 1;
+    }
+
+    @Override
+    public String getUsageText() {
+        return name + ":channel";
+    }
+
+    @Override
+    public String getHelpText() {
+        return "Returns the id of the given channel, for use with SENDID.";
+    }
+
+    @Override
+    public String handle(EMSServer server, String clientId, String commandLine) {
+        String[] parts = getParts(commandLine);
+        if (parts == null || parts.length != 2 || parts[1].isBlank()) {
+            return createErrorResponse("Expected 1 parameter (channel name)");
+        }
+        int id = channelIds.assign(parts[1]);
+        if (id < 0) {
+            return createErrorResponse("Too many channel ids in use; send by channel name instead");
+        }
+        return createOkResponse(Integer.toString(id));
+    }
+}
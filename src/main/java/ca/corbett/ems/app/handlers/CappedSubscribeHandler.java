@@ -0,0 +1,46 @@
+package ca.corbett.ems.app.handlers;
+
+import ca.corbett.ems.app.channels.ChannelRegistry;
+import ca.corbett.ems.handlers.AbstractCommandHandler;
+import ca.corbett.ems.server.ChannelManager;
+import ca.corbett.ems.server.EMSServer;
+
+import java.util.List;
+
+/**
+ * Wraps the server's SUB handler, and refuses to create a new channel once the
+ * ChannelRegistry's channel cap has been reached. Subscribing to a channel that
+ * already exists always works.
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public class CappedSubscribeHandler extends DelegatingCommandHandler {
+
+    private final ChannelRegistry registry;
+
+    public CappedSubscribeHandler(AbstractCommandHandler delegate, ChannelRegistry registry) {
+        super(delegate);
+        this.registry = registry;
+    }
+
+    /**
+     * Replaces the SUB handler on the given server with a CappedSubscribeHandler.
+     *
+     * @param server   The server to install on.
+     * @param registry Decides whether there's room for another channel.
+     */
+    public static void install(EMSServer server, ChannelRegistry registry) {
+        wrap(server, List.of("SUB"), subscribe -> new CappedSubscribeHandler(subscribe, registry));
+    }
+
+    @Override
+    public String handle(EMSServer server, String clientId, String commandLine) {
+        String[] parts = getParts(commandLine);
+        if (parts != null && parts.length == 2
+                && !registry.admit(ChannelManager.sanitizeChannelName(parts[1]))) {
+            return createErrorResponse("Channel limit of " + registry.getMaxChannels() + " reached");
+        }
+        return delegate.handle(server, clientId, commandLine);
+    }
+}
@@ -0,0 +1,106 @@
+package ca.corbett.ems.app.handlers;
+
+import ca.corbett.ems.app.config.ServerConfig;
+import ca.corbett.ems.handlers.AbstractCommandHandler;
+import ca.corbett.ems.server.EMSServer;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Shows or changes the server's settings (see ServerConfig) while it's running.
+ * <ul>
+ *     <li>CONFIG or CONFIG:GET lists every setting as setting=value.</li>
+ *     <li>CONFIG:GET:setting returns the value of one setting.</li>
+ *     <li>CONFIG:SET:setting:value changes one setting.</li>
+ *     <li>CONFIG:RELOAD reads the server's properties file again, if it has one.</li>
+ * </ul>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public class ConfigHandler extends AbstractCommandHandler {
+
+    private final ServerConfig config;
+    private final Path configFile;
+
+    /**
+     * Creates a ConfigHandler.
+     *
+     * @param config     The server's settings.
+     * @param configFile The properties file the settings were loaded from, or null for none.
+     */
+    public ConfigHandler(ServerConfig config, Path configFile) {
+        super("CONFIG");
+        this.config = config;
+        this.configFile = configFile;
+    }
+
+    @Override
+    public int getMinParameterCount() {
+        return 0;
+    }
+
+    @Override
+    public int getMaxParameterCount() {
+        return 3;
+    }
+
+    @Override
+    public String getUsageText() {
+        return name + "[:GET[:setting]|:SET:setting:value|:RELOAD]";
+    }
+
+    @Override
+    public String getHelpText() {
+        return "Shows or changes server settings, or reloads them from the config file.";
+    }
+
+    @Override
+    public String handle(EMSServer server, String clientId, String commandLine) {
+        String[] parts = getParts(commandLine);
+        String action = parts == null || parts.length < 2 ? "GET" : parts[1].trim().toUpperCase();
+        switch (action) {
+            case "GET":
+                if (parts == null || parts.length < 3 || parts[2].isBlank()) {
+                    StringBuilder sb = new StringBuilder();
+                    for (String key : config.getKeys()) {
+                        sb.append(key).append('=').append(config.get(key)).append('\n');
+                    }
+                    return createOkResponse(sb.toString().stripTrailing());
+                }
+                String value = config.get(parts[2]);
+                return value == null
+                        ? createErrorResponse("Unknown setting \"" + parts[2].trim() + "\"")
+                        : createOkResponse(value);
+
+            case "SET":
+                if (parts.length < 4 || parts[2].isBlank() || parts[3].isBlank()) {
+                    return createErrorResponse("Expected a setting and a value");
+                }
+                try {
+                    config.set(parts[2], parts[3]);
+                } catch (IllegalArgumentException iae) {
+                    return createErrorResponse(iae.getMessage());
+                }
+                return createOkResponse();
+
+            case "RELOAD":
+                if (configFile == null) {
+                    return createErrorResponse("No config file was given");
+                }
+                try {
+                    List<String> problems = config.load(configFile);
+                    return problems.isEmpty()
+                            ? createOkResponse()
+                            : createErrorResponse(String.join("\n", problems));
+                } catch (IOException ioe) {
+                    return createErrorResponse("Unable to read " + configFile + ": " + ioe.getMessage());
+                }
+
+            default:
+                return createErrorResponse("Expected GET, SET or RELOAD but got \"" + parts[1] + "\"");
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package ca.corbett.ems.app.handlers;
+
+import ca.corbett.ems.handlers.AbstractCommandHandler;
+import ca.corbett.ems.server.EMSServer;
+
+import java.util.Collection;
+import java.util.function.Function;
+
+/**
+ * A command handler that wraps another one, to do something extra before or after passing
+ * each command along to it. It takes the wrapped handler's name and alias, and reports its
+ * parameter counts, usage and help as its own, so to clients it looks just the same;
+ * subclasses only need to implement handle().
+ * <p>
+ *     Use wrap() to put a wrapper around handlers that are already registered on a server.
+ * </p>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public abstract class DelegatingCommandHandler extends AbstractCommandHandler {
+
+    protected final AbstractCommandHandler delegate;
+
+    protected DelegatingCommandHandler(AbstractCommandHandler delegate) {
+        super(delegate.getName(), delegate.getAlias());
+        this.delegate = delegate;
+    }
+
+    /**
+     * Replaces each of the named handlers on the given server (whichever it has) with a
+     * wrapper made by the given factory. A handler that already has the same kind of wrapper,
+     * anywhere along its chain of delegates, is left alone, so it's safe to do this twice.
+     *
+     * @param server  The server whose handlers we wrap.
+     * @param names   The names of the commands to wrap.
+     * @param factory Makes a wrapper for the given handler.
+     */
+    public static void wrap(EMSServer server, Collection<String> names,
+                            Function<AbstractCommandHandler, ? extends DelegatingCommandHandler> factory) {
+        for (String name : names) {
+            AbstractCommandHandler handler = server.getCommandHandler(name);
+            if (handler == null) {
+                continue;
+            }
+            DelegatingCommandHandler wrapper = factory.apply(handler);
+            if (isWrappedBy(handler, wrapper.getClass())) {
+                continue;
+            }
+            server.removeCommandHandler(name);
+            server.registerCommandHandler(wrapper);
+        }
+    }
+
+    /**
+     * Returns the handler that does the real work.
+     *
+     * @return The wrapped handler.
+     */
+    public AbstractCommandHandler getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public int getMinParameterCount() {
+        return delegate.getMinParameterCount();
+    }
+
+    @Override
+    public int getMaxParameterCount() {
+        return delegate.getMaxParameterCount();
+    }
+
+    @Override
+    public String getUsageText() {
+        return delegate.getUsageText();
+    }
+
+    @Override
+    public String getHelpText() {
+        return delegate.getHelpText();
+    }
+
+    /**
+     * Reports whether the given handler is, or wraps, a handler of the given type.
+     */
+    private static boolean isWrappedBy(AbstractCommandHandler handler, Class<?> type) {
+        while (handler instanceof DelegatingCommandHandler) {
+            if (handler.getClass() == type) {
+                return true;
+            }
+            handler = ((DelegatingCommandHandler) handler).getDelegate();
+        }
+        return false;
+    }
+}
@@ -1,22 +1,42 @@
 package ca.corbett.ems.app.handlers;
 
+import ca.corbett.ems.app.drain.DrainController;
 import ca.corbett.ems.handlers.AbstractCommandHandler;
 import ca.corbett.ems.server.EMSServer;
 
+import java.util.logging.Logger;
+
 /**
  * Disconnects all clients and shuts down the server.
  * This one probably shouldn't be available to all clients as it's
  * a bit powerful, but eh. Security is not an EMS consideration.
+ * <p>
+ *     If given a DrainController, pending deliveries are flushed before
+ *     the server goes down, and the outcome is logged.
+ * </p>
  *
  * @author scorbo2
  * @since 2023-11-24
  */
 public class HaltHandler extends AbstractCommandHandler {
 
+    private static final Logger logger = Logger.getLogger(HaltHandler.class.getName());
+
+    private volatile DrainController drainController;
+
     public HaltHandler() {
         super("halt");
     }
 
+    /**
+     * Drains the server with the given controller instead of stopping it outright.
+     *
+     * @param drainController The server's DrainController, or null to just stop the server.
+     */
+    public void setDrainController(DrainController drainController) {
+        this.drainController = drainController;
+    }
+
     @Override
     public int getMinParameterCount() {
         return 0;
@@ -39,6 +59,11 @@ public class HaltHandler extends AbstractCommandHandler {
 
     @Override
     public String handle(EMSServer server, String clientId, String commandLine) {
+        DrainController drain = drainController;
+        if (drain != null) {
+            logger.info(drain.drain(clientId));
+            return EMSServer.DISCONNECTED;
+        }
         if (server != null) {
             server.stopServer();
             try {
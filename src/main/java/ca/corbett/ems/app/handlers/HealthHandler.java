@@ -0,0 +1,251 @@
+package ca.corbett.ems.app.handlers;
+
+import ca.corbett.ems.app.admission.RateLimiter;
+import ca.corbett.ems.app.channels.ChannelRegistry;
+import ca.corbett.ems.app.delivery.PrioritySendHandler;
+import ca.corbett.ems.handlers.AbstractCommandHandler;
+import ca.corbett.ems.server.EMSServer;
+import ca.corbett.ems.server.EMSServerSpy;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reports a machine-readable snapshot of the health of the server and the JVM it's
+ * running in, as one key=value pair per line: heap usage, garbage collection counts
+ * and times, thread counts, client connections, channels and subscriptions, message
+ * rates, and uptime. Sizes are in bytes, times in milliseconds, rates per second.
+ * <p>
+ *     The snapshot is refreshed on a background thread once a second (by default), and
+ *     every request just returns the latest one, so it's cheap to poll this handler often
+ *     from any number of monitors. The snapshot_age_ms value says how stale it is.
+ *     Message rates are counted with an EMSServerSpy that this handler registers on the
+ *     server it's given.
+ * </p>
+ * <p>
+ *     The channel and subscription counts are the running totals kept by the server's
+ *     ChannelRegistry (see setChannelRegistry), and are left out if it doesn't have one.
+ *     The EMS ChannelManager isn't thread-safe, so the refresh thread never reads it directly.
+ *     Note that the ChannelManager is a singleton, so if there's more than one server in this
+ *     JVM, those counts cover all of them.
+ * </p>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public class HealthHandler extends AbstractCommandHandler {
+
+    private static final Logger logger = Logger.getLogger(HealthHandler.class.getName());
+
+    /**
+     * If not specified, we refresh our snapshot this often.
+     */
+    public static final long DEFAULT_REFRESH_INTERVAL_MILLIS = 1000;
+
+    private final EMSServer server;
+    private final long startTime;
+    private final ScheduledExecutorService refresher;
+    private final LongAdder received = new LongAdder();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder published = new LongAdder();
+    private final EMSServerSpy counter;
+    private volatile ChannelRegistry channelRegistry;
+    private volatile RateLimiter rateLimiter;
+    private volatile String snapshot = "";
+    private volatile long snapshotTime;
+    private long lastRefreshNanos;
+    private long lastReceived;
+    private long lastSent;
+    private long lastPublished;
+
+    /**
+     * Creates a HealthHandler for the given server, with the default refresh interval.
+     *
+     * @param server The server to report on.
+     */
+    public HealthHandler(EMSServer server) {
+        this(server, DEFAULT_REFRESH_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Creates a HealthHandler for the given server.
+     *
+     * @param server                The server to report on.
+     * @param refreshIntervalMillis How often to refresh the snapshot.
+     */
+    public HealthHandler(EMSServer server, long refreshIntervalMillis) {
+        super("HEALTH");
+        this.server = server;
+        this.startTime = System.currentTimeMillis();
+        this.counter = new MessageCounter();
+        server.addServerSpy(counter);
+        lastRefreshNanos = System.nanoTime();
+        refresh();
+        refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ems-health-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleAtFixedRate(this::refresh, refreshIntervalMillis, Math.max(10, refreshIntervalMillis),
+                                      TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Includes the given registry's channel, subscription and rejection counts in our snapshot.
+     *
+     * @param channelRegistry The server's ChannelRegistry, or null for none.
+     */
+    public void setChannelRegistry(ChannelRegistry channelRegistry) {
+        this.channelRegistry = channelRegistry;
+    }
+
+    /**
+     * Includes the given limiter's delay and rejection counts in our snapshot.
+     *
+     * @param rateLimiter The server's RateLimiter, or null for none.
+     */
+    public void setRateLimiter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * Stops refreshing the snapshot and stops counting messages. Invoke this when
+     * the server is shut down.
+     */
+    public void stop() {
+        refresher.shutdownNow();
+        server.removeServerSpy(counter);
+    }
+
+    @Override
+    public int getMinParameterCount() {
+        return 0;
+    }
+
+    @Override
+    public int getMaxParameterCount() {
+        return 0;
+    }
+
+    @Override
+    public String getUsageText() {
+        return name;
+    }
+
+    @Override
+    public String getHelpText() {
+        return "Reports server and JVM health statistics, as key=value pairs.";
+    }
+
+    @Override
+    public String handle(EMSServer server, String clientId, String commandLine) {
+        return createOkResponse(snapshot + "snapshot_age_ms=" + (System.currentTimeMillis() - snapshotTime));
+    }
+
+    /**
+     * Gathers up a fresh snapshot. This is the expensive part, which is why it runs on
+     * a schedule instead of for every request.
+     */
+    private void refresh() {
+        try {
+            long now = System.nanoTime();
+            double elapsedSeconds = Math.max(1e-3, (now - lastRefreshNanos) / 1_000_000_000.0);
+            lastRefreshNanos = now;
+            long receivedNow = received.sum();
+            long sentNow = sent.sum();
+            long publishedNow = published.sum();
+
+            MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+            long gcCount = 0;
+            long gcTime = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                gcCount += Math.max(0, gc.getCollectionCount());
+                gcTime += Math.max(0, gc.getCollectionTime());
+            }
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+            StringBuilder sb = new StringBuilder();
+            append(sb, "uptime_ms", System.currentTimeMillis() - startTime);
+            append(sb, "heap_used_bytes", heap.getUsed());
+            append(sb, "heap_committed_bytes", heap.getCommitted());
+            append(sb, "heap_max_bytes", heap.getMax());
+            append(sb, "gc_count", gcCount);
+            append(sb, "gc_time_ms", gcTime);
+            append(sb, "threads_live", threads.getThreadCount());
+            append(sb, "threads_peak", threads.getPeakThreadCount());
+            append(sb, "client_connections", server.isUp() ? server.getClientConnectionCount() : 0);
+            ChannelRegistry registry = channelRegistry;
+            if (registry != null) {
+                append(sb, "channels", registry.getChannelCount());
+                append(sb, "subscriptions", registry.getSubscriptionCount());
+                append(sb, "channels_rejected", registry.getRejectedCount());
+            }
+            RateLimiter limiter = rateLimiter;
+            if (limiter != null) {
+                append(sb, "publish_delayed", limiter.getDelayedCount());
+                append(sb, "publish_rejected", limiter.getRejectedCount());
+            }
+            append(sb, "received_total", receivedNow);
+            append(sb, "received_per_sec", Math.round((receivedNow - lastReceived) / elapsedSeconds));
+            append(sb, "published_total", publishedNow);
+            append(sb, "published_per_sec", Math.round((publishedNow - lastPublished) / elapsedSeconds));
+            append(sb, "sent_total", sentNow);
+            append(sb, "sent_per_sec", Math.round((sentNow - lastSent) / elapsedSeconds));
+            lastReceived = receivedNow;
+            lastSent = sentNow;
+            lastPublished = publishedNow;
+
+            snapshot = sb.toString();
+            snapshotTime = System.currentTimeMillis();
+        } catch (RuntimeException e) {
+            // Don't let one bad refresh stop all future ones:
+            logger.log(Level.WARNING, "Unable to refresh health snapshot: " + e.getMessage(), e);
+        }
+    }
+
+    private static void append(StringBuilder sb, String key, long value) {
+        sb.append(key).append('=').append(value).append('\n');
+    }
+
+    /**
+     * Counts everything the server receives and sends. "Published" counts only the
+     * SEND and SENDID commands (and their priority versions), each of which may be fanned out to many subscribers.
+     */
+    private final class MessageCounter implements EMSServerSpy {
+        @Override
+        public void messageReceived(EMSServer server, String clientId, String rawMessage) {
+            received.increment();
+            if (rawMessage == null) {
+                return;
+            }
+            int end = rawMessage.indexOf(EMSServer.DELIMITER);
+            for (String command : PrioritySendHandler.PUBLISH_COMMANDS) {
+                if (command.length() == end && rawMessage.regionMatches(true, 0, command, 0, end)) {
+                    published.increment();
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public void messageSent(EMSServer server, String clientId, String rawMessage) {
+            sent.increment();
+        }
+
+        @Override
+        public void clientConnected(EMSServer server, String clientId) {
+        }
+
+        @Override
+        public void clientDisconnected(EMSServer server, String clientId) {
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package ca.corbett.ems.app.handlers;
+
+import ca.corbett.ems.app.channels.ChannelRegistry;
+import ca.corbett.ems.handlers.AbstractCommandHandler;
+import ca.corbett.ems.server.ChannelManager;
+import ca.corbett.ems.server.EMSServer;
+
+import java.util.List;
+
+/**
+ * Replaces the stock LIST_ACTIVE handler with one that can return the channel list a page
+ * at a time. With no parameters, it lists every active channel, exactly as before. Given a
+ * page size, it lists at most that many, in alphabetical order; to get the next page, pass
+ * the last channel you received as well. An empty list means you've reached the end:
+ * <pre>
+ *     LIST_ACTIVE:100
+ *     LIST_ACTIVE:100:LASTCHANNELONPREVIOUSPAGE
+ * </pre>
+ * Pages come from a snapshot of the channel list kept by the ChannelRegistry, so paging
+ * through a long list doesn't mean copying and sorting all of it for every page.
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public class PagedListActiveHandler extends AbstractCommandHandler {
+
+    private final ChannelRegistry registry;
+
+    public PagedListActiveHandler(ChannelRegistry registry) {
+        super("LIST_ACTIVE");
+        this.registry = registry;
+    }
+
+    /**
+     * Replaces the LIST_ACTIVE handler on the given server with a PagedListActiveHandler.
+     *
+     * @param server   The server to install on.
+     * @param registry Provides the channel snapshot that pages come from.
+     */
+    public static void install(EMSServer server, ChannelRegistry registry) {
+        server.removeCommandHandler("LIST_ACTIVE");
+        server.registerCommandHandler(new PagedListActiveHandler(registry));
+    }
+
+    @Override
+    public int getMinParameterCount() {
+        return 0;
+    }
+
+    @Override
+    public int getMaxParameterCount() {
+        return 2;
+    }
+
+    @Override
+    public String getUsageText() {
+        return name + "[:pageSize[:after]]";
+    }
+
+    @Override
+    public String getHelpText() {
+        return "Lists all active channels on this EMS server, or one page of them.";
+    }
+
+    @Override
+    public String handle(EMSServer server, String clientId, String commandLine) {
+        String[] parts = getParts(commandLine);
+        List<String> channels;
+        if (parts == null || parts.length < 2 || parts[1].isBlank()) {
+            channels = ChannelManager.getInstance().getActiveChannels();
+        }
+        else {
+            int pageSize;
+            try {
+                pageSize = Integer.parseInt(parts[1].trim());
+            } catch (NumberFormatException nfe) {
+                return createErrorResponse("Invalid page size \"" + parts[1] + "\"");
+            }
+            if (pageSize < 1) {
+                return createErrorResponse("Page size must be at least 1");
+            }
+            String after = parts.length > 2 && !parts[2].isBlank() ? parts[2] : null;
+            channels = registry.getPage(after, pageSize);
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (String channel : channels) {
+            sb.append(channel).append('\n');
+        }
+        return sb + createOkResponse();
+    }
+}
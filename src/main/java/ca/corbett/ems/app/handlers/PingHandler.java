@@ -0,0 +1,46 @@
+package ca.corbett.ems.app.handlers;
+
+import ca.corbett.ems.handlers.AbstractCommandHandler;
+import ca.corbett.ems.server.EMSServer;
+
+/**
+ * Responds immediately, without doing any work, so that clients can measure the
+ * round-trip time to the server (and check that their connection is still alive).
+ * If a token is given, it is echoed back so that the client can match the response
+ * to its request. Otherwise, the response is simply "PONG".
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public class PingHandler extends AbstractCommandHandler {
+
+    public PingHandler() {
+        super("PING");
+    }
+
+    @Override
+    public int getMinParameterCount() {
+        return 0;
+    }
+
+    @Override
+    public int getMaxParameterCount() {
+        return 1;
+    }
+
+    @Override
+    public String getUsageText() {
+        return name + "[:token]";
+    }
+
+    @Override
+    public String getHelpText() {
+        return "Responds immediately with the given token (or PONG), for measuring round-trip time.";
+    }
+
+    @Override
+    public String handle(EMSServer server, String clientId, String commandLine) {
+        String token = getAllFieldsToEndOfLine(commandLine, 1, EMSServer.DELIMITER);
+        return createOkResponse(token == null || token.isEmpty() ? "PONG" : token);
+    }
+}
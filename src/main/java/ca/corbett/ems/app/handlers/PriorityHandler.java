@@ -0,0 +1,73 @@
+package ca.corbett.ems.app.handlers;
+
+import ca.corbett.ems.app.delivery.PriorityDispatcher;
+import ca.corbett.ems.handlers.AbstractCommandHandler;
+import ca.corbett.ems.server.EMSServer;
+
+/**
+ * Marks channels as priority channels, so that everything sent on them is delivered
+ * ahead of normal traffic (see PriorityDispatcher).
+ * <ul>
+ *     <li>PRIORITY lists the priority channels, followed by delivery statistics.</li>
+ *     <li>PRIORITY:channel marks the channel as a priority channel.</li>
+ *     <li>PRIORITY:channel:off puts it back to normal.</li>
+ * </ul>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public class PriorityHandler extends AbstractCommandHandler {
+
+    private final PriorityDispatcher dispatcher;
+
+    public PriorityHandler(PriorityDispatcher dispatcher) {
+        super("PRIORITY");
+        this.dispatcher = dispatcher;
+    }
+
+    @Override
+    public int getMinParameterCount() {
+        return 0;
+    }
+
+    @Override
+    public int getMaxParameterCount() {
+        return 2;
+    }
+
+    @Override
+    public String getUsageText() {
+        return name + "[:channel[:on|off]]";
+    }
+
+    @Override
+    public String getHelpText() {
+        return "Lists priority channels, or marks a channel as priority (on) or normal (off).";
+    }
+
+    @Override
+    public String handle(EMSServer server, String clientId, String commandLine) {
+        String[] parts = getParts(commandLine);
+        if (parts == null || parts.length < 2 || parts[1].isBlank()) {
+            StringBuilder sb = new StringBuilder();
+            for (String channel : dispatcher.getPriorityChannels()) {
+                sb.append(channel).append('\n');
+            }
+            sb.append(dispatcher.getStats());
+            return createOkResponse(sb.toString());
+        }
+
+        boolean priority;
+        if (parts.length < 3 || parts[2].equalsIgnoreCase("on")) {
+            priority = true;
+        }
+        else if (parts[2].equalsIgnoreCase("off")) {
+            priority = false;
+        }
+        else {
+            return createErrorResponse("Expected \"on\" or \"off\" but got \"" + parts[2] + "\"");
+        }
+        dispatcher.setPriorityChannel(parts[1], priority);
+        return createOkResponse();
+    }
+}
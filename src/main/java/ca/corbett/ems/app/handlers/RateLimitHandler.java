@@ -0,0 +1,116 @@
+package ca.corbett.ems.app.handlers;
+
+import ca.corbett.ems.app.admission.RateLimiter;
+import ca.corbett.ems.handlers.AbstractCommandHandler;
+import ca.corbett.ems.server.EMSServer;
+
+/**
+ * Shows or changes the server's rate limits (see RateLimiter) while it's running.
+ * <ul>
+ *     <li>RATELIMIT lists the current settings, followed by how many messages were
+ *     admitted, delayed, and rejected.</li>
+ *     <li>RATELIMIT:setting:value changes one setting. The settings are client_rate,
+ *     client_burst, global_rate, global_byte_rate, mode (reject or delay), and max_delay_ms.
+ *     Setting a rate to 0 removes that limit.</li>
+ * </ul>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public class RateLimitHandler extends AbstractCommandHandler {
+
+    private final RateLimiter limiter;
+
+    public RateLimitHandler(RateLimiter limiter) {
+        super("RATELIMIT");
+        this.limiter = limiter;
+    }
+
+    @Override
+    public int getMinParameterCount() {
+        return 0;
+    }
+
+    @Override
+    public int getMaxParameterCount() {
+        return 2;
+    }
+
+    @Override
+    public String getUsageText() {
+        return name + "[:setting:value]";
+    }
+
+    @Override
+    public String getHelpText() {
+        return "Shows the rate limits, or changes one of them.";
+    }
+
+    @Override
+    public String handle(EMSServer server, String clientId, String commandLine) {
+        String[] parts = getParts(commandLine);
+        if (parts == null || parts.length < 2 || parts[1].isBlank()) {
+            return createOkResponse("client_rate=" + format(limiter.getClientRate()) + "\n"
+                                            + "client_burst=" + format(limiter.getClientBurst()) + "\n"
+                                            + "global_rate=" + format(limiter.getGlobalRate()) + "\n"
+                                            + "global_byte_rate=" + format(limiter.getGlobalByteRate()) + "\n"
+                                            + "mode=" + (limiter.isDelayMode() ? "delay" : "reject") + "\n"
+                                            + "max_delay_ms=" + limiter.getMaxDelayMillis() + "\n"
+                                            + "admitted=" + limiter.getAdmittedCount() + "\n"
+                                            + "delayed=" + limiter.getDelayedCount() + "\n"
+                                            + "rejected=" + limiter.getRejectedCount());
+        }
+        if (parts.length < 3 || parts[2].isBlank()) {
+            return createErrorResponse("Expected a value for \"" + parts[1] + "\"");
+        }
+
+        String setting = parts[1].trim().toLowerCase();
+        String value = parts[2].trim();
+        if (setting.equals("mode")) {
+            if (value.equalsIgnoreCase("delay")) {
+                limiter.setDelayMode(true);
+            }
+            else if (value.equalsIgnoreCase("reject")) {
+                limiter.setDelayMode(false);
+            }
+            else {
+                return createErrorResponse("Expected \"reject\" or \"delay\" but got \"" + value + "\"");
+            }
+            return createOkResponse();
+        }
+
+        double number;
+        try {
+            number = Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return createErrorResponse("Expected a number but got \"" + value + "\"");
+        }
+        if (number < 0 || Double.isNaN(number) || Double.isInfinite(number)) {
+            return createErrorResponse("Expected a number that's 0 or more but got \"" + value + "\"");
+        }
+        switch (setting) {
+            case "client_rate":
+                limiter.setClientRate(number, limiter.getClientBurst());
+                break;
+            case "client_burst":
+                limiter.setClientRate(limiter.getClientRate(), number);
+                break;
+            case "global_rate":
+                limiter.setGlobalRate(number);
+                break;
+            case "global_byte_rate":
+                limiter.setGlobalByteRate(number);
+                break;
+            case "max_delay_ms":
+                limiter.setMaxDelayMillis((long) number);
+                break;
+            default:
+                return createErrorResponse("Unknown setting \"" + parts[1] + "\"");
+        }
+        return createOkResponse();
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) ? Long.toString((long) value) : Double.toString(value);
+    }
+}
@@ -0,0 +1,24 @@
+package ca.corbett.ems.app.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A flight recorder event for a client disconnecting from the server.
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+@Name("ca.corbett.ems.ClientDisconnected")
+@Label("Client Disconnected")
+@Category({"EMS", "Server"})
+@Description("A client disconnected from the server.")
+@StackTrace(false)
+public class ClientDisconnectedEvent extends jdk.jfr.Event {
+
+    @Label("Client Id")
+    public String clientId;
+}
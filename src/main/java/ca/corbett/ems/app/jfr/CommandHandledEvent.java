@@ -0,0 +1,31 @@
+package ca.corbett.ems.app.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A flight recorder event for a command handler processing a command. The duration
+ * of the event is how long the handler took.
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+@Name("ca.corbett.ems.CommandHandled")
+@Label("Command Handled")
+@Category({"EMS", "Server"})
+@Description("A command handler processed a command from a client.")
+@StackTrace(false)
+public class CommandHandledEvent extends jdk.jfr.Event {
+
+    @Label("Handler")
+    public String handler;
+
+    @Label("Client Id")
+    public String clientId;
+
+    @Label("Succeeded")
+    public boolean success;
+}
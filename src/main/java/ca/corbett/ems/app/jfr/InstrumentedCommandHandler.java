@@ -0,0 +1,38 @@
+package ca.corbett.ems.app.jfr;
+
+import ca.corbett.ems.app.handlers.DelegatingCommandHandler;
+import ca.corbett.ems.handlers.AbstractCommandHandler;
+import ca.corbett.ems.server.EMSServer;
+
+/**
+ * Wraps another command handler, and emits a CommandHandledEvent each time it handles
+ * a command. For the publishing commands (see PrioritySendHandler.PUBLISH_COMMANDS), this
+ * only times handing the message to the PriorityDispatcher; the dispatcher emits its own
+ * MessageFanoutEvent once the message has actually gone out to every subscriber.
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public class InstrumentedCommandHandler extends DelegatingCommandHandler {
+
+    public InstrumentedCommandHandler(AbstractCommandHandler delegate) {
+        super(delegate);
+    }
+
+    @Override
+    public String handle(EMSServer server, String clientId, String commandLine) {
+        CommandHandledEvent event = new CommandHandledEvent();
+        event.begin();
+
+        String response = delegate.handle(server, clientId, commandLine);
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.handler = delegate.getName();
+            event.clientId = clientId;
+            event.success = response != null && !response.startsWith(EMSServer.ERROR_HEADER);
+            event.commit();
+        }
+        return response;
+    }
+}
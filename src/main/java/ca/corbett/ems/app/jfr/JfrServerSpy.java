@@ -0,0 +1,52 @@
+package ca.corbett.ems.app.jfr;
+
+import ca.corbett.ems.server.EMSServer;
+import ca.corbett.ems.server.EMSServerSpy;
+
+/**
+ * An EMSServerSpy that emits flight recorder events for incoming messages and for
+ * clients connecting and disconnecting. When no recording is running (or our events
+ * are disabled in it), each callback costs little more than a flag check.
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public class JfrServerSpy implements EMSServerSpy {
+
+    @Override
+    public void messageReceived(EMSServer server, String clientId, String rawMessage) {
+        MessageReceivedEvent event = new MessageReceivedEvent();
+        if (event.shouldCommit()) {
+            event.clientId = clientId;
+            if (rawMessage != null) {
+                int delimiter = rawMessage.indexOf(EMSServer.DELIMITER);
+                event.command = (delimiter < 0 ? rawMessage : rawMessage.substring(0, delimiter)).trim();
+                event.size = rawMessage.length();
+            }
+            event.commit();
+        }
+    }
+
+    @Override
+    public void messageSent(EMSServer server, String clientId, String rawMessage) {
+        // Deliveries are covered by MessageFanoutEvent, which is far cheaper than one event per recipient.
+    }
+
+    @Override
+    public void clientConnected(EMSServer server, String clientId) {
+        ClientConnectedEvent event = new ClientConnectedEvent();
+        if (event.shouldCommit()) {
+            event.clientId = clientId;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void clientDisconnected(EMSServer server, String clientId) {
+        ClientDisconnectedEvent event = new ClientDisconnectedEvent();
+        if (event.shouldCommit()) {
+            event.clientId = clientId;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package ca.corbett.ems.app.jfr;
+
+import ca.corbett.ems.app.handlers.DelegatingCommandHandler;
+import ca.corbett.ems.server.EMSServer;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hooks our Java Flight Recorder events into an EMSServer, and optionally starts a
+ * recording. The events themselves are always emitted (they cost next to nothing when
+ * nobody is recording), so you can also capture them by starting a recording any other
+ * way you like, such as with jcmd or -XX:StartFlightRecording. Our events are all in
+ * the "EMS" category.
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public final class JfrSupport {
+
+    private static final Logger logger = Logger.getLogger(JfrSupport.class.getName());
+
+    /**
+     * The built-in JFR settings that our recordings start from. "profile" gathers more
+     * detail than "default", at a slightly higher (but still low) cost.
+     */
+    public static final String RECORDING_SETTINGS = "profile";
+
+    /**
+     * Recordings started by startRecording() keep at most this much data, discarding the oldest.
+     */
+    public static final long MAX_RECORDING_BYTES = 256L * 1024 * 1024;
+
+    private JfrSupport() {
+    }
+
+    /**
+     * Adds a JfrServerSpy to the given server, and wraps every command handler that's
+     * registered on it with an InstrumentedCommandHandler. Do this after registering all
+     * of your handlers; anything registered afterwards won't be instrumented.
+     *
+     * @param server The server to instrument.
+     */
+    public static void instrument(EMSServer server) {
+        server.addServerSpy(new JfrServerSpy());
+        List<String> names = new ArrayList<>();
+        for (String command : server.listCommands()) {
+            // listCommands() gives us "NAME" or "NAME (alias X)":
+            names.add(command.split(" ")[0]);
+        }
+        DelegatingCommandHandler.wrap(server, names, InstrumentedCommandHandler::new);
+    }
+
+    /**
+     * Starts a flight recording with our preset settings, which is written to the given
+     * file when the JVM exits. The recording is bounded in size, so it's safe to leave it running.
+     *
+     * @param file Where to write the recording.
+     * @return The recording, or null if it couldn't be started.
+     */
+    public static Recording startRecording(Path file) {
+        try {
+            Recording recording = new Recording(Configuration.getConfiguration(RECORDING_SETTINGS));
+            recording.setName("EMS");
+            recording.setToDisk(true);
+            recording.setMaxSize(MAX_RECORDING_BYTES);
+            recording.setMaxAge(Duration.ofHours(24));
+            recording.setDestination(file);
+            recording.setDumpOnExit(true);
+            recording.start();
+            logger.info("Flight recording started; it will be written to " + file.toAbsolutePath() + " on exit.");
+            return recording;
+        } catch (IOException | ParseException | IllegalStateException | SecurityException e) {
+            logger.log(Level.SEVERE, "Unable to start flight recording: " + e.getMessage(), e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package ca.corbett.ems.app.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A flight recorder event for a message being delivered to the subscribers of a channel.
+ * The event begins when the message is published and ends when the last of its subscribers
+ * has been dealt with, so its duration is how long the whole fan-out took, including the
+ * time the message spent waiting in the subscribers' outboxes (see PriorityDispatcher).
+ * Subscribers that it was dropped for count towards the end of the fan-out too.
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+@Name("ca.corbett.ems.MessageFanout")
+@Label("Message Fan-out")
+@Category({"EMS", "Server"})
+@Description("A message was sent to every subscriber of a channel.")
+@StackTrace(false)
+public class MessageFanoutEvent extends jdk.jfr.Event {
+
+    @Label("Publisher")
+    public String clientId;
+
+    @Label("Channel")
+    public String channel;
+
+    @Label("Subscribers")
+    public int subscriberCount;
+
+    @Label("Dropped")
+    @Description("How many of the subscribers the message was dropped for instead of delivered to.")
+    public int droppedCount;
+
+    @Label("Size")
+    @DataAmount
+    public long size;
+}
@@ -0,0 +1,32 @@
+package ca.corbett.ems.app.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A flight recorder event for every line that the server receives from a client.
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+@Name("ca.corbett.ems.MessageReceived")
+@Label("Message Received")
+@Category({"EMS", "Server"})
+@Description("A command or message arrived from a client.")
+@StackTrace(false)
+public class MessageReceivedEvent extends jdk.jfr.Event {
+
+    @Label("Client Id")
+    public String clientId;
+
+    @Label("Command")
+    public String command;
+
+    @Label("Size")
+    @DataAmount
+    public long size;
+}
@@ -0,0 +1,52 @@
+package ca.corbett.ems.app.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A flight recorder event for messages that were discarded instead of being delivered
+ * to a client, because that client wasn't keeping up. Use the static emit() method
+ * wherever messages are dropped.
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+@Name("ca.corbett.ems.SlowConsumerDrop")
+@Label("Slow Consumer Drop")
+@Category({"EMS", "Server"})
+@Description("Messages for a client were discarded because it was not keeping up.")
+public class SlowConsumerDropEvent extends jdk.jfr.Event {
+
+    @Label("Client Id")
+    public String clientId;
+
+    @Label("Channel")
+    public String channel;
+
+    @Label("Messages Dropped")
+    public int dropped;
+
+    @Label("Reason")
+    public String reason;
+
+    /**
+     * Records a drop, if a recording that includes this event is running.
+     *
+     * @param clientId The client that the messages were meant for.
+     * @param channel  The channel they were sent on (may be null if it's a mix).
+     * @param dropped  How many messages were dropped.
+     * @param reason   A short explanation, such as "queue full".
+     */
+    public static void emit(String clientId, String channel, int dropped, String reason) {
+        SlowConsumerDropEvent event = new SlowConsumerDropEvent();
+        if (event.shouldCommit()) {
+            event.clientId = clientId;
+            event.channel = channel;
+            event.dropped = dropped;
+            event.reason = reason;
+            event.commit();
+        }
+    }
+}
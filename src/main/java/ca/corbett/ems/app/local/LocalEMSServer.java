@@ -0,0 +1,326 @@
+package ca.corbett.ems.app.local;
+
+import ca.corbett.ems.app.jfr.SlowConsumerDropEvent;
+import ca.corbett.ems.server.EMSServer;
+import ca.corbett.ems.server.EMSServerSpy;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * An EMSServer that clients in the same JVM can talk to directly, without going through
+ * a socket. It still listens on its port like any other server, so clients in other
+ * processes connect as usual, but a LocalSubscriber that connects to it from inside this
+ * JVM gets a LocalConnection instead: its commands are handed straight to the server's
+ * command handlers on the caller's thread, and channel messages for it are put on an
+ * in-memory queue instead of being written to a socket and read back.
+ * <p>
+ *     Local clients look like any other client to the rest of the server: they get a
+ *     client id, server spies hear about them connecting, disconnecting and sending
+ *     commands, and anything sent to them with sendToClient() (which is how messages
+ *     are delivered) ends up on their queue. Their ids start with LOCAL_CLIENT_ID_PREFIX.
+ *     Delivering never waits: if a local client falls so far behind that its queue is full,
+ *     new messages for it are dropped (and a SlowConsumerDropEvent is emitted), so one slow
+ *     client can't hold up the threads that deliver to everyone else.
+ * </p>
+ * <p>
+ *     Network clients can also be taken off their sockets: redirect() sends everything for
+ *     a given client somewhere else instead, and execute() runs commands on its behalf. This
+ *     is how SharedMemoryHandler moves a client over to a shared memory connection once it
+ *     has connected over TCP.
+ * </p>
+ * <p>
+ *     Running servers are found by port (see find()), so there can only be one
+ *     LocalEMSServer per port in the JVM, which the OS enforces anyway.
+ * </p>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public class LocalEMSServer extends EMSServer {
+
+    /**
+     * Client ids of local clients start with this.
+     */
+    public static final String LOCAL_CLIENT_ID_PREFIX = "EMSL";
+
+    /**
+     * If not specified, this many messages can be waiting for each local client before
+     * new ones are dropped.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 10_000;
+
+    private static final Map<Integer, LocalEMSServer> running = new ConcurrentHashMap<>();
+
+    private final String host;
+    private final int port;
+    private final int queueCapacity;
+    private final Map<String, LocalConnection> connections = new ConcurrentHashMap<>();
+    private final Map<String, Consumer<String>> redirects = new ConcurrentHashMap<>();
+    private final AtomicInteger nextClientId = new AtomicInteger();
+    private final LongAdder dropped = new LongAdder();
+
+    public LocalEMSServer(String host, int port) {
+        this(host, port, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Creates a LocalEMSServer.
+     *
+     * @param host          The hostname or IP to bind to.
+     * @param port          The port to listen on.
+     * @param queueCapacity How many messages can be waiting for each local client.
+     */
+    public LocalEMSServer(String host, int port, int queueCapacity) {
+        super(host, port);
+        this.host = host;
+        this.port = port;
+        this.queueCapacity = Math.max(1, queueCapacity);
+    }
+
+    /**
+     * Finds the running LocalEMSServer in this JVM that a client connecting to the given
+     * host and port would reach, if there is one.
+     *
+     * @param host The host the client is connecting to.
+     * @param port The port the client is connecting to.
+     * @return The server, or null if the client will have to connect over the network.
+     */
+    public static LocalEMSServer find(String host, int port) {
+        LocalEMSServer server = running.get(port);
+        if (server == null || !server.isUp() || host == null) {
+            return null;
+        }
+        return host.equalsIgnoreCase(server.host) || isLoopback(host) ? server : null;
+    }
+
+    @Override
+    public void startServer() {
+        super.startServer();
+        running.put(port, this);
+    }
+
+    @Override
+    public void stopServer() {
+        running.remove(port, this);
+        for (LocalConnection connection : new ArrayList<>(connections.values())) {
+            detach(connection);
+        }
+        super.stopServer();
+    }
+
+    /**
+     * Connects a new local client.
+     *
+     * @return The client's connection, which it uses to send commands and receive messages.
+     */
+    public LocalConnection attach() {
+        String clientId = LOCAL_CLIENT_ID_PREFIX + nextClientId.getAndIncrement();
+        LocalConnection connection = new LocalConnection(this, clientId, queueCapacity);
+        connections.put(connection.clientId, connection);
+        for (EMSServerSpy spy : serverSpies) {
+            spy.clientConnected(this, connection.clientId);
+        }
+        return connection;
+    }
+
+    /**
+     * Disconnects the given local client. Its receiving end is told about it by a
+     * DISCONNECTED message at the end of its queue.
+     *
+     * @param connection The client's connection.
+     */
+    public void detach(LocalConnection connection) {
+        if (connections.remove(connection.clientId) == null) {
+            return;
+        }
+        connection.close();
+        for (EMSServerSpy spy : serverSpies) {
+            spy.clientDisconnected(this, connection.clientId);
+        }
+    }
+
+    /**
+     * Runs a command for the given local client, just as if it had come in over the network.
+     *
+     * @param connection  The client's connection.
+     * @param commandLine The command, in the usual COMMAND:param:param format.
+     * @return The server's response.
+     */
+    public String execute(LocalConnection connection, String commandLine) {
+        if (!connections.containsKey(connection.clientId)) {
+            return DISCONNECTED;
+        }
+        return execute(connection.clientId, commandLine);
+    }
+
+    /**
+     * Runs a command for the given client, just as if it had come in over its socket.
+     *
+     * @param clientId    The client.
+     * @param commandLine The command, in the usual COMMAND:param:param format.
+     * @return The server's response.
+     */
+    public String execute(String clientId, String commandLine) {
+        String response = executeCommand(clientId, commandLine);
+        for (EMSServerSpy spy : serverSpies) {
+            spy.messageReceived(this, clientId, commandLine);
+            spy.messageSent(this, clientId, response);
+        }
+        return response;
+    }
+
+    /**
+     * From now on, sends everything for the given network client to the given sink,
+     * instead of writing it to the client's socket.
+     *
+     * @param clientId The client.
+     * @param sink     Receives each message for the client.
+     */
+    public void redirect(String clientId, Consumer<String> sink) {
+        redirects.put(clientId, sink);
+    }
+
+    /**
+     * Goes back to sending messages for the given client to its socket.
+     *
+     * @param clientId The client.
+     */
+    public void removeRedirect(String clientId) {
+        redirects.remove(clientId);
+    }
+
+    @Override
+    public void sendToClient(String clientId, String message) {
+        LocalConnection connection = connections.get(clientId);
+        if (connection != null) {
+            connection.deliver(message);
+            return;
+        }
+        Consumer<String> sink = redirects.get(clientId);
+        if (sink != null) {
+            sink.accept(message);
+        }
+        else {
+            super.sendToClient(clientId, message);
+        }
+    }
+
+    @Override
+    public boolean isClientConnected(String clientId) {
+        return connections.containsKey(clientId) || super.isClientConnected(clientId);
+    }
+
+    @Override
+    public int getClientConnectionCount() {
+        return super.getClientConnectionCount() + connections.size();
+    }
+
+    /**
+     * Returns how many messages have been dropped so far, because a client connected to
+     * us directly wasn't keeping up.
+     *
+     * @return The drop count.
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Notes that a message for the given client was dropped because it wasn't keeping up.
+     *
+     * @param clientId The client the message was for.
+     * @param message  The message, in the usual channel:message format.
+     * @param reason   A short explanation, such as "queue full".
+     */
+    void messageDropped(String clientId, String message, String reason) {
+        dropped.increment();
+        int end = message.indexOf(DELIMITER);
+        SlowConsumerDropEvent.emit(clientId, end < 0 ? null : message.substring(0, end), 1, reason);
+    }
+
+    /**
+     * Reports whether the given host name refers to this machine's loopback interface.
+     */
+    static boolean isLoopback(String host) {
+        if (host.equalsIgnoreCase("localhost")) {
+            return true;
+        }
+        try {
+            return InetAddress.getByName(host).isLoopbackAddress();
+        } catch (UnknownHostException e) {
+            return false;
+        }
+    }
+
+    /**
+     * One local client's end of the connection: its client id, and the queue of
+     * messages the server has sent it.
+     */
+    public static final class LocalConnection {
+        private final LocalEMSServer server;
+        private final String clientId;
+        private final BlockingQueue<String> inbox;
+        private volatile boolean closed;
+
+        private LocalConnection(LocalEMSServer server, String clientId, int capacity) {
+            this.server = server;
+            this.clientId = clientId;
+            this.inbox = new LinkedBlockingQueue<>(capacity);
+        }
+
+        public String getClientId() {
+            return clientId;
+        }
+
+        /**
+         * Runs a command on the server this connection belongs to (see LocalEMSServer.execute()).
+         * Once the connection has been detached, this returns DISCONNECTED.
+         *
+         * @param commandLine The command, in the usual COMMAND:param:param format.
+         * @return The server's response.
+         */
+        public String execute(String commandLine) {
+            return server.execute(this, commandLine);
+        }
+
+        /**
+         * Waits for the next message from the server. After the connection is closed,
+         * this returns DISCONNECTED.
+         *
+         * @return The message, in the usual channel:message format.
+         * @throws InterruptedException If interrupted while waiting.
+         */
+        public String take() throws InterruptedException {
+            return inbox.take();
+        }
+
+        /**
+         * Queues a message for the client, without waiting. If the queue is full, the
+         * message is dropped, so that a client that has stopped reading can't stall the
+         * delivery thread (which is shared with other clients) or the sender.
+         */
+        private void deliver(String message) {
+            if (closed) {
+                return;
+            }
+            if (!inbox.offer(message)) {
+                server.messageDropped(clientId, message, "local queue full");
+            }
+        }
+
+        private void close() {
+            closed = true;
+            inbox.clear();
+            inbox.offer(DISCONNECTED);
+        }
+    }
+}
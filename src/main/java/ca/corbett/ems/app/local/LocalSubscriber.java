@@ -0,0 +1,669 @@
+package ca.corbett.ems.app.local;
+
+import ca.corbett.ems.client.EMSServerResponse;
+import ca.corbett.ems.client.channel.Subscriber;
+import ca.corbett.ems.client.channel.SubscriberEvent;
+import ca.corbett.ems.client.channel.SubscriberListener;
+import ca.corbett.ems.server.EMSServer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.file.Path;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A Subscriber that skips the network when it can. If the server it's connecting to is a
+ * LocalEMSServer running in this same JVM, commands are run directly by the server's
+ * command handlers, on the calling thread, and channel messages come in through an
+ * in-memory queue, so there's no socket, no text encoding and decoding, and no waiting
+ * on the server's client thread.
+ * <p>
+ *     Failing that, if shared memory is enabled (see setSharedMemoryEnabled) and the server
+ *     is on this machine, we connect over TCP and then ask the server (with the SHM command)
+ *     to move us to a shared memory connection: commands, responses and channel messages
+ *     then go through a pair of memory-mapped rings (see SharedMemoryHandler), and the TCP
+ *     connection is only watched to find out when the server goes away. If the server doesn't
+ *     support that, we carry on over TCP.
+ * </p>
+ * <p>
+ *     Otherwise, we connect over TCP, speaking the same protocol as a regular Subscriber.
+ *     Unlike Subscriber, we give up if the server can't be reached (or doesn't answer our
+ *     handshake) within the connect timeout, and a single reader thread reads everything the
+ *     server sends us, handing responses to whoever sent the command and channel messages to
+ *     our listeners, so sending a command doesn't have to stop and restart a listener thread.
+ *     The reader also notices when the server closes the connection.
+ * </p>
+ * <p>
+ *     Either way, listeners are notified exactly as they would be for a regular Subscriber,
+ *     including being told about the disconnect when the server stops. getTransport() says
+ *     which kind of connection we ended up with.
+ * </p>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public class LocalSubscriber extends Subscriber {
+
+    private static final Logger logger = Logger.getLogger(LocalSubscriber.class.getName());
+
+    private static final String DELIMITER = ":";
+
+    /**
+     * If not specified, we give up trying to reach a server after this many milliseconds.
+     */
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * The ways we can be connected to a server.
+     */
+    public enum Transport {
+        /**
+         * Directly to a LocalEMSServer in this JVM.
+         */
+        IN_PROCESS,
+
+        /**
+         * Through shared memory, to a server elsewhere on this machine.
+         */
+        SHARED_MEMORY,
+
+        /**
+         * Over TCP, like a regular Subscriber.
+         */
+        TCP
+    }
+
+    private final Object commandLock = new Object();
+    private final BlockingQueue<Reply> responses = new LinkedBlockingQueue<>();
+    private final AtomicLong commandsSent = new AtomicLong();
+    private final AtomicLong responsesReceived = new AtomicLong();
+    private volatile boolean sharedMemoryEnabled;
+    private volatile int connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+    private volatile Socket tcpSocket;
+    private volatile LocalEMSServer localServer;
+    private volatile LocalEMSServer.LocalConnection connection;
+    private volatile SharedMemoryLink link;
+    private Thread deliveryThread;
+
+    /**
+     * Chooses whether to try a shared memory connection to servers on this machine
+     * (other than ones in this JVM, which we always connect to directly). This takes
+     * effect on the next connect().
+     *
+     * @param enabled true to try shared memory.
+     */
+    public void setSharedMemoryEnabled(boolean enabled) {
+        sharedMemoryEnabled = enabled;
+    }
+
+    public boolean isSharedMemoryEnabled() {
+        return sharedMemoryEnabled;
+    }
+
+    /**
+     * Sets how long connect() waits for a server to accept our connection, and then again
+     * for it to answer our handshake. This takes effect on the next connect().
+     *
+     * @param millis The connect timeout, in milliseconds.
+     */
+    public void setConnectTimeoutMillis(int millis) {
+        connectTimeoutMillis = millis;
+    }
+
+    public int getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    /**
+     * Reports how we're connected to the server. When we're not connected, this is TCP.
+     *
+     * @return The transport in use.
+     */
+    public Transport getTransport() {
+        if (connection != null) {
+            return Transport.IN_PROCESS;
+        }
+        return link != null ? Transport.SHARED_MEMORY : Transport.TCP;
+    }
+
+    @Override
+    public boolean connect(String host, int port) {
+        return connect(host, port, new String[0]);
+    }
+
+    @Override
+    public synchronized boolean connect(String host, int port, String... channels) {
+        if (isConnected) {
+            return true;
+        }
+        LocalEMSServer server = LocalEMSServer.find(host, port);
+        if (server != null) {
+            connectInProcess(server, host, port, channels);
+            return true;
+        }
+        if (sharedMemoryEnabled && isThisMachine(host) && connectSharedMemory(host, port, channels)) {
+            return true;
+        }
+        return connectTcp(host, port, channels);
+    }
+
+    @Override
+    public EMSServerResponse sendCommand(String command, String... params) {
+        LocalEMSServer.LocalConnection current = connection;
+        SharedMemoryLink currentLink = link;
+        if ((current == null && !isConnected) || command == null || command.isBlank()) {
+            return super.sendCommand(command, params); // which has the right answer for these
+        }
+
+        // Same format the network client would send:
+        StringBuilder builder = new StringBuilder(command.trim().toUpperCase());
+        for (String param : params) {
+            builder.append(DELIMITER).append(param.trim());
+        }
+        String line = builder.toString();
+        String response;
+        if (current != null) {
+            // Not localServer.execute(): disconnect() may have cleared that field since we looked.
+            response = current.execute(line);
+        }
+        else if (currentLink != null) {
+            response = sendOverLink(currentLink, line);
+        }
+        else {
+            response = sendOverSocket(line);
+        }
+        if (EMSServer.DISCONNECTED.equals(response)) {
+            disconnect();
+        }
+        return new EMSServerResponse(line, response);
+    }
+
+    @Override
+    public synchronized void disconnect() {
+        SharedMemoryLink currentLink = link;
+        if (currentLink != null) {
+            link = null;
+            currentLink.close();
+            responses.clear();
+            super.disconnect(); // this also closes our TCP connection, which stops the socket watcher
+            return;
+        }
+
+        LocalEMSServer.LocalConnection current = connection;
+        if (current == null) {
+            tcpSocket = null; // this tells our reader thread to stop
+            super.disconnect();
+            return;
+        }
+        connection = null;
+        isConnected = false;
+        localServer.detach(current);
+        localServer = null;
+        if (deliveryThread != null && deliveryThread != Thread.currentThread()) {
+            deliveryThread.interrupt();
+        }
+        deliveryThread = null;
+        for (SubscriberListener listener : listeners) {
+            listener.disconnected(subscriberEvent);
+        }
+        subscriberEvent = null;
+    }
+
+    @Override
+    public Socket getClientSocket() {
+        return connection == null ? super.getClientSocket() : null;
+    }
+
+    private void connectInProcess(LocalEMSServer server, String host, int port, String... channels) {
+        localServer = server;
+        connection = server.attach();
+        isConnected = true;
+        subscriberEvent = new SubscriberEvent(host, port, connection.getClientId());
+        for (String channel : channels) {
+            subscribe(channel);
+        }
+        for (SubscriberListener listener : listeners) {
+            listener.connected(subscriberEvent);
+        }
+
+        final LocalEMSServer.LocalConnection current = connection;
+        deliveryThread = new Thread(() -> deliver(current), "ems-local-" + current.getClientId());
+        deliveryThread.setDaemon(true);
+        deliveryThread.start();
+        logger.log(Level.FINE, "Connected in-process to {0}:{1} as {2}",
+                   new Object[]{host, port, current.getClientId()});
+    }
+
+    /**
+     * Connects over TCP, and then tries to move the connection to shared memory.
+     *
+     * @return true if we're now connected through shared memory, false if we should try plain TCP.
+     */
+    private boolean connectSharedMemory(String host, int port, String... channels) {
+        Socket socket = null;
+        PrintWriter writer = null;
+        try {
+            socket = new Socket();
+            socket.connect(new InetSocketAddress(host, port), connectTimeoutMillis);
+            socket.setSoTimeout(connectTimeoutMillis);
+            writer = new PrintWriter(socket.getOutputStream(), true);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            writer.println(SharedMemoryHandler.SHM);
+            EMSServerResponse response = new EMSServerResponse(SharedMemoryHandler.SHM, readResponse(reader));
+            if (!response.isSuccess()) {
+                logger.info("Server " + host + ":" + port + " doesn't offer shared memory ("
+                                    + response.getMessage() + "); using TCP instead.");
+                closeQuietly(socket, writer);
+                return false;
+            }
+
+            // The response is our client id and the path of our segment:
+            String message = response.getMessage();
+            int index = message.indexOf(DELIMITER);
+            String clientId = message.substring(0, index);
+            SharedMemorySegment segment = SharedMemorySegment.open(Path.of(message.substring(index + 1)));
+            socket.setSoTimeout(0);
+
+            clientSocket = socket;
+            out = writer;
+            in = reader;
+            isConnected = true;
+            resetResponses();
+            LinkHandler handler = new LinkHandler();
+            SharedMemoryLink newLink = SharedMemoryLink.clientEnd(segment, "ems-shm-" + clientId, handler);
+            handler.owner = newLink;
+            link = newLink;
+            newLink.start();
+            Thread watcher = new Thread(() -> watchSocket(newLink, reader), "ems-shm-watch-" + clientId);
+            watcher.setDaemon(true);
+            watcher.start();
+
+            subscriberEvent = new SubscriberEvent(host, port, clientId);
+            for (String channel : channels) {
+                subscribe(channel);
+            }
+            for (SubscriberListener listener : listeners) {
+                listener.connected(subscriberEvent);
+            }
+            logger.info("Connected to " + host + ":" + port + " as " + clientId + " through shared memory.");
+            return true;
+        } catch (IOException | RuntimeException e) {
+            if (socket != null && socket.isConnected()) { // otherwise the server isn't there at all, and connectTcp() will say so
+                logger.warning("Unable to use shared memory with " + host + ":" + port + " (" + e.getMessage()
+                                       + "); using TCP instead.");
+            }
+            if (link != null) {
+                link.close();
+                link = null;
+            }
+            clientSocket = null;
+            out = null;
+            in = null;
+            isConnected = false;
+            closeQuietly(socket, writer);
+            return false;
+        }
+    }
+
+    /**
+     * Connects over TCP, and makes sure that the server supports subscriptions, which is
+     * what Subscriber.connect() does, except that we put a time limit on each step.
+     *
+     * @return true if we're connected.
+     */
+    private boolean connectTcp(String host, int port, String... channels) {
+        Socket socket = new Socket();
+        BufferedReader reader;
+        try {
+            socket.connect(new InetSocketAddress(host, port), connectTimeoutMillis);
+            socket.setSoTimeout(connectTimeoutMillis); // for the handshake; sendCommand() uses it as its time limit
+            out = new PrintWriter(socket.getOutputStream(), true);
+            reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Unable to connect to " + host + ":" + port + ": " + e.getMessage());
+            out = null;
+            closeQuietly(socket, null);
+            return false;
+        }
+        in = reader;
+        clientSocket = socket;
+        tcpSocket = socket;
+        isConnected = true;
+        resetResponses();
+        Thread readerThread = new Thread(() -> listen(socket, reader), "ems-tcp-" + host + ":" + port);
+        readerThread.setDaemon(true);
+        readerThread.start();
+
+        EMSServerResponse response = sendCommand("HELP");
+        String help = response.getMessage() == null ? "" : response.getMessage().toUpperCase();
+        if (response.isError() || !help.contains("SUBSCRIBE") || !help.contains("UNSUBSCRIBE")) {
+            if (!isConnected) {
+                logger.log(Level.SEVERE, "Lost connection to " + host + ":" + port + " during handshake.");
+                return false;
+            }
+            logger.log(Level.SEVERE, "Server " + host + ":" + port + " does not support SUBSCRIBE/UNSUBSCRIBE.");
+            disconnect();
+            return false;
+        }
+        try {
+            socket.setSoTimeout(0);
+        } catch (IOException ignored) {
+            // If the socket is broken, our reader thread will find out soon enough.
+        }
+
+        subscriberEvent = new SubscriberEvent(host, port, response.getMessage());
+        for (String channel : channels) {
+            subscribe(channel);
+        }
+        if (!isConnected) {
+            logger.log(Level.SEVERE, "Unable to subscribe to channels on " + host + ":" + port);
+            subscriberEvent = null;
+            return false;
+        }
+        for (SubscriberListener listener : listeners) {
+            listener.connected(subscriberEvent);
+        }
+        return true;
+    }
+
+    /**
+     * Sends a command through shared memory and waits for the response.
+     */
+    private String sendOverLink(SharedMemoryLink currentLink, String line) {
+        synchronized (commandLock) {
+            try {
+                if (!currentLink.send(SharedMemoryLink.COMMAND, line)) {
+                    return EMSServer.DISCONNECTED;
+                }
+            } catch (IllegalArgumentException e) {
+                return "ERR" + DELIMITER + e.getMessage();
+            }
+            return awaitResponse(line, commandsSent.incrementAndGet(), currentLink::isClosed);
+        }
+    }
+
+    /**
+     * Sends a command over our TCP connection and waits for our reader thread to hand us
+     * the response.
+     */
+    private String sendOverSocket(String line) {
+        synchronized (commandLock) {
+            PrintWriter writer = out;
+            if (writer == null) {
+                return EMSServer.DISCONNECTED;
+            }
+            long sequence = commandsSent.incrementAndGet(); // first, so our reader knows a response is coming
+            writer.println(line);
+            if (writer.checkError()) {
+                return EMSServer.DISCONNECTED;
+            }
+            return awaitResponse(line, sequence, () -> tcpSocket == null);
+        }
+    }
+
+    /**
+     * Waits for the response to the command we just sent. If the socket has a read timeout,
+     * we wait no longer than that, as EMSClient would. A connection that times out is
+     * presumed dead.
+     * <p>
+     *     The server answers our commands one at a time, in the order we sent them, so the
+     *     nth response we receive belongs to the nth command we sent. A response that turns
+     *     up for an earlier command, after it gave up waiting, is thrown away here rather
+     *     than being taken as the answer to this one.
+     * </p>
+     *
+     * @param sequence Which command this is, counting from 1 on this connection.
+     */
+    private String awaitResponse(String line, long sequence, BooleanSupplier closed) {
+        try {
+            Socket socket = clientSocket;
+            long timeoutMillis = socket == null ? 0 : socket.getSoTimeout();
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            while (true) {
+                Reply reply = responses.poll(100, TimeUnit.MILLISECONDS);
+                if (reply != null && reply.sequence >= sequence) {
+                    return reply.text;
+                }
+                if (closed.getAsBoolean()) {
+                    return EMSServer.DISCONNECTED;
+                }
+                if (timeoutMillis > 0 && System.nanoTime() - deadline >= 0) {
+                    logger.warning("Timed out waiting for a response to " + line);
+                    return EMSServer.DISCONNECTED;
+                }
+            }
+        } catch (IOException e) {
+            return EMSServer.DISCONNECTED;
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return EMSServer.DISCONNECTED;
+        }
+    }
+
+    /**
+     * Reads everything the server sends over our TCP connection. While any command we've
+     * sent is still owed a response (even one that has given up waiting for it), every line
+     * is part of that response, up to the OK or ERR line that ends it, which is how EMSClient
+     * reads them too; otherwise, each line is a channel message. If the server goes away,
+     * we're disconnected.
+     */
+    private void listen(Socket socket, BufferedReader reader) {
+        StringBuilder response = new StringBuilder();
+        try {
+            while (tcpSocket == socket) {
+                String line;
+                try {
+                    line = reader.readLine();
+                } catch (SocketTimeoutException e) {
+                    continue; // that's the command timeout, which awaitResponse() looks after
+                }
+                if (line == null) {
+                    break;
+                }
+                if (responsesReceived.get() < commandsSent.get()) {
+                    if (response.length() > 0) {
+                        response.append("\n");
+                    }
+                    response.append(line);
+                    if (line.startsWith("OK") || line.startsWith("ERR")) {
+                        responseReceived(response.toString());
+                        response.setLength(0);
+                    }
+                    continue;
+                }
+                if (EMSServer.DISCONNECTED.equals(line)) {
+                    break;
+                }
+                fireChannelMessage(line.trim());
+            }
+        } catch (IOException e) {
+            // Our socket was closed.
+        }
+        if (tcpSocket == socket) {
+            responses.offer(new Reply(Long.MAX_VALUE, EMSServer.DISCONNECTED)); // for anybody waiting on a response
+            disconnect();
+        }
+    }
+
+    /**
+     * Starts counting commands and responses afresh, for a new connection.
+     */
+    private void resetResponses() {
+        responses.clear();
+        commandsSent.set(0);
+        responsesReceived.set(0);
+    }
+
+    /**
+     * Hands a response from the server to whoever is waiting for it, numbered so that they
+     * can tell whether it's theirs (see awaitResponse()).
+     */
+    private void responseReceived(String text) {
+        responses.offer(new Reply(responsesReceived.incrementAndGet(), text));
+    }
+
+    /**
+     * Hands each message from the in-process server to our listeners, until we're disconnected.
+     */
+    private void deliver(LocalEMSServer.LocalConnection current) {
+        try {
+            while (connection == current) {
+                String message = current.take();
+                if (EMSServer.DISCONNECTED.equals(message)) {
+                    if (connection == current) {
+                        disconnect();
+                    }
+                    return;
+                }
+                fireChannelMessage(message);
+            }
+        } catch (InterruptedException ignored) {
+            // We've been disconnected.
+        }
+    }
+
+    /**
+     * Once we've moved to shared memory, nothing else should come over our TCP connection
+     * except the server telling us it's going away. Either that or the connection dropping
+     * means we're disconnected.
+     */
+    private void watchSocket(SharedMemoryLink watched, BufferedReader reader) {
+        while (link == watched) {
+            try {
+                String line = reader.readLine();
+                if (line == null || EMSServer.DISCONNECTED.equals(line)) {
+                    break;
+                }
+            } catch (SocketTimeoutException e) {
+                // Somebody set a read timeout on our socket; that's fine, we'll just keep waiting.
+            } catch (IOException e) {
+                break;
+            }
+        }
+        if (link == watched) {
+            watched.close(); // wakes up anybody waiting for a response
+            disconnect();
+        }
+    }
+
+    private void fireChannelMessage(String message) {
+        int index = message.indexOf(DELIMITER);
+        SubscriberEvent event = subscriberEvent;
+        if (index < 0 || event == null) {
+            logger.log(Level.FINE, "Ignoring unexpected message from server: {0}", message);
+            return;
+        }
+        event.setChannel(message.substring(0, index));
+        String body = message.substring(index + 1);
+        for (SubscriberListener listener : listeners) {
+            listener.channelMessageReceived(event, body);
+        }
+    }
+
+    /**
+     * Reads one response from the server, which may run over several lines, the same way
+     * EMSClient does.
+     */
+    private static String readResponse(BufferedReader reader) throws IOException {
+        StringBuilder response = new StringBuilder();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (response.length() > 0) {
+                response.append("\n");
+            }
+            response.append(line);
+            if (line.startsWith("OK") || line.startsWith("ERR")) {
+                return response.toString();
+            }
+        }
+        throw new IOException("Connection closed by server.");
+    }
+
+    private static void closeQuietly(Socket socket, PrintWriter writer) {
+        if (writer != null) {
+            writer.println(EMSServer.DISCONNECTED);
+        }
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Reports whether the given host is this machine, meaning a server there could share
+     * memory with us.
+     */
+    private static boolean isThisMachine(String host) {
+        if (LocalEMSServer.isLoopback(host)) {
+            return true;
+        }
+        try {
+            InetAddress address = InetAddress.getByName(host);
+            return address.isAnyLocalAddress() || NetworkInterface.getByInetAddress(address) != null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Receives frames from the server over our shared memory link.
+     */
+    private final class LinkHandler implements SharedMemoryLink.FrameHandler {
+        private SharedMemoryLink owner;
+
+        @Override
+        public void frameReceived(int type, String payload) {
+            if (type == SharedMemoryLink.RESPONSE) {
+                responseReceived(payload);
+            }
+            else if (type == SharedMemoryLink.MESSAGE) {
+                if (EMSServer.DISCONNECTED.equals(payload)) {
+                    // Close the link first, so that anybody waiting for a response gives up
+                    // (and lets go of the lock that disconnect() needs):
+                    owner.close();
+                    if (link == owner) {
+                        disconnect();
+                    }
+                }
+                else {
+                    fireChannelMessage(payload);
+                }
+            }
+        }
+
+        @Override
+        public void linkClosed() {
+            if (link == owner) {
+                disconnect();
+            }
+        }
+    }
+
+    /**
+     * A response from the server, and which of our commands it answers.
+     */
+    private static final class Reply {
+        private final long sequence;
+        private final String text;
+
+        private Reply(long sequence, String text) {
+            this.sequence = sequence;
+            this.text = text;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package ca.corbett.ems.app.local;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A single-producer, single-consumer ring buffer of text frames, laid out in a region of
+ * a memory-mapped file so that the producer and consumer can be in different processes.
+ * Each side owns one counter in the ring's header: the producer only ever writes the
+ * write position, and the consumer only ever writes the read position, so no locks are
+ * needed between them. The counters are published with release/acquire semantics, which
+ * is what makes the frame data visible to the other side before the counter that covers it.
+ * <p>
+ *     Layout: the write position (a long) at offset 0, the read position at offset 64 (so
+ *     the two sides don't fight over a cache line), and then the data area. Each frame is
+ *     an 8 byte header (payload length and frame type) followed by the UTF-8 payload, padded
+ *     to a multiple of 8 bytes. A frame that won't fit before the end of the data area is
+ *     preceded by a padding marker, and starts again at the beginning.
+ * </p>
+ * <p>
+ *     "Single producer" means single thread at a time: callers that write from more than
+ *     one thread must do their own locking. Frames are limited to a quarter of the ring's
+ *     capacity (see getMaxPayload).
+ * </p>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public final class MappedRing {
+
+    /**
+     * How many bytes of header come before the data area.
+     */
+    public static final int HEADER_BYTES = 128;
+
+    private static final int WRITE_POSITION = 0;
+    private static final int READ_POSITION = 64;
+    private static final int FRAME_HEADER_BYTES = 8;
+    private static final int PADDING = -1;
+
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class,
+                                                                                ByteOrder.nativeOrder());
+
+    private final ByteBuffer buffer;
+    private final int capacity;
+    private final int mask;
+
+    // Each side's own copy of its counter, and of the last value it saw of the other side's:
+    private long writePosition;
+    private long readPosition;
+    private long cachedReadPosition;
+
+    /**
+     * Wraps a region of a mapped file as a ring. The region must be HEADER_BYTES plus the
+     * capacity long, start on an 8 byte boundary, and be all zeroes for a brand new ring.
+     *
+     * @param region   The region, with position 0 at its start (see ByteBuffer.slice()).
+     * @param capacity The size of the data area: a power of two, at least 4096.
+     */
+    public MappedRing(ByteBuffer region, int capacity) {
+        if (Integer.bitCount(capacity) != 1 || capacity < 4096) {
+            throw new IllegalArgumentException("Ring capacity must be a power of two of at least 4096: " + capacity);
+        }
+        this.buffer = region.order(ByteOrder.nativeOrder());
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.writePosition = (long) LONG.getAcquire(buffer, WRITE_POSITION);
+        this.readPosition = (long) LONG.getAcquire(buffer, READ_POSITION);
+        this.cachedReadPosition = readPosition;
+    }
+
+    /**
+     * Returns the most bytes of (UTF-8) payload that a single frame can carry.
+     *
+     * @return The largest frame payload.
+     */
+    public int getMaxPayload() {
+        return capacity / 4 - FRAME_HEADER_BYTES;
+    }
+
+    /**
+     * Adds a frame to the ring, if there's room for it. Producer side only.
+     *
+     * @param type    The frame type, which is up to the caller.
+     * @param payload The frame's text, which must fit in getMaxPayload() bytes of UTF-8.
+     * @return true if the frame was added, false if the ring is too full right now.
+     * @throws IllegalArgumentException If the frame is too big to ever fit.
+     */
+    public boolean offer(int type, String payload) {
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > getMaxPayload()) {
+            throw new IllegalArgumentException("Frame too large for shared memory: " + bytes.length + " bytes");
+        }
+        int frameLength = FRAME_HEADER_BYTES + align(bytes.length);
+        int index = (int) (writePosition & mask);
+        int padding = capacity - index < frameLength ? capacity - index : 0;
+        if (!hasRoom(padding + frameLength)) {
+            return false;
+        }
+
+        if (padding > 0) {
+            buffer.putInt(HEADER_BYTES + index, PADDING);
+            index = 0;
+        }
+        buffer.putInt(HEADER_BYTES + index, bytes.length);
+        buffer.putInt(HEADER_BYTES + index + 4, type);
+        buffer.put(HEADER_BYTES + index + FRAME_HEADER_BYTES, bytes);
+        writePosition += padding + frameLength;
+        LONG.setRelease(buffer, WRITE_POSITION, writePosition);
+        return true;
+    }
+
+    /**
+     * Takes the next frame from the ring, if there is one. Consumer side only.
+     *
+     * @return The frame, or null if the ring is empty.
+     */
+    public Frame poll() {
+        long available = (long) LONG.getAcquire(buffer, WRITE_POSITION);
+        if (readPosition == available) {
+            return null;
+        }
+        int index = (int) (readPosition & mask);
+        int length = buffer.getInt(HEADER_BYTES + index);
+        if (length == PADDING) {
+            readPosition += capacity - index;
+            index = 0;
+            length = buffer.getInt(HEADER_BYTES);
+        }
+        int type = buffer.getInt(HEADER_BYTES + index + 4);
+        byte[] bytes = new byte[length];
+        buffer.get(HEADER_BYTES + index + FRAME_HEADER_BYTES, bytes);
+        readPosition += FRAME_HEADER_BYTES + align(length);
+        LONG.setRelease(buffer, READ_POSITION, readPosition);
+        return new Frame(type, new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    private boolean hasRoom(int length) {
+        if (capacity - (writePosition - cachedReadPosition) >= length) {
+            return true;
+        }
+        cachedReadPosition = (long) LONG.getAcquire(buffer, READ_POSITION);
+        return capacity - (writePosition - cachedReadPosition) >= length;
+    }
+
+    private static int align(int length) {
+        return (length + 7) & ~7;
+    }
+
+    /**
+     * One frame taken from a ring.
+     */
+    public static final class Frame {
+        private final int type;
+        private final String payload;
+
+        private Frame(int type, String payload) {
+            this.type = type;
+            this.payload = payload;
+        }
+
+        public int getType() {
+            return type;
+        }
+
+        public String getPayload() {
+            return payload;
+        }
+    }
+}
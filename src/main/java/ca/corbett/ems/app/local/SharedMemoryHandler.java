@@ -0,0 +1,225 @@
+package ca.corbett.ems.app.local;
+
+import ca.corbett.ems.handlers.AbstractCommandHandler;
+import ca.corbett.ems.server.EMSServer;
+import ca.corbett.ems.server.EMSServerSpy;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Moves a client that's on the same machine as the server over to a shared memory
+ * connection. The client connects over TCP as usual and sends SHM; we create a
+ * SharedMemorySegment for it and respond with its client id and the segment's path.
+ * From then on, the client sends its commands through the segment instead of its socket,
+ * and everything the server sends it (responses and channel messages) comes back the same
+ * way. The TCP connection stays open, and closing it ends the shared memory connection too.
+ * <p>
+ *     Each shared memory client gets a reader thread on the server, and a segment file
+ *     holding two rings of ringCapacity bytes each. The files go in /dev/shm where there is
+ *     one (so they're never written to disk), and are deleted when the client disconnects.
+ *     Frames bigger than a quarter of a ring can't be sent this way: commands that big are
+ *     refused, and messages that big are dropped (and logged). Channel messages are never
+ *     waited on: if a client falls so far behind that its ring is full, new messages for it
+ *     are dropped (and counted, as LocalEMSServer does for its own slow clients). Only
+ *     responses, which the client is waiting for, wait for room in the ring.
+ * </p>
+ * <p>
+ *     Use install() to add this to a server, which also adds it as a server spy so that
+ *     it can clean up after clients that disconnect.
+ * </p>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public class SharedMemoryHandler extends AbstractCommandHandler implements EMSServerSpy {
+
+    private static final Logger logger = Logger.getLogger(SharedMemoryHandler.class.getName());
+
+    public static final String SHM = "SHM";
+
+    /**
+     * If not specified, each direction of a shared memory connection gets a ring of this many bytes.
+     */
+    public static final int DEFAULT_RING_CAPACITY = 1 << 20;
+
+    private final LocalEMSServer server;
+    private final Path directory;
+    private final int ringCapacity;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+    public SharedMemoryHandler(LocalEMSServer server, Path directory, int ringCapacity) {
+        super(SHM);
+        this.server = server;
+        this.directory = directory;
+        this.ringCapacity = ringCapacity;
+    }
+
+    /**
+     * Adds the SHM command to the given server, with segments in the default directory.
+     *
+     * @param server The server to install on.
+     * @return The handler.
+     */
+    public static SharedMemoryHandler install(LocalEMSServer server) {
+        return install(server, defaultDirectory(), DEFAULT_RING_CAPACITY);
+    }
+
+    /**
+     * Adds the SHM command to the given server.
+     *
+     * @param server       The server to install on.
+     * @param directory    Where to put the segment files.
+     * @param ringCapacity The size of each ring (see MappedRing).
+     * @return The handler.
+     */
+    public static SharedMemoryHandler install(LocalEMSServer server, Path directory, int ringCapacity) {
+        SharedMemoryHandler handler = new SharedMemoryHandler(server, directory, ringCapacity);
+        server.removeCommandHandler(SHM);
+        server.registerCommandHandler(handler);
+        server.addServerSpy(handler);
+        return handler;
+    }
+
+    /**
+     * Returns /dev/shm if this machine has it, or the temp directory otherwise.
+     *
+     * @return Where segment files go if not otherwise specified.
+     */
+    public static Path defaultDirectory() {
+        Path shm = Path.of("/dev/shm");
+        return Files.isDirectory(shm) && Files.isWritable(shm) ? shm : Path.of(System.getProperty("java.io.tmpdir"));
+    }
+
+    /**
+     * Returns how many clients are connected through shared memory.
+     *
+     * @return The count.
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    @Override
+    public int getMinParameterCount() {
+        return 0;
+    }
+
+    @Override
+    public int getMaxParameterCount() {
+        return 0;
+    }
+
+    @Override
+    public String getUsageText() {
+        return name;
+    }
+
+    @Override
+    public String getHelpText() {
+        return "Moves this connection to shared memory (same machine only); responds with client id and segment path.";
+    }
+
+    @Override
+    public String handle(EMSServer emsServer, String clientId, String commandLine) {
+        if (sessions.containsKey(clientId)) {
+            return createErrorResponse("Already using shared memory");
+        }
+        Path path = directory.resolve("ems-" + clientId + "-" + Long.toHexString(ThreadLocalRandom.current().nextLong())
+                                              + ".shm");
+        SharedMemorySegment segment;
+        try {
+            segment = SharedMemorySegment.create(path, ringCapacity);
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.WARNING, "Unable to create shared memory segment " + path + ": " + e.getMessage(), e);
+            return createErrorResponse("Shared memory not available");
+        }
+        path.toFile().deleteOnExit();
+
+        Session session = new Session(clientId, segment);
+        sessions.put(clientId, session);
+        server.redirect(clientId, session::deliver);
+        session.link.start();
+        logger.info("Client " + clientId + " is now using shared memory at " + path);
+        return createOkResponse(clientId + EMSServer.DELIMITER + path);
+    }
+
+    @Override
+    public void messageReceived(EMSServer server, String clientId, String rawMessage) {
+        //ignored
+    }
+
+    @Override
+    public void messageSent(EMSServer server, String clientId, String rawMessage) {
+        //ignored
+    }
+
+    @Override
+    public void clientConnected(EMSServer server, String clientId) {
+        //ignored
+    }
+
+    @Override
+    public void clientDisconnected(EMSServer server, String clientId) {
+        Session session = sessions.get(clientId);
+        if (session != null) {
+            session.link.close();
+            session.end();
+        }
+    }
+
+    /**
+     * The server's side of one client's shared memory connection.
+     */
+    private final class Session implements SharedMemoryLink.FrameHandler {
+        private final String clientId;
+        private final SharedMemoryLink link;
+
+        private Session(String clientId, SharedMemorySegment segment) {
+            this.clientId = clientId;
+            this.link = SharedMemoryLink.serverEnd(segment, "ems-shm-" + clientId, this);
+        }
+
+        @Override
+        public void frameReceived(int type, String payload) {
+            if (type != SharedMemoryLink.COMMAND) {
+                return;
+            }
+            String response = server.execute(clientId, payload);
+            try {
+                link.send(SharedMemoryLink.RESPONSE, response);
+            } catch (IllegalArgumentException e) {
+                link.send(SharedMemoryLink.RESPONSE, createErrorResponse("Response too large for shared memory"));
+            }
+        }
+
+        @Override
+        public void linkClosed() {
+            end();
+        }
+
+        private void deliver(String message) {
+            try {
+                if (!link.trySend(SharedMemoryLink.MESSAGE, message) && !link.isClosed()) {
+                    server.messageDropped(clientId, message, "shared memory ring full");
+                }
+            } catch (IllegalArgumentException e) {
+                logger.warning("Dropping message for " + clientId + ": " + e.getMessage());
+            }
+        }
+
+        private void end() {
+            if (sessions.remove(clientId, this)) {
+                server.removeRedirect(clientId);
+                link.getSegment().delete();
+                logger.info("Client " + clientId + " is no longer using shared memory.");
+            }
+        }
+    }
+}
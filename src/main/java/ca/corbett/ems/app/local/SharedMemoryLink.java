@@ -0,0 +1,195 @@
+package ca.corbett.ems.app.local;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * One end of a shared memory connection: it writes frames to one of the segment's rings,
+ * and a daemon thread reads frames from the other one and hands them to a FrameHandler.
+ * The server and the client each have one, pointing in opposite directions.
+ * <p>
+ *     Nothing can wake up a thread in another process, so the reader polls: it spins
+ *     briefly after each frame (so a steady stream of messages is picked up with no delay
+ *     at all), then yields, then sleeps for gradually longer, up to a millisecond, while
+ *     the ring stays empty. A writer that finds the ring full waits the same way, if it
+ *     uses send(); trySend() gives up straight away instead, which is what the server uses
+ *     for channel messages, so that a client that has stopped reading can't hold up the
+ *     threads that deliver to everyone else.
+ * </p>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public final class SharedMemoryLink {
+
+    private static final Logger logger = Logger.getLogger(SharedMemoryLink.class.getName());
+
+    /**
+     * A command, from the client to the server.
+     */
+    public static final int COMMAND = 1;
+
+    /**
+     * The server's response to a command.
+     */
+    public static final int RESPONSE = 2;
+
+    /**
+     * A message the server is sending to the client (usually a channel message).
+     */
+    public static final int MESSAGE = 3;
+
+    private static final int SPIN_LIMIT = 100;
+    private static final int YIELD_LIMIT = 200;
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * Receives the frames that come in over a link.
+     */
+    public interface FrameHandler {
+
+        /**
+         * Invoked on the link's reader thread for each incoming frame, in order.
+         */
+        void frameReceived(int type, String payload);
+
+        /**
+         * Invoked on the link's reader thread once the link is closed, from either end.
+         */
+        void linkClosed();
+    }
+
+    private final SharedMemorySegment segment;
+    private final MappedRing inbound;
+    private final MappedRing outbound;
+    private final Thread reader;
+    private volatile boolean closed;
+
+    private SharedMemoryLink(SharedMemorySegment segment, MappedRing inbound, MappedRing outbound,
+                             String threadName, FrameHandler handler) {
+        this.segment = segment;
+        this.inbound = inbound;
+        this.outbound = outbound;
+        reader = new Thread(() -> read(handler), threadName);
+        reader.setDaemon(true);
+    }
+
+    /**
+     * Creates the server's end of a link, which reads commands and writes responses and messages.
+     */
+    public static SharedMemoryLink serverEnd(SharedMemorySegment segment, String threadName, FrameHandler handler) {
+        return new SharedMemoryLink(segment, segment.getToServer(), segment.getToClient(), threadName, handler);
+    }
+
+    /**
+     * Creates the client's end of a link, which writes commands and reads responses and messages.
+     */
+    public static SharedMemoryLink clientEnd(SharedMemorySegment segment, String threadName, FrameHandler handler) {
+        return new SharedMemoryLink(segment, segment.getToClient(), segment.getToServer(), threadName, handler);
+    }
+
+    /**
+     * Starts reading incoming frames.
+     */
+    public void start() {
+        reader.start();
+    }
+
+    public SharedMemorySegment getSegment() {
+        return segment;
+    }
+
+    public boolean isClosed() {
+        return closed || segment.isClosed();
+    }
+
+    /**
+     * Returns the most bytes of (UTF-8) text that a single frame can carry.
+     */
+    public int getMaxPayload() {
+        return outbound.getMaxPayload();
+    }
+
+    /**
+     * Sends a frame to the other end, waiting for room in the ring if it's full.
+     *
+     * @param type    The frame type (COMMAND, RESPONSE or MESSAGE).
+     * @param payload The frame's text.
+     * @return true if it was sent, or false if the link was closed first.
+     * @throws IllegalArgumentException If the frame is too big for the ring.
+     */
+    public boolean send(int type, String payload) {
+        int attempt = 0;
+        while (!trySend(type, payload)) {
+            if (isClosed() || Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+            idle(attempt++);
+        }
+        return true;
+    }
+
+    /**
+     * Sends a frame to the other end if there's room for it in the ring right now.
+     * Only one writer touches the ring at a time, but nobody holds on to it while
+     * waiting for room, so this never waits behind a send() that's stuck on a full ring.
+     *
+     * @param type    The frame type (COMMAND, RESPONSE or MESSAGE).
+     * @param payload The frame's text.
+     * @return true if it was sent, or false if the ring is full or the link is closed.
+     * @throws IllegalArgumentException If the frame is too big for the ring.
+     */
+    public synchronized boolean trySend(int type, String payload) {
+        return !isClosed() && outbound.offer(type, payload);
+    }
+
+    /**
+     * Closes the link, and tells the other end it's closed. The reader thread stops, after
+     * telling the FrameHandler.
+     */
+    public void close() {
+        closed = true;
+        segment.close();
+        if (Thread.currentThread() != reader) {
+            reader.interrupt();
+        }
+    }
+
+    private void read(FrameHandler handler) {
+        int attempt = 0;
+        try {
+            while (!closed) {
+                MappedRing.Frame frame = inbound.poll();
+                if (frame != null) {
+                    attempt = 0;
+                    handler.frameReceived(frame.getType(), frame.getPayload());
+                    continue;
+                }
+                if (segment.isClosed() || Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+                idle(attempt++);
+            }
+        } catch (RuntimeException e) {
+            logger.log(Level.SEVERE, "Shared memory link failed: " + e.getMessage(), e);
+        } finally {
+            closed = true;
+            segment.close();
+            handler.linkClosed();
+        }
+    }
+
+    private static void idle(int attempt) {
+        if (attempt < SPIN_LIMIT) {
+            Thread.onSpinWait();
+        }
+        else if (attempt < YIELD_LIMIT) {
+            Thread.yield();
+        }
+        else {
+            LockSupport.parkNanos(Math.min(MAX_PARK_NANOS, 1000L << Math.min(attempt - YIELD_LIMIT, 10)));
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package ca.corbett.ems.app.local;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+
+/**
+ * A memory-mapped file holding the two rings of one shared memory connection: one
+ * carrying frames from the client to the server, and one carrying frames back. The server
+ * creates the file and tells the client where it is; the client opens it. Either side can
+ * mark the segment as closed, which tells the other side to stop using it.
+ * <p>
+ *     Layout: a 64 byte header (magic number, version, ring capacity, closed flag), followed
+ *     by the client-to-server ring and then the server-to-client ring (see MappedRing).
+ *     Where possible, the file is only readable by the user that created it, so the client
+ *     has to be running as the same user as the server.
+ * </p>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public final class SharedMemorySegment {
+
+    private static final int MAGIC = 0x454D5352; // "EMSR"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int CLOSED_OFFSET = 12;
+
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final MappedRing toServer;
+    private final MappedRing toClient;
+
+    private SharedMemorySegment(Path path, MappedByteBuffer buffer, int capacity) {
+        this.path = path;
+        this.buffer = buffer;
+        int ringBytes = MappedRing.HEADER_BYTES + capacity;
+        toServer = new MappedRing(buffer.slice(HEADER_BYTES, ringBytes), capacity);
+        toClient = new MappedRing(buffer.slice(HEADER_BYTES + ringBytes, ringBytes), capacity);
+    }
+
+    /**
+     * Creates a new segment file. It must not already exist.
+     *
+     * @param path         Where to put it.
+     * @param ringCapacity The size of each ring's data area (see MappedRing).
+     * @return The new segment.
+     * @throws IOException If the file can't be created.
+     */
+    public static SharedMemorySegment create(Path path, int ringCapacity) throws IOException {
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        }
+        else {
+            Files.createFile(path);
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize(ringCapacity));
+            buffer.order(ByteOrder.nativeOrder());
+            buffer.putInt(MAGIC_OFFSET, MAGIC);
+            buffer.putInt(VERSION_OFFSET, VERSION);
+            buffer.putInt(CAPACITY_OFFSET, ringCapacity);
+            return new SharedMemorySegment(path, buffer, ringCapacity);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(path);
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a segment file that the server created.
+     *
+     * @param path Where it is.
+     * @return The segment.
+     * @throws IOException If the file can't be opened, or isn't a segment we understand.
+     */
+    public static SharedMemorySegment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException("Not a shared memory segment: " + path);
+            }
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            header.order(ByteOrder.nativeOrder());
+            if (header.getInt(MAGIC_OFFSET) != MAGIC || header.getInt(VERSION_OFFSET) != VERSION) {
+                throw new IOException("Not a shared memory segment we understand: " + path);
+            }
+            int capacity = header.getInt(CAPACITY_OFFSET);
+            if (Integer.bitCount(capacity) != 1 || capacity < 4096 || channel.size() != fileSize(capacity)) {
+                throw new IOException("Damaged shared memory segment: " + path);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize(capacity));
+            return new SharedMemorySegment(path, buffer, capacity);
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Returns the ring that carries frames from the client to the server.
+     */
+    public MappedRing getToServer() {
+        return toServer;
+    }
+
+    /**
+     * Returns the ring that carries frames from the server to the client.
+     */
+    public MappedRing getToClient() {
+        return toClient;
+    }
+
+    /**
+     * Reports whether either side has closed the segment.
+     *
+     * @return true if it's closed.
+     */
+    public boolean isClosed() {
+        return (int) INT.getAcquire(buffer, CLOSED_OFFSET) != 0;
+    }
+
+    /**
+     * Marks the segment as closed, so that the other side stops using it.
+     */
+    public void close() {
+        INT.setRelease(buffer, CLOSED_OFFSET, 1);
+    }
+
+    /**
+     * Closes the segment and deletes its file. The memory stays mapped (and usable by
+     * anybody who already has it) until it's garbage collected.
+     */
+    public void delete() {
+        close();
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignored) {
+            // It lives in a temp directory; somebody will clean it up eventually.
+        }
+    }
+
+    private static long fileSize(int ringCapacity) {
+        return HEADER_BYTES + 2L * (MappedRing.HEADER_BYTES + ringCapacity);
+    }
+}
@@ -0,0 +1,98 @@
+package ca.corbett.ems.app.trace;
+
+import ca.corbett.ems.app.client.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps per-channel latency histograms for traced messages (see MessageEnvelope),
+ * split into the time from the publisher to the server, the time the message spent
+ * inside the server, and the time from the server to us. End-to-end latency is also
+ * tracked, and is the only figure available if the server doesn't fill in its
+ * timestamps.
+ * <p>
+ *     All methods are thread-safe.
+ * </p>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public final class LatencyTracker {
+
+    private final Map<String, ChannelLatency> channels = new ConcurrentHashMap<>();
+
+    /**
+     * Records the latencies for a traced message that has just arrived.
+     *
+     * @param channel       The channel it arrived on.
+     * @param envelope      The message envelope.
+     * @param arrivalMicros When it arrived, in microseconds since the epoch.
+     */
+    public void record(String channel, MessageEnvelope envelope, long arrivalMicros) {
+        channels.computeIfAbsent(channel, c -> new ChannelLatency()).record(envelope, arrivalMicros);
+    }
+
+    /**
+     * Reports whether we have recorded anything at all.
+     *
+     * @return true if no traced messages have arrived (since the last reset).
+     */
+    public boolean isEmpty() {
+        return channels.isEmpty();
+    }
+
+    /**
+     * Discards everything recorded so far.
+     */
+    public void reset() {
+        channels.clear();
+    }
+
+    /**
+     * Builds a human-readable report of the latencies for each channel, in milliseconds.
+     *
+     * @return A multi-line report, or a short note if nothing has been recorded.
+     */
+    public String report() {
+        if (channels.isEmpty()) {
+            return "No traced messages received.";
+        }
+        List<String> names = new ArrayList<>(channels.keySet());
+        Collections.sort(names);
+        StringBuilder sb = new StringBuilder();
+        for (String name : names) {
+            ChannelLatency latency = channels.get(name);
+            sb.append("Channel ").append(name).append(" (").append(latency.endToEnd.getCount()).append(" messages):\n");
+            if (latency.publishToServer.getCount() > 0) {
+                sb.append("  publish->server:    ").append(latency.publishToServer).append('\n');
+                sb.append("  server queueing:    ").append(latency.serverQueueing).append('\n');
+                sb.append("  server->subscriber: ").append(latency.serverToSubscriber).append('\n');
+            }
+            sb.append("  end-to-end:         ").append(latency.endToEnd).append('\n');
+        }
+        return sb.toString().trim();
+    }
+
+    /**
+     * The histograms for one channel.
+     */
+    private static final class ChannelLatency {
+        private final LatencyHistogram publishToServer = new LatencyHistogram();
+        private final LatencyHistogram serverQueueing = new LatencyHistogram();
+        private final LatencyHistogram serverToSubscriber = new LatencyHistogram();
+        private final LatencyHistogram endToEnd = new LatencyHistogram();
+
+        void record(MessageEnvelope envelope, long arrivalMicros) {
+            endToEnd.record((arrivalMicros - envelope.getPublishMicros()) * 1000);
+            if (envelope.hasServerTimestamps()) {
+                publishToServer.record((envelope.getServerReceiveMicros() - envelope.getPublishMicros()) * 1000);
+                serverQueueing.record((envelope.getServerDispatchMicros() - envelope.getServerReceiveMicros()) * 1000);
+                serverToSubscriber.record((arrivalMicros - envelope.getServerDispatchMicros()) * 1000);
+            }
+        }
+    }
+}
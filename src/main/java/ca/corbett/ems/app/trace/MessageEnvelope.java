@@ -0,0 +1,191 @@
+package ca.corbett.ems.app.trace;
+
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * An optional wrapper around a channel message that lets us work out where the time
+ * goes between a message being published and it arriving at a subscriber. The publisher
+ * wraps the message with a trace id and its publish timestamp, the server (see
+ * TracingSendHandler) fills in when it received the message and when it dispatched it
+ * to subscribers, and the subscriber takes it all apart again (see LatencyTracker).
+ * <p>
+ *     On the wire, an envelope is a single line of text:
+ * </p>
+ * <pre>
+ *     EMSTRACE1|traceId|publishMicros|serverReceiveMicros|serverDispatchMicros|payload
+ * </pre>
+ * <p>
+ *     Timestamps are microseconds since the epoch, and the server's two are empty until
+ *     it fills them in. There are no colons in the envelope itself, because EMS uses those
+ *     to separate fields. Clients that don't know about envelopes just see the whole line
+ *     as the message.
+ * </p>
+ * <p>
+ *     <b>Note:</b> the three timestamps come from three different clocks, unless everything
+ *     is on the same machine. Any skew between those clocks shows up in the publish-to-server
+ *     and server-to-subscriber figures.
+ * </p>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public final class MessageEnvelope {
+
+    /**
+     * Every envelope starts with this, followed by SEPARATOR.
+     */
+    public static final String MARKER = "EMSTRACE1";
+
+    /**
+     * Separates the fields of an envelope.
+     */
+    public static final char SEPARATOR = '|';
+
+    private static final String PREFIX = MARKER + SEPARATOR;
+    private static final int FIELD_COUNT = 6;
+
+    private final String traceId;
+    private final long publishMicros;
+    private final long serverReceiveMicros;
+    private final long serverDispatchMicros;
+    private final String payload;
+
+    private MessageEnvelope(String traceId, long publishMicros, long serverReceiveMicros,
+                            long serverDispatchMicros, String payload) {
+        this.traceId = traceId;
+        this.publishMicros = publishMicros;
+        this.serverReceiveMicros = serverReceiveMicros;
+        this.serverDispatchMicros = serverDispatchMicros;
+        this.payload = payload;
+    }
+
+    /**
+     * Wraps the given message in a new envelope, with a fresh trace id and the current time.
+     *
+     * @param payload The message to wrap.
+     * @return The wrapped message, ready to publish.
+     */
+    public static String wrap(String payload) {
+        String traceId = Long.toHexString(ThreadLocalRandom.current().nextLong());
+        return PREFIX + traceId + SEPARATOR + nowMicros() + SEPARATOR + SEPARATOR + SEPARATOR + payload;
+    }
+
+    /**
+     * Reports whether the given message looks like an envelope. This is cheap enough to
+     * check on every message.
+     *
+     * @param message Any channel message.
+     * @return true if the message starts with our marker.
+     */
+    public static boolean isEnvelope(String message) {
+        return message != null && message.startsWith(PREFIX);
+    }
+
+    /**
+     * Fills in the server's timestamps on the given envelope.
+     *
+     * @param message             A wrapped message. Anything else is returned unchanged.
+     * @param serverReceiveMicros When the server received the message.
+     * @param serverDispatchMicros When the server started sending it to subscribers.
+     * @return The stamped message.
+     */
+    public static String stampServer(String message, long serverReceiveMicros, long serverDispatchMicros) {
+        MessageEnvelope envelope = parse(message);
+        if (envelope == null) {
+            return message;
+        }
+        return PREFIX + envelope.traceId + SEPARATOR + envelope.publishMicros + SEPARATOR
+                + serverReceiveMicros + SEPARATOR + serverDispatchMicros + SEPARATOR + envelope.payload;
+    }
+
+    /**
+     * Takes apart an envelope.
+     *
+     * @param message Any channel message.
+     * @return The envelope, or null if the message isn't one (or is damaged).
+     */
+    public static MessageEnvelope parse(String message) {
+        if (!isEnvelope(message)) {
+            return null;
+        }
+        String[] fields = new String[FIELD_COUNT];
+        int start = 0;
+        for (int i = 0; i < FIELD_COUNT - 1; i++) {
+            int end = message.indexOf(SEPARATOR, start);
+            if (end < 0) {
+                return null;
+            }
+            fields[i] = message.substring(start, end);
+            start = end + 1;
+        }
+        fields[FIELD_COUNT - 1] = message.substring(start); // the payload can contain anything
+        long publish = parseMicros(fields[2]);
+        if (publish < 0) {
+            return null;
+        }
+        return new MessageEnvelope(fields[1], publish, parseMicros(fields[3]), parseMicros(fields[4]), fields[5]);
+    }
+
+    /**
+     * Returns the current time in microseconds since the epoch.
+     *
+     * @return The current time.
+     */
+    public static long nowMicros() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000L + now.getNano() / 1000;
+    }
+
+    public String getTraceId() {
+        return traceId;
+    }
+
+    /**
+     * When the publisher sent this message, in microseconds since the epoch.
+     */
+    public long getPublishMicros() {
+        return publishMicros;
+    }
+
+    /**
+     * When the server received this message, in microseconds since the epoch, or -1 if
+     * the server didn't fill it in (it doesn't have a TracingSendHandler).
+     */
+    public long getServerReceiveMicros() {
+        return serverReceiveMicros;
+    }
+
+    /**
+     * When the server started sending this message to subscribers, in microseconds since
+     * the epoch, or -1 if the server didn't fill it in.
+     */
+    public long getServerDispatchMicros() {
+        return serverDispatchMicros;
+    }
+
+    /**
+     * Reports whether the server filled in its timestamps.
+     */
+    public boolean hasServerTimestamps() {
+        return serverReceiveMicros >= 0 && serverDispatchMicros >= 0;
+    }
+
+    /**
+     * The original message, without the envelope.
+     */
+    public String getPayload() {
+        return payload;
+    }
+
+    private static long parseMicros(String field) {
+        if (field.isEmpty()) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(field);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
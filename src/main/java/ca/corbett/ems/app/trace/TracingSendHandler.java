@@ -0,0 +1,54 @@
+package ca.corbett.ems.app.trace;
+
+import ca.corbett.ems.app.delivery.PrioritySendHandler;
+import ca.corbett.ems.app.handlers.DelegatingCommandHandler;
+import ca.corbett.ems.handlers.AbstractCommandHandler;
+import ca.corbett.ems.server.EMSServer;
+
+/**
+ * Wraps the server's publishing handlers (SEND and friends), and fills in the server
+ * timestamps on any message that's wrapped in a MessageEnvelope before passing it along. Other messages go
+ * through untouched, so this costs almost nothing when nobody is tracing.
+ * <p>
+ *     EMS handles each command on the thread that read it from the client, so at this
+ *     point the gap between "received" and "dispatched" is just the time it takes to get
+ *     the message ready to send. If the message is then queued for delivery (see
+ *     PriorityDispatcher), the dispatch timestamp is updated when it comes off the queue.
+ * </p>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public class TracingSendHandler extends DelegatingCommandHandler {
+
+    public TracingSendHandler(AbstractCommandHandler delegate) {
+        super(delegate);
+    }
+
+    /**
+     * Wraps all of the publishing handlers on the given server (whichever it has) with
+     * TracingSendHandlers. Do this before wrapping handlers with anything else (such
+     * as JfrSupport.instrument()).
+     *
+     * @param server The server to install tracing on.
+     */
+    public static void install(EMSServer server) {
+        wrap(server, PrioritySendHandler.PUBLISH_COMMANDS, TracingSendHandler::new);
+    }
+
+    @Override
+    public String handle(EMSServer server, String clientId, String commandLine) {
+        long received = MessageEnvelope.nowMicros();
+
+        // SEND:channel:message - the envelope is the message part:
+        int first = commandLine == null ? -1 : commandLine.indexOf(EMSServer.DELIMITER);
+        int second = first < 0 ? -1 : commandLine.indexOf(EMSServer.DELIMITER, first + 1);
+        if (second < 0 || !commandLine.startsWith(MessageEnvelope.MARKER, second + 1)) {
+            return delegate.handle(server, clientId, commandLine);
+        }
+
+        String message = commandLine.substring(second + 1);
+        String stamped = MessageEnvelope.stampServer(message, received, MessageEnvelope.nowMicros());
+        return delegate.handle(server, clientId, commandLine.substring(0, second + 1) + stamped);
+    }
+}
@@ -0,0 +1,284 @@
+package ca.corbett.ems.app.ui;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.Clip;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import javax.swing.Timer;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntConsumer;
+import java.util.logging.Logger;
+
+/**
+ * Decides when an audible alert should actually be played for incoming channel messages.
+ * Playing a sound for every single message falls apart quickly under load, so instead
+ * we coalesce alerts within a time window: the first message in a quiet period plays
+ * the alert right away, and any further messages that arrive within the window are
+ * rolled up into a single trailing alert at the end of the window. At the end of each
+ * window, an optional summary listener is told how many messages arrived during it,
+ * so that the UI can display something like "12 new messages".
+ * <p>
+ *     The sound is decoded once, up front, into a small pool of pre-opened Clips, so
+ *     playing it never creates threads or opens audio lines. If no audio device is
+ *     available, isAvailable() returns false and all alerts are silently ignored.
+ * </p>
+ * <p>
+ *     Each channel can be given its own alert rule - see AlertScheduler.Rule.
+ *     Channels without a rule use Rule.NORMAL.
+ * </p>
+ * <p>
+ *     This class must only be used from the Event Dispatch Thread.
+ * </p>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public final class AlertScheduler {
+
+    private static final Logger logger = Logger.getLogger(AlertScheduler.class.getName());
+
+    /**
+     * The per-channel rules that we support.
+     */
+    public enum Rule {
+        /**
+         * Alerts are coalesced with all other NORMAL channels.
+         */
+        NORMAL("Normal"),
+
+        /**
+         * Alerts play right away, ignoring the coalescing window, but never more
+         * often than once every URGENT_MIN_GAP_MILLIS.
+         */
+        URGENT("Urgent"),
+
+        /**
+         * No alerts for this channel.
+         */
+        MUTED("Muted");
+
+        private final String label;
+
+        Rule(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    /**
+     * If not specified, alerts are coalesced over this many milliseconds.
+     */
+    public static final int DEFAULT_WINDOW_MILLIS = 1500;
+
+    /**
+     * The minimum gap between two alerts on URGENT channels.
+     */
+    public static final int URGENT_MIN_GAP_MILLIS = 250;
+
+    /**
+     * How many Clips to keep open, so that a new alert can start while the previous one is finishing.
+     */
+    private static final int CLIP_POOL_SIZE = 2;
+
+    private final Clip[] clipPool;
+    private final Map<String, Rule> channelRules;
+    private final Timer windowTimer;
+    private int nextClip;
+    private boolean windowOpen;
+    private int messagesInWindow;
+    private int messagesSinceLastAlert;
+    private long lastUrgentAlertTime;
+    private IntConsumer summaryListener;
+
+    /**
+     * Creates an AlertScheduler with the default window, using the given audio resource.
+     *
+     * @param resourcePath The classpath location of the sound to play (must be a format that AudioSystem can read).
+     */
+    public AlertScheduler(String resourcePath) {
+        this(resourcePath, DEFAULT_WINDOW_MILLIS);
+    }
+
+    /**
+     * Creates an AlertScheduler using the given audio resource and coalescing window.
+     *
+     * @param resourcePath The classpath location of the sound to play (must be a format that AudioSystem can read).
+     * @param windowMillis The length of the coalescing window, in milliseconds.
+     */
+    public AlertScheduler(String resourcePath, int windowMillis) {
+        clipPool = loadClips(resourcePath);
+        channelRules = new HashMap<>();
+        windowTimer = new Timer(windowMillis, e -> windowClosed());
+        windowTimer.setRepeats(false);
+    }
+
+    /**
+     * Reports whether we were able to load the sound and open an audio line for it.
+     *
+     * @return true if alerts can be played.
+     */
+    public boolean isAvailable() {
+        return clipPool != null;
+    }
+
+    /**
+     * Sets a listener to be notified at the end of each coalescing window with the number
+     * of alerting messages that arrived during it. Only one listener is supported.
+     *
+     * @param listener The listener, or null to remove it.
+     */
+    public void setSummaryListener(IntConsumer listener) {
+        summaryListener = listener;
+    }
+
+    /**
+     * Returns the rule for the given channel.
+     *
+     * @param channel The channel name.
+     * @return The rule for that channel (Rule.NORMAL if none was set).
+     */
+    public Rule getRule(String channel) {
+        Rule rule = channelRules.get(channel);
+        return rule == null ? Rule.NORMAL : rule;
+    }
+
+    /**
+     * Sets the rule for the given channel.
+     *
+     * @param channel The channel name.
+     * @param rule    The rule to apply. Rule.NORMAL (or null) removes any existing rule.
+     */
+    public void setRule(String channel, Rule rule) {
+        if (rule == null || rule == Rule.NORMAL) {
+            channelRules.remove(channel);
+        } else {
+            channelRules.put(channel, rule);
+        }
+    }
+
+    /**
+     * Invoked once per incoming message. This is cheap: it never touches the audio
+     * system directly unless an alert is actually due.
+     *
+     * @param channel The channel on which the message arrived.
+     */
+    public void messageArrived(String channel) {
+        if (clipPool == null) {
+            return;
+        }
+        Rule rule = getRule(channel);
+        if (rule == Rule.MUTED) {
+            return;
+        }
+
+        messagesInWindow++;
+        if (rule == Rule.URGENT) {
+            long now = System.currentTimeMillis();
+            if (now - lastUrgentAlertTime >= URGENT_MIN_GAP_MILLIS) {
+                lastUrgentAlertTime = now;
+                play();
+                if (!windowOpen) {
+                    windowOpen = true;
+                    windowTimer.restart();
+                }
+                return;
+            }
+        }
+
+        // Leading edge: nothing has played recently, so play right away and open a window:
+        if (!windowOpen) {
+            windowOpen = true;
+            play();
+            windowTimer.restart();
+            return;
+        }
+
+        // Otherwise, roll it into the trailing alert at the end of this window:
+        messagesSinceLastAlert++;
+    }
+
+    /**
+     * Stops any alert that is currently playing and resets the coalescing window.
+     */
+    public void reset() {
+        windowTimer.stop();
+        windowOpen = false;
+        messagesInWindow = 0;
+        messagesSinceLastAlert = 0;
+        if (clipPool != null) {
+            for (Clip clip : clipPool) {
+                clip.stop();
+            }
+        }
+    }
+
+    /**
+     * Invoked by our timer at the end of each coalescing window.
+     */
+    private void windowClosed() {
+        int count = messagesInWindow;
+        messagesInWindow = 0;
+        if (summaryListener != null && count > 0) {
+            summaryListener.accept(count);
+        }
+
+        // If more messages showed up during the window, play once for all of them
+        // and keep the window going. Sustained traffic thus gets one alert per window.
+        if (messagesSinceLastAlert > 0) {
+            messagesSinceLastAlert = 0;
+            play();
+            windowTimer.restart();
+        } else {
+            windowOpen = false;
+        }
+    }
+
+    private void play() {
+        Clip clip = clipPool[nextClip];
+        nextClip = (nextClip + 1) % clipPool.length;
+        clip.stop();
+        clip.setFramePosition(0);
+        clip.start();
+    }
+
+    /**
+     * Decodes the given audio resource once, and opens a small pool of Clips with it.
+     *
+     * @param resourcePath The classpath location of the sound.
+     * @return An array of open Clips, or null if the sound could not be loaded or played.
+     */
+    private static Clip[] loadClips(String resourcePath) {
+        InputStream in = AlertScheduler.class.getResourceAsStream(resourcePath);
+        if (in == null) {
+            logger.warning("Unable to load audible alert: resource not found: " + resourcePath);
+            return null;
+        }
+        Clip[] clips = new Clip[CLIP_POOL_SIZE];
+        try (AudioInputStream audioStream = AudioSystem.getAudioInputStream(new BufferedInputStream(in))) {
+            AudioFormat format = audioStream.getFormat();
+            byte[] data = audioStream.readAllBytes();
+            for (int i = 0; i < clips.length; i++) {
+                clips[i] = AudioSystem.getClip();
+                clips[i].open(format, data, 0, data.length);
+            }
+            return clips;
+        } catch (IOException | UnsupportedAudioFileException | LineUnavailableException | IllegalArgumentException e) {
+            logger.warning("Unable to load audible alert: " + e.getMessage());
+            for (Clip clip : clips) {
+                if (clip != null) {
+                    clip.close();
+                }
+            }
+            return null;
+        }
+    }
+}
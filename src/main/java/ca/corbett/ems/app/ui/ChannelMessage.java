@@ -0,0 +1,37 @@
+package ca.corbett.ems.app.ui;
+
+/**
+ * A simple immutable holder for a message that arrived on a channel, so that
+ * messages can be queued up and handed around in batches.
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public final class ChannelMessage {
+
+    private final String channel;
+    private final String message;
+
+    public ChannelMessage(String channel, String message) {
+        this.channel = channel;
+        this.message = message;
+    }
+
+    /**
+     * Returns the name of the channel that delivered this message.
+     *
+     * @return The channel name.
+     */
+    public String getChannel() {
+        return channel;
+    }
+
+    /**
+     * Returns the message itself.
+     *
+     * @return The message text.
+     */
+    public String getMessage() {
+        return message;
+    }
+}
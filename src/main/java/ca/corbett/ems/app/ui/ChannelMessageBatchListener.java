@@ -0,0 +1,24 @@
+package ca.corbett.ems.app.ui;
+
+import java.util.List;
+
+/**
+ * An optional companion to ConnectionListener for listeners that would rather receive
+ * channel messages in batches than one at a time. When a ConnectionListener that also
+ * implements this interface is wrapped in an EdtConnectionListener, all channel messages
+ * that arrived since the last frame are delivered in a single call to
+ * channelMessagesReceived, so that the UI can apply them as a single model update.
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public interface ChannelMessageBatchListener {
+
+    /**
+     * Invoked on the Event Dispatch Thread with all channel messages that arrived
+     * since the previous batch, in the order in which they arrived.
+     *
+     * @param messages A non-empty list of messages.
+     */
+    public void channelMessagesReceived(List<ChannelMessage> messages);
+}
@@ -0,0 +1,234 @@
+package ca.corbett.ems.app.ui;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Delivers ConnectionManager events to ConnectionListeners asynchronously, so that
+ * the thread that raised an event (usually the subscriber's socket reader) never
+ * has to wait for a listener to finish with it.
+ * <p>
+ *     Each registered listener gets its own single-threaded delivery executor, which
+ *     means that every listener sees events in exactly the order they were published,
+ *     but a slow listener only ever holds up its own queue. Registration is
+ *     copy-on-write, so listeners can be added or removed from any thread, even
+ *     while events are being published.
+ * </p>
+ * <p>
+ *     For each listener we keep track of how many events were delivered, how long
+ *     they spent waiting in the queue before delivery (average and worst case), and
+ *     the current and peak queue depth. See getMetrics().
+ * </p>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public final class ConnectionEventBus {
+
+    private static final Logger logger = Logger.getLogger(ConnectionEventBus.class.getName());
+
+    private static final AtomicInteger threadCounter = new AtomicInteger(0);
+
+    private final List<Registration> registrations = new CopyOnWriteArrayList<>();
+
+    /**
+     * Registers the given listener, creating a delivery thread for it. Registering the
+     * same listener twice has no effect.
+     *
+     * @param listener The listener to add.
+     */
+    public void addListener(ConnectionListener listener) {
+        if (listener == null || find(listener) != null) {
+            return;
+        }
+        registrations.add(new Registration(listener));
+    }
+
+    /**
+     * Unregisters the given listener. Events that were already queued for it are
+     * still delivered, after which its delivery thread goes away.
+     *
+     * @param listener The listener to remove.
+     */
+    public void removeListener(ConnectionListener listener) {
+        Registration registration = find(listener);
+        if (registration != null) {
+            registrations.remove(registration);
+            registration.executor.shutdown();
+        }
+    }
+
+    /**
+     * Queues the given event for delivery to every registered listener, and returns
+     * immediately. This can be invoked from any thread.
+     *
+     * @param event Something that invokes the appropriate method on a ConnectionListener.
+     */
+    public void publish(Consumer<ConnectionListener> event) {
+        for (Registration registration : registrations) {
+            registration.submit(event);
+        }
+    }
+
+    /**
+     * Returns a snapshot of the delivery metrics for each registered listener.
+     *
+     * @return A list of Metrics, one per listener, in registration order.
+     */
+    public List<Metrics> getMetrics() {
+        List<Metrics> metrics = new ArrayList<>();
+        for (Registration registration : registrations) {
+            metrics.add(registration.snapshot());
+        }
+        return metrics;
+    }
+
+    private Registration find(ConnectionListener listener) {
+        for (Registration registration : registrations) {
+            if (registration.listener == listener) {
+                return registration;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A point-in-time view of how a single listener is keeping up with its events.
+     */
+    public static final class Metrics {
+        private final String listenerName;
+        private final long delivered;
+        private final int queueDepth;
+        private final int peakQueueDepth;
+        private final long averageLatencyNanos;
+        private final long maxLatencyNanos;
+
+        private Metrics(String listenerName, long delivered, int queueDepth, int peakQueueDepth,
+                        long averageLatencyNanos, long maxLatencyNanos) {
+            this.listenerName = listenerName;
+            this.delivered = delivered;
+            this.queueDepth = queueDepth;
+            this.peakQueueDepth = peakQueueDepth;
+            this.averageLatencyNanos = averageLatencyNanos;
+            this.maxLatencyNanos = maxLatencyNanos;
+        }
+
+        public String getListenerName() {
+            return listenerName;
+        }
+
+        /**
+         * The number of events that have been handed to this listener so far.
+         */
+        public long getDelivered() {
+            return delivered;
+        }
+
+        /**
+         * The number of events currently waiting to be handed to this listener.
+         */
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        /**
+         * The largest number of events that have ever been waiting for this listener at once.
+         */
+        public int getPeakQueueDepth() {
+            return peakQueueDepth;
+        }
+
+        /**
+         * The average time, in nanoseconds, between an event being published and this listener receiving it.
+         */
+        public long getAverageLatencyNanos() {
+            return averageLatencyNanos;
+        }
+
+        /**
+         * The longest time, in nanoseconds, that any event waited before this listener received it.
+         */
+        public long getMaxLatencyNanos() {
+            return maxLatencyNanos;
+        }
+
+        @Override
+        public String toString() {
+            return listenerName + ": delivered=" + delivered
+                    + ", queued=" + queueDepth
+                    + ", peakQueued=" + peakQueueDepth
+                    + ", avgLatencyMs=" + String.format("%.3f", averageLatencyNanos / 1_000_000.0)
+                    + ", maxLatencyMs=" + String.format("%.3f", maxLatencyNanos / 1_000_000.0);
+        }
+    }
+
+    /**
+     * Holds a listener together with its delivery thread and metrics.
+     */
+    private static final class Registration {
+        private final ConnectionListener listener;
+        private final String name;
+        private final ThreadPoolExecutor executor;
+        private final AtomicInteger queueDepth = new AtomicInteger(0);
+        private final AtomicInteger peakQueueDepth = new AtomicInteger(0);
+        private final AtomicLong delivered = new AtomicLong(0);
+        private final AtomicLong totalLatencyNanos = new AtomicLong(0);
+        private final AtomicLong maxLatencyNanos = new AtomicLong(0);
+
+        Registration(ConnectionListener listener) {
+            this.listener = listener;
+            ConnectionListener target = listener instanceof EdtConnectionListener
+                    ? ((EdtConnectionListener) listener).getTarget()
+                    : listener;
+            String simpleName = target.getClass().getSimpleName();
+            this.name = simpleName.isEmpty() ? target.getClass().getName() : simpleName; // anonymous classes have no simple name
+            this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+                Thread thread = new Thread(r, "ems-event-" + name + "-" + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        void submit(Consumer<ConnectionListener> event) {
+            long published = System.nanoTime();
+            int depth = queueDepth.incrementAndGet();
+            peakQueueDepth.accumulateAndGet(depth, Math::max);
+            try {
+                executor.execute(() -> deliver(event, published));
+            } catch (RejectedExecutionException ignored) {
+                // This listener was removed while we were publishing:
+                queueDepth.decrementAndGet();
+            }
+        }
+
+        private void deliver(Consumer<ConnectionListener> event, long published) {
+            queueDepth.decrementAndGet();
+            long latency = System.nanoTime() - published;
+            delivered.incrementAndGet();
+            totalLatencyNanos.addAndGet(latency);
+            maxLatencyNanos.accumulateAndGet(latency, Math::max);
+            try {
+                event.accept(listener);
+            } catch (RuntimeException e) {
+                // Don't let one bad listener kill its delivery thread:
+                logger.log(Level.SEVERE, "ConnectionListener " + name + " threw an exception: " + e.getMessage(), e);
+            }
+        }
+
+        Metrics snapshot() {
+            long count = delivered.get();
+            return new Metrics(name, count, queueDepth.get(), peakQueueDepth.get(),
+                               count == 0 ? 0 : totalLatencyNanos.get() / count, maxLatencyNanos.get());
+        }
+    }
+}
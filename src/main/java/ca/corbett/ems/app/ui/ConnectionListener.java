@@ -47,6 +47,16 @@ public interface ConnectionListener {
      */
     public void disconnected();
 
+    /**
+     * Invoked when ConnectionManager has lost its connection unexpectedly, and is about
+     * to try to reconnect. This is invoked once before each attempt, until one succeeds
+     * (at which point the usual connected event is fired) or disconnect() is invoked.
+     *
+     * @param attempt     Which attempt this is, starting from 1.
+     * @param delayMillis How long we will wait before making the attempt.
+     */
+    public void reconnecting(int attempt, long delayMillis);
+
     /**
      * Invoked when an error occurs while communicating with an EMS server.
      *
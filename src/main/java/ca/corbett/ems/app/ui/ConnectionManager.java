@@ -1,17 +1,47 @@
 package ca.corbett.ems.app.ui;
 
+import ca.corbett.ems.app.admission.RateLimitedSendHandler;
+import ca.corbett.ems.app.admission.RateLimiter;
+import ca.corbett.ems.app.channels.ChannelIds;
+import ca.corbett.ems.app.channels.ChannelRegistry;
+import ca.corbett.ems.app.client.Backoff;
+import ca.corbett.ems.app.client.LatencyHistogram;
+import ca.corbett.ems.app.client.PublishBuffer;
+import ca.corbett.ems.app.delivery.ChannelIdSendHandler;
+import ca.corbett.ems.app.delivery.PriorityDispatcher;
+import ca.corbett.ems.app.delivery.PrioritySendHandler;
+import ca.corbett.ems.app.handlers.AliasHandler;
+import ca.corbett.ems.app.handlers.HealthHandler;
+import ca.corbett.ems.app.handlers.PagedListActiveHandler;
+import ca.corbett.ems.app.handlers.PingHandler;
+import ca.corbett.ems.app.handlers.PriorityHandler;
+import ca.corbett.ems.app.handlers.RateLimitHandler;
 import ca.corbett.ems.app.handlers.UptimeHandler;
+import ca.corbett.ems.app.local.LocalEMSServer;
+import ca.corbett.ems.app.local.LocalSubscriber;
+import ca.corbett.ems.app.local.SharedMemoryHandler;
+import ca.corbett.ems.app.trace.LatencyTracker;
+import ca.corbett.ems.app.trace.MessageEnvelope;
+import ca.corbett.ems.app.trace.TracingSendHandler;
 import ca.corbett.ems.client.EMSServerResponse;
 import ca.corbett.ems.client.channel.Subscriber;
 import ca.corbett.ems.client.channel.SubscriberEvent;
 import ca.corbett.ems.client.channel.SubscriberListener;
-import ca.corbett.ems.server.ChannelManager;
-import ca.corbett.ems.server.EMSServer;
-import ca.corbett.ems.server.EMSServerSpy;
 
+import java.io.IOException;
+import java.net.Socket;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -42,6 +72,65 @@ import java.util.logging.Logger;
  *     ConnectionManager will route the commands to the local EMS server or to the
  *     remote one without the client having to worry about it.
  * </p>
+ * <p>
+ *     <b>Threading</b><br>
+ *     None of the methods here block. All network work is queued onto a single
+ *     background I/O thread, in the order requested, and each method returns a
+ *     CompletableFuture that completes when the work is done. Results are still
+ *     reported to listeners via ConnectionListener events as before; the futures
+ *     are there for callers that want to chain work or show progress. Connecting
+ *     gives up after the connect timeout, and any command that gets no response
+ *     within the command timeout is treated as a dropped connection.
+ *     cancelPendingOperations() abandons whatever is queued or in progress.
+ * </p>
+ * <p>
+ *     <b>Multiple connections</b><br>
+ *     Each ConnectionManager wraps one connection (with its own Subscriber, I/O thread
+ *     and listeners), and you can create as many as you like. getInstance() returns
+ *     the default one, which is what the Server and Subscriptions tabs use. To watch
+ *     several servers at once, create more and keep track of them in a ConnectionRegistry.
+ *     Each ConnectionManager can also be given a pool of extra connections for publishing -
+ *     see setPublishPoolSize().
+ * </p>
+ * <p>
+ *     <b>Reconnecting</b><br>
+ *     If an established connection drops without us asking for it (for example, the
+ *     server was restarted), we fire a disconnected event and then keep trying to
+ *     reconnect, with jittered exponential backoff (see Backoff), firing a reconnecting
+ *     event before each attempt. Once we're back, we subscribe to the same channels
+ *     as before, and send any messages that were sent while we were disconnected
+ *     (these are held in a bounded PublishBuffer). Calling disconnect() stops all of this.
+ *     Note that EMS servers don't retain messages, so anything published to our channels
+ *     while we were away is not recovered.
+ * </p>
+ * <p>
+ *     <b>In-process connections</b><br>
+ *     The local server started by startLocalServer() is a LocalEMSServer, and we connect
+ *     with a LocalSubscriber, so if we connect to our own local server, the connection
+ *     doesn't go through a socket at all: commands are run directly by the server's command
+ *     handlers, and channel messages come to us through an in-memory queue. Other clients
+ *     can still connect to the local server over the network as usual. If shared memory
+ *     is enabled (see setSharedMemoryEnabled), servers elsewhere on this machine are
+ *     connected to through shared memory instead of TCP, where they support it. The publish
+ *     pool and latency probe are only used for TCP connections, as there's no network for
+ *     them to help with otherwise.
+ * </p>
+ * <p>
+ *     <b>Latency</b><br>
+ *     While connected, we open one more connection to the server and send a PING over it
+ *     every few seconds, keeping a rolling histogram of the round-trip times (see
+ *     getLatencyHistogram). A separate connection is used so that the probe never has to
+ *     wait behind the commands on our I/O thread. The probe doubles as a
+ *     keepalive: if the server doesn't answer within the command timeout, we treat the
+ *     connection as lost (and reconnect) rather than waiting for TCP to notice.
+ * </p>
+ * <p>
+ *     <b>Message tracing</b><br>
+ *     If tracing is enabled (see setTracingEnabled), each message we send is wrapped in
+ *     a MessageEnvelope that records when it was published. Traced messages that we
+ *     receive, from anyone, are unwrapped before they are passed to listeners, and their
+ *     latencies are recorded per channel (see getMessageLatency).
+ * </p>
  *
  * @author scorbo2
  * @since 2025-03-19
@@ -52,37 +141,328 @@ public final class ConnectionManager {
 
     private static ConnectionManager instance;
 
-    private final List<ConnectionListener> listeners = new ArrayList<>();
-    private EMSServer localServer;
-    private Subscriber client;
+    /**
+     * The name of the ConnectionManager returned by getInstance().
+     */
+    public static final String DEFAULT_NAME = "Default";
+
+    /**
+     * If not specified, we give up trying to reach a server after this many milliseconds.
+     */
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * If not specified, we give up waiting for the response to a command after this many milliseconds.
+     */
+    public static final int DEFAULT_COMMAND_TIMEOUT_MILLIS = 10000;
 
-    private ConnectionManager() {
+    /**
+     * If not specified, we measure the round-trip time to the server this often.
+     */
+    public static final int DEFAULT_LATENCY_PROBE_INTERVAL_MILLIS = 5000;
 
+    /**
+     * If not specified, we log a warning when a round trip takes longer than this.
+     * EMS servers check each client connection for new commands every 500ms when it's idle,
+     * so round trips of up to half a second are normal for an otherwise quiet connection.
+     */
+    public static final int DEFAULT_LATENCY_WARNING_MILLIS = 1000;
+
+    /**
+     * Our latency histogram covers this many of the most recent round trips.
+     */
+    private static final int LATENCY_WINDOW = 120;
+
+    private final String name;
+    private final ConnectionEventBus eventBus = new ConnectionEventBus();
+    private final ScheduledExecutorService ioExecutor;
+    private final ScheduledExecutorService probeScheduler;
+    private final Set<CompletableFuture<?>> pendingOperations = ConcurrentHashMap.newKeySet();
+    private volatile LocalEMSServer localServer;
+    private volatile HealthHandler localHealthHandler;
+    private volatile PriorityDispatcher localDispatcher;
+    private volatile ChannelRegistry localChannelRegistry;
+    private volatile Subscriber client;
+    private volatile PublishConnectionPool publishPool;
+    private volatile String connectedHost;
+    private volatile int connectedPort;
+    private volatile boolean operationInProgress;
+    private volatile String abortReason;
+    private volatile boolean cancelRequested;
+    private volatile int connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+    private volatile int commandTimeoutMillis = DEFAULT_COMMAND_TIMEOUT_MILLIS;
+    private volatile int publishPoolSize;
+    private volatile boolean sharedMemoryEnabled;
+    private volatile int latencyProbeIntervalMillis = DEFAULT_LATENCY_PROBE_INTERVAL_MILLIS;
+    private volatile int latencyWarningMillis = DEFAULT_LATENCY_WARNING_MILLIS;
+    private final LatencyHistogram latencyHistogram = new LatencyHistogram(LATENCY_WINDOW);
+    private volatile long lastLatencyNanos = -1;
+    private volatile TimeoutClient probeClient;
+    private volatile ScheduledFuture<?> probeTask;
+    private long probeSequence;
+    private boolean latencyWarningLogged;
+    private volatile boolean tracingEnabled;
+    private final LatencyTracker messageLatency = new LatencyTracker();
+    private final AtomicLong messagesReceived = new AtomicLong(0);
+    private final AtomicLong messagesSent = new AtomicLong(0);
+    private final Backoff backoff = new Backoff();
+    private final PublishBuffer publishBuffer = new PublishBuffer();
+    private final Set<String> subscribedChannels = ConcurrentHashMap.newKeySet();
+    private volatile boolean autoReconnect = true;
+    private volatile boolean clientReady;
+    private volatile boolean sessionEstablished;
+    private volatile boolean reconnecting;
+    private volatile boolean reconnectAttemptInProgress;
+    private volatile ScheduledFuture<?> reconnectTask;
+
+    /**
+     * Creates a new, unconnected ConnectionManager. Most callers in this app use
+     * getInstance() instead; create your own when you need more than one connection.
+     *
+     * @param name A name for this connection, used for display and for thread names.
+     */
+    public ConnectionManager(String name) {
+        this.name = name;
+        ioExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ems-connection-io-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        probeScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ems-latency-probe-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     /**
-     * ConnectionManager is singleton as the example app only displays a single connection
-     * at a time. You can of course run multiple instances of the example app side-by-each
-     * in order to test sending and receiving messages on one local EMS server.
+     * Returns the default ConnectionManager, which is the one that the Server and
+     * Subscriptions tabs work with. Additional connections can be created with the
+     * constructor and tracked with a ConnectionRegistry.
      *
-     * @return The single instance of ConnectionManager.
+     * @return The default instance of ConnectionManager.
      */
-    public static ConnectionManager getInstance() {
+    public static synchronized ConnectionManager getInstance() {
         if (instance == null) {
-            instance = new ConnectionManager();
+            instance = new ConnectionManager(DEFAULT_NAME);
         }
         return instance;
     }
 
+    /**
+     * Returns the name of this connection.
+     *
+     * @return The name given at construction.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the host that we are connected to.
+     *
+     * @return The host name or IP address, or null if not connected.
+     */
+    public String getHost() {
+        return isConnected() ? connectedHost : null;
+    }
+
+    /**
+     * Returns the port that we are connected to.
+     *
+     * @return The port, or 0 if not connected.
+     */
+    public int getPort() {
+        return isConnected() ? connectedPort : 0;
+    }
+
+    /**
+     * Returns the number of extra connections that we open for publishing.
+     *
+     * @return The publish pool size (0 means messages are sent over our subscriber connection).
+     */
+    public int getPublishPoolSize() {
+        return publishPoolSize;
+    }
+
+    /**
+     * Sets the number of extra connections to open for publishing, so that bulk sends
+     * don't queue up behind subscription traffic. The default is 0, meaning that
+     * messages are sent over our one subscriber connection. Takes effect on the next
+     * connection. See PublishConnectionPool for the trade-offs.
+     *
+     * @param size How many publish connections to open (0 to disable).
+     */
+    public void setPublishPoolSize(int size) {
+        publishPoolSize = Math.max(0, size);
+    }
+
+    /**
+     * Reports whether we use shared memory for servers on this machine.
+     *
+     * @return true if shared memory is enabled.
+     */
+    public boolean isSharedMemoryEnabled() {
+        return sharedMemoryEnabled;
+    }
+
+    /**
+     * Chooses whether to connect to servers on this machine through shared memory
+     * (see LocalSubscriber), and whether our local server lets other clients on this
+     * machine do the same (see SharedMemoryHandler). The default is false. Servers that
+     * don't support it are still connected to over TCP. Takes effect on the next
+     * connection, or the next time the local server is started.
+     *
+     * @param enabled true to use shared memory where possible.
+     */
+    public void setSharedMemoryEnabled(boolean enabled) {
+        sharedMemoryEnabled = enabled;
+    }
+
+    /**
+     * Returns how often we measure the round-trip time to the server.
+     *
+     * @return The probe interval in milliseconds (0 means the probe is disabled).
+     */
+    public int getLatencyProbeIntervalMillis() {
+        return latencyProbeIntervalMillis;
+    }
+
+    /**
+     * Sets how often we measure the round-trip time to the server. Since the probe also
+     * acts as a keepalive, this (plus the command timeout) is roughly how long it takes us
+     * to notice that a connection has silently died. Takes effect on the next connection.
+     *
+     * @param millis The probe interval in milliseconds, or 0 to disable the probe.
+     */
+    public void setLatencyProbeIntervalMillis(int millis) {
+        latencyProbeIntervalMillis = Math.max(0, millis);
+    }
+
+    /**
+     * Returns the round-trip time above which we log a warning.
+     *
+     * @return The warning threshold in milliseconds.
+     */
+    public int getLatencyWarningMillis() {
+        return latencyWarningMillis;
+    }
+
+    /**
+     * Sets the round-trip time above which we log a warning. We log once when latency
+     * goes above this, and once more when it comes back down.
+     *
+     * @param millis The warning threshold in milliseconds.
+     */
+    public void setLatencyWarningMillis(int millis) {
+        latencyWarningMillis = Math.max(1, millis);
+    }
+
+    /**
+     * Returns the most recently measured round-trip time to the server.
+     *
+     * @return The latency in nanoseconds, or -1 if we haven't measured it on this connection.
+     */
+    public long getLastLatencyNanos() {
+        return lastLatencyNanos;
+    }
+
+    /**
+     * Returns the rolling histogram of recent round-trip times to the server, which
+     * can be used to get percentiles. It is cleared whenever we connect.
+     *
+     * @return Our latency histogram (in nanoseconds).
+     */
+    public LatencyHistogram getLatencyHistogram() {
+        return latencyHistogram;
+    }
+
+    /**
+     * Reports whether the most recent round trip took longer than our warning threshold.
+     *
+     * @return true if latency is currently above the warning threshold.
+     */
+    public boolean isLatencyHigh() {
+        return lastLatencyNanos > TimeUnit.MILLISECONDS.toNanos(latencyWarningMillis);
+    }
+
+    /**
+     * Reports whether the messages we send are wrapped in a MessageEnvelope for tracing.
+     *
+     * @return true if tracing is enabled (it's off by default).
+     */
+    public boolean isTracingEnabled() {
+        return tracingEnabled;
+    }
+
+    /**
+     * Enables or disables tracing of the messages we send. Subscribers that don't know
+     * about tracing will see the envelope as part of the message, so only turn this on
+     * if everyone listening is using this app.
+     *
+     * @param enabled Whether to wrap outgoing messages in a MessageEnvelope.
+     */
+    public void setTracingEnabled(boolean enabled) {
+        tracingEnabled = enabled;
+    }
+
+    /**
+     * Returns the per-channel latencies of the traced messages that we have received.
+     * Use its report() method for a summary.
+     *
+     * @return Our LatencyTracker.
+     */
+    public LatencyTracker getMessageLatency() {
+        return messageLatency;
+    }
+
+    /**
+     * Returns the total number of channel messages that this connection has received.
+     *
+     * @return The received message count.
+     */
+    public long getMessagesReceived() {
+        return messagesReceived.get();
+    }
+
+    /**
+     * Returns the total number of channel messages that this connection has sent
+     * (counting one per channel).
+     *
+     * @return The sent message count.
+     */
+    public long getMessagesSent() {
+        return messagesSent.get();
+    }
+
+    /**
+     * Disconnects (stopping our local server, if any) and then releases our threads.
+     * This ConnectionManager can't be used afterwards.
+     *
+     * @return A future which completes once we have disconnected.
+     */
+    public CompletableFuture<Void> dispose() {
+        return disconnect().whenComplete((result, error) -> {
+            ioExecutor.shutdown();
+            probeScheduler.shutdown();
+        });
+    }
+
     /**
      * Registers a listener which will receive notifications as things happen
      * within ConnectionManager. See ConnectionListener for the description of
      * the various events that can be triggered.
+     * <p>
+     *     Events are delivered asynchronously, on a thread dedicated to this listener,
+     *     in the order in which they occurred. A slow listener therefore never holds up
+     *     the network or any other listener. Swing code should wrap itself in an
+     *     EdtConnectionListener to receive its events on the Event Dispatch Thread.
+     * </p>
      *
      * @param listener A ConnectionListener instance.
      */
     public void addConnectionListener(ConnectionListener listener) {
-        listeners.add(listener);
+        eventBus.addListener(listener);
     }
 
     /**
@@ -91,7 +471,122 @@ public final class ConnectionManager {
      * @param listener The listener to remove.
      */
     public void removeConnectionListener(ConnectionListener listener) {
-        listeners.remove(listener);
+        eventBus.removeListener(listener);
+    }
+
+    /**
+     * Returns a snapshot of event delivery metrics (queue depth and dispatch latency)
+     * for each registered listener. Useful for spotting a listener that can't keep up.
+     *
+     * @return A list of ConnectionEventBus.Metrics, one per listener.
+     */
+    public List<ConnectionEventBus.Metrics> getListenerMetrics() {
+        return eventBus.getMetrics();
+    }
+
+    /**
+     * Returns the number of milliseconds that connect() will wait for a server to respond.
+     *
+     * @return The connect timeout, in milliseconds.
+     */
+    public int getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    /**
+     * Sets the number of milliseconds that connect() will wait for a server to respond.
+     * Takes effect on the next connection attempt.
+     *
+     * @param millis The connect timeout, in milliseconds.
+     */
+    public void setConnectTimeoutMillis(int millis) {
+        connectTimeoutMillis = millis;
+    }
+
+    /**
+     * Returns the number of milliseconds that we will wait for the response to any command.
+     *
+     * @return The command timeout, in milliseconds.
+     */
+    public int getCommandTimeoutMillis() {
+        return commandTimeoutMillis;
+    }
+
+    /**
+     * Sets the number of milliseconds that we will wait for the response to any command.
+     * Takes effect on the next connection.
+     *
+     * @param millis The command timeout, in milliseconds.
+     */
+    public void setCommandTimeoutMillis(int millis) {
+        commandTimeoutMillis = millis;
+    }
+
+    /**
+     * Reports whether we will automatically reconnect if our connection drops.
+     *
+     * @return true if automatic reconnection is enabled (the default).
+     */
+    public boolean isAutoReconnect() {
+        return autoReconnect;
+    }
+
+    /**
+     * Enables or disables automatic reconnection when an established connection drops.
+     *
+     * @param autoReconnect Whether to reconnect automatically.
+     */
+    public void setAutoReconnect(boolean autoReconnect) {
+        this.autoReconnect = autoReconnect;
+    }
+
+    /**
+     * Reports whether we have lost our connection and are trying to get it back.
+     *
+     * @return true if a reconnect is scheduled or in progress.
+     */
+    public boolean isReconnecting() {
+        return reconnecting;
+    }
+
+    /**
+     * Returns the number of messages that were sent while we were disconnected,
+     * and are waiting to go out once we reconnect.
+     *
+     * @return The number of buffered messages.
+     */
+    public int getBufferedMessageCount() {
+        return publishBuffer.size();
+    }
+
+    /**
+     * Returns the number of messages that were discarded because too many were sent
+     * while we were disconnected.
+     *
+     * @return The number of dropped messages.
+     */
+    public long getDroppedMessageCount() {
+        return publishBuffer.getDropped();
+    }
+
+    /**
+     * Abandons all queued network operations (including any scheduled reconnect), and
+     * aborts the one in progress (if any) by closing its socket. The futures for those
+     * operations complete with a CancellationException. Aborting a connection attempt
+     * results in the usual connectionError event.
+     */
+    public void cancelPendingOperations() {
+        ScheduledFuture<?> task = reconnectTask;
+        if (task != null) {
+            task.cancel(false);
+        }
+        for (CompletableFuture<?> future : pendingOperations) {
+            future.cancel(false);
+        }
+        if (operationInProgress) {
+            cancelRequested = true;
+            abortInFlight("Operation cancelled.");
+        }
     }
 
     /**
@@ -106,14 +601,38 @@ public final class ConnectionManager {
      *
      * @param host The hostname or IP address to use for the local server (usually "localhost")
      * @param port The port to listen on.
+     * @return A future which completes with true if the server started.
      */
-    public boolean startLocalServer(String host, int port) {
-        stopLocalServer();
-        localServer = new EMSServer(host, port);
+    public CompletableFuture<Boolean> startLocalServer(String host, int port) {
+        return submit(() -> doStartLocalServer(host, port));
+    }
+
+    private boolean doStartLocalServer(String host, int port) {
+        doStopLocalServer();
+        localServer = new LocalEMSServer(host, port);
         //localServer.registerCommandHandler(new HaltHandler()); // nah
         localServer.registerCommandHandler(new UptimeHandler());
+        localServer.registerCommandHandler(new PingHandler());
+        localHealthHandler = new HealthHandler(localServer);
+        localServer.registerCommandHandler(localHealthHandler);
+        localChannelRegistry = new ChannelRegistry(localServer, ChannelIds.DEFAULT_IDLE_TTL_MILLIS, 0);
+        localServer.addServerSpy(localChannelRegistry);
+        PagedListActiveHandler.install(localServer, localChannelRegistry);
+        localHealthHandler.setChannelRegistry(localChannelRegistry);
+        localDispatcher = new PriorityDispatcher(localServer);
+        PrioritySendHandler.install(localServer, localDispatcher);
+        localServer.registerCommandHandler(new PriorityHandler(localDispatcher));
+        ChannelIdSendHandler.install(localServer, localDispatcher, localChannelRegistry.getChannelIds());
+        localServer.registerCommandHandler(new AliasHandler(localChannelRegistry.getChannelIds()));
+        RateLimiter rateLimiter = new RateLimiter(0, 0, 0, 0, false); // no limits unless set with RATELIMIT
+        RateLimitedSendHandler.install(localServer, rateLimiter);
+        localServer.registerCommandHandler(new RateLimitHandler(rateLimiter));
+        localHealthHandler.setRateLimiter(rateLimiter);
+        TracingSendHandler.install(localServer);
+        if (sharedMemoryEnabled) {
+            SharedMemoryHandler.install(localServer);
+        }
         localServer.startServer(); // we could spy on it for extra logging, but it'll get noisy
-        localServer.addServerSpy(new UnsubscribeSpy());
         try {
             Thread.sleep(100); // give it a chance to start up
         } catch (InterruptedException ignored) {
@@ -130,12 +649,33 @@ public final class ConnectionManager {
     /**
      * Shuts down the local server if one was running. A localServerStoppedEvent
      * will be triggered in that case.
+     *
+     * @return A future which completes once the server has stopped.
      */
-    public void stopLocalServer() {
+    public CompletableFuture<Void> stopLocalServer() {
+        return submit(() -> {
+            doStopLocalServer();
+            return null;
+        });
+    }
+
+    private void doStopLocalServer() {
         if (isLocalServerRunning()) {
             localServer.stopServer();
             fireLocalServerStoppedEvent();
         }
+        if (localHealthHandler != null) {
+            localHealthHandler.stop();
+            localHealthHandler = null;
+        }
+        if (localDispatcher != null) {
+            localDispatcher.shutdown();
+            localDispatcher = null;
+        }
+        if (localChannelRegistry != null) {
+            localChannelRegistry.stop();
+            localChannelRegistry = null;
+        }
 
         localServer = null;
     }
@@ -155,10 +695,15 @@ public final class ConnectionManager {
      * </p>
      *
      * @param channelNames A list of names of channels to subscribe to.
+     * @return A future which completes with true if all subscriptions succeeded.
      */
-    public void subscribe(String... channelNames) {
+    public CompletableFuture<Boolean> subscribe(String... channelNames) {
+        return submit(() -> doSubscribe(channelNames));
+    }
+
+    private boolean doSubscribe(String... channelNames) {
         if (!isConnected() || channelNames == null || channelNames.length == 0) {
-            return;
+            return false;
         }
 
         boolean success = true;
@@ -171,7 +716,8 @@ public final class ConnectionManager {
         if (!success) {
             fireConnectionErrorEvent("Channel subscription failed!");
         }
-        retrieveChannelList();
+        doRetrieveChannelList();
+        return success;
     }
 
     /**
@@ -193,10 +739,15 @@ public final class ConnectionManager {
      * </p>
      *
      * @param channelNames An array of channel names
+     * @return A future which completes with true if all unsubscriptions succeeded.
      */
-    public void unsubscribe(String... channelNames) {
+    public CompletableFuture<Boolean> unsubscribe(String... channelNames) {
+        return submit(() -> doUnsubscribe(channelNames));
+    }
+
+    private boolean doUnsubscribe(String... channelNames) {
         if (!isConnected() || channelNames == null || channelNames.length == 0) {
-            return;
+            return false;
         }
 
         boolean success = true;
@@ -209,7 +760,8 @@ public final class ConnectionManager {
         if (!success) {
             fireConnectionErrorEvent("Channel unsubscription failed!");
         }
-        retrieveChannelList();
+        doRetrieveChannelList();
+        return success;
     }
 
     /**
@@ -224,18 +776,32 @@ public final class ConnectionManager {
      *     to an EMS server that does not support our expected commands).
      * </p>
      * <p>
+     *     If the server can't be reached within the connect timeout, or the attempt
+     *     is cancelled, a connectionError event will be triggered.
+     * </p>
+     * <p>
      *     If the connection succeeds, a connected event is triggered.
      * </p>
      *
      * @param host The hostname or IP address of the EMS server.
      * @param port The listening port of the EMS server.
+     * @return A future which completes with true if we connected successfully.
      */
-    public void connect(String host, int port) {
+    public CompletableFuture<Boolean> connect(String host, int port) {
+        return submit(() -> doConnect(host, port));
+    }
+
+    private boolean doConnect(String host, int port) {
         if (isConnected()) {
+            clientReady = false;
             client.disconnect();
             fireDisconnectedEvent();
         }
-        client = new Subscriber();
+        // LocalSubscriber gives up if the server can't be reached, or doesn't answer, within our connect timeout:
+        final LocalSubscriber subscriber = new LocalSubscriber();
+        subscriber.setConnectTimeoutMillis(connectTimeoutMillis);
+        subscriber.setSharedMemoryEnabled(sharedMemoryEnabled);
+        client = subscriber;
         client.addSubscriberEventListener(new SubscriberListener() {
             @Override
             public void connected(SubscriberEvent event) {
@@ -244,31 +810,259 @@ public final class ConnectionManager {
 
             @Override
             public void disconnected(SubscriberEvent event) {
-                disconnect();
+                // This is also invoked when we disconnect on purpose, which connectionLost() sorts out:
+                submit(() -> {
+                    connectionLost(subscriber);
+                    return null;
+                });
             }
 
             @Override
             public void channelMessageReceived(SubscriberEvent event, String message) {
+                messagesReceived.incrementAndGet();
+                MessageEnvelope envelope = MessageEnvelope.parse(message);
+                if (envelope != null) {
+                    messageLatency.record(event.getChannel(), envelope, MessageEnvelope.nowMicros());
+                    message = envelope.getPayload();
+                }
                 fireChannelMessageReceivedEvent(event.getChannel(), message);
             }
         });
+
         if (client.connect(host, port)) {
+            setCommandTimeout(client);
             String serverVersion = getServerVersion();
             String clientId = getClientId();
             if (serverVersion == null || clientId == null) {
-                fireConnectionErrorEvent("Unable to query server! Disconnecting...");
-                disconnect();
-                return;
+                reportFailure("Unable to query server! Disconnecting...");
+                doDisconnect();
+                return false;
             }
-            if (!retrieveChannelList()) {
+            if (!doRetrieveChannelList()) {
                 // RetrieveChannelList will fire off a connection error event if it fails,
                 // so here we can just disconnect and return.
-                disconnect();
-                return;
+                doDisconnect();
+                return false;
+            }
+            connectedHost = host;
+            connectedPort = port;
+            if (subscriber.getTransport() == LocalSubscriber.Transport.TCP) {
+                // Neither of these is any use without a network in between:
+                openPublishPool(host, port);
+                openLatencyProbe(host, port);
             }
+            clientReady = true;
+            sessionEstablished = true;
             fireConnectedEvent(host, port, serverVersion, clientId);
+            return true;
         } else {
-            fireConnectionErrorEvent("Unable to connect.");
+            reportFailure("Unable to connect to " + host + ":" + port + ".");
+            return false;
+        }
+    }
+
+    /**
+     * Invoked on our I/O thread whenever a Subscriber tells us that it has disconnected.
+     * If that was a connection we were using, and we didn't ask for it, then we've lost
+     * our connection, and we'll try to get it back if we're allowed to.
+     */
+    private void connectionLost(Subscriber subscriber) {
+        if (subscriber != client || !clientReady) {
+            return; // either we asked for this, or it was a connection attempt that failed
+        }
+        clientReady = false;
+        closePublishPool();
+        closeLatencyProbe();
+        client = null;
+        fireDisconnectedEvent();
+        if (sessionEstablished && autoReconnect) {
+            logger.warning("Lost connection to " + connectedHost + ":" + connectedPort + "; will try to reconnect.");
+            scheduleReconnect(0);
+        } else {
+            sessionEstablished = false;
+        }
+    }
+
+    /**
+     * Schedules our next attempt to reconnect, after a backoff delay.
+     *
+     * @param attempt The number of attempts that have already failed.
+     */
+    private void scheduleReconnect(int attempt) {
+        long delay = backoff.delayMillis(attempt);
+        reconnecting = true;
+        fireReconnectingEvent(attempt + 1, delay);
+        reconnectTask = ioExecutor.schedule(() -> submit(() -> {
+            attemptReconnect(attempt);
+            return null;
+        }), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void attemptReconnect(int attempt) {
+        if (!reconnecting || !sessionEstablished || isConnected()) {
+            reconnecting = false;
+            return;
+        }
+        // doConnect() refreshes our channel list from the new connection, which starts out with no subscriptions:
+        String[] channels = subscribedChannels.toArray(new String[0]);
+        boolean connected;
+        reconnectAttemptInProgress = true;
+        try {
+            connected = doConnect(connectedHost, connectedPort);
+        } finally {
+            reconnectAttemptInProgress = false;
+        }
+        if (!connected) {
+            subscribedChannels.clear();
+            Collections.addAll(subscribedChannels, channels);
+            if (!cancelRequested) {
+                scheduleReconnect(attempt + 1);
+            }
+            return;
+        }
+
+        reconnecting = false;
+        logger.info("Reconnected to " + connectedHost + ":" + connectedPort + " after " + (attempt + 1) + " attempt(s).");
+        if (channels.length > 0) {
+            doSubscribe(channels);
+        }
+        flushPublishBuffer();
+
+        // If we lost the connection again while catching up, don't leave it to the disconnected event:
+        Subscriber current = client;
+        if (current != null && clientReady && !current.isConnected()) {
+            connectionLost(current);
+        }
+    }
+
+    /**
+     * Sends everything that was buffered while we were disconnected. If we lose the
+     * connection again partway through, whatever is left goes back into the buffer.
+     */
+    private void flushPublishBuffer() {
+        List<PublishBuffer.Entry> entries = publishBuffer.drain();
+        if (entries.isEmpty()) {
+            return;
+        }
+        logger.info("Sending " + entries.size() + " message(s) that were buffered while disconnected.");
+        for (int i = 0; i < entries.size(); i++) {
+            PublishBuffer.Entry entry = entries.get(i);
+            if (!isConnected() || !client.broadcast(entry.getChannel(), entry.getMessage())) {
+                for (int j = i; j < entries.size(); j++) {
+                    publishBuffer.offer(entries.get(j).getChannel(), entries.get(j).getMessage());
+                }
+                return;
+            }
+            messagesSent.incrementAndGet();
+        }
+    }
+
+    /**
+     * Opens our pool of publish connections, if we've been asked for one. If that fails,
+     * we just log it and carry on sending over our subscriber connection.
+     */
+    private void openPublishPool(String host, int port) {
+        if (publishPoolSize <= 0) {
+            return;
+        }
+        PublishConnectionPool pool = new PublishConnectionPool(host, port, publishPoolSize, commandTimeoutMillis);
+        if (pool.isConnected()) {
+            publishPool = pool;
+        } else {
+            logger.warning("Unable to open publish connections to " + host + ":" + port
+                                   + "; messages will be sent over the subscriber connection instead.");
+            pool.close();
+        }
+    }
+
+    private void openLatencyProbe(String host, int port) {
+        if (latencyProbeIntervalMillis <= 0) {
+            return;
+        }
+        TimeoutClient probe = new TimeoutClient();
+        if (!probe.connect(host, port)) {
+            logger.warning("Unable to open latency probe connection to " + host + ":" + port
+                                   + "; round-trip times will not be measured.");
+            return;
+        }
+        probe.setReadTimeout(commandTimeoutMillis);
+        latencyHistogram.reset();
+        lastLatencyNanos = -1;
+        probeClient = probe;
+        probeTask = probeScheduler.scheduleWithFixedDelay(() -> probeLatency(probe), 0,
+                                                          latencyProbeIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void closeLatencyProbe() {
+        ScheduledFuture<?> task = probeTask;
+        probeTask = null;
+        if (task != null) {
+            task.cancel(false);
+        }
+        TimeoutClient probe = probeClient;
+        probeClient = null;
+        lastLatencyNanos = -1;
+        if (probe != null) {
+            probe.disconnect();
+        }
+    }
+
+    /**
+     * Invoked on our probe thread to time one round trip to the server. Servers that
+     * don't have a PING handler answer with an error, but that's still a round trip.
+     * If we get no answer at all, our connection is presumed dead.
+     */
+    private void probeLatency(TimeoutClient probe) {
+        if (probe != probeClient) {
+            return; // we've been disconnected since this was scheduled
+        }
+        String token = Long.toString(++probeSequence);
+        long start = System.nanoTime();
+        probe.sendCommand("PING", token);
+        long elapsed = System.nanoTime() - start;
+
+        if (!probe.isConnected()) {
+            if (probe == probeClient) {
+                logger.warning("Server at " + connectedHost + ":" + connectedPort + " did not answer within "
+                                       + commandTimeoutMillis + "ms; treating the connection as lost.");
+                submit(() -> {
+                    // Disconnecting the subscriber without clearing clientReady looks like a lost connection:
+                    if (probe == probeClient && isConnected()) {
+                        client.disconnect();
+                    }
+                    return null;
+                });
+            }
+            return;
+        }
+
+        latencyHistogram.record(elapsed);
+        lastLatencyNanos = elapsed;
+        boolean high = isLatencyHigh();
+        if (high && !latencyWarningLogged) {
+            logger.warning("Round-trip time to " + connectedHost + ":" + connectedPort + " is "
+                                   + LatencyHistogram.formatMillis(elapsed) + ", above the warning threshold of "
+                                   + latencyWarningMillis + "ms. Recent: " + latencyHistogram);
+        } else if (!high && latencyWarningLogged) {
+            logger.info("Round-trip time to " + connectedHost + ":" + connectedPort + " is back to "
+                                + LatencyHistogram.formatMillis(elapsed) + ".");
+        }
+        latencyWarningLogged = high;
+    }
+
+    /**
+     * A read timeout on the client socket means that a command that gets no response fails
+     * (and disconnects us) instead of waiting forever. The subscriber's listener thread
+     * only reads when data is ready, so it's not affected by this.
+     */
+    private void setCommandTimeout(Subscriber subscriber) {
+        try {
+            Socket socket = subscriber.getClientSocket();
+            if (socket != null) {
+                socket.setSoTimeout(commandTimeoutMillis);
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Unable to set command timeout: " + e.getMessage());
         }
     }
 
@@ -277,19 +1071,55 @@ public final class ConnectionManager {
      * local EMS server if we were running one. A disconnected event is triggered
      * if we were connected, and a localServerStopped event is triggered if
      * there was a local server running.
+     * <p>
+     *     Anything that was queued or in progress is cancelled first, so that
+     *     disconnecting never has to wait for a slow or unreachable server.
+     * </p>
+     *
+     * @return A future which completes once we are disconnected.
      */
-    public void disconnect() {
+    public CompletableFuture<Void> disconnect() {
+        cancelPendingOperations();
+        return submit(() -> {
+            sessionEstablished = false;
+            reconnecting = false;
+            subscribedChannels.clear();
+            int discarded = publishBuffer.size();
+            if (discarded > 0) {
+                logger.warning("Discarding " + discarded + " message(s) that were never sent.");
+                publishBuffer.clear();
+            }
+            if (!messageLatency.isEmpty()) {
+                logger.info("Message latency for " + name + ":\n" + messageLatency.report());
+            }
+            doDisconnect();
+            return null;
+        });
+    }
+
+    private void doDisconnect() {
+        clientReady = false;
+        closePublishPool();
+        closeLatencyProbe();
         if (isConnected()) {
             client.disconnect();
             fireDisconnectedEvent();
         }
         if (isLocalServerRunning()) {
-            stopLocalServer();
+            doStopLocalServer();
         }
 
         client = null;
     }
 
+    private void closePublishPool() {
+        PublishConnectionPool pool = publishPool;
+        publishPool = null;
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
     /**
      * Reports whether we are currently connected to an EMS server.
      *
@@ -315,16 +1145,22 @@ public final class ConnectionManager {
      * the actual channel lists will be sent with the channelList event that
      * we will trigger. If an error occurs, a connectionError event is triggered.
      *
-     * @return true if the server returned the channel lists to us.
+     * @return A future which completes with true if the server returned the channel lists to us.
      */
-    public boolean retrieveChannelList() {
+    public CompletableFuture<Boolean> retrieveChannelList() {
+        return submit(this::doRetrieveChannelList);
+    }
+
+    private boolean doRetrieveChannelList() {
         List<String> activeChannels = retrieveChannelList("LIST_ACTIVE");
         List<String> subscribedChannels = retrieveChannelList("LIST_SUBSCRIBED");
         if (activeChannels != null && subscribedChannels != null) {
+            this.subscribedChannels.clear();
+            this.subscribedChannels.addAll(subscribedChannels);
             fireChannelListEvent(activeChannels, subscribedChannels);
             return true;
         } else {
-            fireConnectionErrorEvent("Failed to retrieve channel list!");
+            reportFailure("Failed to retrieve channel list!");
             return false;
         }
     }
@@ -343,9 +1179,14 @@ public final class ConnectionManager {
         }
 
         EMSServerResponse response = client.sendCommand(command);
-        if (!client.isConnected() || response.isError()) {
+        if (!client.isConnected()) {
+            // We lost the connection - connectionLost() will take care of it from here.
+            logger.log(Level.SEVERE, "Lost connection while gathering channel list from server.");
+            return null;
+        }
+        if (response.isError()) {
             logger.log(Level.SEVERE, "Failed to gather channel list from server... aborting.");
-            disconnect();
+            doDisconnect();
         } else {
             List<String> channels = new ArrayList<>();
             String responseMsg = response.getMessage().trim();
@@ -373,12 +1214,51 @@ public final class ConnectionManager {
      *     which might be considerably slow if you're trying to send to everyone.
      * </p>
      *
-     * @param toSend The message to send.
+     * <p>
+     *     If we have a publish pool (see setPublishPoolSize), the sends go out over
+     *     the pool's connections in parallel and don't wait behind anything else
+     *     on our I/O thread.
+     * </p>
+     * <p>
+     *     If we are in the middle of reconnecting, the message is buffered and sent
+     *     once we're back. If too many messages are buffered, the oldest are dropped.
+     * </p>
+     * <p>
+     *     If tracing is enabled, the message is wrapped in a MessageEnvelope first.
+     * </p>
+     *
+     * @param message The message to send.
      * @param channelNames An array of channel names that should receive the message.
+     * @return A future which completes once the message has been sent to every channel.
      */
-    public void sendMessage(String toSend, String... channelNames) {
-        for (String channel : channelNames) {
-            client.broadcast(channel, toSend);
+    public CompletableFuture<Void> sendMessage(String message, String... channelNames) {
+        final String toSend = tracingEnabled ? MessageEnvelope.wrap(message) : message;
+        PublishConnectionPool pool = publishPool;
+        if (pool != null && isConnected()) {
+            return pool.send(toSend, channelNames).thenAccept(messagesSent::addAndGet);
+        }
+        return submit(() -> {
+            for (String channel : channelNames) {
+                if (!isConnected()) {
+                    if (reconnecting) {
+                        bufferMessage(channel, toSend);
+                        continue;
+                    }
+                    break;
+                }
+                if (client.broadcast(channel, toSend)) {
+                    messagesSent.incrementAndGet();
+                } else if (sessionEstablished && autoReconnect && !isConnected()) {
+                    bufferMessage(channel, toSend); // we just lost the connection
+                }
+            }
+            return null;
+        });
+    }
+
+    private void bufferMessage(String channel, String message) {
+        if (!publishBuffer.offer(channel, message)) {
+            logger.warning("Publish buffer is full; discarded the oldest buffered message.");
         }
     }
 
@@ -418,77 +1298,112 @@ public final class ConnectionManager {
         }
     }
 
-    private void fireLocalServerStartedEvent(String host, int port) {
-        for (ConnectionListener listener : listeners) {
-            listener.localServerStarted(host, port);
+    /**
+     * Queues the given work onto our I/O thread, and returns a future for its result.
+     * Work that is cancelled while still in the queue is skipped.
+     */
+    private <T> CompletableFuture<T> submit(Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        pendingOperations.add(future);
+        future.whenComplete((result, error) -> pendingOperations.remove(future));
+        ioExecutor.execute(() -> {
+            if (future.isDone()) {
+                return;
+            }
+            abortReason = null;
+            cancelRequested = false;
+            operationInProgress = true;
+            try {
+                future.complete(task.call());
+            } catch (Exception e) {
+                logger.log(Level.SEVERE, "Connection operation failed: " + e.getMessage(), e);
+                future.completeExceptionally(e);
+            } finally {
+                operationInProgress = false;
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Aborts the operation that is currently running on our I/O thread by closing the
+     * socket it is waiting on. The operation itself will then fail and report an error,
+     * which will use the given reason instead of its generic message.
+     */
+    private void abortInFlight(String reason) {
+        abortReason = reason;
+        Subscriber current = client;
+        if (current != null) {
+            closeQuietly(current.getClientSocket());
         }
     }
 
-    private void fireLocalServerStoppedEvent() {
-        for (ConnectionListener listener : listeners) {
-            listener.localServerStopped();
+    /**
+     * Fires a connectionError event for a failed operation, unless the failure was
+     * because the user cancelled it (they already know about that). If the operation
+     * was aborted because it timed out, we report that instead of the given message.
+     */
+    private void reportFailure(String defaultMessage) {
+        if (cancelRequested) {
+            logger.info("Operation cancelled by request.");
+            return;
         }
+        String reason = abortReason;
+        fireConnectionErrorEvent(reason == null ? defaultMessage : reason);
     }
 
-    private void fireConnectedEvent(String host, int port, String serverVersion, String clientId) {
-        for (ConnectionListener listener : listeners) {
-            listener.connected(host, port, serverVersion, clientId);
+    private static void closeQuietly(Socket socket) {
+        if (socket == null) {
+            return;
         }
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void fireLocalServerStartedEvent(String host, int port) {
+        eventBus.publish(listener -> listener.localServerStarted(host, port));
+    }
+
+    private void fireLocalServerStoppedEvent() {
+        eventBus.publish(listener -> listener.localServerStopped());
+    }
+
+    private void fireConnectedEvent(String host, int port, String serverVersion, String clientId) {
+        eventBus.publish(listener -> listener.connected(host, port, serverVersion, clientId));
     }
 
     private void fireDisconnectedEvent() {
-        for (ConnectionListener listener : listeners) {
-            listener.disconnected();
-        }
+        eventBus.publish(listener -> listener.disconnected());
+    }
+
+    private void fireReconnectingEvent(int attempt, long delayMillis) {
+        eventBus.publish(listener -> listener.reconnecting(attempt, delayMillis));
     }
 
     private void fireConnectionErrorEvent(String errorMessage) {
-        for (ConnectionListener listener : listeners) {
-            listener.connectionError(errorMessage);
+        if (reconnectAttemptInProgress) {
+            // Failed reconnect attempts are expected, and there's a reconnecting event for each one:
+            logger.warning("Reconnect attempt failed: " + errorMessage);
+            return;
         }
+        eventBus.publish(listener -> listener.connectionError(errorMessage));
     }
 
     private void fireChannelMessageReceivedEvent(String channel, String message) {
-        for (ConnectionListener listener : listeners) {
-            listener.channelMessageReceived(channel, message);
-        }
+        eventBus.publish(listener -> listener.channelMessageReceived(channel, message));
     }
 
     private void fireChannelListEvent(List<String> activeChannels, List<String> subscribedChannels) {
-        for (ConnectionListener listener : listeners) {
-            listener.channelList(activeChannels, subscribedChannels);
-        }
+        eventBus.publish(listener -> listener.channelList(activeChannels, subscribedChannels));
     }
 
     private void fireChannelSubscribedEvent(String channelName) {
-        for (ConnectionListener listener : listeners) {
-            listener.channelSubscribed(channelName);
-        }
+        eventBus.publish(listener -> listener.channelSubscribed(channelName));
     }
 
     private void fireChannelUnsubscribedEvent(String channelName) {
-        for (ConnectionListener listener : listeners) {
-            listener.channelUnsubscribed(channelName);
-        }
-    }
-
-    private static class UnsubscribeSpy implements EMSServerSpy {
-
-        @Override
-        public void messageReceived(EMSServer server, String clientId, String rawMessage) {
-        }
-
-        @Override
-        public void messageSent(EMSServer server, String clientId, String rawMessage) {
-        }
-
-        @Override
-        public void clientConnected(EMSServer server, String clientId) {
-        }
-
-        @Override
-        public void clientDisconnected(EMSServer server, String clientId) {
-            ChannelManager.getInstance().unsubscribeFromAll(clientId);
-        }
+        eventBus.publish(listener -> listener.channelUnsubscribed(channelName));
     }
 }
@@ -0,0 +1,113 @@
+package ca.corbett.ems.app.ui;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps track of any number of named ConnectionManagers, so that one instance of the
+ * app can watch several EMS servers at once. Each ConnectionManager has its own
+ * Subscriber connection, I/O thread and listeners, so the connections don't get
+ * in each other's way.
+ * <p>
+ *     This is deliberately not a singleton - whoever needs one creates one. The example
+ *     app's MainWindow owns one, which always contains the default ConnectionManager
+ *     (see ConnectionManager.getInstance()) plus whatever the user adds in the Connections tab.
+ * </p>
+ * <p>
+ *     All methods are thread-safe.
+ * </p>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public final class ConnectionRegistry {
+
+    private final Map<String, ConnectionManager> connections = new LinkedHashMap<>();
+
+    /**
+     * Creates a new ConnectionManager with the given name and adds it to this registry.
+     *
+     * @param name A unique name for the new connection.
+     * @return The new ConnectionManager (not yet connected).
+     * @throws IllegalArgumentException If the name is blank or already in use.
+     */
+    public synchronized ConnectionManager create(String name) {
+        if (name == null || name.isBlank()) {
+            throw new IllegalArgumentException("Connection name must not be blank.");
+        }
+        ConnectionManager manager = new ConnectionManager(name.trim());
+        register(manager);
+        return manager;
+    }
+
+    /**
+     * Adds an existing ConnectionManager to this registry, under its own name.
+     *
+     * @param manager The ConnectionManager to add.
+     * @throws IllegalArgumentException If a connection with that name is already registered.
+     */
+    public synchronized void register(ConnectionManager manager) {
+        if (connections.containsKey(manager.getName())) {
+            throw new IllegalArgumentException("A connection named \"" + manager.getName() + "\" already exists.");
+        }
+        connections.put(manager.getName(), manager);
+    }
+
+    /**
+     * Returns the named connection.
+     *
+     * @param name The connection name.
+     * @return The ConnectionManager with that name, or null if there isn't one.
+     */
+    public synchronized ConnectionManager get(String name) {
+        return connections.get(name);
+    }
+
+    /**
+     * Reports whether a connection with the given name is registered.
+     *
+     * @param name The connection name.
+     * @return true if the name is in use.
+     */
+    public synchronized boolean contains(String name) {
+        return name != null && connections.containsKey(name.trim());
+    }
+
+    /**
+     * Removes the named connection from this registry and disposes of it (disconnecting
+     * it if needed). The default ConnectionManager can't be removed, since the rest of
+     * the app depends on it.
+     *
+     * @param name The connection name.
+     * @return true if a connection was removed.
+     */
+    public synchronized boolean remove(String name) {
+        ConnectionManager manager = connections.get(name);
+        if (manager == null || manager == ConnectionManager.getInstance()) {
+            return false;
+        }
+        connections.remove(name);
+        manager.dispose();
+        return true;
+    }
+
+    /**
+     * Returns all registered connections, in the order they were added.
+     *
+     * @return A snapshot list of ConnectionManagers.
+     */
+    public synchronized List<ConnectionManager> getConnections() {
+        return new ArrayList<>(connections.values());
+    }
+
+    /**
+     * Returns the number of registered connections.
+     *
+     * @return The connection count.
+     */
+    public synchronized int size() {
+        return connections.size();
+    }
+}
@@ -0,0 +1,411 @@
+package ca.corbett.ems.app.ui;
+
+import ca.corbett.extras.MessageUtil;
+import ca.corbett.forms.FormPanel;
+import ca.corbett.forms.fields.NumberField;
+import ca.corbett.forms.fields.PanelField;
+import ca.corbett.forms.fields.TextField;
+
+import javax.swing.JButton;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.ListSelectionModel;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.table.AbstractTableModel;
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.awt.Font;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * A JPanel that lets the user open connections to any number of EMS servers at once,
+ * and shows live throughput for each of them. The connections are kept in the given
+ * ConnectionRegistry, which always includes the default connection that the Server
+ * and Subscriptions tabs use.
+ * <p>
+ *     Connections added here can optionally be given a pool of extra connections for
+ *     publishing (see PublishConnectionPool), so that bulk sends don't get in the way
+ *     of subscription traffic. Connection events for them are logged to the console
+ *     at the bottom of the panel.
+ * </p>
+ * <p>
+ *     The table also shows how many connection events are waiting for the connection's
+ *     listeners, and the Listeners button shows each listener's queue depth and dispatch
+ *     latency, which is handy for spotting a listener that can't keep up.
+ * </p>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public final class ConnectionsPanel extends JPanel {
+
+    private static final Logger logger = Logger.getLogger(ConnectionsPanel.class.getName());
+
+    /**
+     * How often we refresh the throughput figures, in milliseconds.
+     */
+    private static final int REFRESH_INTERVAL_MILLIS = 1000;
+
+    private final ConnectionRegistry registry;
+    private final ConnectionTableModel tableModel;
+    private final JTable table;
+    private final MessageConsole eventConsole;
+    private MessageUtil messageUtil;
+    private TextField nameField;
+    private TextField hostField;
+    private NumberField portField;
+    private NumberField publishPoolField;
+
+    public ConnectionsPanel(ConnectionRegistry registry) {
+        this.registry = registry;
+        setLayout(new BorderLayout());
+        add(buildControlPanel(), BorderLayout.NORTH);
+
+        tableModel = new ConnectionTableModel();
+        table = new JTable(tableModel);
+        table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        table.setFillsViewportHeight(true);
+        JScrollPane scrollPane = new JScrollPane(table);
+        scrollPane.getVerticalScrollBar().setUnitIncrement(32);
+        scrollPane.getVerticalScrollBar().setBlockIncrement(64);
+
+        JPanel tablePanel = new JPanel(new BorderLayout());
+        tablePanel.add(scrollPane, BorderLayout.CENTER);
+        tablePanel.add(buildTableButtons(), BorderLayout.SOUTH);
+        add(tablePanel, BorderLayout.CENTER);
+
+        eventConsole = new MessageConsole(1000);
+        eventConsole.setPreferredSize(new Dimension(1, 140));
+        add(eventConsole, BorderLayout.SOUTH);
+
+        Timer timer = new Timer(REFRESH_INTERVAL_MILLIS, e -> tableModel.refresh());
+        timer.start();
+        tableModel.refresh();
+    }
+
+    private JPanel buildControlPanel() {
+        FormPanel formPanel = new FormPanel(FormPanel.Alignment.TOP_LEFT);
+
+        nameField = new TextField("Name:", 15, 1, false);
+        formPanel.addFormField(nameField);
+
+        hostField = new TextField("Host:", 15, 1, true);
+        hostField.setText("localhost");
+        formPanel.addFormField(hostField);
+
+        portField = new NumberField("Port:", 1975, 1024, 65535, 1);
+        formPanel.addFormField(portField);
+
+        publishPoolField = new NumberField("Publish connections:", 2, 0, 16, 1);
+        formPanel.addFormField(publishPoolField);
+
+        PanelField panelField = new PanelField();
+        panelField.getPanel().setLayout(new FlowLayout(FlowLayout.CENTER));
+        JButton btn = new JButton("Add connection");
+        btn.setPreferredSize(new Dimension(140, 25));
+        btn.addActionListener(e -> addConnection());
+        panelField.getPanel().add(btn);
+        formPanel.addFormField(panelField);
+
+        formPanel.render();
+        return formPanel;
+    }
+
+    private JPanel buildTableButtons() {
+        JPanel panel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        panel.add(buildButton("Subscribe...", e -> subscribeSelected()));
+        panel.add(buildButton("Latency...", e -> showLatencySelected()));
+        panel.add(buildButton("Listeners...", e -> showListenersSelected()));
+        panel.add(buildButton("Disconnect", e -> disconnectSelected()));
+        panel.add(buildButton("Remove", e -> removeSelected()));
+        return panel;
+    }
+
+    private JButton buildButton(String label, ActionListener action) {
+        JButton btn = new JButton(label);
+        btn.setPreferredSize(new Dimension(110, 25));
+        btn.setFont(btn.getFont().deriveFont(Font.PLAIN, 12f));
+        btn.addActionListener(action);
+        return btn;
+    }
+
+    private void addConnection() {
+        String name = nameField.getText().trim();
+        if (name.isEmpty()) {
+            getMessageUtil().info("Please give the connection a name.");
+            return;
+        }
+        if (registry.contains(name)) {
+            getMessageUtil().info("A connection with that name already exists.");
+            return;
+        }
+
+        ConnectionManager manager = registry.create(name);
+        manager.setPublishPoolSize(publishPoolField.getCurrentValue().intValue());
+        manager.addConnectionListener(new ConnectionLogger(name));
+        String host = hostField.getText();
+        int port = portField.getCurrentValue().intValue();
+        eventConsole.append("[" + name + "] Connecting to " + host + ":" + port + "...");
+        MainWindow.getInstance().trackOperation(manager.connect(host, port), "Connecting " + name + "...");
+        tableModel.refresh();
+        nameField.setText("");
+    }
+
+    private void subscribeSelected() {
+        ConnectionManager manager = getSelectedConnection();
+        if (manager == null) {
+            return;
+        }
+        String channels = JOptionPane.showInputDialog(MainWindow.getInstance(),
+                                                      "Channels to subscribe to on " + manager.getName()
+                                                              + " (comma separated):");
+        if (channels == null || channels.isBlank()) {
+            return;
+        }
+        List<String> names = new ArrayList<>();
+        for (String channel : channels.split(",")) {
+            if (!channel.isBlank()) {
+                names.add(channel.trim());
+            }
+        }
+        MainWindow.getInstance().trackOperation(manager.subscribe(names.toArray(new String[0])), "Subscribing...");
+    }
+
+    private void showLatencySelected() {
+        ConnectionManager manager = getSelectedConnection();
+        if (manager == null) {
+            return;
+        }
+        String report = "Round trip: " + manager.getLatencyHistogram() + "\n\n"
+                + "Traced messages:\n" + manager.getMessageLatency().report();
+        getMessageUtil().info("Latency for " + manager.getName(), report);
+    }
+
+    private void showListenersSelected() {
+        ConnectionManager manager = getSelectedConnection();
+        if (manager == null) {
+            return;
+        }
+        StringBuilder report = new StringBuilder();
+        for (ConnectionEventBus.Metrics metrics : manager.getListenerMetrics()) {
+            report.append(metrics).append("\n");
+        }
+        getMessageUtil().info("Listeners for " + manager.getName(),
+                              report.length() == 0 ? "No listeners." : report.toString());
+    }
+
+    private void disconnectSelected() {
+        ConnectionManager manager = getSelectedConnection();
+        if (manager != null) {
+            manager.disconnect();
+        }
+    }
+
+    private void removeSelected() {
+        ConnectionManager manager = getSelectedConnection();
+        if (manager == null) {
+            return;
+        }
+        if (manager == ConnectionManager.getInstance()) {
+            getMessageUtil().info("The default connection is managed from the Server tab and can't be removed.");
+            return;
+        }
+        registry.remove(manager.getName());
+        eventConsole.append("[" + manager.getName() + "] Removed.");
+        tableModel.refresh();
+    }
+
+    private ConnectionManager getSelectedConnection() {
+        int row = table.getSelectedRow();
+        if (row < 0) {
+            getMessageUtil().info("Nothing selected.");
+            return null;
+        }
+        return tableModel.getConnection(table.convertRowIndexToModel(row));
+    }
+
+    private MessageUtil getMessageUtil() {
+        if (messageUtil == null) {
+            messageUtil = new MessageUtil(MainWindow.getInstance(), logger);
+        }
+        return messageUtil;
+    }
+
+    /**
+     * Shows one row per registered connection, with message rates worked out from the
+     * difference in message counts since the previous refresh.
+     */
+    private final class ConnectionTableModel extends AbstractTableModel {
+
+        private final String[] columns = {"Name", "Server", "Publish pool", "RTT ms", "Received", "In/s", "Sent", "Out/s",
+                "Queued events"};
+        private final Map<ConnectionManager, long[]> previousCounts = new HashMap<>();
+        private List<ConnectionManager> connections = new ArrayList<>();
+        private Map<ConnectionManager, double[]> rates = new HashMap<>();
+        private long previousRefreshTime = System.nanoTime();
+
+        void refresh() {
+            long now = System.nanoTime();
+            double elapsedSeconds = Math.max(1e-3, (now - previousRefreshTime) / 1_000_000_000.0);
+            previousRefreshTime = now;
+
+            List<ConnectionManager> latest = registry.getConnections();
+            Map<ConnectionManager, double[]> latestRates = new HashMap<>();
+            for (ConnectionManager manager : latest) {
+                long received = manager.getMessagesReceived();
+                long sent = manager.getMessagesSent();
+                long[] previous = previousCounts.get(manager);
+                if (previous == null) {
+                    latestRates.put(manager, new double[]{0, 0});
+                } else {
+                    latestRates.put(manager, new double[]{(received - previous[0]) / elapsedSeconds,
+                                                          (sent - previous[1]) / elapsedSeconds});
+                }
+                previousCounts.put(manager, new long[]{received, sent});
+            }
+            previousCounts.keySet().retainAll(latest);
+
+            boolean sameRows = latest.equals(connections);
+            connections = latest;
+            rates = latestRates;
+            if (sameRows) {
+                // Keeps the user's selection intact:
+                if (!connections.isEmpty()) {
+                    fireTableRowsUpdated(0, connections.size() - 1);
+                }
+            } else {
+                fireTableDataChanged();
+            }
+        }
+
+        ConnectionManager getConnection(int row) {
+            return connections.get(row);
+        }
+
+        @Override
+        public int getRowCount() {
+            return connections.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return columns.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return columns[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            ConnectionManager manager = connections.get(row);
+            switch (column) {
+                case 0:
+                    return manager.getName();
+                case 1:
+                    if (manager.isConnected()) {
+                        return manager.getHost() + ":" + manager.getPort();
+                    }
+                    return manager.isReconnecting() ? "Reconnecting..." : ServerPanel.DISCONNECTED;
+                case 2:
+                    return manager.getPublishPoolSize();
+                case 3:
+                    long latency = manager.getLastLatencyNanos();
+                    return latency < 0 ? "" : String.format("%.1f", latency / 1_000_000.0);
+                case 4:
+                    return manager.getMessagesReceived();
+                case 5:
+                    return String.format("%.1f", rates.get(manager)[0]);
+                case 6:
+                    return manager.getMessagesSent();
+                case 7:
+                    return String.format("%.1f", rates.get(manager)[1]);
+                default:
+                    int queued = 0;
+                    for (ConnectionEventBus.Metrics metrics : manager.getListenerMetrics()) {
+                        queued += metrics.getQueueDepth();
+                    }
+                    return queued;
+            }
+        }
+    }
+
+    /**
+     * Logs the interesting events from one of our connections to the console.
+     * Channel messages are only counted, not logged - there could be a lot of them,
+     * which is also why we don't wrap this in an EdtConnectionListener: we ignore
+     * those on the event bus thread, and only hop onto the EDT for the events we log.
+     */
+    private final class ConnectionLogger implements ConnectionListener {
+
+        private final String prefix;
+
+        ConnectionLogger(String name) {
+            prefix = "[" + name + "] ";
+        }
+
+        private void log(String text) {
+            SwingUtilities.invokeLater(() -> eventConsole.append(prefix + text));
+        }
+
+        @Override
+        public void localServerStarted(String host, int port) {
+            //ignored
+        }
+
+        @Override
+        public void localServerStopped() {
+            //ignored
+        }
+
+        @Override
+        public void connected(String host, int port, String serverVersion, String clientId) {
+            log("Connected to " + host + ":" + port + " (" + serverVersion + ") as " + clientId);
+        }
+
+        @Override
+        public void disconnected() {
+            log("Disconnected.");
+        }
+
+        @Override
+        public void reconnecting(int attempt, long delayMillis) {
+            log(String.format("Connection lost. Reconnect attempt %d in %.1fs...", attempt, delayMillis / 1000.0));
+        }
+
+        @Override
+        public void connectionError(String errorMessage) {
+            log(errorMessage);
+        }
+
+        @Override
+        public void channelMessageReceived(String channel, String message) {
+            //ignored
+        }
+
+        @Override
+        public void channelList(List<String> activeChannels, List<String> subscribedChannels) {
+            log("Subscribed to " + subscribedChannels.size() + " of " + activeChannels.size() + " channels.");
+        }
+
+        @Override
+        public void channelSubscribed(String channelName) {
+            //ignored
+        }
+
+        @Override
+        public void channelUnsubscribed(String channelName) {
+            //ignored
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package ca.corbett.ems.app.ui;
+
+import javax.swing.Timer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Sits between ConnectionManager and a UI class, and makes sure that the UI class only
+ * ever receives events on the Event Dispatch Thread. ConnectionManager delivers events
+ * on a background thread belonging to its ConnectionEventBus, which is not safe for
+ * Swing code to act on directly.
+ * <p>
+ *     Incoming events are placed on a lock-free queue, and a Swing timer drains that
+ *     queue onto the EDT at most once per frame (every 16ms by default). Events are
+ *     delivered in the order they arrived. If the wrapped listener also implements
+ *     ChannelMessageBatchListener, then consecutive channel messages are handed over
+ *     as a single batch, so that a burst of hundreds of messages results in one model
+ *     update and one repaint instead of hundreds.
+ * </p>
+ * <p>
+ *     <b>Usage:</b>
+ * </p>
+ *     <pre>
+ *         ConnectionManager.getInstance().addConnectionListener(new EdtConnectionListener(this));
+ *     </pre>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public final class EdtConnectionListener implements ConnectionListener {
+
+    /**
+     * If not specified, we deliver events at most once every 16ms (roughly 60 frames per second).
+     */
+    public static final int DEFAULT_FRAME_MILLIS = 16;
+
+    /**
+     * The maximum number of events to deliver in a single frame. Anything beyond this
+     * waits for the next frame, so that the EDT never stalls on a huge backlog.
+     */
+    private static final int MAX_EVENTS_PER_FRAME = 10_000;
+
+    private final ConnectionListener target;
+    private final Queue<Object> queue;
+    private final AtomicBoolean drainScheduled;
+    private final Timer timer;
+
+    /**
+     * Wraps the given listener using the default frame rate.
+     *
+     * @param target The listener which should receive events on the EDT.
+     */
+    public EdtConnectionListener(ConnectionListener target) {
+        this(target, DEFAULT_FRAME_MILLIS);
+    }
+
+    /**
+     * Wraps the given listener, delivering events to it at most once every frameMillis.
+     *
+     * @param target      The listener which should receive events on the EDT.
+     * @param frameMillis The minimum number of milliseconds between deliveries.
+     */
+    public EdtConnectionListener(ConnectionListener target, int frameMillis) {
+        this.target = target;
+        this.queue = new ConcurrentLinkedQueue<>();
+        this.drainScheduled = new AtomicBoolean(false);
+        this.timer = new Timer(frameMillis, e -> drain());
+        this.timer.setRepeats(true);
+    }
+
+    /**
+     * Returns the listener that we are delivering events to.
+     *
+     * @return The wrapped ConnectionListener.
+     */
+    public ConnectionListener getTarget() {
+        return target;
+    }
+
+    @Override
+    public void localServerStarted(String host, int port) {
+        enqueue((Runnable) () -> target.localServerStarted(host, port));
+    }
+
+    @Override
+    public void localServerStopped() {
+        enqueue((Runnable) target::localServerStopped);
+    }
+
+    @Override
+    public void connected(String host, int port, String serverVersion, String clientId) {
+        enqueue((Runnable) () -> target.connected(host, port, serverVersion, clientId));
+    }
+
+    @Override
+    public void disconnected() {
+        enqueue((Runnable) target::disconnected);
+    }
+
+    @Override
+    public void reconnecting(int attempt, long delayMillis) {
+        enqueue((Runnable) () -> target.reconnecting(attempt, delayMillis));
+    }
+
+    @Override
+    public void connectionError(String errorMessage) {
+        enqueue((Runnable) () -> target.connectionError(errorMessage));
+    }
+
+    @Override
+    public void channelMessageReceived(String channel, String message) {
+        enqueue(new ChannelMessage(channel, message));
+    }
+
+    @Override
+    public void channelList(List<String> activeChannels, List<String> subscribedChannels) {
+        enqueue((Runnable) () -> target.channelList(activeChannels, subscribedChannels));
+    }
+
+    @Override
+    public void channelSubscribed(String channelName) {
+        enqueue((Runnable) () -> target.channelSubscribed(channelName));
+    }
+
+    @Override
+    public void channelUnsubscribed(String channelName) {
+        enqueue((Runnable) () -> target.channelUnsubscribed(channelName));
+    }
+
+    /**
+     * Adds an event to the queue and makes sure that a drain is scheduled.
+     * This can be invoked from any thread.
+     *
+     * @param event Either a ChannelMessage or a Runnable that invokes the target.
+     */
+    private void enqueue(Object event) {
+        queue.add(event);
+        if (drainScheduled.compareAndSet(false, true)) {
+            timer.start();
+        }
+    }
+
+    /**
+     * Invoked by our timer on the EDT to deliver everything that has queued up since the last frame.
+     */
+    private void drain() {
+        List<ChannelMessage> batch = new ArrayList<>();
+        Object event;
+        int count = 0;
+        while (count < MAX_EVENTS_PER_FRAME && (event = queue.poll()) != null) {
+            count++;
+            if (event instanceof ChannelMessage) {
+                batch.add((ChannelMessage) event);
+                continue;
+            }
+
+            // Anything else must wait until the messages before it have been delivered:
+            deliver(batch);
+            batch = new ArrayList<>();
+            ((Runnable) event).run();
+        }
+        deliver(batch);
+
+        // Stop the timer if we're caught up. The order here matters: we stop the timer
+        // before clearing the flag, so that any producer that sets the flag after us
+        // is guaranteed to restart the timer after we stopped it.
+        if (queue.isEmpty()) {
+            timer.stop();
+            drainScheduled.set(false);
+            if (!queue.isEmpty() && drainScheduled.compareAndSet(false, true)) {
+                timer.start();
+            }
+        }
+    }
+
+    private void deliver(List<ChannelMessage> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        if (target instanceof ChannelMessageBatchListener) {
+            ((ChannelMessageBatchListener) target).channelMessagesReceived(messages);
+        } else {
+            for (ChannelMessage message : messages) {
+                target.channelMessageReceived(message.getChannel(), message.getMessage());
+            }
+        }
+    }
+}
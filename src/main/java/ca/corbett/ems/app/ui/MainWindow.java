@@ -9,10 +9,13 @@ import ca.corbett.forms.fields.LabelField;
 import javax.swing.JFrame;
 import javax.swing.JPanel;
 import javax.swing.JTabbedPane;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import java.awt.BorderLayout;
 import java.awt.Dimension;
 import java.awt.Font;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Logger;
 
 /**
@@ -26,10 +29,17 @@ public final class MainWindow extends JFrame implements ConnectionListener {
 
     private static final Logger logger = Logger.getLogger(MainWindow.class.getName());
 
+    /**
+     * How often we update the round-trip time shown in the status bar, in milliseconds.
+     */
+    private static final int LATENCY_REFRESH_MILLIS = 1000;
+
     private MessageUtil messageUtil;
 
     private static MainWindow instance;
     private StatusBar statusBar;
+    private ConnectionRegistry connectionRegistry;
+    private int busyCount;
 
     private MainWindow() {
         super(Version.FULL_NAME);
@@ -37,7 +47,7 @@ public final class MainWindow extends JFrame implements ConnectionListener {
         setSize(new Dimension(580, 540));
         setMinimumSize(new Dimension(580, 540));
         initComponents();
-        ConnectionManager.getInstance().addConnectionListener(this);
+        ConnectionManager.getInstance().addConnectionListener(new EdtConnectionListener(this));
     }
 
     public static MainWindow getInstance() {
@@ -57,18 +67,75 @@ public final class MainWindow extends JFrame implements ConnectionListener {
         statusBar.setStatus(text);
     }
 
+    /**
+     * Updates the notification summary in the status bar, next to the status text.
+     *
+     * @param text Any short text to display, or an empty string to clear it.
+     */
+    public void setAlertText(String text) {
+        statusBar.setAlertText(text);
+    }
+
+    /**
+     * Returns the registry of all connections that this window knows about, including
+     * the default one used by the Server and Subscriptions tabs.
+     *
+     * @return Our ConnectionRegistry.
+     */
+    public ConnectionRegistry getConnectionRegistry() {
+        return connectionRegistry;
+    }
+
+    /**
+     * Shows a progress indicator in the status bar until the given network operation
+     * completes. Several operations can be tracked at once; the indicator stays up
+     * until all of them are done. Must be invoked on the Event Dispatch Thread.
+     *
+     * @param operation   A future returned by ConnectionManager.
+     * @param description Short text describing what we're waiting for.
+     */
+    public void trackOperation(CompletableFuture<?> operation, String description) {
+        busyCount++;
+        statusBar.setBusy(true, description);
+        operation.whenComplete((result, error) -> SwingUtilities.invokeLater(() -> {
+            busyCount--;
+            if (busyCount == 0) {
+                statusBar.setBusy(false, "");
+            }
+        }));
+    }
+
     private void initComponents() {
         setLayout(new BorderLayout());
+        connectionRegistry = new ConnectionRegistry();
+        connectionRegistry.register(ConnectionManager.getInstance());
 
         JTabbedPane tabPane = new JTabbedPane();
         tabPane.add("Intro", buildIntroPanel());
         tabPane.add("Server", new ServerPanel());
         tabPane.add("Subscriptions", new SubscriptionsPanel());
+        tabPane.add("Connections", new ConnectionsPanel(connectionRegistry));
         tabPane.add("About", buildAboutPanel());
         add(tabPane, BorderLayout.CENTER);
 
         statusBar = new StatusBar();
         add(statusBar, BorderLayout.SOUTH);
+        new Timer(LATENCY_REFRESH_MILLIS, e -> refreshLatency()).start();
+    }
+
+    /**
+     * Shows the current and p99 round-trip times for the default connection in the status bar.
+     */
+    private void refreshLatency() {
+        ConnectionManager manager = ConnectionManager.getInstance();
+        long latency = manager.getLastLatencyNanos();
+        if (!manager.isConnected() || latency < 0) {
+            statusBar.setLatencyText("", false);
+            return;
+        }
+        long p99 = manager.getLatencyHistogram().getPercentile(99);
+        statusBar.setLatencyText(String.format("RTT %.1fms (p99 %.1fms)", latency / 1_000_000.0, p99 / 1_000_000.0),
+                                 manager.isLatencyHigh());
     }
 
     /**
@@ -142,6 +209,12 @@ public final class MainWindow extends JFrame implements ConnectionListener {
     @Override
     public void disconnected() {
         setStatusText(ServerPanel.DISCONNECTED);
+        setAlertText("");
+    }
+
+    @Override
+    public void reconnecting(int attempt, long delayMillis) {
+        setStatusText(String.format("Connection lost - reconnecting in %.1fs (attempt %d)", delayMillis / 1000.0, attempt));
     }
 
     @Override
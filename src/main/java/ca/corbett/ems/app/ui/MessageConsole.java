@@ -0,0 +1,287 @@
+package ca.corbett.ems.app.ui;
+
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JSpinner;
+import javax.swing.JTextField;
+import javax.swing.JToggleButton;
+import javax.swing.ListSelectionModel;
+import javax.swing.SpinnerNumberModel;
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.awt.Font;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A scrolling, read-only console for displaying lines of text, intended as a replacement
+ * for a JTextArea in places where a lot of text can arrive very quickly. A JTextArea
+ * grows without limit and gets slower with every append, whereas this console keeps
+ * only the most recent lines in a RingBufferListModel and renders them in a JList
+ * with a fixed cell size, so only the visible rows are ever measured or painted.
+ * <p>
+ *     The console also offers a small toolbar with the following:
+ * </p>
+ * <ul>
+ *     <li><b>Pause/Resume</b> - freezes the display so that the user can read it. Lines
+ *     that arrive while paused are held aside (up to the line cap) and added when
+ *     the console is resumed.</li>
+ *     <li><b>Clear</b> - empties the console.</li>
+ *     <li><b>Max lines</b> - the number of lines to retain before the oldest ones are discarded.</li>
+ *     <li><b>Find</b> - case-insensitive search for the next line containing the given text.</li>
+ * </ul>
+ * <p>
+ *     Like any Swing component, this console should only be touched from the Event Dispatch Thread.
+ * </p>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public final class MessageConsole extends JPanel {
+
+    /**
+     * If not specified, we retain this many lines.
+     */
+    public static final int DEFAULT_MAX_LINES = 5000;
+
+    /**
+     * Lines longer than this (in characters) are clipped in the display.
+     */
+    private static final int MAX_DISPLAY_WIDTH = 240;
+
+    private final RingBufferListModel<String> listModel;
+    private final JList<String> list;
+    private final ArrayDeque<String> pendingLines;
+    private final JToggleButton pauseButton;
+    private final JLabel pendingLabel;
+    private final JTextField searchField;
+    private long droppedWhilePaused;
+
+    /**
+     * Creates a new console with the default line cap.
+     */
+    public MessageConsole() {
+        this(DEFAULT_MAX_LINES);
+    }
+
+    /**
+     * Creates a new console that retains at most the given number of lines.
+     *
+     * @param maxLines The maximum number of lines to retain.
+     */
+    public MessageConsole(int maxLines) {
+        listModel = new RingBufferListModel<>(maxLines);
+        pendingLines = new ArrayDeque<>();
+        setLayout(new BorderLayout());
+
+        list = new JList<>(listModel);
+        list.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        list.setForeground(Color.GREEN);
+        list.setBackground(Color.BLACK);
+        list.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+
+        // A fixed cell size means that JList never has to measure every row in the model,
+        // which is what keeps this fast with thousands of lines:
+        list.setPrototypeCellValue("W".repeat(MAX_DISPLAY_WIDTH));
+        JScrollPane scrollPane = new JScrollPane(list);
+        scrollPane.getVerticalScrollBar().setUnitIncrement(32);
+        scrollPane.getVerticalScrollBar().setBlockIncrement(64);
+        add(scrollPane, BorderLayout.CENTER);
+
+        JPanel toolbar = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        pauseButton = new JToggleButton("Pause");
+        pauseButton.setPreferredSize(new Dimension(90, 25));
+        pauseButton.setFont(pauseButton.getFont().deriveFont(Font.PLAIN, 12f));
+        pauseButton.addActionListener(e -> setPaused(pauseButton.isSelected()));
+        toolbar.add(pauseButton);
+
+        JButton clearButton = new JButton("Clear");
+        clearButton.setPreferredSize(new Dimension(80, 25));
+        clearButton.setFont(clearButton.getFont().deriveFont(Font.PLAIN, 12f));
+        clearButton.addActionListener(e -> clear());
+        toolbar.add(clearButton);
+
+        toolbar.add(new JLabel("Max lines:"));
+        // The spinner accepts anything the model does, so that any starting value is in range:
+        JSpinner maxLinesSpinner = new JSpinner(
+                new SpinnerNumberModel(maxLines, 1, Math.max(maxLines, 1_000_000), 1000));
+        maxLinesSpinner.addChangeListener(e -> setMaxLines((Integer) maxLinesSpinner.getValue()));
+        toolbar.add(maxLinesSpinner);
+
+        searchField = new JTextField(12);
+        searchField.addActionListener(e -> find(searchField.getText()));
+        toolbar.add(searchField);
+        JButton findButton = new JButton("Find");
+        findButton.setPreferredSize(new Dimension(70, 25));
+        findButton.setFont(findButton.getFont().deriveFont(Font.PLAIN, 12f));
+        findButton.addActionListener(e -> find(searchField.getText()));
+        toolbar.add(findButton);
+
+        pendingLabel = new JLabel("");
+        toolbar.add(pendingLabel);
+        toolbar.setBorder(BorderFactory.createEmptyBorder(0, 0, 0, 0));
+        add(toolbar, BorderLayout.NORTH);
+    }
+
+    /**
+     * Adds a single line to the bottom of the console, discarding the oldest line
+     * if we are at capacity. If the console is paused, the line is held aside
+     * until the console is resumed.
+     *
+     * @param line The line to add.
+     */
+    public void append(String line) {
+        if (isPaused()) {
+            holdLine(line);
+            updatePendingLabel();
+            return;
+        }
+        listModel.add(line);
+        scrollToBottom();
+    }
+
+    /**
+     * Adds the given lines to the bottom of the console as a single update. This
+     * is much cheaper than invoking append() once per line when many lines
+     * arrive at once.
+     *
+     * @param lines The lines to add, in order.
+     */
+    public void appendAll(List<String> lines) {
+        if (lines == null || lines.isEmpty()) {
+            return;
+        }
+        if (isPaused()) {
+            for (String line : lines) {
+                holdLine(line);
+            }
+            updatePendingLabel();
+            return;
+        }
+        listModel.addAll(lines);
+        scrollToBottom();
+    }
+
+    /**
+     * Removes all lines from the console, including any that were held aside while paused.
+     */
+    public void clear() {
+        listModel.clear();
+        pendingLines.clear();
+        droppedWhilePaused = 0;
+        updatePendingLabel();
+    }
+
+    /**
+     * Returns the maximum number of lines retained by this console.
+     *
+     * @return The line cap.
+     */
+    public int getMaxLines() {
+        return listModel.getCapacity();
+    }
+
+    /**
+     * Sets the maximum number of lines retained by this console. If there are currently
+     * more lines than this, the oldest ones are discarded.
+     *
+     * @param maxLines The new line cap.
+     */
+    public void setMaxLines(int maxLines) {
+        listModel.setCapacity(maxLines);
+        while (pendingLines.size() > maxLines) {
+            pendingLines.removeFirst();
+            droppedWhilePaused++;
+        }
+        updatePendingLabel();
+    }
+
+    /**
+     * Reports whether the console is currently paused.
+     *
+     * @return true if paused.
+     */
+    public boolean isPaused() {
+        return pauseButton.isSelected();
+    }
+
+    /**
+     * Pauses or resumes the console. When resuming, any lines that arrived while
+     * we were paused are added to the console in one shot.
+     *
+     * @param paused Whether to pause (true) or resume (false) the console.
+     */
+    public void setPaused(boolean paused) {
+        pauseButton.setSelected(paused);
+        pauseButton.setText(paused ? "Resume" : "Pause");
+        if (!paused && !pendingLines.isEmpty()) {
+            List<String> lines = new ArrayList<>(pendingLines);
+            pendingLines.clear();
+            listModel.addAll(lines);
+            scrollToBottom();
+        }
+        if (!paused) {
+            droppedWhilePaused = 0;
+        }
+        updatePendingLabel();
+    }
+
+    /**
+     * Searches for the next line after the current selection that contains the given
+     * text (case-insensitive), wrapping around to the top if needed. If found, the line
+     * is selected and scrolled into view.
+     *
+     * @param text The text to search for.
+     * @return true if a matching line was found.
+     */
+    public boolean find(String text) {
+        if (text == null || text.isEmpty() || listModel.getSize() == 0) {
+            return false;
+        }
+        String needle = text.toLowerCase(Locale.ROOT);
+        int size = listModel.getSize();
+        int start = list.getSelectedIndex() + 1;
+        for (int i = 0; i < size; i++) {
+            int index = (start + i) % size;
+            if (listModel.getElementAt(index).toLowerCase(Locale.ROOT).contains(needle)) {
+                list.setSelectedIndex(index);
+                list.ensureIndexIsVisible(index);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void holdLine(String line) {
+        if (pendingLines.size() >= listModel.getCapacity()) {
+            pendingLines.removeFirst();
+            droppedWhilePaused++;
+        }
+        pendingLines.addLast(line);
+    }
+
+    private void scrollToBottom() {
+        int size = listModel.getSize();
+        if (size > 0) {
+            list.ensureIndexIsVisible(size - 1);
+        }
+    }
+
+    private void updatePendingLabel() {
+        if (pendingLines.isEmpty()) {
+            pendingLabel.setText("");
+        } else if (droppedWhilePaused == 0) {
+            pendingLabel.setText(pendingLines.size() + " pending");
+        } else {
+            pendingLabel.setText(pendingLines.size() + " pending (" + droppedWhilePaused + " dropped)");
+        }
+    }
+}
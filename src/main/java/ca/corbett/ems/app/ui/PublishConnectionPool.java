@@ -0,0 +1,152 @@
+package ca.corbett.ems.app.ui;
+
+import ca.corbett.ems.client.EMSServerResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A small pool of plain EMSClient connections to one EMS server, used only for
+ * sending messages. ConnectionManager's Subscriber connection also carries all of
+ * our subscription traffic (and each command on it has to wait for the one before it
+ * to be answered), so a bulk send over that connection holds up everything else.
+ * With a pool, sends go out over their own connections, on their own threads, in parallel.
+ * <p>
+ *     Each channel always goes out over the same connection (chosen by its name), and
+ *     each connection sends one message at a time, in order, so messages to any one
+ *     channel arrive in the order they were sent. Different channels go out in parallel.
+ * </p>
+ * <p>
+ *     <b>Note:</b> EMS servers don't echo a message back to the client that sent it,
+ *     but pooled connections have their own client ids. So if you publish on a channel
+ *     that you are also subscribed to, you will receive your own message.
+ * </p>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public final class PublishConnectionPool {
+
+    private static final AtomicInteger threadCounter = new AtomicInteger(0);
+
+    private final List<TimeoutClient> clients;
+    private final List<ExecutorService> lanes;
+
+    /**
+     * Opens the given number of connections to the given server. Use isConnected() to
+     * find out whether that worked.
+     *
+     * @param host             The hostname or IP address of the EMS server.
+     * @param port             The listening port of the EMS server.
+     * @param size             How many connections to open.
+     * @param readTimeoutMillis How long to wait for the server to acknowledge a send.
+     */
+    public PublishConnectionPool(String host, int port, int size, int readTimeoutMillis) {
+        clients = new ArrayList<>(size);
+        lanes = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            TimeoutClient client = new TimeoutClient();
+            if (!client.connect(host, port)) {
+                break;
+            }
+            client.setReadTimeout(readTimeoutMillis);
+            clients.add(client);
+            lanes.add(Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "ems-publish-" + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }));
+        }
+    }
+
+    /**
+     * Reports whether all of our connections were opened successfully.
+     *
+     * @return true if the pool is ready to use.
+     */
+    public boolean isConnected() {
+        if (clients.isEmpty()) {
+            return false;
+        }
+        for (TimeoutClient client : clients) {
+            if (!client.isConnected()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of open connections in this pool.
+     *
+     * @return The pool size.
+     */
+    public int size() {
+        return clients.size();
+    }
+
+    /**
+     * Sends the given message to each of the given channels, over each channel's own
+     * connection. This returns right away; the sends are queued behind any earlier
+     * sends on the same connections.
+     *
+     * @param message      The message to send.
+     * @param channelNames The channels that should receive it.
+     * @return A future which completes with the number of channels that accepted the message.
+     */
+    public CompletableFuture<Integer> send(String message, String... channelNames) {
+        List<CompletableFuture<Boolean>> sends = new ArrayList<>(channelNames.length);
+        for (String channel : channelNames) {
+            if (clients.isEmpty()) {
+                sends.add(CompletableFuture.completedFuture(false));
+                continue;
+            }
+            // Channel names aren't case-sensitive, so neither is the choice of connection:
+            int lane = Math.floorMod(channel.toUpperCase(Locale.ROOT).hashCode(), clients.size());
+            TimeoutClient client = clients.get(lane);
+            try {
+                sends.add(CompletableFuture.supplyAsync(() -> sendOne(client, channel, message), lanes.get(lane)));
+            } catch (RejectedExecutionException e) {
+                // The pool was closed underneath us (we were disconnected):
+                sends.add(CompletableFuture.completedFuture(false));
+            }
+        }
+        return CompletableFuture.allOf(sends.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            int accepted = 0;
+            for (CompletableFuture<Boolean> send : sends) {
+                if (send.join()) {
+                    accepted++;
+                }
+            }
+            return accepted;
+        });
+    }
+
+    /**
+     * Closes all of our connections and stops our threads.
+     */
+    public void close() {
+        for (ExecutorService lane : lanes) {
+            lane.shutdownNow();
+        }
+        for (TimeoutClient client : clients) {
+            client.disconnect();
+        }
+    }
+
+    private static boolean sendOne(TimeoutClient client, String channel, String message) {
+        if (!client.isConnected()) {
+            return false;
+        }
+
+        // Same as Subscriber.broadcast(): colons are the field delimiter, so they can't appear in the message.
+        EMSServerResponse response = client.sendCommand("SEND", channel, message.replaceAll(":", ""));
+        return response != null && response.isSuccess();
+    }
+}
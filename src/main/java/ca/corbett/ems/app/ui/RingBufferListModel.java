@@ -0,0 +1,150 @@
+package ca.corbett.ems.app.ui;
+
+import javax.swing.AbstractListModel;
+import java.util.List;
+
+/**
+ * A ListModel backed by a fixed-capacity ring buffer. Once the buffer is full,
+ * each new element silently pushes out the oldest one, so memory use stays flat
+ * no matter how many elements are added over time. Appending a single element
+ * is a constant-time operation, and appending a batch fires at most one
+ * removal and one insertion event regardless of the batch size.
+ * <p>
+ *     Like any Swing model, this class is not thread-safe and should only be
+ *     touched from the Event Dispatch Thread.
+ * </p>
+ *
+ * @param <E> The type of element held in this model.
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public final class RingBufferListModel<E> extends AbstractListModel<E> {
+
+    private Object[] buffer;
+    private int head;
+    private int size;
+
+    /**
+     * Creates a new, empty model that will hold at most the given number of elements.
+     *
+     * @param capacity The maximum number of elements to retain. Must be at least 1.
+     */
+    public RingBufferListModel(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1.");
+        }
+        buffer = new Object[capacity];
+    }
+
+    /**
+     * Returns the maximum number of elements that this model will retain.
+     *
+     * @return The capacity of this model.
+     */
+    public int getCapacity() {
+        return buffer.length;
+    }
+
+    /**
+     * Changes the capacity of this model. If the new capacity is smaller than the
+     * current number of elements, the oldest elements are discarded.
+     *
+     * @param capacity The new capacity. Must be at least 1.
+     */
+    public void setCapacity(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1.");
+        }
+        if (capacity == buffer.length) {
+            return;
+        }
+        int keep = Math.min(size, capacity);
+        int discard = size - keep;
+        Object[] newBuffer = new Object[capacity];
+        for (int i = 0; i < keep; i++) {
+            newBuffer[i] = buffer[(head + discard + i) % buffer.length];
+        }
+        buffer = newBuffer;
+        head = 0;
+        size = keep;
+        if (discard > 0) {
+            fireIntervalRemoved(this, 0, discard - 1);
+        }
+    }
+
+    /**
+     * Appends the given element to the end of the model, discarding the oldest
+     * element if the model is already at capacity.
+     *
+     * @param element The element to add.
+     */
+    public void add(E element) {
+        if (size < buffer.length) {
+            buffer[(head + size) % buffer.length] = element;
+            size++;
+        } else {
+            buffer[head] = element;
+            head = (head + 1) % buffer.length;
+            fireIntervalRemoved(this, 0, 0);
+        }
+        fireIntervalAdded(this, size - 1, size - 1);
+    }
+
+    /**
+     * Appends all the given elements in order, discarding as many of the oldest
+     * elements as necessary to stay within capacity. Listeners are notified
+     * with a single removal event (if anything was discarded) and a single
+     * insertion event.
+     *
+     * @param elements The elements to add. Ignored if null or empty.
+     */
+    public void addAll(List<? extends E> elements) {
+        if (elements == null || elements.isEmpty()) {
+            return;
+        }
+
+        // If the batch is larger than our capacity, only its tail can survive:
+        int count = Math.min(elements.size(), buffer.length);
+        int offset = elements.size() - count;
+        int discard = Math.max(0, size + count - buffer.length);
+        if (discard > 0) {
+            head = (head + discard) % buffer.length;
+            size -= discard;
+            fireIntervalRemoved(this, 0, discard - 1);
+        }
+        int firstNew = size;
+        for (int i = 0; i < count; i++) {
+            buffer[(head + size) % buffer.length] = elements.get(offset + i);
+            size++;
+        }
+        fireIntervalAdded(this, firstNew, size - 1);
+    }
+
+    /**
+     * Removes all elements from this model. The capacity is unchanged.
+     */
+    public void clear() {
+        if (size == 0) {
+            return;
+        }
+        int oldSize = size;
+        buffer = new Object[buffer.length];
+        head = 0;
+        size = 0;
+        fireIntervalRemoved(this, 0, oldSize - 1);
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E getElementAt(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        return (E) buffer[(head + index) % buffer.length];
+    }
+}
@@ -24,6 +24,8 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Logger;
 
 /**
@@ -45,13 +47,14 @@ public final class ServerPanel extends JPanel implements ConnectionListener {
     private TextField nameField;
     private TextField hostField;
     private NumberField portField;
+    private JButton connectButton;
     private JTextArea textArea;
 
     public ServerPanel() {
         setLayout(new BorderLayout());
         add(buildControlPanel(), BorderLayout.NORTH);
         add(buildConsole(), BorderLayout.CENTER);
-        ConnectionManager.getInstance().addConnectionListener(this);
+        ConnectionManager.getInstance().addConnectionListener(new EdtConnectionListener(this));
     }
 
     public void clearConsole() {
@@ -97,35 +100,18 @@ public final class ServerPanel extends JPanel implements ConnectionListener {
 
         PanelField panelField = new PanelField();
         panelField.getPanel().setLayout(new FlowLayout(FlowLayout.CENTER));
-        JButton btn = new JButton("Connect");
-        btn.setPreferredSize(new Dimension(120, 25));
-        btn.addActionListener(new ActionListener() {
+        connectButton = new JButton("Connect");
+        connectButton.setPreferredSize(new Dimension(120, 25));
+        connectButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                if (sourceField.getSelectedIndex() == 0) {
-                    appendToConsole("Starting local EMS server...");
-                    VersionHandler.getInstance().setServerName(nameField.getText());
-                    if (!ConnectionManager.getInstance().startLocalServer(hostField.getText(), (Integer) portField.getCurrentValue())) {
-                        //appendToConsole("Local server failed to start."); // already logged by ConnectionManager
-                        return;
-                    }
-                }
-                appendToConsole("Attempting to connect...");
-                SwingUtilities.invokeLater(new Runnable() {
-                    @Override
-                    public void run() {
-                        try {
-                            Thread.sleep(75); // give it a chance to start up
-                        } catch (InterruptedException ignored) {
-                        }
-                        ConnectionManager.getInstance().connect(hostField.getText(), (Integer) portField.getCurrentValue());
-                    }
-                });
+                connect();
             }
         });
-        panelField.getPanel().add(btn);
-        btn = new JButton("Disconnect");
+        panelField.getPanel().add(connectButton);
+        JButton btn = new JButton("Disconnect");
         btn.setPreferredSize(new Dimension(120, 25));
+        btn.setToolTipText("Disconnects, or cancels a connection attempt that is in progress.");
         btn.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
@@ -139,6 +125,44 @@ public final class ServerPanel extends JPanel implements ConnectionListener {
         return formPanel;
     }
 
+    /**
+     * Starts the local server if requested, and then connects to it (or to the remote server).
+     * All the network work happens in the background; we just disable the Connect button
+     * until it's done so that the user can't queue up several attempts.
+     */
+    private void connect() {
+        final String host = hostField.getText();
+        final int port = (Integer) portField.getCurrentValue();
+        CompletableFuture<Boolean> serverReady;
+        if (sourceField.getSelectedIndex() == 0) {
+            appendToConsole("Starting local EMS server...");
+            VersionHandler.getInstance().setServerName(nameField.getText());
+            serverReady = ConnectionManager.getInstance().startLocalServer(host, port);
+        } else {
+            serverReady = CompletableFuture.completedFuture(true);
+        }
+
+        // If the local server fails to start, ConnectionManager has already reported it:
+        CompletableFuture<Boolean> connection = serverReady.thenCompose(started -> {
+            if (!started) {
+                return CompletableFuture.completedFuture(false);
+            }
+            SwingUtilities.invokeLater(() -> appendToConsole("Attempting to connect..."));
+            return ConnectionManager.getInstance().connect(host, port);
+        });
+
+        connectButton.setEnabled(false);
+        MainWindow.getInstance().trackOperation(connection, "Connecting to " + host + ":" + port + "...");
+        connection.whenComplete((connected, error) -> SwingUtilities.invokeLater(() -> {
+            connectButton.setEnabled(true);
+            if (error instanceof CancellationException || (error != null && error.getCause() instanceof CancellationException)) {
+                appendToConsole("Connection attempt cancelled.");
+            } else if (error != null) {
+                appendToConsole("Connection failed: " + error.getMessage());
+            }
+        }));
+    }
+
     private JPanel buildConsole() {
         JPanel panel = new JPanel();
         panel.setLayout(new BorderLayout());
@@ -192,6 +216,11 @@ public final class ServerPanel extends JPanel implements ConnectionListener {
         appendToConsole("Disconnected.");
     }
 
+    @Override
+    public void reconnecting(int attempt, long delayMillis) {
+        appendToConsole(String.format("Connection lost. Reconnect attempt %d in %.1fs...", attempt, delayMillis / 1000.0));
+    }
+
     @Override
     public void connectionError(String errorMessage) {
         appendToConsole(errorMessage);
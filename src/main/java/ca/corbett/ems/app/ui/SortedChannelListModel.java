@@ -0,0 +1,324 @@
+package ca.corbett.ems.app.ui;
+
+import javax.swing.AbstractListModel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A sorted ListModel of channel names that is designed to stay responsive with tens of
+ * thousands of entries. Instead of clearing and rebuilding the whole list every time the
+ * server sends us a fresh channel list, setItems() works out the difference between the
+ * old list and the new one and applies only the inserts and removes, firing one event per
+ * contiguous run. Because JList adjusts its selection in response to those events,
+ * the user's selection survives a refresh.
+ * <p>
+ *     The model can optionally be filtered by prefix. Because the underlying list is sorted,
+ *     all entries that share a prefix form one contiguous range, which we locate with a
+ *     binary search - so the sorted list doubles as our prefix index, and narrowing or
+ *     widening the filter as the user types only fires events for the entries that
+ *     appeared or disappeared at either end of that range.
+ * </p>
+ * <p>
+ *     Like any Swing model, this class should only be used from the Event Dispatch Thread.
+ * </p>
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+public final class SortedChannelListModel extends AbstractListModel<String> {
+
+    /**
+     * If a refresh would need more than this many separate insert/remove runs, we give up on
+     * applying it piecemeal and just swap in the new list in one shot. That only happens
+     * when the list has changed almost completely (for example, on first load).
+     */
+    private static final int MAX_INCREMENTAL_RUNS = 256;
+
+    private List<String> items;
+    private String filter;
+    private int viewStart;
+    private int viewEnd;
+
+    public SortedChannelListModel() {
+        items = new ArrayList<>();
+        filter = "";
+    }
+
+    /**
+     * Replaces the contents of this model with the given channel names, firing events
+     * only for the entries that were actually added or removed.
+     *
+     * @param channels The new set of channel names, in any order. Duplicates are ignored.
+     */
+    public void setItems(Collection<String> channels) {
+        List<String> target = new ArrayList<>(channels);
+        Collections.sort(target);
+        dedupe(target);
+
+        if (countRuns(target) > MAX_INCREMENTAL_RUNS) {
+            replaceAll(target);
+            return;
+        }
+
+        int pos = 0;
+        int j = 0;
+        while (pos < items.size() || j < target.size()) {
+            int cmp;
+            if (pos >= items.size()) {
+                cmp = 1;
+            } else if (j >= target.size()) {
+                cmp = -1;
+            } else {
+                cmp = items.get(pos).compareTo(target.get(j));
+            }
+
+            if (cmp == 0) {
+                pos++;
+                j++;
+            } else if (cmp < 0) {
+                // Current entry is gone: remove it and everything after it that's also gone:
+                int end = pos + 1;
+                while (end < items.size() && (j >= target.size() || items.get(end).compareTo(target.get(j)) < 0)) {
+                    end++;
+                }
+                removeRange(pos, end);
+            } else {
+                // Target entry is new: insert it and everything after it that's also new:
+                int k = j + 1;
+                while (k < target.size() && (pos >= items.size() || target.get(k).compareTo(items.get(pos)) < 0)) {
+                    k++;
+                }
+                insertRange(pos, target.subList(j, k));
+                pos += k - j;
+                j = k;
+            }
+        }
+    }
+
+    /**
+     * Removes everything from this model.
+     */
+    public void clear() {
+        setItems(Collections.emptyList());
+    }
+
+    /**
+     * Returns the current filter prefix.
+     *
+     * @return The filter prefix, or an empty string if the model is not filtered.
+     */
+    public String getFilter() {
+        return filter;
+    }
+
+    /**
+     * Restricts the visible entries of this model to those that start with the given prefix.
+     * If the new visible range overlaps the old one (as it does when the user types or
+     * deletes characters one at a time), only the entries at the edges of the range are
+     * reported as added or removed.
+     *
+     * @param prefix The prefix to filter on. Null or empty shows everything.
+     */
+    public void setFilter(String prefix) {
+        String newFilter = prefix == null ? "" : prefix;
+        if (newFilter.equals(filter)) {
+            return;
+        }
+        filter = newFilter;
+        int newStart = lowerBound(filter);
+        int newEnd = upperBound(filter, newStart);
+        int oldStart = viewStart;
+        int oldEnd = viewEnd;
+
+        // If the ranges don't overlap at all, just swap one for the other:
+        if (newStart >= oldEnd || oldStart >= newEnd) {
+            viewEnd = viewStart;
+            if (oldEnd > oldStart) {
+                fireIntervalRemoved(this, 0, oldEnd - oldStart - 1);
+            }
+            viewStart = newStart;
+            viewEnd = newEnd;
+            if (newEnd > newStart) {
+                fireIntervalAdded(this, 0, newEnd - newStart - 1);
+            }
+            return;
+        }
+
+        // Otherwise, adjust the head of the range, then the tail:
+        viewStart = newStart;
+        if (newStart > oldStart) {
+            fireIntervalRemoved(this, 0, newStart - oldStart - 1);
+        } else if (newStart < oldStart) {
+            fireIntervalAdded(this, 0, oldStart - newStart - 1);
+        }
+        viewEnd = newEnd;
+        if (newEnd < oldEnd) {
+            fireIntervalRemoved(this, newEnd - newStart, oldEnd - newStart - 1);
+        } else if (newEnd > oldEnd) {
+            fireIntervalAdded(this, oldEnd - newStart, newEnd - newStart - 1);
+        }
+    }
+
+    /**
+     * Reports whether the given channel exists in this model, regardless of the current filter.
+     * This is a binary search and is cheap even for very large lists.
+     *
+     * @param channel The channel name to look for.
+     * @return true if the channel is present.
+     */
+    public boolean contains(String channel) {
+        return channel != null && Collections.binarySearch(items, channel) >= 0;
+    }
+
+    /**
+     * Returns the total number of entries in this model, regardless of the current filter.
+     *
+     * @return The unfiltered size.
+     */
+    public int getTotalSize() {
+        return items.size();
+    }
+
+    @Override
+    public int getSize() {
+        return viewEnd - viewStart;
+    }
+
+    @Override
+    public String getElementAt(int index) {
+        return items.get(viewStart + index);
+    }
+
+    /**
+     * Counts how many separate insert/remove runs it would take to turn our current list into the given one.
+     */
+    private int countRuns(List<String> target) {
+        int runs = 0;
+        int pos = 0;
+        int j = 0;
+        int lastOp = 0;
+        while (pos < items.size() || j < target.size()) {
+            int cmp;
+            if (pos >= items.size()) {
+                cmp = 1;
+            } else if (j >= target.size()) {
+                cmp = -1;
+            } else {
+                cmp = items.get(pos).compareTo(target.get(j));
+            }
+            if (cmp == 0) {
+                pos++;
+                j++;
+            } else if (cmp < 0) {
+                pos++;
+            } else {
+                j++;
+            }
+            if (cmp != 0 && cmp != lastOp) {
+                runs++;
+                if (runs > MAX_INCREMENTAL_RUNS) {
+                    return runs;
+                }
+            }
+            lastOp = cmp;
+        }
+        return runs;
+    }
+
+    private void replaceAll(List<String> target) {
+        int oldSize = getSize();
+        items = new ArrayList<>();
+        viewStart = 0;
+        viewEnd = 0;
+        if (oldSize > 0) {
+            fireIntervalRemoved(this, 0, oldSize - 1);
+        }
+        items = target;
+        viewStart = lowerBound(filter);
+        viewEnd = upperBound(filter, viewStart);
+        if (viewEnd > viewStart) {
+            fireIntervalAdded(this, 0, viewEnd - viewStart - 1);
+        }
+    }
+
+    /**
+     * Removes items[from, to) and reports whatever part of that was visible.
+     */
+    private void removeRange(int from, int to) {
+        int visibleFrom = Math.max(from, viewStart);
+        int visibleTo = Math.min(to, viewEnd);
+        int oldViewStart = viewStart;
+        items.subList(from, to).clear();
+        viewStart = lowerBound(filter);
+        viewEnd = upperBound(filter, viewStart);
+        if (visibleTo > visibleFrom) {
+            fireIntervalRemoved(this, visibleFrom - oldViewStart, visibleTo - oldViewStart - 1);
+        }
+    }
+
+    /**
+     * Inserts the given (sorted) run at items[at] and reports whatever part of it is visible.
+     */
+    private void insertRange(int at, List<String> run) {
+        items.addAll(at, run);
+        viewStart = lowerBound(filter);
+        viewEnd = upperBound(filter, viewStart);
+        int visibleFrom = Math.max(at, viewStart);
+        int visibleTo = Math.min(at + run.size(), viewEnd);
+        if (visibleTo > visibleFrom) {
+            fireIntervalAdded(this, visibleFrom - viewStart, visibleTo - viewStart - 1);
+        }
+    }
+
+    /**
+     * Returns the index of the first entry that is not less than the given prefix.
+     */
+    private int lowerBound(String prefix) {
+        if (prefix.isEmpty()) {
+            return 0;
+        }
+        int low = 0;
+        int high = items.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (items.get(mid).compareTo(prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the index of the first entry at or after start that does not begin with the given prefix.
+     */
+    private int upperBound(String prefix, int start) {
+        if (prefix.isEmpty()) {
+            return items.size();
+        }
+        int low = start;
+        int high = items.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (items.get(mid).startsWith(prefix)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static void dedupe(List<String> sorted) {
+        int write = 0;
+        for (int read = 0; read < sorted.size(); read++) {
+            if (write == 0 || !sorted.get(read).equals(sorted.get(write - 1))) {
+                sorted.set(write++, sorted.get(read));
+            }
+        }
+        sorted.subList(write, sorted.size()).clear();
+    }
+}
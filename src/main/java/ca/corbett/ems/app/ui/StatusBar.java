@@ -3,6 +3,8 @@ package ca.corbett.ems.app.ui;
 import javax.swing.BorderFactory;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.FlowLayout;
 
@@ -16,16 +18,62 @@ import java.awt.FlowLayout;
 public final class StatusBar extends JPanel {
 
     private final JLabel statusLabel;
+    private final JLabel alertLabel;
+    private final JLabel latencyLabel;
+    private final Color normalColor;
+    private final JProgressBar progressBar;
 
     public StatusBar() {
         setPreferredSize(new Dimension(1, 32));
         statusLabel = new JLabel("Not connected.");
+        alertLabel = new JLabel("");
+        latencyLabel = new JLabel("");
+        normalColor = latencyLabel.getForeground();
+        progressBar = new JProgressBar();
+        progressBar.setIndeterminate(true);
+        progressBar.setStringPainted(true);
+        progressBar.setPreferredSize(new Dimension(180, 18));
+        progressBar.setVisible(false);
         setLayout(new FlowLayout(FlowLayout.LEFT));
+        add(progressBar);
         add(statusLabel);
+        add(alertLabel);
+        add(latencyLabel);
         setBorder(BorderFactory.createLoweredBevelBorder());
     }
 
     public void setStatus(String text) {
         statusLabel.setText(text);
     }
+
+    /**
+     * Shows a short notification summary (such as "3 new messages") next to the status text.
+     *
+     * @param text The text to show, or an empty string to clear it.
+     */
+    public void setAlertText(String text) {
+        alertLabel.setText(text);
+    }
+
+    /**
+     * Shows the round-trip time to the server, highlighted if it's higher than it should be.
+     *
+     * @param text    Short text describing the latency, or an empty string to clear it.
+     * @param warning Whether to highlight the text as a warning.
+     */
+    public void setLatencyText(String text, boolean warning) {
+        latencyLabel.setText(text);
+        latencyLabel.setForeground(warning ? Color.RED : normalColor);
+    }
+
+    /**
+     * Shows or hides an indeterminate progress bar, for when we're waiting on the network.
+     *
+     * @param busy Whether to show the progress bar.
+     * @param text Short text to show in the progress bar (ignored if busy is false).
+     */
+    public void setBusy(boolean busy, String text) {
+        progressBar.setString(busy ? text : "");
+        progressBar.setVisible(busy);
+    }
 }
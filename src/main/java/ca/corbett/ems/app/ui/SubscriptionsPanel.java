@@ -1,32 +1,36 @@
 package ca.corbett.ems.app.ui;
 
 import ca.corbett.extras.MessageUtil;
-import ca.corbett.extras.audio.AudioUtil;
 import ca.corbett.forms.FormPanel;
 import ca.corbett.forms.fields.CheckBoxField;
 import ca.corbett.forms.fields.LabelField;
 import ca.corbett.forms.fields.PanelField;
 
-import javax.sound.sampled.UnsupportedAudioFileException;
 import javax.swing.BorderFactory;
-import javax.swing.DefaultListModel;
+import javax.swing.ButtonGroup;
+import javax.swing.DefaultListCellRenderer;
 import javax.swing.JButton;
 import javax.swing.JList;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JPopupMenu;
+import javax.swing.JRadioButtonMenuItem;
 import javax.swing.JScrollPane;
-import javax.swing.JTextArea;
+import javax.swing.JTextField;
 import javax.swing.SwingUtilities;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import java.awt.BorderLayout;
-import java.awt.Color;
+import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.FlowLayout;
 import java.awt.Font;
-import java.io.BufferedInputStream;
-import java.io.IOException;
-import java.io.InputStream;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Logger;
 
 /**
@@ -39,49 +43,55 @@ import java.util.logging.Logger;
  * @author scorbo2
  * @since 2025-03-19
  */
-public final class SubscriptionsPanel extends JPanel implements ConnectionListener {
+public final class SubscriptionsPanel extends JPanel implements ConnectionListener, ChannelMessageBatchListener {
 
     private static final Logger logger = Logger.getLogger(SubscriptionsPanel.class.getName());
 
     private MessageUtil messageUtil;
     private LabelField statusLabel;
     private LabelField clientIdLabel;
-    private JTextArea notificationsArea;
+    private MessageConsole notificationsConsole;
     private CheckBoxField audibleCheckBox;
+    private CheckBoxField traceCheckBox;
     private JList<String> availableChannelsList;
     private JList<String> subscribedChannelsList;
-    private DefaultListModel<String> availableChannelsListModel;
-    private DefaultListModel<String> subscribedChannelsListModel;
+    private SortedChannelListModel availableChannelsListModel;
+    private SortedChannelListModel subscribedChannelsListModel;
+    private JTextField channelFilterField;
     private JButton btnCreate;
     private JButton btnSubscribe;
     private JButton btnRefresh;
     private JButton btnSend;
     private JButton btnUnsubscribe;
-    private final int[][] audibleAlert;
+    /**
+     * Used to give the channel lists a fixed cell size, so they don't have to measure every entry.
+     */
+    private static final String CHANNEL_PROTOTYPE = "MMMMMMMMMMMMMMMMMMMM";
+
+    private final AlertScheduler alertScheduler;
 
     public SubscriptionsPanel() {
-        // Try to load the audible signal from resources:
-        int[][] audio = null;
-        try {
-            InputStream in = getClass().getResourceAsStream("/ems-example-app/sfx_bell_ding.wav");
-            if (in != null) {
-                audio = AudioUtil.parseAudioStream(new BufferedInputStream(in));
-            }
-        } catch (IOException | UnsupportedAudioFileException e) {
-            logger.warning("Unable to load audible alert: " + e.getMessage());
-        }
-        audibleAlert = audio;
+        // Load the audible signal from resources. Alerts are coalesced so that a burst
+        // of messages doesn't turn into a burst of bells:
+        alertScheduler = new AlertScheduler("/ems-example-app/sfx_bell_ding.wav");
+        alertScheduler.setSummaryListener(
+                count -> MainWindow.getInstance().setAlertText(count == 1 ? "1 new message" : count + " new messages"));
 
         setLayout(new BorderLayout());
         add(buildControlPanel(), BorderLayout.NORTH);
         add(buildAlertsPanel(), BorderLayout.CENTER);
-        ConnectionManager.getInstance().addConnectionListener(this);
+        ConnectionManager.getInstance().addConnectionListener(new EdtConnectionListener(this));
         enableControls(false);
     }
 
+    /**
+     * Adds a line of text to the notifications console. The console only retains
+     * a limited number of lines, so old notifications will eventually scroll away.
+     *
+     * @param text Text to be added to the console.
+     */
     public void appendToConsole(String text) {
-        notificationsArea.append(text + System.lineSeparator());
-        notificationsArea.setCaretPosition(notificationsArea.getDocument().getLength());
+        notificationsConsole.append(text);
     }
 
     private JPanel buildControlPanel() {
@@ -104,12 +114,32 @@ public final class SubscriptionsPanel extends JPanel implements ConnectionListen
         PanelField panelField = new PanelField();
         panelField.getPanel().setLayout(new BorderLayout());
         panelField.getPanel().setBorder(BorderFactory.createTitledBorder("Available channels"));
-        availableChannelsListModel = new DefaultListModel<>();
+        availableChannelsListModel = new SortedChannelListModel();
         availableChannelsList = new JList<>(availableChannelsListModel);
+        availableChannelsList.setPrototypeCellValue(CHANNEL_PROTOTYPE); // avoids measuring every row
         JScrollPane scrollPane = new JScrollPane(availableChannelsList);
         scrollPane.getVerticalScrollBar().setUnitIncrement(32);
         scrollPane.getVerticalScrollBar().setBlockIncrement(64);
         panelField.getPanel().add(scrollPane, BorderLayout.CENTER);
+        channelFilterField = new JTextField();
+        channelFilterField.setToolTipText("Type the start of a channel name to filter the list.");
+        channelFilterField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                applyChannelFilter();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                applyChannelFilter();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                applyChannelFilter();
+            }
+        });
+        panelField.getPanel().add(channelFilterField, BorderLayout.NORTH);
         formPanel.addFormField(panelField);
 
         panelField = new PanelField();
@@ -131,7 +161,8 @@ public final class SubscriptionsPanel extends JPanel implements ConnectionListen
         panelField.getPanel().setLayout(new FlowLayout(FlowLayout.CENTER));
         btnRefresh = new JButton("Refresh");
         btnRefresh.setPreferredSize(new Dimension(110, 25));
-        btnRefresh.addActionListener(e -> ConnectionManager.getInstance().retrieveChannelList());
+        btnRefresh.addActionListener(e -> MainWindow.getInstance().trackOperation(
+                ConnectionManager.getInstance().retrieveChannelList(), "Refreshing..."));
         btnRefresh.setFont(btnRefresh.getFont().deriveFont(Font.PLAIN, 12f));
         panelField.getPanel().add(btnRefresh);
         btnSend = new JButton("Send...");
@@ -155,8 +186,12 @@ public final class SubscriptionsPanel extends JPanel implements ConnectionListen
         PanelField panelField = new PanelField();
         panelField.getPanel().setLayout(new BorderLayout());
         panelField.getPanel().setBorder(BorderFactory.createTitledBorder("Subscribed channels"));
-        subscribedChannelsListModel = new DefaultListModel<>();
+        subscribedChannelsListModel = new SortedChannelListModel();
         subscribedChannelsList = new JList<>(subscribedChannelsListModel);
+        subscribedChannelsList.setPrototypeCellValue(CHANNEL_PROTOTYPE);
+        subscribedChannelsList.setCellRenderer(new AlertRuleCellRenderer());
+        subscribedChannelsList.addMouseListener(new AlertRuleMouseListener());
+        subscribedChannelsList.setToolTipText("Right-click a channel to set its audible alert rule.");
         JScrollPane scrollPane = new JScrollPane(subscribedChannelsList);
         scrollPane.getVerticalScrollBar().setUnitIncrement(32);
         scrollPane.getVerticalScrollBar().setBlockIncrement(64);
@@ -173,9 +208,12 @@ public final class SubscriptionsPanel extends JPanel implements ConnectionListen
         formPanel.addFormField(panelField);
 
         audibleCheckBox = new CheckBoxField("Audible notification messages", true);
-        audibleCheckBox.setEnabled(audibleAlert != null);
+        audibleCheckBox.setEnabled(alertScheduler.isAvailable());
         formPanel.addFormField(audibleCheckBox);
 
+        traceCheckBox = new CheckBoxField("Trace sent messages (for latency stats)", false);
+        formPanel.addFormField(traceCheckBox);
+
         formPanel.render();
         return formPanel;
     }
@@ -185,16 +223,8 @@ public final class SubscriptionsPanel extends JPanel implements ConnectionListen
         panel.setLayout(new BorderLayout());
         panel.setBorder(BorderFactory.createTitledBorder("Notifications"));
 
-        notificationsArea = new JTextArea();
-        JScrollPane scrollPane = new JScrollPane(notificationsArea);
-        notificationsArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
-        notificationsArea.setForeground(Color.GREEN);
-        notificationsArea.setBackground(Color.BLACK);
-        notificationsArea.setEditable(false);
-        notificationsArea.setText("");
-        scrollPane.getVerticalScrollBar().setUnitIncrement(32);
-        scrollPane.getVerticalScrollBar().setBlockIncrement(64);
-        panel.add(scrollPane, BorderLayout.CENTER);
+        notificationsConsole = new MessageConsole();
+        panel.add(notificationsConsole, BorderLayout.CENTER);
 
         return panel;
     }
@@ -212,9 +242,18 @@ public final class SubscriptionsPanel extends JPanel implements ConnectionListen
         btnRefresh.setEnabled(enable);
         btnUnsubscribe.setEnabled(enable);
         availableChannelsList.setEnabled(enable);
+        channelFilterField.setEnabled(enable);
         subscribedChannelsList.setEnabled(enable);
     }
 
+    /**
+     * Invoked as the user types in the filter box above the available channels list.
+     * Channel names are case-insensitive (the server upper-cases them), so we do the same here.
+     */
+    private void applyChannelFilter() {
+        availableChannelsListModel.setFilter(channelFilterField.getText().trim().toUpperCase());
+    }
+
     private void createChannel() {
         String name = JOptionPane.showInputDialog(MainWindow.getInstance(), "Channel name:");
         if (name != null) {
@@ -222,7 +261,7 @@ public final class SubscriptionsPanel extends JPanel implements ConnectionListen
                 getMessageUtil().info("Channel exists!", "That channel already exists.\nChannel names are case-insensitive.");
                 return;
             }
-            ConnectionManager.getInstance().subscribe(name);
+            MainWindow.getInstance().trackOperation(ConnectionManager.getInstance().subscribe(name), "Creating channel...");
         }
     }
 
@@ -247,14 +286,12 @@ public final class SubscriptionsPanel extends JPanel implements ConnectionListen
             final String[] channelNames = Arrays.copyOf(selectedChannels, selectedChannels.length);
             appendToConsole("Sending \"" + toSend + "\" to " + log + "...");
 
-            // Invoke later or our appendToConsole above will be blocked until ConnectionManager is done
-            SwingUtilities.invokeLater(new Runnable() {
-                @Override
-                public void run() {
-                    ConnectionManager.getInstance().sendMessage(toSend, channelNames);
-                    appendToConsole("Send complete!");
-                }
-            });
+            // The send happens in the background, so we only report back once it's done:
+            ConnectionManager.getInstance().setTracingEnabled(traceCheckBox.isChecked());
+            CompletableFuture<Void> send = ConnectionManager.getInstance().sendMessage(toSend, channelNames);
+            MainWindow.getInstance().trackOperation(send, "Sending...");
+            send.whenComplete((result, error) -> SwingUtilities.invokeLater(
+                    () -> appendToConsole(error == null ? "Send complete!" : "Send failed.")));
         }
     }
 
@@ -267,7 +304,7 @@ public final class SubscriptionsPanel extends JPanel implements ConnectionListen
         if (selectedChannels.length == 0) {
             getMessageUtil().info("Nothing selected.");
         }
-        ConnectionManager.getInstance().subscribe(selectedChannels);
+        MainWindow.getInstance().trackOperation(ConnectionManager.getInstance().subscribe(selectedChannels), "Subscribing...");
     }
 
     private String[] getSelectedActiveChannels() {
@@ -277,7 +314,7 @@ public final class SubscriptionsPanel extends JPanel implements ConnectionListen
         }
         String[] selectedChannels = new String[selectedArr.length];
         for (int i = 0; i < selectedArr.length; i++) {
-            selectedChannels[i] = availableChannelsListModel.get(selectedArr[i]);
+            selectedChannels[i] = availableChannelsListModel.getElementAt(selectedArr[i]);
         }
         return selectedChannels;
     }
@@ -291,7 +328,7 @@ public final class SubscriptionsPanel extends JPanel implements ConnectionListen
         if (selectedChannels.length == 0) {
             getMessageUtil().info("Nothing selected.");
         }
-        ConnectionManager.getInstance().unsubscribe(selectedChannels);
+        MainWindow.getInstance().trackOperation(ConnectionManager.getInstance().unsubscribe(selectedChannels), "Unsubscribing...");
     }
 
     private String[] getSelectedSubscribedChannels() {
@@ -301,7 +338,7 @@ public final class SubscriptionsPanel extends JPanel implements ConnectionListen
         }
         String[] selectedChannels = new String[selectedArr.length];
         for (int i = 0; i < selectedArr.length; i++) {
-            selectedChannels[i] = subscribedChannelsListModel.get(selectedArr[i]);
+            selectedChannels[i] = subscribedChannelsListModel.getElementAt(selectedArr[i]);
         }
         return selectedChannels;
     }
@@ -331,9 +368,17 @@ public final class SubscriptionsPanel extends JPanel implements ConnectionListen
         subscribedChannelsListModel.clear();
         availableChannelsListModel.clear();
         enableControls(false);
+        alertScheduler.reset();
         appendToConsole("Disconnected.");
     }
 
+    @Override
+    public void reconnecting(int attempt, long delayMillis) {
+        if (attempt == 1) {
+            appendToConsole("Connection lost. Reconnecting...");
+        }
+    }
+
     @Override
     public void connectionError(String errorMessage) {
         appendToConsole(errorMessage);
@@ -341,21 +386,29 @@ public final class SubscriptionsPanel extends JPanel implements ConnectionListen
 
     @Override
     public void channelMessageReceived(String channel, String message) {
-        appendToConsole("Message from channel " + channel + ": " + message);
-        if (audibleCheckBox.isChecked() && audibleAlert != null) {
-            try {
-                AudioUtil.play(audibleAlert, null);
-            } catch (Exception ignored) {
+        channelMessagesReceived(List.of(new ChannelMessage(channel, message)));
+    }
+
+    @Override
+    public void channelMessagesReceived(List<ChannelMessage> messages) {
+        List<String> lines = new ArrayList<>(messages.size());
+        for (ChannelMessage message : messages) {
+            lines.add("Message from channel " + message.getChannel() + ": " + message.getMessage());
+        }
+        notificationsConsole.appendAll(lines);
+
+        if (audibleCheckBox.isChecked()) {
+            for (ChannelMessage message : messages) {
+                alertScheduler.messageArrived(message.getChannel());
             }
         }
     }
 
     @Override
     public void channelList(List<String> activeChannels, List<String> subscribedChannels) {
-        availableChannelsListModel.clear();
-        subscribedChannelsListModel.clear();
-        availableChannelsListModel.addAll(activeChannels);
-        subscribedChannelsListModel.addAll(subscribedChannels);
+        // These only apply the differences, so the current selections are preserved:
+        availableChannelsListModel.setItems(activeChannels);
+        subscribedChannelsListModel.setItems(subscribedChannels);
         appendToConsole("Server has " + activeChannels.size() + " active channels, we are subscribed to " + subscribedChannels.size());
     }
 
@@ -369,6 +422,60 @@ public final class SubscriptionsPanel extends JPanel implements ConnectionListen
         appendToConsole("You are no longer subscribed to channel \"" + channelName + "\".");
     }
 
+    /**
+     * Shows the alert rule for each subscribed channel, unless it's the default.
+     */
+    private class AlertRuleCellRenderer extends DefaultListCellRenderer {
+        @Override
+        public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+            String text = String.valueOf(value);
+            AlertScheduler.Rule rule = alertScheduler.getRule(text);
+            if (rule != AlertScheduler.Rule.NORMAL) {
+                text += " (" + rule.getLabel().toLowerCase() + ")";
+            }
+            return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+        }
+    }
+
+    /**
+     * Offers a popup menu for choosing the alert rule of a subscribed channel.
+     */
+    private class AlertRuleMouseListener extends MouseAdapter {
+        @Override
+        public void mousePressed(MouseEvent e) {
+            maybeShowPopup(e);
+        }
+
+        @Override
+        public void mouseReleased(MouseEvent e) {
+            maybeShowPopup(e);
+        }
+
+        private void maybeShowPopup(MouseEvent e) {
+            if (!e.isPopupTrigger() || !subscribedChannelsList.isEnabled()) {
+                return;
+            }
+            int index = subscribedChannelsList.locationToIndex(e.getPoint());
+            if (index < 0) {
+                return;
+            }
+            final String channel = subscribedChannelsListModel.getElementAt(index);
+            JPopupMenu menu = new JPopupMenu("Alert for " + channel);
+            ButtonGroup group = new ButtonGroup();
+            for (AlertScheduler.Rule rule : AlertScheduler.Rule.values()) {
+                JRadioButtonMenuItem item = new JRadioButtonMenuItem(rule.getLabel() + " alerts");
+                item.setSelected(alertScheduler.getRule(channel) == rule);
+                item.addActionListener(ae -> {
+                    alertScheduler.setRule(channel, rule);
+                    subscribedChannelsList.repaint();
+                });
+                group.add(item);
+                menu.add(item);
+            }
+            menu.show(subscribedChannelsList, e.getX(), e.getY());
+        }
+    }
+
     private MessageUtil getMessageUtil() {
         if (messageUtil == null) {
             messageUtil = new MessageUtil(MainWindow.getInstance(), logger);
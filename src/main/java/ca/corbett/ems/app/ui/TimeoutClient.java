@@ -0,0 +1,36 @@
+package ca.corbett.ems.app.ui;
+
+import ca.corbett.ems.client.EMSClient;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A plain EMSClient whose reads time out. EMSClient doesn't expose its socket, so we
+ * need a subclass to set a read timeout on it. If the server doesn't answer a command
+ * in time, sendCommand() gives up, and the client disconnects itself.
+ *
+ * @author scorbo2
+ * @since 2026-10-18
+ */
+final class TimeoutClient extends EMSClient {
+
+    private static final Logger logger = Logger.getLogger(TimeoutClient.class.getName());
+
+    /**
+     * Sets how long we wait for the server to answer a command. Has no effect if we
+     * are not connected.
+     *
+     * @param millis The read timeout, in milliseconds.
+     */
+    void setReadTimeout(int millis) {
+        try {
+            if (clientSocket != null) {
+                clientSocket.setSoTimeout(millis);
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Unable to set read timeout: " + e.getMessage());
+        }
+    }
+}